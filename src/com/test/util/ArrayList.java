@@ -1,86 +1,745 @@
 package com.test.util;
 
+import com.test.util.function.Consumer;
+import com.test.util.function.Predicate;
+import com.test.util.function.UnaryOperator;
+
+import java.util.BitSet;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.RandomAccess;
 
 /**
  * @Created by JYB
  * @Date 2019/8/4 16:09
- * @Description TODO
+ * @Description 基于数组的列表
+ *
+ * 1. 容量不足时扩大为原来的1.5倍，所以add的均摊时间复杂度是O(1)
+ * 2. 使用无参构造函数创建时不分配数组，第一次添加元素时才分配DEFAULT_CAPACITY大小的数组
+ * 3. 批量操作(addAll、removeIf、removeAll、retainAll)通过System.arraycopy或者一次遍历压缩完成，
+ *    不会逐个移动元素
+ * 4. 迭代器和分区迭代器都是快速失败的，遍历过程中结构被修改会抛出ConcurrentModificationException
  */
-public class ArrayList<E> implements List<E>, RandomAccess, Cloneable, java.io.Serializable {
-    @Override
+public class ArrayList<E> extends AbstractCollection<E>
+        implements List<E>, RandomAccess, Cloneable, java.io.Serializable {
+
+    private static final long serialVersionUID = 8683452581122892189L;
+
+    /** 默认的初始容量 */
+    private static final int DEFAULT_CAPACITY = 10;
+
+    /** 指定容量为0时共享的空数组 */
+    private static final Object[] EMPTY_ELEMENTDATA = {};
+
+    /**
+     * 无参构造函数共享的空数组，与EMPTY_ELEMENTDATA区分开，
+     * 这样第一次添加元素的时候知道应该扩容到DEFAULT_CAPACITY
+     * */
+    private static final Object[] DEFAULTCAPACITY_EMPTY_ELEMENTDATA = {};
+
+    /** 数组的最大长度，有些虚拟机会在数组中保存对象头 */
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    /** 存放元素的数组，长度就是容量 */
+    transient Object[] elementData;
+
+    /** 元素个数 */
+    private int size;
+
+    /**
+     * 结构被修改(改变了size)的次数，迭代器通过它实现快速失败
+     * */
+    protected transient int modCount = 0;
+
+    public ArrayList(int initialCapacity) {
+        if (initialCapacity > 0) {
+            this.elementData = new Object[initialCapacity];
+        } else if (initialCapacity == 0) {
+            this.elementData = EMPTY_ELEMENTDATA;
+        } else {
+            throw new IllegalArgumentException("Illegal Capacity: " + initialCapacity);
+        }
+    }
+
+    public ArrayList() {
+        this.elementData = DEFAULTCAPACITY_EMPTY_ELEMENTDATA;
+    }
+
+    public ArrayList(Collection<? extends E> c) {
+        elementData = c.toArray();
+        if ((size = elementData.length) != 0) {
+            // c.toArray可能不是返回Object[]
+            if (elementData.getClass() != Object[].class)
+                elementData = Arrays.copyOf(elementData, size, Object[].class);
+        } else {
+            this.elementData = EMPTY_ELEMENTDATA;
+        }
+    }
+
+    /* ---------------- 容量 -------------- */
+
+    /**
+     * 把容量缩减为当前的元素个数
+     * */
+    public void trimToSize() {
+        modCount++;
+        if (size < elementData.length) {
+            elementData = (size == 0)
+                    ? EMPTY_ELEMENTDATA
+                    : Arrays.copyOf(elementData, size);
+        }
+    }
+
+    /**
+     * 保证至少能容纳minCapacity个元素，提前知道元素个数时可以避免多次扩容
+     * */
+    public void ensureCapacity(int minCapacity) {
+        int minExpand = (elementData != DEFAULTCAPACITY_EMPTY_ELEMENTDATA)
+                ? 0
+                : DEFAULT_CAPACITY;
+        if (minCapacity > minExpand) {
+            ensureExplicitCapacity(minCapacity);
+        }
+    }
+
+    private void ensureCapacityInternal(int minCapacity) {
+        if (elementData == DEFAULTCAPACITY_EMPTY_ELEMENTDATA) {
+            minCapacity = Math.max(DEFAULT_CAPACITY, minCapacity);
+        }
+        ensureExplicitCapacity(minCapacity);
+    }
+
+    private void ensureExplicitCapacity(int minCapacity) {
+        modCount++;
+        if (minCapacity - elementData.length > 0)
+            grow(minCapacity);
+    }
+
+    /**
+     * 扩容为原来的1.5倍，不够时直接扩容到minCapacity
+     * */
+    private void grow(int minCapacity) {
+        int oldCapacity = elementData.length;
+        int newCapacity = oldCapacity + (oldCapacity >> 1);
+        if (newCapacity - minCapacity < 0)
+            newCapacity = minCapacity;
+        if (newCapacity - MAX_ARRAY_SIZE > 0)
+            newCapacity = hugeCapacity(minCapacity);
+        elementData = Arrays.copyOf(elementData, newCapacity);
+    }
+
+    private static int hugeCapacity(int minCapacity) {
+        if (minCapacity < 0) // overflow
+            throw new OutOfMemoryError();
+        return (minCapacity > MAX_ARRAY_SIZE) ?
+                Integer.MAX_VALUE :
+                MAX_ARRAY_SIZE;
+    }
+
+    /* ---------------- 查询 -------------- */
+
     public int size() {
-        return 0;
+        return size;
     }
 
-    @Override
     public boolean isEmpty() {
-        return false;
+        return size == 0;
     }
 
-    @Override
-    public boolean contains(Object obj) {
-        return false;
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
     }
 
-    @Override
-    public Iterator<E> iterator() {
-        return null;
+    public int indexOf(Object o) {
+        if (o == null) {
+            for (int i = 0; i < size; i++)
+                if (elementData[i] == null)
+                    return i;
+        } else {
+            for (int i = 0; i < size; i++)
+                if (o.equals(elementData[i]))
+                    return i;
+        }
+        return -1;
+    }
+
+    public int lastIndexOf(Object o) {
+        if (o == null) {
+            for (int i = size - 1; i >= 0; i--)
+                if (elementData[i] == null)
+                    return i;
+        } else {
+            for (int i = size - 1; i >= 0; i--)
+                if (o.equals(elementData[i]))
+                    return i;
+        }
+        return -1;
+    }
+
+    /**
+     * 浅拷贝，元素本身不会被复制
+     * */
+    public Object clone() {
+        try {
+            @SuppressWarnings("unchecked")
+            ArrayList<E> v = (ArrayList<E>) super.clone();
+            v.elementData = Arrays.copyOf(elementData, size);
+            v.modCount = 0;
+            return v;
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError(e);
+        }
     }
 
-    @Override
     public Object[] toArray() {
-        return new Object[0];
+        return Arrays.copyOf(elementData, size);
     }
 
-    @Override
+    @SuppressWarnings("unchecked")
     public <T> T[] toArray(T[] a) {
-        return null;
+        if (a.length < size)
+            return (T[]) Arrays.copyOf(elementData, size, a.getClass());
+        System.arraycopy(elementData, 0, a, 0, size);
+        if (a.length > size)
+            a[size] = null;
+        return a;
+    }
+
+    /* ---------------- 按下标访问 -------------- */
+
+    @SuppressWarnings("unchecked")
+    E elementData(int index) {
+        return (E) elementData[index];
+    }
+
+    public E get(int index) {
+        rangeCheck(index);
+        return elementData(index);
+    }
+
+    public E set(int index, E element) {
+        rangeCheck(index);
+        E oldValue = elementData(index);
+        elementData[index] = element;
+        return oldValue;
     }
 
-    @Override
     public boolean add(E e) {
-        return false;
+        ensureCapacityInternal(size + 1);
+        elementData[size++] = e;
+        return true;
+    }
+
+    public void add(int index, E element) {
+        rangeCheckForAdd(index);
+        ensureCapacityInternal(size + 1);
+        System.arraycopy(elementData, index, elementData, index + 1, size - index);
+        elementData[index] = element;
+        size++;
+    }
+
+    public E remove(int index) {
+        rangeCheck(index);
+        modCount++;
+        E oldValue = elementData(index);
+        int numMoved = size - index - 1;
+        if (numMoved > 0)
+            System.arraycopy(elementData, index + 1, elementData, index, numMoved);
+        elementData[--size] = null; // 让GC回收
+        return oldValue;
     }
 
-    @Override
     public boolean remove(Object o) {
+        if (o == null) {
+            for (int index = 0; index < size; index++)
+                if (elementData[index] == null) {
+                    fastRemove(index);
+                    return true;
+                }
+        } else {
+            for (int index = 0; index < size; index++)
+                if (o.equals(elementData[index])) {
+                    fastRemove(index);
+                    return true;
+                }
+        }
         return false;
     }
 
-    @Override
-    public boolean containsAll(Collection<?> c) {
-        return false;
+    /** 不检查下标、不返回旧值的删除 */
+    private void fastRemove(int index) {
+        modCount++;
+        int numMoved = size - index - 1;
+        if (numMoved > 0)
+            System.arraycopy(elementData, index + 1, elementData, index, numMoved);
+        elementData[--size] = null;
     }
 
-    @Override
+    public void clear() {
+        modCount++;
+        for (int i = 0; i < size; i++)
+            elementData[i] = null;
+        size = 0;
+    }
+
+    /* ---------------- 批量操作 -------------- */
+
+    /**
+     * 先把c转换为数组，一次扩容之后整体复制
+     * */
     public boolean addAll(Collection<? extends E> c) {
-        return false;
+        Object[] a = c.toArray();
+        int numNew = a.length;
+        ensureCapacityInternal(size + numNew);
+        System.arraycopy(a, 0, elementData, size, numNew);
+        size += numNew;
+        return numNew != 0;
     }
 
-    @Override
+    /**
+     * 原来index之后的元素只移动一次
+     * */
     public boolean addAll(int index, Collection<? extends E> c) {
-        return false;
+        rangeCheckForAdd(index);
+        Object[] a = c.toArray();
+        int numNew = a.length;
+        ensureCapacityInternal(size + numNew);
+        int numMoved = size - index;
+        if (numMoved > 0)
+            System.arraycopy(elementData, index, elementData, index + numNew, numMoved);
+        System.arraycopy(a, 0, elementData, index, numNew);
+        size += numNew;
+        return numNew != 0;
+    }
+
+    /**
+     * 删除[fromIndex, toIndex)之间的元素
+     * */
+    protected void removeRange(int fromIndex, int toIndex) {
+        modCount++;
+        int numMoved = size - toIndex;
+        System.arraycopy(elementData, toIndex, elementData, fromIndex, numMoved);
+        int newSize = size - (toIndex - fromIndex);
+        for (int i = newSize; i < size; i++)
+            elementData[i] = null;
+        size = newSize;
     }
 
-    @Override
     public boolean removeAll(Collection<?> c) {
-        return false;
+        Objects.requireNonNull(c);
+        return batchRemove(c, false);
     }
 
-    @Override
     public boolean retainAll(Collection<?> c) {
-        return false;
+        Objects.requireNonNull(c);
+        return batchRemove(c, true);
     }
 
-    @Override
-    public void clear() {
+    /**
+     * 把需要保留的元素依次往前移动，最后把尾部置为null
+     * c.contains抛出异常时，把还没有检查的元素接到后面，保证列表仍然是完整的
+     * */
+    private boolean batchRemove(Collection<?> c, boolean complement) {
+        final Object[] elementData = this.elementData;
+        int r = 0, w = 0;
+        boolean modified = false;
+        try {
+            for (; r < size; r++)
+                if (c.contains(elementData[r]) == complement)
+                    elementData[w++] = elementData[r];
+        } finally {
+            if (r != size) {
+                System.arraycopy(elementData, r, elementData, w, size - r);
+                w += size - r;
+            }
+            if (w != size) {
+                for (int i = w; i < size; i++)
+                    elementData[i] = null;
+                modCount += size - w;
+                size = w;
+                modified = true;
+            }
+        }
+        return modified;
+    }
+
+    /**
+     * 分两遍完成：第一遍只调用filter并在BitSet中标记要删除的元素，
+     * 第二遍把保留的元素压缩到数组前部
+     *
+     * filter抛出异常时列表不会被修改，这是逐个删除做不到的
+     * */
+    @SuppressWarnings("unchecked")
+    public boolean removeIf(Predicate<? super E> filter) {
+        Objects.requireNonNull(filter);
+        int removeCount = 0;
+        final BitSet removeSet = new BitSet(size);
+        final int expectedModCount = modCount;
+        final int size = this.size;
+        for (int i = 0; modCount == expectedModCount && i < size; i++) {
+            final E element = (E) elementData[i];
+            if (filter.test(element)) {
+                removeSet.set(i);
+                removeCount++;
+            }
+        }
+        if (modCount != expectedModCount)
+            throw new ConcurrentModificationException();
+
+        final boolean anyToRemove = removeCount > 0;
+        if (anyToRemove) {
+            final int newSize = size - removeCount;
+            for (int i = 0, j = 0; (i < size) && (j < newSize); i++, j++) {
+                i = removeSet.nextClearBit(i);
+                elementData[j] = elementData[i];
+            }
+            for (int k = newSize; k < size; k++)
+                elementData[k] = null;
+            this.size = newSize;
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            modCount++;
+        }
+        return anyToRemove;
+    }
 
+    /**
+     * 直接遍历数组，不经过ListIterator
+     * */
+    @SuppressWarnings("unchecked")
+    public void replaceAll(UnaryOperator<E> operator) {
+        Objects.requireNonNull(operator);
+        final int expectedModCount = modCount;
+        final int size = this.size;
+        for (int i = 0; modCount == expectedModCount && i < size; i++)
+            elementData[i] = operator.apply((E) elementData[i]);
+        if (modCount != expectedModCount)
+            throw new ConcurrentModificationException();
+        modCount++;
     }
 
+    /**
+     * 直接在elementData上排序，comparator为null的时候按自然顺序排序
+     * */
+    @SuppressWarnings("unchecked")
     @Override
+    public void sort(Comparator<? super E> c) {
+        final int expectedModCount = modCount;
+        if (c == null)
+            java.util.Arrays.sort(elementData, 0, size);
+        else
+            java.util.Arrays.sort((E[]) elementData, 0, size, c::compare);
+        if (modCount != expectedModCount)
+            throw new ConcurrentModificationException();
+        modCount++;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super E> action) {
+        Objects.requireNonNull(action);
+        final int expectedModCount = modCount;
+        final E[] elementData = (E[]) this.elementData;
+        final int size = this.size;
+        for (int i = 0; modCount == expectedModCount && i < size; i++)
+            action.accept(elementData[i]);
+        if (modCount != expectedModCount)
+            throw new ConcurrentModificationException();
+    }
+
+    /* ---------------- equals和hashCode -------------- */
+
+    /**
+     * 与另一个List按顺序逐个比较
+     * */
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (!(o instanceof List))
+            return false;
+        final int expectedModCount = modCount;
+        Iterator<?> it = ((List<?>) o).iterator();
+        int i = 0;
+        for (; i < size && it.hasNext(); i++) {
+            Object o1 = elementData[i];
+            Object o2 = it.next();
+            if (!(o1 == null ? o2 == null : o1.equals(o2)))
+                return false;
+        }
+        if (modCount != expectedModCount)
+            throw new ConcurrentModificationException();
+        return i == size && !it.hasNext();
+    }
+
+    public int hashCode() {
+        final int expectedModCount = modCount;
+        int hashCode = 1;
+        for (int i = 0; i < size; i++) {
+            Object e = elementData[i];
+            hashCode = 31 * hashCode + (e == null ? 0 : e.hashCode());
+        }
+        if (modCount != expectedModCount)
+            throw new ConcurrentModificationException();
+        return hashCode;
+    }
+
+    /* ---------------- 下标检查 -------------- */
+
+    private void rangeCheck(int index) {
+        if (index >= size)
+            throw new IndexOutOfBoundsException(outOfBoundsMsg(index));
+    }
+
+    private void rangeCheckForAdd(int index) {
+        if (index > size || index < 0)
+            throw new IndexOutOfBoundsException(outOfBoundsMsg(index));
+    }
+
+    private String outOfBoundsMsg(int index) {
+        return "Index: " + index + ", Size: " + size;
+    }
+
+    /* ---------------- 序列化 -------------- */
+
+    /**
+     * 只写出size个元素，不写出数组中没有使用的部分
+     * */
+    private void writeObject(java.io.ObjectOutputStream s)
+            throws java.io.IOException {
+        int expectedModCount = modCount;
+        s.defaultWriteObject();
+        s.writeInt(size);
+        for (int i = 0; i < size; i++)
+            s.writeObject(elementData[i]);
+        if (modCount != expectedModCount)
+            throw new ConcurrentModificationException();
+    }
+
+    private void readObject(java.io.ObjectInputStream s)
+            throws java.io.IOException, ClassNotFoundException {
+        elementData = EMPTY_ELEMENTDATA;
+        s.defaultReadObject();
+        s.readInt(); // 容量，忽略
+        if (size > 0) {
+            ensureCapacityInternal(size);
+            Object[] a = elementData;
+            for (int i = 0; i < size; i++)
+                a[i] = s.readObject();
+        }
+    }
+
+    /* ---------------- 迭代器 -------------- */
+
+    public Iterator<E> iterator() {
+        return new Itr();
+    }
+
     public ListIterator<E> listIterator() {
-        return null;
+        return new ListItr(0);
+    }
+
+    public ListIterator<E> listIterator(int index) {
+        if (index < 0 || index > size)
+            throw new IndexOutOfBoundsException("Index: " + index);
+        return new ListItr(index);
+    }
+
+    private class Itr implements Iterator<E> {
+        int cursor;       // 下一个返回的元素的下标
+        int lastRet = -1; // 上一个返回的元素的下标，没有时为-1
+        int expectedModCount = modCount;
+
+        public boolean hasNext() {
+            return cursor != size;
+        }
+
+        @SuppressWarnings("unchecked")
+        public E next() {
+            checkForComodification();
+            int i = cursor;
+            if (i >= size)
+                throw new NoSuchElementException();
+            Object[] elementData = ArrayList.this.elementData;
+            if (i >= elementData.length)
+                throw new ConcurrentModificationException();
+            cursor = i + 1;
+            return (E) elementData[lastRet = i];
+        }
+
+        public void remove() {
+            if (lastRet < 0)
+                throw new IllegalStateException();
+            checkForComodification();
+            try {
+                ArrayList.this.remove(lastRet);
+                cursor = lastRet;
+                lastRet = -1;
+                expectedModCount = modCount;
+            } catch (IndexOutOfBoundsException ex) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        final void checkForComodification() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    private class ListItr extends Itr implements ListIterator<E> {
+        ListItr(int index) {
+            super();
+            cursor = index;
+        }
+
+        public boolean hasPrevious() {
+            return cursor != 0;
+        }
+
+        public int nextIndex() {
+            return cursor;
+        }
+
+        public int previousIndex() {
+            return cursor - 1;
+        }
+
+        @SuppressWarnings("unchecked")
+        public E previous() {
+            checkForComodification();
+            int i = cursor - 1;
+            if (i < 0)
+                throw new NoSuchElementException();
+            Object[] elementData = ArrayList.this.elementData;
+            if (i >= elementData.length)
+                throw new ConcurrentModificationException();
+            cursor = i;
+            return (E) elementData[lastRet = i];
+        }
+
+        public void set(E e) {
+            if (lastRet < 0)
+                throw new IllegalStateException();
+            checkForComodification();
+            try {
+                ArrayList.this.set(lastRet, e);
+            } catch (IndexOutOfBoundsException ex) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        public void add(E e) {
+            checkForComodification();
+            try {
+                int i = cursor;
+                ArrayList.this.add(i, e);
+                cursor = i + 1;
+                lastRet = -1;
+                expectedModCount = modCount;
+            } catch (IndexOutOfBoundsException ex) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /* ---------------- 分区迭代器 -------------- */
+
+    /**
+     * 返回一个延迟绑定、快速失败的分区迭代器
+     * */
+    public Spliterator<E> getSpliterator() {
+        return new ArrayListSpliterator<>(this, 0, -1, 0);
+    }
+
+    /**
+     * ArrayList的分区迭代器
+     *
+     * 延迟绑定：创建时不读取size和modCount(fence为-1)，第一次使用时才绑定，
+     * 所以从创建到开始遍历之间对列表的修改都能被看到；
+     * 快速失败：遍历结束之后检查modCount，发现结构被修改就抛出ConcurrentModificationException；
+     * trySplit每次对半拆分，拆分出来的分区大小是确定的，所以具有SIZED和SUBSIZED特征值
+     * */
+    static final class ArrayListSpliterator<E> implements Spliterator<E> {
+        private final ArrayList<E> list;
+        private int index;            // 当前下标，advance和split会修改它
+        private int fence;            // 绑定之前为-1，之后为结束下标(不包含)
+        private int expectedModCount; // 绑定时的modCount
+
+        ArrayListSpliterator(ArrayList<E> list, int origin, int fence, int expectedModCount) {
+            this.list = list;
+            this.index = origin;
+            this.fence = fence;
+            this.expectedModCount = expectedModCount;
+        }
+
+        /** 第一次使用时绑定size和modCount */
+        private int getFence() {
+            int hi;
+            ArrayList<E> lst;
+            if ((hi = fence) < 0) {
+                if ((lst = list) == null)
+                    hi = fence = 0;
+                else {
+                    expectedModCount = lst.modCount;
+                    hi = fence = lst.size;
+                }
+            }
+            return hi;
+        }
+
+        public ArrayListSpliterator<E> trySplit() {
+            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
+            return (lo >= mid) ? null :
+                    new ArrayListSpliterator<E>(list, lo, index = mid, expectedModCount);
+        }
+
+        public boolean tryAdvance(Consumer<? super E> action) {
+            if (action == null)
+                throw new NullPointerException();
+            int hi = getFence(), i = index;
+            if (i < hi) {
+                index = i + 1;
+                @SuppressWarnings("unchecked") E e = (E) list.elementData[i];
+                action.accept(e);
+                if (list.modCount != expectedModCount)
+                    throw new ConcurrentModificationException();
+                return true;
+            }
+            return false;
+        }
+
+        public void forEachRemaining(Consumer<? super E> action) {
+            int i, hi, mc;
+            ArrayList<E> lst;
+            Object[] a;
+            if (action == null)
+                throw new NullPointerException();
+            if ((lst = list) != null && (a = lst.elementData) != null) {
+                if ((hi = fence) < 0) {
+                    mc = lst.modCount;
+                    hi = lst.size;
+                }
+                else
+                    mc = expectedModCount;
+                if ((i = index) >= 0 && (index = hi) <= a.length) {
+                    for (; i < hi; ++i) {
+                        @SuppressWarnings("unchecked") E e = (E) a[i];
+                        action.accept(e);
+                    }
+                    if (lst.modCount == mc)
+                        return;
+                }
+            }
+            throw new ConcurrentModificationException();
+        }
+
+        public long estimateSize() {
+            return (long) (getFence() - index);
+        }
+
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED;
+        }
     }
 }
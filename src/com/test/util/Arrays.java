@@ -140,6 +140,12 @@ public class Arrays {
             a[i] = val;
     }
 
+    /** 使用指定的val填充int数组a */
+    public static void fill(int[] a, int val) {
+        for (int i = 0, len = a.length; i < len; i++)
+            a[i] = val;
+    }
+
     /** 使用指定的val填充long数组a */
     public static void fill(long[] a, long val) {
         for (int i = 0, len = a.length; i < len; i++)
@@ -107,6 +107,6 @@ public interface Collection<E> extends Iterable<E> {
     }
 
     default Stream<E> parallelStream() {
-        return null;
+        return StreamSupport.stream(getSpliterator(),true);
     }
 }
\ No newline at end of file
@@ -0,0 +1,538 @@
+package com.test.util;
+
+import com.test.util.function.BiConsumer;
+import com.test.util.function.BiFunction;
+
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * CPython的dict风格的紧凑哈希表，按照插入的顺序遍历，key和value可以是null
+ *
+ * 哈希表本身只是一个稀疏的int数组index，保存的是键值对在稠密数组中的位置 + 1，0表示空槽，
+ * 键值对按照插入的顺序追加到稠密数组的末尾：hashes[p]是哈希值，entries[2p]是key，entries[2p + 1]是value
+ *
+ * index使用线性探测，负载因子是3/4，稠密数组的容量等于index能存放的最大元素个数，
+ * 比较key之前先比较hashes中的哈希值，扩容和压缩的时候也直接使用保存的哈希值，不会再调用hashCode
+ *
+ * 删除的时候稠密数组中的key改为REMOVED，留下一个空洞，index中的槽位使用向后移动的方式删除，
+ * 所以index中不存在删除标记，探测的长度只取决于元素的个数；
+ * 稠密数组用完的时候，如果一半以上是空洞，按照原来的容量压缩，否则容量翻倍
+ *
+ * 遍历的时候顺序访问稠密数组，不需要访问index，也不需要沿着next指针跳转，
+ * 每个键值对只占用一个int的哈希值、两个引用和index中的1到2个int，
+ * HashMap的每个键值对需要一个32字节的Node，LinkedHashMap还要多两个引用
+ *
+ * 重新放入已经存在的key不会改变顺序，删除之后再放入会移动到最后，和插入顺序的LinkedHashMap相同
+ */
+public class CompactHashMap<K,V> extends AbstractMap<K,V> implements Cloneable {
+    /** 默认的初始容量 */
+    static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /** index的负载因子 */
+    static final float LOAD_FACTOR = 0.75f;
+
+    /** index的最小长度 */
+    static final int MIN_INDEX_LENGTH = 8;
+
+    /** 被删除的键值对的key */
+    static final Object REMOVED = new Object();
+
+    /** 稀疏的索引，元素是键值对在稠密数组中的位置 + 1，0表示空槽，长度是2的幂 */
+    transient int[] index;
+
+    /** 每个键值对的哈希值，按照插入的顺序存放 */
+    transient int[] hashes;
+
+    /** 键值对交替存放，位置p的key在entries[2p]，value在entries[2p + 1]，被删除的key是REMOVED */
+    transient Object[] entries;
+
+    /** 稠密数组中已经使用的位置个数，包括空洞 */
+    transient int used;
+
+    /** 元素个数 */
+    transient int size;
+
+    /** 结构修改的次数，用于快速失败 */
+    transient int modCount;
+
+    /**
+     * 根据期望的元素个数构造，保证插入expected个元素的过程中不会扩容
+     */
+    public CompactHashMap(int expected) {
+        if (expected < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " + expected);
+        int n = Math.max(MIN_INDEX_LENGTH, HashCommon.arraySize(expected, LOAD_FACTOR));
+        index = new int[n];
+        hashes = new int[maxLoad(n)];
+        entries = new Object[maxLoad(n) << 1];
+    }
+
+    public CompactHashMap() {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    public CompactHashMap(Map<? extends K, ? extends V> m) {
+        this(Math.max(m.size(), DEFAULT_INITIAL_CAPACITY));
+        putAll(m);
+    }
+
+    /** index的长度为n时最多能存放的元素个数，也就是稠密数组的容量 */
+    static int maxLoad(int n) {
+        return n - (n >>> 2);
+    }
+
+    /** 扰动key的哈希值 */
+    static int hash(Object key) {
+        return key == null ? 0 : HashCommon.mix(key.hashCode());
+    }
+
+    /** 位置p上的key */
+    @SuppressWarnings("unchecked")
+    final K keyAt(int p) {
+        return (K) entries[p << 1];
+    }
+
+    /** 位置p上的value */
+    @SuppressWarnings("unchecked")
+    final V valueAt(int p) {
+        return (V) entries[(p << 1) + 1];
+    }
+
+    /**
+     * 查找key在index中的槽位，不存在时返回-1
+     */
+    final int find(Object key) {
+        return find(key, hash(key));
+    }
+
+    final int find(Object key, int h) {
+        int[] index = this.index;
+        int[] hashes = this.hashes;
+        Object[] entries = this.entries;
+        int mask = index.length - 1;
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            int p = index[i] - 1;
+            if (p < 0)
+                return -1;
+            Object k;
+            if (hashes[p] == h &&
+                    ((k = entries[p << 1]) == key || (key != null && key.equals(k))))
+                return i;
+        }
+    }
+
+    /** 位置p在index中的槽位，只比较保存的位置，不需要调用equals */
+    private int slotOf(int p) {
+        int[] index = this.index;
+        int mask = index.length - 1;
+        int i = hashes[p] & mask;
+        while (index[i] != p + 1)
+            i = (i + 1) & mask;
+        return i;
+    }
+
+    /** 把位置p放进index中哈希值h对应的第一个空槽 */
+    private static void link(int[] index, int h, int p) {
+        int mask = index.length - 1;
+        int i = h & mask;
+        while (index[i] != 0)
+            i = (i + 1) & mask;
+        index[i] = p + 1;
+    }
+
+    /** 追加一个不存在的key */
+    private void insert(int h, K key, V value) {
+        if (used == hashes.length)
+            grow();
+        int p = used++;
+        hashes[p] = h;
+        entries[p << 1] = key;
+        entries[(p << 1) + 1] = value;
+        link(index, h, p);
+        ++size;
+        ++modCount;
+    }
+
+    /**
+     * 稠密数组用完的时候调用
+     * 如果一半以上的位置是空洞，按照原来的容量压缩，否则容量翻倍
+     */
+    private void grow() {
+        int n = index.length;
+        if (size > used >>> 1) {
+            if (n >= HashCommon.MAXIMUM_CAPACITY)
+                throw new IllegalStateException("CompactHashMap is full");
+            n <<= 1;
+        }
+        rebuild(n);
+    }
+
+    /**
+     * 把所有元素按照原来的顺序移动到长度为n的index对应的新稠密数组中，去掉空洞，
+     * 然后使用保存的哈希值重新建立index
+     */
+    final void rebuild(int n) {
+        int[] oldHashes = hashes;
+        Object[] oldEntries = entries;
+        int cap = maxLoad(n);
+        int[] newHashes = (cap == oldHashes.length) ? oldHashes : new int[cap];
+        Object[] newEntries = (cap == oldHashes.length) ? oldEntries : new Object[cap << 1];
+        int[] newIndex = (n == index.length) ? index : new int[n];
+        if (newIndex == index)
+            Arrays.fill(newIndex, 0);
+        int q = 0;
+        for (int p = 0, end = used; p < end; p++) {
+            Object k = oldEntries[p << 1];
+            if (k == REMOVED)
+                continue;
+            int h = oldHashes[p];
+            newHashes[q] = h;
+            newEntries[q << 1] = k;
+            newEntries[(q << 1) + 1] = oldEntries[(p << 1) + 1];
+            link(newIndex, h, q);
+            q++;
+        }
+        // 原地压缩的时候清除后面剩下的引用
+        if (newEntries == oldEntries)
+            java.util.Arrays.fill(newEntries, q << 1, used << 1, null);
+        index = newIndex;
+        hashes = newHashes;
+        entries = newEntries;
+        used = q;
+    }
+
+    /**
+     * 删除index中槽位i指向的元素
+     * 稠密数组中留下一个空洞；index中的槽位使用向后移动的方式删除：
+     * 后面同一个探测序列中的元素如果可以放在空出来的槽位，就移动过来，直到遇到空槽
+     */
+    final V removeSlot(int i) {
+        int[] index = this.index;
+        int p = index[i] - 1;
+        V oldValue = valueAt(p);
+        int mask = index.length - 1;
+        for (int j = i; ; ) {
+            j = (j + 1) & mask;
+            int q = index[j];
+            if (q == 0)
+                break;
+            int k = hashes[q - 1] & mask;
+            // 槽位j中元素的起始槽位k在(i, j]之间时不能移动
+            if (i <= j ? (i < k && k <= j) : (i < k || k <= j))
+                continue;
+            index[i] = q;
+            i = j;
+        }
+        index[i] = 0;
+        entries[p << 1] = REMOVED;
+        entries[(p << 1) + 1] = null;
+        // 删除的是最后插入的元素时直接回收末尾的位置
+        if (p == used - 1) {
+            do {
+                entries[(--used) << 1] = null;
+            } while (used > 0 && entries[(used - 1) << 1] == REMOVED);
+        }
+        --size;
+        ++modCount;
+        return oldValue;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(Object key) {
+        return find(key) >= 0;
+    }
+
+    public V get(Object key) {
+        int i = find(key);
+        return i < 0 ? null : valueAt(index[i] - 1);
+    }
+
+    public V getOrDefault(Object key, V defaultValue) {
+        int i = find(key);
+        return i < 0 ? defaultValue : valueAt(index[i] - 1);
+    }
+
+    /**
+     * 放入键值对，返回旧的value，不存在时返回null
+     * 已经存在的key只替换value，不改变顺序
+     */
+    public V put(K key, V value) {
+        int h = hash(key);
+        int i = find(key, h);
+        if (i >= 0) {
+            int p = index[i] - 1;
+            V oldValue = valueAt(p);
+            entries[(p << 1) + 1] = value;
+            return oldValue;
+        }
+        insert(h, key, value);
+        return null;
+    }
+
+    public V putIfAbsent(K key, V value) {
+        int h = hash(key);
+        int i = find(key, h);
+        if (i >= 0) {
+            int p = index[i] - 1;
+            V oldValue = valueAt(p);
+            if (oldValue == null)
+                entries[(p << 1) + 1] = value;
+            return oldValue;
+        }
+        insert(h, key, value);
+        return null;
+    }
+
+    public V remove(Object key) {
+        int i = find(key);
+        return i < 0 ? null : removeSlot(i);
+    }
+
+    public void putAll(Map<? extends K, ? extends V> m) {
+        // 按照合并后的大小预先扩容，避免多次rebuild
+        int s = size + m.size();
+        if (s > hashes.length)
+            rebuild(Math.max(index.length, HashCommon.arraySize(s, LOAD_FACTOR)));
+        super.putAll(m);
+    }
+
+    public void clear() {
+        if (used == 0)
+            return;
+        Arrays.fill(index, 0);
+        java.util.Arrays.fill(entries, 0, used << 1, null);
+        used = 0;
+        size = 0;
+        ++modCount;
+    }
+
+    public boolean containsValue(Object value) {
+        Object[] entries = this.entries;
+        for (int p = 0, end = used; p < end; p++) {
+            if (entries[p << 1] != REMOVED && Objects.equals(entries[(p << 1) + 1], value))
+                return true;
+        }
+        return false;
+    }
+
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        Objects.requireNonNull(action);
+        Object[] entries = this.entries;
+        int mc = modCount;
+        for (int p = 0, end = used; p < end && mc == modCount; p++) {
+            Object k = entries[p << 1];
+            if (k != REMOVED)
+                action.accept(keyAt(p), valueAt(p));
+        }
+        if (mc != modCount)
+            throw new ConcurrentModificationException();
+    }
+
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        Objects.requireNonNull(function);
+        Object[] entries = this.entries;
+        int mc = modCount;
+        for (int p = 0, end = used; p < end && mc == modCount; p++) {
+            if (entries[p << 1] != REMOVED)
+                entries[(p << 1) + 1] = function.apply(keyAt(p), valueAt(p));
+        }
+        if (mc != modCount)
+            throw new ConcurrentModificationException();
+    }
+
+    /**
+     * 返回一个浅拷贝，key和value本身不会被复制
+     */
+    @SuppressWarnings("unchecked")
+    public CompactHashMap<K,V> clone() {
+        CompactHashMap<K,V> result;
+        try {
+            result = (CompactHashMap<K,V>) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError(e);
+        }
+        result.index = index.clone();
+        result.hashes = hashes.clone();
+        result.entries = entries.clone();
+        result.keySet = null;
+        result.values = null;
+        result.entrySet = null;
+        result.modCount = 0;
+        return result;
+    }
+
+    public int hashCode() {
+        int h = 0;
+        Object[] entries = this.entries;
+        for (int p = 0, end = used; p < end; p++) {
+            if (entries[p << 1] != REMOVED)
+                h += Objects.hashCode(keyAt(p)) ^ Objects.hashCode(valueAt(p));
+        }
+        return h;
+    }
+
+    transient Set<Map.Entry<K,V>> entrySet;
+
+    public Set<K> keySet() {
+        Set<K> ks;
+        return (ks = keySet) == null ? (keySet = new KeySet()) : ks;
+    }
+
+    public Collection<V> values() {
+        Collection<V> vs;
+        return (vs = values) == null ? (values = new Values()) : vs;
+    }
+
+    /**
+     * 返回键值对的视图，视图中的Entry直接引用稠密数组中的位置
+     */
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class KeySet extends AbstractSet<K> {
+        public final int size()                 { return size; }
+        public final void clear()               { CompactHashMap.this.clear(); }
+        public final Iterator<K> iterator()     { return new KeyIterator(); }
+        public final boolean contains(Object o) { return containsKey(o); }
+        public final boolean remove(Object key) {
+            int i = find(key);
+            if (i < 0)
+                return false;
+            removeSlot(i);
+            return true;
+        }
+    }
+
+    final class Values extends AbstractCollection<V> {
+        public final int size()                 { return size; }
+        public final void clear()               { CompactHashMap.this.clear(); }
+        public final Iterator<V> iterator()     { return new ValueIterator(); }
+        public final boolean contains(Object o) { return containsValue(o); }
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public final int size()                 { return size; }
+        public final void clear()               { CompactHashMap.this.clear(); }
+        public final Iterator<Map.Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            int i = find(e.getKey());
+            return i >= 0 && Objects.equals(valueAt(index[i] - 1), e.getValue());
+        }
+        public final boolean remove(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            int i = find(e.getKey());
+            if (i < 0 || !Objects.equals(valueAt(index[i] - 1), e.getValue()))
+                return false;
+            removeSlot(i);
+            return true;
+        }
+    }
+
+    /**
+     * 指向稠密数组中某个位置的Entry
+     */
+    final class MapEntry implements Map.Entry<K,V> {
+        final int pos;
+
+        MapEntry(int pos) {
+            this.pos = pos;
+        }
+
+        public K getKey()         { return keyAt(pos); }
+        public V getValue()       { return valueAt(pos); }
+        public String toString()  { return getKey() + "=" + getValue(); }
+        public int hashCode()     { return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue()); }
+
+        public V setValue(V v) {
+            V oldValue = valueAt(pos);
+            entries[(pos << 1) + 1] = v;
+            return oldValue;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            return Objects.equals(getKey(), e.getKey()) &&
+                    Objects.equals(getValue(), e.getValue());
+        }
+    }
+
+    /**
+     * 按照插入的顺序遍历稠密数组，跳过空洞
+     * 删除只会留下空洞，不会移动其他元素，所以迭代器删除之后可以继续遍历
+     */
+    abstract class HashIterator {
+        int next;                    // 下一个元素的位置，大于等于used表示结束
+        int last = -1;               // 上一次返回的位置，-1表示不能删除
+        int expectedModCount = modCount;
+
+        HashIterator() {
+            next = nextLive(0);
+        }
+
+        /** 从位置from开始找到第一个没有被删除的位置 */
+        private int nextLive(int from) {
+            Object[] entries = CompactHashMap.this.entries;
+            int end = used;
+            while (from < end && entries[from << 1] == REMOVED)
+                from++;
+            return from;
+        }
+
+        public final boolean hasNext() {
+            return next < used;
+        }
+
+        final int nextIndex() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (next >= used)
+                throw new NoSuchElementException();
+            last = next;
+            next = nextLive(next + 1);
+            return last;
+        }
+
+        public final void remove() {
+            if (last == -1)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            removeSlot(slotOf(last));
+            expectedModCount = modCount;
+            last = -1;
+        }
+    }
+
+    final class KeyIterator extends HashIterator implements Iterator<K> {
+        public final K next() { return keyAt(nextIndex()); }
+    }
+
+    final class ValueIterator extends HashIterator implements Iterator<V> {
+        public final V next() { return valueAt(nextIndex()); }
+    }
+
+    final class EntryIterator extends HashIterator implements Iterator<Map.Entry<K,V>> {
+        public final Map.Entry<K,V> next() { return new MapEntry(nextIndex()); }
+    }
+}
@@ -0,0 +1,23 @@
+package com.test.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * direct ByteBuffer和MappedByteBuffer共用的工具方法
+ */
+final class DirectBuffers {
+    private DirectBuffers() {
+    }
+
+    /**
+     * 通过Cleaner立即释放堆外内存或者解除文件映射，不等待ByteBuffer被回收，
+     * 之后这些ByteBuffer以及它们的视图都不能再访问
+     * */
+    static void free(ByteBuffer[] buffers) {
+        for (ByteBuffer b : buffers) {
+            sun.misc.Cleaner c = ((sun.nio.ch.DirectBuffer) b).cleaner();
+            if (c != null)
+                c.clean();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.test.util;
+
+import com.test.util.function.DoubleConsumer;
+
+/**
+ * 收集double值的计数、最小值、最大值、和以及平均值的状态对象
+ *
+ * 求和使用Kahan补偿求和，减少大量浮点数相加时的舍入误差
+ * 这个类不是线程安全的
+ * */
+public class DoubleSummaryStatistics implements DoubleConsumer {
+    private long count;
+    //补偿之后的高位部分
+    private double sum;
+    //低位的补偿部分
+    private double sumCompensation;
+    //没有补偿的简单求和，用来在和是无穷大的时候得到正确的结果
+    private double simpleSum;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /** 创建一个空的实例，最小值为正无穷，最大值为负无穷 */
+    public DoubleSummaryStatistics(){}
+
+    /** 记录一个新的值 */
+    @Override
+    public void accept(double value){
+        ++count;
+        simpleSum += value;
+        sumWithCompensation(value);
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /** 把另一个实例的状态合并到当前实例当中 */
+    public void combine(DoubleSummaryStatistics other){
+        count += other.count;
+        simpleSum += other.simpleSum;
+        sumWithCompensation(other.sum);
+        //补偿部分记录的是多加的误差，所以合并的时候要减去
+        sumWithCompensation(-other.sumCompensation);
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /** Kahan求和的一步 */
+    private void sumWithCompensation(double value){
+        double tmp = value - sumCompensation;
+        double velvel = sum + tmp;
+        sumCompensation = (velvel - sum) - tmp;
+        sum = velvel;
+    }
+
+    public final long getCount(){return count;}
+
+    /** 补偿之后的和是NaN而简单求和是无穷大的时候，说明有同号的无穷大相加，返回简单求和的结果 */
+    public final double getSum(){
+        double tmp = sum - sumCompensation;
+        if(Double.isNaN(tmp) && Double.isInfinite(simpleSum))
+            return simpleSum;
+        else
+            return tmp;
+    }
+
+    public final double getMin(){return min;}
+
+    public final double getMax(){return max;}
+
+    /** 没有记录任何值的时候返回0 */
+    public final double getAverage(){
+        return getCount() > 0 ? getSum() / getCount() : 0.0d;
+    }
+
+    @Override
+    public String toString(){
+        return String.format("%s{count=%d, sum=%f, min=%f, average=%f, max=%f}",
+                this.getClass().getSimpleName(), getCount(), getSum(), getMin(), getAverage(), getMax());
+    }
+}
@@ -0,0 +1,103 @@
+package com.test.util;
+
+/**
+ * TinyLFU使用的Count-Min Sketch，估计每个key在最近一段时间内的访问次数
+ *
+ * 每个计数器是4位，最大是15，一个long中存放16个计数器，table的长度是2的幂，
+ * 每8个long组成一个64字节的块，正好是一个缓存行，
+ * 一个key的4个计数器都在同一个块中：第i个计数器在块中的第2i或者2i + 1个long里，
+ * 块由哈希值选出，块内的位置由再次扰动的哈希值的第i个字节选出，
+ * 所以一次increment或者frequency只访问一个缓存行，估计的频率是4个计数器中的最小值
+ *
+ * 老化：计数器增加的次数达到sampleSize(容量的10倍)之后，所有计数器减半，
+ * 这样过去的热点会逐渐冷却，新的热点可以取代它们
+ *
+ * 这个类不是线程安全的，由TinyLfuCache的每个段在持有锁的时候使用
+ */
+final class FrequencySketch {
+    /** 每个计数器减半之后的掩码，去掉从相邻计数器移进来的最高位 */
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    /** 每个计数器的最低位 */
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    /** 计数器的最大值 */
+    private static final int MAX_COUNT = 15;
+
+    private final long[] table;
+    private final int blockMask;
+    private final int sampleSize;
+
+    /** 从上一次老化开始增加过的次数 */
+    private int size;
+
+    /** 根据缓存的最大容量创建，计数器的个数大约是容量的16倍 */
+    FrequencySketch(int maximumSize) {
+        int n = (int) Math.min(HashCommon.nextPowerOfTwo(Math.max(maximumSize, 8)), 1 << 30);
+        table = new long[n];
+        blockMask = (n >>> 3) - 1;
+        sampleSize = (int) Math.min(10L * maximumSize, Integer.MAX_VALUE);
+    }
+
+    /** 哈希值为h的key估计的访问次数，最大是15 */
+    int frequency(int h) {
+        int blockHash = HashCommon.mix(h);
+        int counterHash = rehash(blockHash);
+        int block = (blockHash & blockMask) << 3;
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < 4; i++) {
+            int x = counterHash >>> (i << 3);
+            int offset = ((x >>> 1) & 15) << 2;
+            long count = (table[block + (x & 1) + (i << 1)] >>> offset) & 0xfL;
+            frequency = Math.min(frequency, (int) count);
+        }
+        return frequency;
+    }
+
+    /** 记录一次访问，计数器已经是最大值的时候不再增加 */
+    void increment(int h) {
+        int blockHash = HashCommon.mix(h);
+        int counterHash = rehash(blockHash);
+        int block = (blockHash & blockMask) << 3;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            int x = counterHash >>> (i << 3);
+            int offset = ((x >>> 1) & 15) << 2;
+            int slot = block + (x & 1) + (i << 1);
+            long mask = 0xfL << offset;
+            if ((table[slot] & mask) != mask) {
+                table[slot] += 1L << offset;
+                added = true;
+            }
+        }
+        if (added && ++size >= sampleSize)
+            reset();
+    }
+
+    /** 选出块之后再扰动一次，块内的位置和块的下标使用不同的位 */
+    private static int rehash(int x) {
+        x *= 0x31848bab;
+        x ^= x >>> 14;
+        return x;
+    }
+
+    /**
+     * 所有计数器减半
+     * 奇数的计数器减半时丢掉了0.5，每个key占用4个计数器，所以size按照丢掉的总数的1/4修正
+     */
+    private void reset() {
+        int odd = 0;
+        long[] table = this.table;
+        for (int i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size - (odd >>> 2)) >>> 1;
+    }
+
+    /** 清除所有计数 */
+    void clear() {
+        Arrays.fill(table, 0L);
+        size = 0;
+    }
+}
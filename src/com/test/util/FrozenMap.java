@@ -0,0 +1,407 @@
+package com.test.util;
+
+import com.test.util.function.BiConsumer;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * 只读的Map，使用最小完美哈希(CHD, hash-and-displace)定位键值对，key和value可以是null
+ *
+ * 构建的时候把m个哈希值不同的key分到大约m/4个桶中，按照桶的大小从大到小，
+ * 为每个桶寻找一个种子seed，使桶中所有key的slot(hash, seed)都落在还没有被占用的槽位上，
+ * 只有一个key的桶直接记录剩下的空槽位，存为~slot，这样m个key正好占满m个槽位，没有空槽
+ *
+ * 查找的时候只需要读取桶的种子，计算出唯一可能的槽位，然后比较一次key，
+ * 不需要遍历链表或者探测序列，每个键值对只占用table中的两个引用、一个字节的指纹，加上每4个key一个int的种子，
+ * 不存在的key先和槽位的指纹比较，绝大多数不需要读取槽位中的key对象
+ *
+ * hashCode相同但是不相等的key无法用种子区分，这些key放在table的末尾，位置记录在一个HashMap中，
+ * 在完美哈希的槽位不命中的时候查找，正常的key几乎不会出现这种情况
+ *
+ * 所有修改的方法都会抛出UnsupportedOperationException，通过copyOf或者HashMap.freeze创建
+ */
+public final class FrozenMap<K,V> extends AbstractMap<K,V> implements java.io.Serializable {
+    private static final long serialVersionUID = -3291774064356837203L;
+
+    /** 每个桶平均的key数量，构建失败的时候逐渐减小 */
+    static final int BUCKET_SIZE = 4;
+
+    /** 每个桶最多尝试的种子数 */
+    static final int MAX_SEED = 1 << 20;
+
+    /** 空的FrozenMap */
+    private static final FrozenMap<?,?> EMPTY = new FrozenMap<>(null, 0, new int[1], new byte[0], new Object[0], null);
+
+    /** 键值对交替存放，槽位i的key在table[2i]，value在table[2i + 1] */
+    final Object[] table;
+
+    /** 完美哈希的槽位数，也就是哈希值不同的key的数量 */
+    final int slots;
+
+    /** 每个桶的种子，负数~slot表示这个桶只有一个key，并且直接放在slot */
+    final int[] seeds;
+
+    /** 每个槽位中key的哈希值的指纹 */
+    final byte[] tags;
+
+    /**
+     * 排在slots之后的key到table中槽位的映射，没有的时候为null，
+     * 这些key的哈希值都和某个槽位中的key相同，HashMap的树bin在key可以比较的时候仍然是O(log n)
+     * */
+    final HashMap<Object,Integer> extraIndex;
+
+    /** 和HashMap相同的哈希策略，为null的时候使用key自身的hashCode和equals */
+    final HashingStrategy<? super K> strategy;
+
+    private FrozenMap(HashingStrategy<? super K> strategy, int slots, int[] seeds, byte[] tags,
+                      Object[] table, HashMap<Object,Integer> extraIndex) {
+        this.strategy = strategy;
+        this.slots = slots;
+        this.seeds = seeds;
+        this.tags = tags;
+        this.table = table;
+        this.extraIndex = extraIndex;
+    }
+
+    /** 返回一个包含m中所有键值对的FrozenMap */
+    public static <K,V> FrozenMap<K,V> copyOf(Map<? extends K, ? extends V> m) {
+        return build(m, null);
+    }
+
+    /** 和copyOf(m)相同，但是使用strategy计算哈希值和判断相等 */
+    @SuppressWarnings("unchecked")
+    static <K,V> FrozenMap<K,V> build(Map<? extends K, ? extends V> m, HashingStrategy<? super K> strategy) {
+        int n = m.size();
+        if (n == 0 && strategy == null)
+            return (FrozenMap<K,V>) EMPTY;
+        Object[] keys = new Object[n], vals = new Object[n];
+        int i = 0;
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+            if (i == n)
+                throw new java.util.ConcurrentModificationException();
+            keys[i] = e.getKey();
+            vals[i++] = e.getValue();
+        }
+        if (i != n)
+            throw new java.util.ConcurrentModificationException();
+        return build(keys, vals, strategy);
+    }
+
+    /**
+     * 按照哈希值排序之后，相同哈希值的一段中第一个key参与完美哈希，
+     * 和前面的key相等的只更新value，不相等的放到table末尾，
+     * 相同哈希值的key通过一个临时的HashMap去重，不需要两两比较
+     * */
+    @SuppressWarnings("unchecked")
+    private static <K,V> FrozenMap<K,V> build(Object[] keys, Object[] vals, HashingStrategy<? super K> strategy) {
+        int n = keys.length;
+        // 高32位是哈希值，低32位是下标，排序之后相同哈希值的key按原来的顺序相邻
+        long[] order = new long[n];
+        for (int i = 0; i < n; i++)
+            order[i] = ((long) hash(strategy, keys[i]) << 32) | i;
+        java.util.Arrays.sort(order);
+
+        int[] primary = new int[n], extra = new int[n];
+        int slots = 0, extras = 0;
+        // 哈希值相同的一段中已经出现的key到下标的映射，第一次遇到这样的一段时才创建
+        HashMap<Object,Integer> seen = null;
+        for (int lo = 0, hi; lo < n; lo = hi) {
+            int h = (int) (order[lo] >>> 32);
+            for (hi = lo + 1; hi < n && (int) (order[hi] >>> 32) == h; hi++)
+                ;
+            primary[slots++] = (int) order[lo];
+            if (hi - lo == 1)
+                continue;
+            if (seen == null)
+                seen = newIndex(strategy);
+            for (int j = lo; j < hi; j++) {
+                int idx = (int) order[j];
+                Integer kept = seen.putIfAbsent(keys[idx], idx);
+                // 在同一个Map中出现两个相等的key只可能是Map自身的相等和equals不一致，例如IdentityHashMap，
+                // 这时用后出现的value覆盖，保持和逐个put相同的结果
+                if (kept != null)
+                    vals[kept] = vals[idx];
+                else if (j > lo)
+                    extra[extras++] = idx;
+            }
+        }
+
+        int[] hashes = new int[slots];
+        for (int i = 0; i < slots; i++)
+            hashes[i] = hash(strategy, keys[primary[i]]);
+        int[] place = new int[slots];
+        int[] seeds = null;
+        for (int bucketSize = BUCKET_SIZE; seeds == null; bucketSize--) {
+            if (bucketSize == 0)
+                throw new IllegalStateException("Cannot build a perfect hash for " + slots + " keys");
+            seeds = displace(hashes, (slots + bucketSize - 1) / bucketSize, place);
+        }
+
+        int size = slots + extras;
+        Object[] table = new Object[size << 1];
+        byte[] tags = new byte[slots];
+        for (int i = 0; i < slots; i++) {
+            int p = place[i] << 1, idx = primary[i];
+            tags[place[i]] = tag(hashes[i]);
+            table[p] = keys[idx];
+            table[p + 1] = vals[idx];
+        }
+        HashMap<Object,Integer> extraIndex = null;
+        if (extras > 0) {
+            extraIndex = newIndex(strategy);
+            for (int x = 0; x < extras; x++) {
+                int idx = extra[x], p = (slots + x) << 1;
+                extraIndex.put(keys[idx], slots + x);
+                table[p] = keys[idx];
+                table[p + 1] = vals[idx];
+            }
+        }
+        return new FrozenMap<>(strategy, slots, seeds, tags, table, extraIndex);
+    }
+
+    /** 构建时使用的key到下标的HashMap，和FrozenMap使用相同的哈希策略 */
+    @SuppressWarnings("unchecked")
+    private static HashMap<Object,Integer> newIndex(HashingStrategy<?> strategy) {
+        return strategy == null ? new HashMap<>() :
+                new HashMap<>((HashingStrategy<Object>) strategy);
+    }
+
+    /**
+     * CHD的核心，为每个桶寻找种子，place[i]是第i个哈希值最终的槽位
+     * @return 种子数组，某个桶超过MAX_SEED还没有找到种子的时候返回null
+     * */
+    private static int[] displace(int[] hashes, int buckets, int[] place) {
+        int m = hashes.length;
+        buckets = Math.max(buckets, 1);
+        // 按桶计数排序，bucketStart[b]到bucketStart[b + 1]是桶b中的哈希值下标
+        int[] bucketStart = new int[buckets + 1];
+        for (int h : hashes)
+            bucketStart[bucket(h, buckets) + 1]++;
+        int maxSize = 0;
+        for (int b = 0; b < buckets; b++) {
+            maxSize = Math.max(maxSize, bucketStart[b + 1]);
+            bucketStart[b + 1] += bucketStart[b];
+        }
+        int[] members = new int[m], fill = bucketStart.clone();
+        for (int i = 0; i < m; i++)
+            members[fill[bucket(hashes[i], buckets)]++] = i;
+        // 再按桶的大小从大到小排列桶
+        int[] sizeStart = new int[maxSize + 2];
+        for (int b = 0; b < buckets; b++)
+            sizeStart[maxSize - (bucketStart[b + 1] - bucketStart[b]) + 1]++;
+        for (int s = 0; s <= maxSize; s++)
+            sizeStart[s + 1] += sizeStart[s];
+        int[] bySize = new int[buckets];
+        for (int b = 0; b < buckets; b++)
+            bySize[sizeStart[maxSize - (bucketStart[b + 1] - bucketStart[b])]++] = b;
+
+        int[] seeds = new int[buckets];
+        boolean[] taken = new boolean[m];
+        int[] candidate = new int[maxSize];
+        int nextFree = 0;
+        for (int b : bySize) {
+            int from = bucketStart[b], to = bucketStart[b + 1], size = to - from;
+            if (size == 0)
+                break;
+            if (size == 1) {
+                // 只有一个key的桶不需要尝试种子，直接使用下一个空槽位
+                while (taken[nextFree])
+                    nextFree++;
+                taken[nextFree] = true;
+                place[members[from]] = nextFree;
+                seeds[b] = ~nextFree;
+                continue;
+            }
+            int seed = 0;
+            search:
+            for (;; seed++) {
+                if (seed == MAX_SEED)
+                    return null;
+                for (int j = 0; j < size; j++) {
+                    int s = slot(hashes[members[from + j]], seed, m);
+                    if (taken[s])
+                        continue search;
+                    for (int x = 0; x < j; x++) {
+                        if (candidate[x] == s)
+                            continue search;
+                    }
+                    candidate[j] = s;
+                }
+                break;
+            }
+            for (int j = 0; j < size; j++) {
+                taken[candidate[j]] = true;
+                place[members[from + j]] = candidate[j];
+            }
+            seeds[b] = seed;
+        }
+        return seeds;
+    }
+
+    /** 哈希值所在的桶，使用乘法代替取模 */
+    static int bucket(int h, int buckets) {
+        return (int) (((HashCommon.mix(h) & 0xFFFFFFFFL) * buckets) >>> 32);
+    }
+
+    /** 哈希值在种子seed下的槽位 */
+    static int slot(int h, int seed, int slots) {
+        int x = HashCommon.mix(((long) seed << 32) | (h & 0xFFFFFFFFL));
+        return (int) (((x & 0xFFFFFFFFL) * slots) >>> 32);
+    }
+
+    /** 哈希值的指纹，bucket使用的是mix(h)的高位，这里取低8位 */
+    static byte tag(int h) {
+        return (byte) HashCommon.mix(h);
+    }
+
+    @SuppressWarnings("unchecked")
+    static int hash(HashingStrategy<?> strategy, Object key) {
+        return key == null ? 0 :
+                strategy == null ? key.hashCode() : ((HashingStrategy<Object>) strategy).hash(key);
+    }
+
+    /** 返回key所在的槽位，不存在的时候返回-1 */
+    final int indexOf(Object key) {
+        Object[] tab = table;
+        if (slots == 0)
+            return -1;
+        int h = hash(strategy, key), s = seeds[bucket(h, seeds.length)];
+        int i = s < 0 ? ~s : slot(h, s, slots);
+        Object k;
+        if (tags[i] == tag(h) &&
+                ((k = tab[i << 1]) == key || (key != null && HashMap.keyEquals(strategy, key, k))))
+            return i;
+        HashMap<Object,Integer> xi; Integer x;
+        return (xi = extraIndex) == null || (x = xi.get(key)) == null ? -1 : x;
+    }
+
+    public int size() {
+        return table.length >> 1;
+    }
+
+    public boolean isEmpty() {
+        return table.length == 0;
+    }
+
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int i = indexOf(key);
+        return i < 0 ? null : (V) table[(i << 1) + 1];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V getOrDefault(Object key, V defaultValue) {
+        int i = indexOf(key);
+        return i < 0 ? defaultValue : (V) table[(i << 1) + 1];
+    }
+
+    public boolean containsValue(Object value) {
+        Object[] tab = table;
+        for (int i = 1; i < tab.length; i += 2) {
+            if (Objects.equals(value, tab[i]))
+                return true;
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        Objects.requireNonNull(action);
+        Object[] tab = table;
+        for (int i = 0; i < tab.length; i += 2)
+            action.accept((K) tab[i], (V) tab[i + 1]);
+    }
+
+    public V put(K key, V value) {
+        throw new UnsupportedOperationException();
+    }
+
+    public V remove(Object key) {
+        throw new UnsupportedOperationException();
+    }
+
+    public void putAll(Map<? extends K, ? extends V> m) {
+        throw new UnsupportedOperationException();
+    }
+
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    transient Set<Map.Entry<K,V>> entrySet;
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public final int size()                 { return FrozenMap.this.size(); }
+        public final Iterator<Map.Entry<K,V>> iterator() { return new EntryIterator(); }
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            int i = indexOf(e.getKey());
+            return i >= 0 && Objects.equals(table[(i << 1) + 1], e.getValue());
+        }
+    }
+
+    final class EntryIterator implements Iterator<Map.Entry<K,V>> {
+        int next;
+
+        public boolean hasNext() {
+            return next < table.length;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K,V> next() {
+            int i = next;
+            if (i >= table.length)
+                throw new NoSuchElementException();
+            next = i + 2;
+            return new SimpleImmutableEntry<>((K) table[i], (V) table[i + 1]);
+        }
+    }
+
+    /** 哈希值依赖于运行时的hashCode，所以只序列化键值对，反序列化的时候重新构建 */
+    private static class SerializationProxy implements java.io.Serializable {
+        private static final long serialVersionUID = 6015208306524213479L;
+
+        private final Object[] table;
+
+        private final HashingStrategy<?> strategy;
+
+        SerializationProxy(FrozenMap<?,?> map) {
+            table = map.table;
+            strategy = map.strategy;
+        }
+
+        @SuppressWarnings({"rawtypes","unchecked"})
+        private Object readResolve() {
+            int n = table.length >> 1;
+            Object[] keys = new Object[n], vals = new Object[n];
+            for (int i = 0; i < n; i++) {
+                keys[i] = table[i << 1];
+                vals[i] = table[(i << 1) + 1];
+            }
+            return build(keys, vals, (HashingStrategy) strategy);
+        }
+    }
+
+    Object writeReplace() {
+        return new SerializationProxy(this);
+    }
+
+    //序列化代理模式的readObject方法,防止反序列化的时候进行写入操作
+    private void readObject(java.io.ObjectInputStream stream)
+            throws java.io.InvalidObjectException {
+        throw new java.io.InvalidObjectException("Proxy required");
+    }
+}
@@ -0,0 +1,64 @@
+package com.test.util;
+
+/**
+ * 开放定址哈希表共用的工具方法
+ *
+ * 开放定址的表没有链表兜底，哈希值的低位必须足够分散，
+ * 所以这里不像HashMap.hash那样只把高16位异或到低16位，
+ * 而是先乘以黄金分割常数，让每一位输入都能影响到低位
+ */
+final class HashCommon {
+    private HashCommon() {
+    }
+
+    /** 表的最大容量 */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /** 2^32 * 黄金分割比例 */
+    private static final int INT_PHI = 0x9E3779B9;
+
+    /** 2^64 * 黄金分割比例 */
+    private static final long LONG_PHI = 0x9E3779B97F4A7C15L;
+
+    /** 扰动int类型的key */
+    static int mix(int x) {
+        int h = x * INT_PHI;
+        return h ^ (h >>> 16);
+    }
+
+    /** 扰动long类型的key，结果截断为int */
+    static int mix(long x) {
+        long h = x * LONG_PHI;
+        h ^= h >>> 32;
+        return (int) (h ^ (h >>> 16));
+    }
+
+    /**
+     * 根据期望的元素个数和负载因子计算表的长度，结果是2的幂
+     */
+    static int arraySize(int expected, float f) {
+        long s = Math.max(2L, nextPowerOfTwo((long) Math.ceil(expected / f)));
+        if (s > MAXIMUM_CAPACITY)
+            throw new IllegalArgumentException("Too large (" + expected +
+                    " expected elements with load factor " + f + ")");
+        return (int) s;
+    }
+
+    /**
+     * 表的长度为n时最多能存放的元素个数，至少要留一个空槽，否则探测无法终止
+     */
+    static int maxFill(int n, float f) {
+        return Math.min((int) Math.ceil(n * f), n - 1);
+    }
+
+    /** 大于等于x的最小的2的幂 */
+    static long nextPowerOfTwo(long x) {
+        return x <= 1 ? 1 : Long.highestOneBit(x - 1) << 1;
+    }
+
+    /** 检查负载因子，开放定址的表不能装满 */
+    static void checkLoadFactor(float f) {
+        if (f <= 0 || f >= 1 || Float.isNaN(f))
+            throw new IllegalArgumentException("Illegal load factor: " + f);
+    }
+}
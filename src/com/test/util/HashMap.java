@@ -1,9 +1,20 @@
 package com.test.util;
 
+import com.test.util.function.BiConsumer;
+import com.test.util.function.BiFunction;
+import com.test.util.function.Consumer;
+import com.test.util.function.Function;
+
 import java.io.Serializable;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
 public class HashMap<K,V> extends AbstractMap<K,V> implements Cloneable, Serializable {
     private static final long serialVersionUID = 362498820763181265L;
@@ -26,6 +37,23 @@ public class HashMap<K,V> extends AbstractMap<K,V> implements Cloneable, Seriali
      */
     static final int TREEIFY_THRESHOLD = 8;
 
+    /**
+     * Tree转列表的阙值，在resize的时候如果拆分出来的bin的节点数量不超过这个值，
+     * 那么会把TreeNode重新转换为普通的Node链表
+     */
+    static final int UNTREEIFY_THRESHOLD = 6;
+
+    /**
+     * 可以把bin转换为Tree的最小table容量，
+     * 如果table容量小于这个值，bin中的节点太多的时候会优先扩容，而不是转换为Tree
+     */
+    static final int MIN_TREEIFY_CAPACITY = 64;
+
+    /**
+     * 渐进式扩容的时候，每次put/remove顺带迁移的旧table中的bin的数量
+     */
+    static final int RESIZE_STEP = 16;
+
     /** 当前HashMap的元素数量 */
     transient int size;
 
@@ -86,6 +114,38 @@ public class HashMap<K,V> extends AbstractMap<K,V> implements Cloneable, Seriali
         return (key == null) ? 0 : (h = key.hashCode()) ^ (h >>> 16);
     }
 
+    /**
+     * 当前HashMap中key的哈希值，没有策略的时候和hash(key)相同，
+     * 有策略的时候使用策略计算的哈希值，同样把高16位异或到低16位
+     * */
+    @SuppressWarnings("unchecked")
+    final int keyHash(Object key){
+        HashingStrategy<? super K> s; int h;
+        if ((s = strategy) == null)
+            return hash(key);
+        return (key == null) ? 0 : (h = s.hash((K) key)) ^ (h >>> 16);
+    }
+
+    /**
+     * 判断不为null的key和表中的k是否相等，没有策略的时候使用key.equals(k)
+     * TreeNode中没有HashMap的引用，所以策略作为参数传入
+     * */
+    @SuppressWarnings("unchecked")
+    static boolean keyEquals(HashingStrategy<?> s, Object key, Object k){
+        return s == null ? key.equals(k)
+                : k != null && ((HashingStrategy<Object>) s).equals(key, k);
+    }
+
+    /**
+     * 使用策略的比较器比较两个哈希值相同的key，没有比较器或者有一个是null的时候返回0
+     * */
+    @SuppressWarnings("unchecked")
+    static int compareWith(HashingStrategy<?> s, Object k, Object x){
+        Comparator<Object> c;
+        return (k == null || x == null ||
+                (c = (Comparator<Object>) s.comparator()) == null) ? 0 : c.compare(k, x);
+    }
+
     /**
      * 如果它的形式为"class C implements Comparable <C>"，则返回x的Class，否则返回null
      */
@@ -117,6 +177,7 @@ public class HashMap<K,V> extends AbstractMap<K,V> implements Cloneable, Seriali
      * 如果x匹配kc(k's screened comparable class)，
      * 返回k.compareTo(x)，否则返回0
      * */
+    @SuppressWarnings({"rawtypes","unchecked"})
     static int compareComparables(Class<?> kc, Object k, Object x) {
         // 如果x为null，或者x并不是kc类型，返回0
         // 否则返回k和x的比较结果
@@ -139,9 +200,16 @@ public class HashMap<K,V> extends AbstractMap<K,V> implements Cloneable, Seriali
 
     transient Node<K,V>[] table;
 
+    /** 缓存entrySet() */
+    transient Set<Map.Entry<K,V>> entrySet;
+
     /** 此HashMap结构被修改的次数 */
     transient int modCount;
 
+    /**
+     * 下一次需要扩容的大小(capacity * load factor)
+     * 如果table还没有初始化，这里保存的是初始化的容量，0表示使用DEFAULT_INITIAL_CAPACITY
+     * */
     int threshold;
 
     /**
@@ -149,11 +217,70 @@ public class HashMap<K,V> extends AbstractMap<K,V> implements Cloneable, Seriali
      */
     final float loadFactor;
 
+    /**
+     * 如果为true，扩容的时候不会一次性迁移整个table，
+     * 而是同时保留新旧两个table，在之后的每次插入/删除中迁移一部分bin，
+     * get、containsValue、forEach、迭代器和分区迭代器等只读操作会同时查找新旧table，不迁移bin，
+     * 所以没有写入的时候可以安全地被多个线程读取；只替换已有key的value也不迁移bin
+     */
+    final boolean incrementalResize;
+
+    /**
+     * 调用者提供的哈希和相等策略，为null的时候使用key自身的hashCode和equals
+     * 需要序列化的时候策略也必须是可序列化的
+     * */
+    final HashingStrategy<? super K> strategy;
+
+    /** 渐进式扩容中正在被迁移的旧table，不在扩容中的时候为null */
+    transient Node<K,V>[] oldTable;
+
+    /** 渐进式扩容中下一个需要顺序迁移的旧table的索引 */
+    transient int transferIndex;
+
+    /**
+     * 运行时的统计计数，只有HashMapStats.ENABLED的时候才会创建，
+     * 计数都是普通的long，只能由修改HashMap的线程更新，
+     * 并行build中的任务不直接修改，而是各自计数，在join之后汇总
+     * */
+    transient HashMapStats.Counters counters = newCounters();
+
     /**
      * 使用指定的初始容量构造一个空的HashMap
      * 容量和负载系数
      * */
     public HashMap(int initialCapacity, float loadFactor){
+        this(initialCapacity, loadFactor, false);
+    }
+
+    /**
+     * 使用指定的初始容量、负载系数构造一个空的HashMap
+     *
+     * incrementalResize为true的时候使用渐进式扩容，
+     * 扩容的开销会平摊到之后插入和删除key的put/remove当中，避免一次性迁移大table造成的延迟尖刺，
+     * 读操作不会迁移bin，旧table会一直保留到之后的插入和删除把它迁移完
+     * */
+    public HashMap(int initialCapacity, float loadFactor, boolean incrementalResize){
+        this(initialCapacity, loadFactor, incrementalResize, null);
+    }
+
+    /**
+     * 使用指定的初始容量、负载系数和哈希策略构造一个空的HashMap
+     *
+     * 所有的key都通过strategy计算哈希值和判断相等，
+     * 例如HashingStrategy.byteArrays()可以直接使用byte[]作为key，不需要为每次查找创建包装对象
+     * */
+    public HashMap(int initialCapacity, float loadFactor, HashingStrategy<? super K> strategy){
+        this(initialCapacity, loadFactor, false, Objects.requireNonNull(strategy));
+    }
+
+    /** 使用指定的哈希策略构造一个空的HashMap */
+    public HashMap(HashingStrategy<? super K> strategy){
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR, false, Objects.requireNonNull(strategy));
+        this.threshold = 0;
+    }
+
+    private HashMap(int initialCapacity, float loadFactor, boolean incrementalResize,
+                    HashingStrategy<? super K> strategy){
         if(initialCapacity < 0)
             throw new IllegalArgumentException("Illegal initial capacity: " +
                     initialCapacity);
@@ -164,6 +291,8 @@ public class HashMap<K,V> extends AbstractMap<K,V> implements Cloneable, Seriali
             throw new IllegalArgumentException("Illegal load factor: " +
                     loadFactor);
         this.loadFactor = loadFactor;
+        this.incrementalResize = incrementalResize;
+        this.strategy = strategy;
         //初始化容量，这个容量正好能储存initialCapacity，并且是2的幂等
         this.threshold = tableSizeFor(initialCapacity);
     }
@@ -175,6 +304,8 @@ public class HashMap<K,V> extends AbstractMap<K,V> implements Cloneable, Seriali
 
     public HashMap(){
         this.loadFactor = DEFAULT_LOAD_FACTOR;
+        this.incrementalResize = false;
+        this.strategy = null;
     }
 
     /**
@@ -191,6 +322,8 @@ public class HashMap<K,V> extends AbstractMap<K,V> implements Cloneable, Seriali
      * */
     public HashMap(Map<? extends K,? extends V> m){
         this.loadFactor = DEFAULT_LOAD_FACTOR;
+        this.incrementalResize = false;
+        this.strategy = null;
         putMapEntries(m,false);
     }
 
@@ -217,8 +350,108 @@ public class HashMap<K,V> extends AbstractMap<K,V> implements Cloneable, Seriali
             for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
                 K key = e.getKey();
                 V value = e.getValue();
-                putVal(hash(key), key, value, false, evict);
+                putVal(keyHash(key), key, value, false, evict);
+            }
+        }
+    }
+
+    /**
+     * 使用ForkJoin的公共线程池并行地从entries构建一个HashMap
+     *
+     * 这个方法和按遇到的顺序逐个put的结果相同，key重复的时候保留后面的value
+     * */
+    public static <K,V> HashMap<K,V> build(Spliterator<? extends Map.Entry<? extends K, ? extends V>> entries) {
+        return build(entries, null);
+    }
+
+    /**
+     * 和build(entries)相同，但是新的HashMap使用strategy计算哈希值和判断相等，strategy为null时使用key自身的
+     *
+     * 构建分为两个阶段：
+     * 1.根据entries的大小一次性确定table的容量，然后拆分entries，每个叶子任务为自己的元素计算哈希值、创建Node，
+     * 按照bin索引的高位把Node挂到不同分区的链表上，一个分区就是table中连续的一段bin
+     * 2.每个分区由一个任务负责，按照叶子的顺序把分区中的Node放进自己的那段bin，
+     * 不同任务写入的bin互不相交，所以不需要任何同步，table也不会扩容
+     *
+     * entries的大小未知或者太小的时候退化为逐个put
+     * */
+    public static <K,V> HashMap<K,V> build(Spliterator<? extends Map.Entry<? extends K, ? extends V>> entries,
+                                           HashingStrategy<? super K> strategy) {
+        HashMap<K,V> map = new HashMap<>(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR, false, strategy);
+        map.threshold = 0;
+        long est = entries.getExactSizeIfKnown();
+        if (est < 0)
+            est = entries.estimateSize();
+        if (est < MIN_PARALLEL_BUILD_SIZE || est == Long.MAX_VALUE ||
+                ForkJoinPool.getCommonPoolParallelism() <= 1) {
+            entries.forEachRemaining(e -> map.put(e.getKey(), e.getValue()));
+            return map;
+        }
+        float ft = (float)est / map.loadFactor + 1.0F;
+        int n = tableSizeFor(ft < (float)MAXIMUM_CAPACITY ? (int)ft : MAXIMUM_CAPACITY);
+        // 分区数量是2的幂，bin索引的高log2(partitions)位就是分区号
+        int partitions = Math.min(tableSizeFor(ForkJoinPool.getCommonPoolParallelism() << 2), n);
+        int shift = Integer.numberOfTrailingZeros(n) - Integer.numberOfTrailingZeros(partitions);
+        long leafSize = Math.max(est / (ForkJoinPool.getCommonPoolParallelism() << 2), 1L);
+
+        BuildScatter<K,V> root = new BuildScatter<>(map, entries, n - 1, shift, partitions, leafSize);
+        root.invoke();
+        // 按照遇到的顺序收集叶子任务，保证重复的key后面的value覆盖前面的
+        ArrayList<BuildScatter<K,V>> leaves = new ArrayList<>();
+        root.collectLeaves(leaves);
+
+        @SuppressWarnings({"rawtypes","unchecked"})
+        Node<K,V>[] tab = (Node<K,V>[])new Node[n];
+        BuildFill<K,V> fill = new BuildFill<>(map, tab, leaves, 0, partitions);
+        int size = fill.invoke();
+        if (HashMapStats.ENABLED)
+            map.counters().treeifyCount += fill.treeifies;
+        map.table = tab;
+        map.size = size;
+        float ft2 = (float)n * map.loadFactor;
+        map.threshold = (n < MAXIMUM_CAPACITY && ft2 < (float)MAXIMUM_CAPACITY ?
+                (int)ft2 : Integer.MAX_VALUE);
+        ++map.modCount;
+        // 估计的大小偏小的时候，最后扩容一次
+        if (size > map.threshold)
+            map.resize();
+        return map;
+    }
+
+    /**
+     * 把一个不在任何table中的节点放进tab，tab中节点所在的bin只能由当前线程写入
+     *
+     * 和putVal的区别是不修改size和modCount，也不会扩容，tab的长度不小于MIN_TREEIFY_CAPACITY，
+     * 所以直接通过treeifyBinAt树化这一个bin，不修改统计计数
+     * @return key已经存在的时候返回false，这时只替换value
+     * */
+    final boolean placeNode(Node<K,V>[] tab, Node<K,V> node) {
+        int hash = node.hash, i = (tab.length - 1) & hash;
+        K key = node.key;
+        Node<K,V> p, e; K k;
+        if ((p = tab[i]) == null) {
+            tab[i] = node;
+            return true;
+        }
+        if (p instanceof TreeNode) {
+            if ((e = ((TreeNode<K,V>)p).putTreeVal(this, tab, hash, key, node.value)) == null)
+                return true;
+            e.value = node.value;
+            return false;
+        }
+        for (int binCount = 0;; ++binCount) {
+            if (p.hash == hash &&
+                    ((k = p.key) == key || (key != null && keyEquals(strategy, key, k)))) {
+                p.value = node.value;
+                return false;
+            }
+            if ((e = p.next) == null) {
+                p.next = node;
+                if (binCount >= TREEIFY_THRESHOLD - 1)
+                    treeifyBinAt(tab, i);
+                return true;
             }
+            p = e;
         }
     }
 
@@ -235,19 +468,70 @@ public class HashMap<K,V> extends AbstractMap<K,V> implements Cloneable, Seriali
     /** 根据key获取值 */
     public V get(Object key){
         Node<K,V> e;
-        return (e = getNode(hash(key), key)) == null ? null : e.value;
+        return (e = getNode(keyHash(key), key)) == null ? null : e.value;
+    }
+
+    /**
+     * 根据hash值和key得到Node
+     *
+     * 不会修改table：渐进式扩容中hash所在的旧bin还没有迁移的时候直接在旧bin中查找，
+     * 旧bin不为null说明其中的key都还没有迁移到新table
+     * */
+    final Node<K,V> getNode(int hash,Object key){
+        Node<K,V>[] tab, oldTab; Node<K,V> first; int n;
+        if ((oldTab = oldTable) != null &&
+                (first = oldTab[(oldTab.length - 1) & hash]) != null)
+            return findNode(first, hash, key);
+        // table已经初始化，并且hash对应的bin中存在节点
+        if ((tab = table) != null && (n = tab.length) > 0 &&
+                (first = tab[(n - 1) & hash]) != null)
+            return findNode(first, hash, key);
+        if (HashMapStats.ENABLED)
+            recordGet(0);
+        return null;
     }
 
-    /** 根据hash值和key得到Node */
-    final Node<K,V> getNode(int hash,Object key){return null;}
+    /** 在first开始的bin中查找key */
+    final Node<K,V> findNode(Node<K,V> first, int hash, Object key) {
+        Node<K,V> e; K k;
+        // 总是先检查bin中的第一个节点
+        if (first.hash == hash &&
+                ((k = first.key) == key || (key != null && keyEquals(strategy, key, k)))) {
+            if (HashMapStats.ENABLED)
+                recordGet(1);
+            return first;
+        }
+        int probes = 1;
+        if ((e = first.next) != null) {
+            // 如果bin已经转换为Tree，在树中查找
+            if (first instanceof TreeNode) {
+                if (HashMapStats.ENABLED)
+                    recordGet(-1);
+                return ((TreeNode<K,V>)first).getTreeNode(strategy, hash, key);
+            }
+            // 否则顺序遍历链表
+            do {
+                ++probes;
+                if (e.hash == hash &&
+                        ((k = e.key) == key || (key != null && keyEquals(strategy, key, k)))) {
+                    if (HashMapStats.ENABLED)
+                        recordGet(probes);
+                    return e;
+                }
+            } while ((e = e.next) != null);
+        }
+        if (HashMapStats.ENABLED)
+            recordGet(probes);
+        return null;
+    }
 
     /** 判断是否含有键值为key的元素 */
     public boolean containsKey(Object key) {
-        return getNode(hash(key), key) != null;
+        return getNode(keyHash(key), key) != null;
     }
 
     /** 往HashMap中添加键值对 */
-    public V put(K key,V value){return putVal(hash(key),key,value,false,true);}
+    public V put(K key,V value){return putVal(keyHash(key),key,value,false,true);}
 
     /**
      * 实现Map.put的相关方法
@@ -261,8 +545,10 @@ public class HashMap<K,V> extends AbstractMap<K,V> implements Cloneable, Seriali
      */
     final V putVal(int hash,K key,V value,boolean onlyIfAbsent,boolean evict){
         Node<K,V>[] tab;Node<K,V> p;int n,i;
+        // 如果处于渐进式扩容中，key不存在的时候先保证key所在的旧bin已经迁移
+        tab = (oldTable != null) ? tableForWrite(hash, key) : table;
         // 如果table为null，或者大小为0
-        if((tab = table) == null || (n = tab.length) == 0)
+        if(tab == null || (n = tab.length) == 0)
             n = (tab = resize()).length;//初始化或加倍表格大小
         // 如果索引处没有存储元素
         if((p = tab[i = (n - 1) & hash]) == null)
@@ -273,11 +559,11 @@ public class HashMap<K,V> extends AbstractMap<K,V> implements Cloneable, Seriali
             // 如果hash相同，并且key相同，表示同一个元素
             // 把这个值赋给e
             if(p.hash == hash &&
-                    ((k = p.key) == key || (k != null && k.equals(key))))
+                    ((k = p.key) == key || (key != null && keyEquals(strategy, key, k))))
                 e = p;
             // 如果p已经为TreeNode的数据结构
             else if(p instanceof TreeNode)
-                e = ((TreeNode)p).putTreeVal(this,tab,hash,key,value);
+                e = ((TreeNode<K,V>)p).putTreeVal(this,tab,hash,key,value);
             // 如果p不是TreeNode的数据结构
             else{
                 // 定位到链表的最后一个节点
@@ -294,7 +580,7 @@ public class HashMap<K,V> extends AbstractMap<K,V> implements Cloneable, Seriali
                     }
                     // 如果hash相同，并且key相同，表示存在形同的元素，直接跳出循环
                     if(e.hash == hash &&
-                            ((k = e.key) == key || (key != null && key.equals(e.key))))
+                            ((k = e.key) == key || (key != null && keyEquals(strategy, key, k))))
                         break;
                     // p指向链表中的下一个
                     p = e;
@@ -323,161 +609,2003 @@ public class HashMap<K,V> extends AbstractMap<K,V> implements Cloneable, Seriali
         return null;
     }
 
-    final Node<K,V>[] resize(){return null;}
-
     /**
-     * 替换给定散列的索引处的bin中的所有链接节点，除非表太小，在这种情况下调整大小
+     * 初始化table或者把table的大小加倍
+     *
+     * 因为table的大小总是2的幂，扩容之后每个bin中的元素要么留在原来的索引j，
+     * 要么移动到索引j + oldCap，具体是哪一个由hash & oldCap决定，
+     * 所以扩容时只需要把每个bin拆分为lo和hi两个链表，直接使用Node中缓存的hash，
+     * 不需要重新调用key.hashCode()，并且链表中节点的相对顺序保持不变
+     *
+     * 如果使用渐进式扩容，这里只会创建新的table，旧table中的bin由helpResize逐步迁移
      * */
-    final void treeifyBin(Node<K,V>[] tab, int hash) {}
+    final Node<K,V>[] resize(){
+        long startTime = HashMapStats.ENABLED ? System.nanoTime() : 0L;
+        // 上一次渐进式扩容还没有完成，先全部迁移完成
+        if (oldTable != null)
+            finishResize();
+        Node<K,V>[] oldTab = table;
+        int oldCap = (oldTab == null) ? 0 : oldTab.length;
+        int oldThr = threshold;
+        int newCap, newThr = 0;
+        if (oldCap > 0) {
+            // 已经达到最大容量，不再扩容，只是让threshold不再触发扩容
+            if (oldCap >= MAXIMUM_CAPACITY) {
+                threshold = Integer.MAX_VALUE;
+                return oldTab;
+            }
+            // 容量加倍，threshold也加倍
+            else if ((newCap = oldCap << 1) < MAXIMUM_CAPACITY &&
+                    oldCap >= DEFAULT_INITIAL_CAPACITY)
+                newThr = oldThr << 1;
+        }
+        // table还没有初始化，threshold中保存的是初始容量
+        else if (oldThr > 0)
+            newCap = oldThr;
+        // 使用默认值初始化
+        else {
+            newCap = DEFAULT_INITIAL_CAPACITY;
+            newThr = (int)(DEFAULT_LOAD_FACTOR * DEFAULT_INITIAL_CAPACITY);
+        }
+        if (newThr == 0) {
+            float ft = (float)newCap * loadFactor;
+            newThr = (newCap < MAXIMUM_CAPACITY && ft < (float)MAXIMUM_CAPACITY ?
+                    (int)ft : Integer.MAX_VALUE);
+        }
+        threshold = newThr;
+        @SuppressWarnings({"rawtypes","unchecked"})
+        Node<K,V>[] newTab = (Node<K,V>[])new Node[newCap];
+        table = newTab;
+        if (oldTab != null && incrementalResize) {
+            oldTable = oldTab;
+            transferIndex = 0;
+        }
+        else if (oldTab != null) {
+            for (int j = 0; j < oldCap; ++j) {
+                Node<K,V> e;
+                if ((e = oldTab[j]) != null) {
+                    oldTab[j] = null;
+                    // bin中只有一个节点，直接放入新的位置
+                    if (e.next == null)
+                        newTab[e.hash & (newCap - 1)] = e;
+                    // 拆分树
+                    else if (e instanceof TreeNode)
+                        ((TreeNode<K,V>)e).split(this, newTab, j, oldCap);
+                    // 拆分链表，保持原有的顺序
+                    else
+                        splitBin(e, newTab, j, oldCap);
+                }
+            }
+        }
+        if (HashMapStats.ENABLED && oldCap > 0) {
+            HashMapStats.Counters c = counters();
+            c.resizeCount++;
+            c.resizeNanos += System.nanoTime() - startTime;
+        }
+        return newTab;
+    }
 
-    /** 创建一个节点 */
-    Node<K,V> newNode(int hash, K key, V value, Node<K,V> next) {
-        return new Node<>(hash, key, value, next);
+    /**
+     * 渐进式扩容的一个步骤：
+     * 先迁移hash对应的旧bin，保证接下来在新table中的查找是完整的，
+     * 然后从transferIndex开始顺序迁移最多RESIZE_STEP个bin，全部迁移完成之后丢弃旧table
+     * */
+    final void helpResize(int hash) {
+        Node<K,V>[] oldTab = oldTable;
+        int oldCap = oldTab.length;
+        int j = hash & (oldCap - 1);
+        if (oldTab[j] != null)
+            transferBin(oldTab, j);
+        int i = transferIndex, bound = Math.min(oldCap, i + RESIZE_STEP);
+        for (; i < bound; ++i) {
+            if (oldTab[i] != null)
+                transferBin(oldTab, i);
+        }
+        if ((transferIndex = i) >= oldCap)
+            oldTable = null;
     }
 
-    // 回调允许LinkedHashMap后期操作
-    void afterNodeAccess(Node<K,V> p) { }
-    void afterNodeInsertion(boolean evict) { }
-    void afterNodeRemoval(Node<K,V> p) { }
+    /** 一次性迁移渐进式扩容中所有剩余的bin */
+    final void finishResize() {
+        Node<K,V>[] oldTab = oldTable;
+        if (oldTab != null) {
+            for (int i = transferIndex; i < oldTab.length; ++i) {
+                if (oldTab[i] != null)
+                    transferBin(oldTab, i);
+            }
+            oldTable = null;
+            transferIndex = 0;
+        }
+    }
 
-    static final class TreeNode<K,V> extends LinkedHashMap.Entry<K,V>{
-        TreeNode<K,V> parent;
-        TreeNode<K,V> left;
-        TreeNode<K,V> right;
-        TreeNode<K,V> prev;
-        boolean red;
-        TreeNode(int hash, K key, V value, Node<K, V> next) {super(hash, key, value, next);}
+    /**
+     * 把旧table中索引为j的bin迁移到新table，迁移之后旧bin置为null，
+     * 所以旧table中不为null的bin就是还没有迁移的bin
+     * */
+    private void transferBin(Node<K,V>[] oldTab, int j) {
+        Node<K,V>[] newTab = table;
+        Node<K,V> e = oldTab[j];
+        oldTab[j] = null;
+        if (e.next == null)
+            newTab[e.hash & (newTab.length - 1)] = e;
+        else if (e instanceof TreeNode)
+            ((TreeNode<K,V>)e).split(this, newTab, j, oldTab.length);
+        else
+            splitBin(e, newTab, j, oldTab.length);
+    }
 
-        /**
-         * 返回树中本结点的根节点
-         * */
-        final TreeNode<K,V> root(){
-            for(TreeNode<K,V> r=this,p;;){
-                if((p=r.parent) == null)
-                    return r;
-                r = p;
+    /**
+     * 把一个普通的链表bin拆分为lo和hi两个链表，
+     * lo留在索引j，hi移动到索引j + bit，节点的相对顺序不变
+     * */
+    static <K,V> void splitBin(Node<K,V> e, Node<K,V>[] newTab, int j, int bit) {
+        Node<K,V> loHead = null, loTail = null;
+        Node<K,V> hiHead = null, hiTail = null;
+        Node<K,V> next;
+        do {
+            next = e.next;
+            if ((e.hash & bit) == 0) {
+                if (loTail == null)
+                    loHead = e;
+                else
+                    loTail.next = e;
+                loTail = e;
+            }
+            else {
+                if (hiTail == null)
+                    hiHead = e;
+                else
+                    hiTail.next = e;
+                hiTail = e;
             }
+        } while ((e = next) != null);
+        if (loTail != null) {
+            loTail.next = null;
+            newTab[j] = loHead;
+        }
+        if (hiTail != null) {
+            hiTail.next = null;
+            newTab[j + bit] = hiHead;
         }
+    }
 
-        /**
-         * 查找树中的元素
-         * */
-        final TreeNode<K,V> find(int h, Object k, Class<?> kc) {
-            // 记录当前节点
-            TreeNode<K,V> p = this;
-            do {
-                int ph, dir; K pk;
-                // 获取到左节点，右节点
-                TreeNode<K,V> pl = p.left, pr = p.right, q;
-                // 如果当前节点的hash大于传入的需要查找的hash，
-                // 指向左节点
-                if ((ph = p.hash) > h)
-                    p = pl;
-                // 指向右节点
-                else if (ph < h)
-                    p = pr;
-                // 如果查找到，返回
-                else if ((pk = p.key) == k || (k != null && k.equals(pk)))
-                    return p;
-                // 出现hash冲突的，如果左节点为null，指向右节点
-                else if (pl == null)
-                    p = pr;
-                // 如果右节点为null，指向左节点
-                else if (pr == null)
-                    p = pl;
-                // 比较传入的k元素的和当前节点的key的大小，
-                // 如果如果小于，p指向左节点，否则是右节点
-                else if ((kc != null ||
-                        (kc = comparableClassFor(k)) != null) &&
-                        (dir = compareComparables(kc, k, pk)) != 0)
-                    p = (dir < 0) ? pl : pr;
-                // 如果key是不能比较的，返回右节点
-                else if ((q = pr.find(h, k, kc)) != null)
-                    return q;
-                else
-                    p = pl;
-            } while (p != null);
-            return null;
+    /**
+     * 替换给定散列的索引处的bin中的所有链接节点，除非表太小，在这种情况下调整大小
+     * */
+    final void treeifyBin(Node<K,V>[] tab, int hash) {
+        int n, index;
+        // table太小的时候优先扩容
+        if (tab == null || (n = tab.length) < MIN_TREEIFY_CAPACITY)
+            resize();
+        else if (tab[index = (n - 1) & hash] != null) {
+            treeifyBinAt(tab, index);
+            if (HashMapStats.ENABLED)
+                counters().treeifyCount++;
         }
+    }
 
-        static <K,V> void moveRootToFront(Node<K,V>[] tab, TreeNode<K,V> root) {}
+    /**
+     * 把tab中索引为index的链表bin转换为红黑树，不检查table的大小，也不修改统计计数，
+     * 并行build中的多个线程会同时调用，计数由BuildFill在join之后汇总
+     * */
+    final void treeifyBinAt(Node<K,V>[] tab, int index) {
+        Node<K,V> e = tab[index];
+        // 先把Node链表转换为TreeNode的双向链表
+        TreeNode<K,V> hd = null, tl = null;
+        do {
+            TreeNode<K,V> p = replacementTreeNode(e, null);
+            if (tl == null)
+                hd = p;
+            else {
+                p.prev = tl;
+                tl.next = p;
+            }
+            tl = p;
+        } while ((e = e.next) != null);
+        // 然后把双向链表转换为红黑树
+        if ((tab[index] = hd) != null)
+            hd.treeify(strategy, tab);
+    }
 
-        /**
-         * 往树中添加元素
-         * */
-        final TreeNode<K,V> putTreeVal(HashMap<K,V> map, Node<K,V>[] tab,
-                                       int h, K k, V v) {
-            Class<?> kc = null;
-            boolean searched = false;
-            // 获取根节点
-            TreeNode<K,V> root = (parent != null) ? root() : this;
-            // 从根节点开始
-            for (TreeNode<K,V> p = root;;) {
-                int dir, ph; K pk;
-                if ((ph = p.hash) > h)
-                    dir = -1;
-                else if (ph < h)
-                    dir = 1;
-                else if ((pk = p.key) == k || (k != null && k.equals(pk)))
-                    return p;
-                else if ((kc == null &&
-                        (kc = comparableClassFor(k)) == null) ||
-                        (dir = compareComparables(kc, k, pk)) == 0) {
-                    if (!searched) {
-                        TreeNode<K,V> q, ch;
-                        searched = true;
-                        if (((ch = p.left) != null &&
-                                (q = ch.find(h, k, kc)) != null) ||
-                                ((ch = p.right) != null &&
-                                        (q = ch.find(h, k, kc)) != null))
-                            return q;
-                    }
-                    dir = tieBreakOrder(k, pk);
-                }
+    /* ------------------------------------------------------------ */
+    // 统计
 
-                TreeNode<K,V> xp = p;
-                if ((p = (dir <= 0) ? p.left : p.right) == null) {
-                    Node<K,V> xpn = xp.next;
-                    TreeNode<K,V> x = map.newTreeNode(h, k, v, xpn);
-                    if (dir <= 0)
-                        xp.left = x;
-                    else
-                        xp.right = x;
-                    xp.next = x;
-                    x.parent = x.prev = xp;
-                    if (xpn != null)
-                        ((TreeNode<K,V>)xpn).prev = x;
-                    moveRootToFront(tab, balanceInsertion(root, x));
-                    return null;
-                }
-            }
-        }
+    /** 没有开启统计的时候返回null */
+    static HashMapStats.Counters newCounters() {
+        return HashMapStats.ENABLED ? new HashMapStats.Counters() : null;
+    }
 
-        static <K,V> TreeNode<K,V> balanceInsertion(TreeNode<K,V> root,
-                                                    TreeNode<K,V> x) {
-            return null;
+    /** 返回运行时的计数，只能在HashMapStats.ENABLED的时候调用 */
+    final HashMapStats.Counters counters() {
+        return counters;
+    }
+
+    /** 记录一次getNode，probes是比较过的节点数，-1表示在树bin中查找 */
+    final void recordGet(int probes) {
+        HashMapStats.Counters c = counters();
+        if (probes < 0)
+            c.treeGetCount++;
+        else {
+            c.getCount++;
+            c.probeCount += probes;
         }
     }
 
-    static int tieBreakOrder(Object a, Object b) {
-        int d;
-        if (a == null || b == null ||
-                (d = a.getClass().getName().
-                        compareTo(b.getClass().getName())) == 0)
-            d = (System.identityHashCode(a) <= System.identityHashCode(b) ?
-                    -1 : 1);
-        return d;
+    /**
+     * 返回当前HashMap内部状态的快照，包括bin的长度分布、树化的bin数量、实际的负载，
+     * 开启 com.test.util.HashMap.stats 之后还包括扩容、树化和getNode探测长度的计数，
+     * 需要遍历整个table，适合偶尔调用来找出key的hashCode分布很差的HashMap
+     * */
+    public HashMapStats stats() {
+        Node<K,V>[] tab = table, oldTab = oldTable;
+        long[] histogram = new long[HashMapStats.MAX_HISTOGRAM_LENGTH + 1];
+        int maxBinLength = 0, treeBins = 0;
+        for (int pass = 0; pass < 2; ++pass) {
+            Node<K,V>[] t = pass == 0 ? oldTab : tab;
+            if (t == null)
+                continue;
+            for (Node<K,V> e : t) {
+                int len = 0;
+                if (e instanceof TreeNode)
+                    ++treeBins;
+                for (; e != null; e = e.next)
+                    ++len;
+                // 渐进式扩容中旧table里已经迁移的bin不计算在内
+                if (t == oldTab && len == 0)
+                    continue;
+                histogram[Math.min(len, HashMapStats.MAX_HISTOGRAM_LENGTH)]++;
+                maxBinLength = Math.max(maxBinLength, len);
+            }
+        }
+        return new HashMapStats(size, tab == null ? 0 : tab.length, loadFactor,
+                histogram, maxBinLength, treeBins, counters);
     }
 
-    // Create a tree bin node
-    TreeNode<K,V> newTreeNode(int hash, K key, V value, Node<K,V> next) {
-        return new TreeNode<>(hash, key, value, next);
+    /** 把m中所有的元素添加到当前映射当中 */
+    public void putAll(Map<? extends K, ? extends V> m) {
+        putMapEntries(m, true);
     }
 
+    /** 根据key移除键值对映射 */
+    public V remove(Object key) {
+        Node<K,V> e;
+        return (e = removeNode(keyHash(key), key, null, false, true)) == null ?
+                null : e.value;
+    }
 
-    @Override
-    public Set<Entry<K, V>> entrySet() {
-        return null;
+    /**
+     * 实现Map.remove的相关方法
+     *
+     * @param hash key的哈希值
+     * @param key 键
+     * @param value 如果matchValue为true，需要匹配的值
+     * @param matchValue 如果为true，只有值相等的时候才移除
+     * @param movable 如果为false，移除的时候不移动其他的节点
+     * @return 被移除的节点，如果没有，返回null
+     * */
+    final Node<K,V> removeNode(int hash, Object key, Object value,
+                               boolean matchValue, boolean movable) {
+        Node<K,V>[] tab, oldTab; Node<K,V> p; int n, index;
+        // 迭代器的remove(movable为false)不迁移bin，直接在key所在的table中移除，
+        // 否则已经遍历过的旧bin会被迁移到新table中再被遍历一次
+        if ((oldTab = oldTable) == null)
+            tab = table;
+        else if (!movable)
+            tab = (oldTab[(oldTab.length - 1) & hash] != null) ? oldTab : table;
+        else {
+            helpResize(hash);
+            tab = table;
+        }
+        if (tab != null && (n = tab.length) > 0 &&
+                (p = tab[index = (n - 1) & hash]) != null) {
+            Node<K,V> node = null, e; K k; V v;
+            // 先查找节点
+            if (p.hash == hash &&
+                    ((k = p.key) == key || (key != null && keyEquals(strategy, key, k))))
+                node = p;
+            else if ((e = p.next) != null) {
+                if (p instanceof TreeNode)
+                    node = ((TreeNode<K,V>)p).getTreeNode(strategy, hash, key);
+                else {
+                    do {
+                        if (e.hash == hash &&
+                                ((k = e.key) == key ||
+                                        (key != null && keyEquals(strategy, key, k)))) {
+                            node = e;
+                            break;
+                        }
+                        p = e;
+                    } while ((e = e.next) != null);
+                }
+            }
+            // 找到了节点，并且值符合要求
+            if (node != null && (!matchValue || (v = node.value) == value ||
+                    (value != null && value.equals(v)))) {
+                if (node instanceof TreeNode)
+                    ((TreeNode<K,V>)node).removeTreeNode(this, tab, movable);
+                else if (node == p)
+                    tab[index] = node.next;
+                else
+                    p.next = node.next;
+                ++modCount;
+                --size;
+                afterNodeRemoval(node);
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /** 清空 */
+    public void clear() {
+        Node<K,V>[] tab;
+        modCount++;
+        oldTable = null;
+        transferIndex = 0;
+        if ((tab = table) != null && size > 0) {
+            size = 0;
+            for (int i = 0; i < tab.length; ++i)
+                tab[i] = null;
+        }
+    }
+
+    /** 是否包含某个值 */
+    public boolean containsValue(Object value) {
+        Node<K,V>[] tab = table, oldTab = oldTable; V v;
+        if (size > 0) {
+            // 渐进式扩容中不迁移bin，依次查找旧table中还没有迁移的bin和新table
+            for (int pass = 0; pass < 2; ++pass) {
+                Node<K,V>[] t = pass == 0 ? oldTab : tab;
+                if (t == null)
+                    continue;
+                for (int i = 0; i < t.length; ++i) {
+                    for (Node<K,V> e = t[i]; e != null; e = e.next) {
+                        if ((v = e.value) == value ||
+                                (value != null && value.equals(v)))
+                            return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /* ------------------------------------------------------------ */
+    // 重写Map的默认方法，Map中的默认实现通过get和put完成，需要查找两次bin，
+    // 这里只定位一次bin，在找到的节点上直接修改，树化的bin同样适用
+
+    /**
+     * compute系列方法的准备工作：table还没有创建或者size已经超过threshold的时候先扩容，
+     * 然后通过tableForWrite找到key所在的table
+     * */
+    final Node<K,V>[] tableFor(int hash, Object key) {
+        Node<K,V>[] tab;
+        if (size > threshold || (tab = table) == null || tab.length == 0)
+            resize();
+        return (oldTable != null) ? tableForWrite(hash, key) : table;
+    }
+
+    /**
+     * 渐进式扩容中写入之前的准备：key已经存在的时候直接返回它所在的table，不迁移bin，
+     * 只替换value不是结构性修改，不能移动迭代器正在遍历的节点；
+     * key不存在的时候先迁移hash所在的旧bin，返回新table
+     * */
+    final Node<K,V>[] tableForWrite(int hash, Object key) {
+        Node<K,V>[] oldTab = oldTable, tab = table; Node<K,V> first;
+        if ((first = oldTab[(oldTab.length - 1) & hash]) != null) {
+            if (findInBin(first, hash, key) != null)
+                return oldTab;
+        }
+        else if ((first = tab[(tab.length - 1) & hash]) != null &&
+                findInBin(first, hash, key) != null)
+            return tab;
+        helpResize(hash);
+        return table;
+    }
+
+    /** 在tab中hash所在的bin里查找key，first是bin的第一个节点 */
+    final Node<K,V> findInBin(Node<K,V> first, int hash, Object key) {
+        if (first instanceof TreeNode)
+            return ((TreeNode<K,V>)first).getTreeNode(strategy, hash, key);
+        K k;
+        for (Node<K,V> e = first; e != null; e = e.next) {
+            if (e.hash == hash &&
+                    ((k = e.key) == key || (key != null && keyEquals(strategy, key, k))))
+                return e;
+        }
+        return null;
+    }
+
+    /**
+     * 把一个新的键值对放进bin i，first是bin原来的第一个节点，
+     * 链表bin插入到末尾，达到TREEIFY_THRESHOLD的时候树化
+     * */
+    private void insertIntoBin(Node<K,V>[] tab, int i, Node<K,V> first, int hash, K key, V value) {
+        if (first instanceof TreeNode)
+            ((TreeNode<K,V>)first).putTreeVal(this, tab, hash, key, value);
+        else if (first == null)
+            tab[i] = newNode(hash, key, value, null);
+        else {
+            int binCount = 1;
+            Node<K,V> p = first;
+            for (; p.next != null; p = p.next)
+                ++binCount;
+            p.next = newNode(hash, key, value, null);
+            if (binCount >= TREEIFY_THRESHOLD - 1)
+                treeifyBin(tab, hash);
+        }
+        ++modCount;
+        ++size;
+        afterNodeInsertion(true);
+    }
+
+    @Override
+    public V getOrDefault(Object key, V defaultValue) {
+        Node<K,V> e;
+        return (e = getNode(keyHash(key), key)) == null ? defaultValue : e.value;
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return putVal(keyHash(key), key, value, true, true);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        return removeNode(keyHash(key), key, value, true, true) != null;
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        Node<K,V> e; V v;
+        if ((e = getNode(keyHash(key), key)) != null &&
+                ((v = e.value) == oldValue || (v != null && v.equals(oldValue)))) {
+            e.value = newValue;
+            afterNodeAccess(e);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        Node<K,V> e;
+        if ((e = getNode(keyHash(key), key)) != null) {
+            V oldValue = e.value;
+            e.value = value;
+            afterNodeAccess(e);
+            return oldValue;
+        }
+        return null;
+    }
+
+    /**
+     * key不存在或者value是null的时候，使用mappingFunction计算新的value，
+     * 新的value不是null的时候直接放进已经定位的bin，不需要再查找一次
+     * */
+    @Override
+    public V computeIfAbsent(K key,
+                             Function<? super K, ? extends V> mappingFunction) {
+        if (mappingFunction == null)
+            throw new NullPointerException();
+        int hash = keyHash(key);
+        Node<K,V>[] tab = tableFor(hash, key);
+        int i = (tab.length - 1) & hash;
+        Node<K,V> first = tab[i], old = findInBin(first, hash, key);
+        V oldValue;
+        if (old != null && (oldValue = old.value) != null) {
+            afterNodeAccess(old);
+            return oldValue;
+        }
+        int mc = modCount;
+        V v = mappingFunction.apply(key);
+        if (mc != modCount)
+            throw new ConcurrentModificationException();
+        if (v == null)
+            return null;
+        else if (old != null) {
+            old.value = v;
+            afterNodeAccess(old);
+            return v;
+        }
+        insertIntoBin(tab, i, first, hash, key, v);
+        return v;
+    }
+
+    @Override
+    public V computeIfPresent(K key,
+                              BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        if (remappingFunction == null)
+            throw new NullPointerException();
+        Node<K,V> e; V oldValue;
+        int hash = keyHash(key);
+        if ((e = getNode(hash, key)) != null &&
+                (oldValue = e.value) != null) {
+            int mc = modCount;
+            V v = remappingFunction.apply(key, oldValue);
+            if (mc != modCount)
+                throw new ConcurrentModificationException();
+            if (v != null) {
+                e.value = v;
+                afterNodeAccess(e);
+                return v;
+            }
+            else
+                removeNode(hash, key, null, false, true);
+        }
+        return null;
+    }
+
+    @Override
+    public V compute(K key,
+                     BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        if (remappingFunction == null)
+            throw new NullPointerException();
+        int hash = keyHash(key);
+        Node<K,V>[] tab = tableFor(hash, key);
+        int i = (tab.length - 1) & hash;
+        Node<K,V> first = tab[i], old = findInBin(first, hash, key);
+        V oldValue = (old == null) ? null : old.value;
+        int mc = modCount;
+        V v = remappingFunction.apply(key, oldValue);
+        if (mc != modCount)
+            throw new ConcurrentModificationException();
+        if (old != null) {
+            if (v != null) {
+                old.value = v;
+                afterNodeAccess(old);
+            }
+            else
+                removeNode(hash, key, null, false, true);
+        }
+        else if (v != null)
+            insertIntoBin(tab, i, first, hash, key, v);
+        return v;
+    }
+
+    @Override
+    public V merge(K key, V value,
+                   BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        if (value == null || remappingFunction == null)
+            throw new NullPointerException();
+        int hash = keyHash(key);
+        Node<K,V>[] tab = tableFor(hash, key);
+        int i = (tab.length - 1) & hash;
+        Node<K,V> first = tab[i], old = findInBin(first, hash, key);
+        if (old != null) {
+            V v;
+            if (old.value != null) {
+                int mc = modCount;
+                v = remappingFunction.apply(old.value, value);
+                if (mc != modCount)
+                    throw new ConcurrentModificationException();
+            } else {
+                v = value;
+            }
+            if (v != null) {
+                old.value = v;
+                afterNodeAccess(old);
+            }
+            else
+                removeNode(hash, key, null, false, true);
+            return v;
+        }
+        insertIntoBin(tab, i, first, hash, key, value);
+        return value;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        Node<K,V>[] tab = table, oldTab = oldTable;
+        if (action == null)
+            throw new NullPointerException();
+        if (size > 0) {
+            int mc = modCount;
+            for (int pass = 0; pass < 2; ++pass) {
+                Node<K,V>[] t = pass == 0 ? oldTab : tab;
+                if (t == null)
+                    continue;
+                for (Node<K,V> e : t) {
+                    for (; e != null; e = e.next)
+                        action.accept(e.key, e.value);
+                }
+            }
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        Node<K,V>[] tab = table, oldTab = oldTable;
+        if (function == null)
+            throw new NullPointerException();
+        if (size > 0) {
+            int mc = modCount;
+            for (int pass = 0; pass < 2; ++pass) {
+                Node<K,V>[] t = pass == 0 ? oldTab : tab;
+                if (t == null)
+                    continue;
+                for (Node<K,V> e : t) {
+                    for (; e != null; e = e.next)
+                        e.value = function.apply(e.key, e.value);
+                }
+            }
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    /** 返回此Map中的key组成 */
+    public Set<K> keySet() {
+        Set<K> ks = keySet;
+        if (ks == null) {
+            ks = new KeySet();
+            keySet = ks;
+        }
+        return ks;
+    }
+
+    /** 用来存储HashMap的Key的Set实现类 */
+    final class KeySet extends AbstractSet<K> {
+        public final int size()                 { return size; }
+        public final void clear()               { HashMap.this.clear(); }
+        public final Iterator<K> iterator()     { return new KeyIterator(); }
+        public final boolean contains(Object o) { return containsKey(o); }
+        public final Spliterator<K> getSpliterator() {
+            return new KeySpliterator<>(HashMap.this, null, null, 0, -1, 0, 0);
+        }
+        public final boolean remove(Object key) {
+            return removeNode(keyHash(key), key, null, false, true) != null;
+        }
+        public final void forEach(Consumer<? super K> action) {
+            Node<K,V>[] tab = table, oldTab = oldTable;
+            if (action == null)
+                throw new NullPointerException();
+            if (size > 0) {
+                int mc = modCount;
+                for (int pass = 0; pass < 2; ++pass) {
+                    Node<K,V>[] t = pass == 0 ? oldTab : tab;
+                    if (t == null)
+                        continue;
+                    for (int i = 0; i < t.length; ++i) {
+                        for (Node<K,V> e = t[i]; e != null; e = e.next)
+                            action.accept(e.key);
+                    }
+                }
+                if (modCount != mc)
+                    throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /** 返回value组成的集合 */
+    public Collection<V> values() {
+        Collection<V> vs = values;
+        if (vs == null) {
+            vs = new Values();
+            values = vs;
+        }
+        return vs;
+    }
+
+    /** 用来存储HashMap的Value的Collection实现类 */
+    final class Values extends AbstractCollection<V> {
+        public final int size()                 { return size; }
+        public final void clear()               { HashMap.this.clear(); }
+        public final Iterator<V> iterator()     { return new ValueIterator(); }
+        public final boolean contains(Object o) { return containsValue(o); }
+        public final Spliterator<V> getSpliterator() {
+            return new ValueSpliterator<>(HashMap.this, null, null, 0, -1, 0, 0);
+        }
+        public final void forEach(Consumer<? super V> action) {
+            Node<K,V>[] tab = table, oldTab = oldTable;
+            if (action == null)
+                throw new NullPointerException();
+            if (size > 0) {
+                int mc = modCount;
+                for (int pass = 0; pass < 2; ++pass) {
+                    Node<K,V>[] t = pass == 0 ? oldTab : tab;
+                    if (t == null)
+                        continue;
+                    for (int i = 0; i < t.length; ++i) {
+                        for (Node<K,V> e = t[i]; e != null; e = e.next)
+                            action.accept(e.value);
+                    }
+                }
+                if (modCount != mc)
+                    throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /**
+     * 返回一个Set，这个Set存储的是当前map的条目
+     * */
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    /** 用来存储HashMap的条目的Set实现类 */
+    final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public final int size()                 { return size; }
+        public final void clear()               { HashMap.this.clear(); }
+        public final Iterator<Map.Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+        public final Spliterator<Map.Entry<K,V>> getSpliterator() {
+            return new EntrySpliterator<>(HashMap.this, null, null, 0, -1, 0, 0);
+        }
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object key = e.getKey();
+            Node<K,V> candidate = getNode(keyHash(key), key);
+            return candidate != null && candidate.equals(e);
+        }
+        public final boolean remove(Object o) {
+            if (o instanceof Map.Entry) {
+                Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+                Object key = e.getKey();
+                Object value = e.getValue();
+                return removeNode(keyHash(key), key, value, true, true) != null;
+            }
+            return false;
+        }
+        public final void forEach(Consumer<? super Map.Entry<K,V>> action) {
+            Node<K,V>[] tab = table, oldTab = oldTable;
+            if (action == null)
+                throw new NullPointerException();
+            if (size > 0) {
+                int mc = modCount;
+                for (int pass = 0; pass < 2; ++pass) {
+                    Node<K,V>[] t = pass == 0 ? oldTab : tab;
+                    if (t == null)
+                        continue;
+                    for (int i = 0; i < t.length; ++i) {
+                        for (Node<K,V> e = t[i]; e != null; e = e.next)
+                            action.accept(e);
+                    }
+                }
+                if (modCount != mc)
+                    throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /**
+     * 返回一个浅拷贝，键和值本身不会被复制
+     * */
+    @SuppressWarnings("unchecked")
+    @Override
+    public Object clone() {
+        HashMap<K,V> result;
+        try {
+            result = (HashMap<K,V>)super.clone();
+        } catch (CloneNotSupportedException e) {
+            // this shouldn't happen, since we are Cloneable
+            throw new InternalError(e);
+        }
+        result.reinitialize();
+        result.putMapEntries(this, false);
+        return result;
+    }
+
+    /**
+     * 返回一个包含当前所有键值对的只读FrozenMap，使用相同的哈希策略
+     *
+     * 适合构建之后只读的查找表，每次get只访问一个槽位，之后对当前HashMap的修改不会影响返回的FrozenMap
+     * */
+    public FrozenMap<K,V> freeze() {
+        return FrozenMap.build(this, strategy);
+    }
+
+    /** 当前table的容量 */
+    final int capacity() {
+        return (table != null) ? table.length :
+                (threshold > 0) ? threshold :
+                        DEFAULT_INITIAL_CAPACITY;
+    }
+
+    /* ------------------------------------------------------------ */
+    // 迭代器
+
+    /**
+     * HashMap的抽象迭代器，按照table的索引顺序遍历所有的节点
+     *
+     * 不会迁移bin：渐进式扩容中先遍历旧table中还没有迁移的bin，再遍历新table，
+     * 迭代器自己的remove也不迁移bin，否则已经遍历过的节点会被移动到新table中再遍历一次
+     * */
+    abstract class HashIterator {
+        Node<K,V> next;        // 下一个返回的节点
+        Node<K,V> current;     // 当前的节点
+        int expectedModCount;  // 用于快速失败
+        int index;             // 当前table中的索引
+        Node<K,V>[] tab;       // 当前遍历的table
+        Node<K,V>[] nextTab;   // 渐进式扩容中旧table遍历完成之后遍历的新table
+
+        HashIterator() {
+            expectedModCount = modCount;
+            Node<K,V>[] oldTab = oldTable;
+            if (oldTab != null) {
+                tab = oldTab;
+                nextTab = table;
+            }
+            else
+                tab = table;
+            current = next = null;
+            index = 0;
+            // 定位到第一个不为空的bin
+            if (size > 0)
+                nextBin();
+        }
+
+        /** 定位到下一个不为空的bin，当前table遍历完成之后切换到nextTab */
+        final void nextBin() {
+            for (Node<K,V>[] t; (t = tab) != null; tab = nextTab, nextTab = null, index = 0) {
+                while (index < t.length) {
+                    if ((next = t[index++]) != null)
+                        return;
+                }
+            }
+        }
+
+        public final boolean hasNext() {
+            return next != null;
+        }
+
+        final Node<K,V> nextNode() {
+            Node<K,V> e = next;
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (e == null)
+                throw new NoSuchElementException();
+            // 当前bin遍历完成之后，定位到下一个不为空的bin
+            if ((next = (current = e).next) == null)
+                nextBin();
+            return e;
+        }
+
+        public final void remove() {
+            Node<K,V> p = current;
+            if (p == null)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            current = null;
+            K key = p.key;
+            removeNode(keyHash(key), key, null, false, false);
+            expectedModCount = modCount;
+        }
+    }
+
+    final class KeyIterator extends HashIterator
+            implements Iterator<K> {
+        public final K next() { return nextNode().key; }
+    }
+
+    final class ValueIterator extends HashIterator
+            implements Iterator<V> {
+        public final V next() { return nextNode().value; }
+    }
+
+    final class EntryIterator extends HashIterator
+            implements Iterator<Map.Entry<K,V>> {
+        public final Map.Entry<K,V> next() { return nextNode(); }
+    }
+
+    /* ---------------- 分区迭代器 -------------- */
+
+    /**
+     * HashMap的分区迭代器，按照table的索引范围拆分
+     *
+     * 延迟绑定：第一次使用时才读取table、size和modCount，不会迁移bin；
+     * 渐进式扩容中同时绑定旧table，索引范围先覆盖旧table，再覆盖新table，
+     * 旧table中已经迁移的bin为null，新table中还没有迁移的bin也为null，所以每个节点只会遍历一次；
+     * trySplit把索引范围对半拆分，bin中的节点数不确定，所以只有顶层的分区迭代器具有SIZED特征值，
+     * 拆分之后estimateSize每次减半，只是一个估计值；
+     * 快速失败：forEachRemaining结束之后和tryAdvance每次之后检查modCount
+     * */
+    static class HashMapSpliterator<K,V> {
+        final HashMap<K,V> map;
+        Node<K,V>[] oldTab;         // 绑定时渐进式扩容中的旧table，没有扩容的时候为null
+        Node<K,V>[] tab;            // 绑定时的table
+        Node<K,V> current;          // 当前的节点
+        int index;                  // 当前的索引，advance和split会修改它
+        int fence;                  // 绑定之前为-1，之后为结束索引(不包含)
+        int est;                    // 估计的元素数量
+        int expectedModCount;       // 绑定时的modCount
+
+        HashMapSpliterator(HashMap<K,V> m, Node<K,V>[] oldTab, Node<K,V>[] tab,
+                           int origin, int fence, int est,
+                           int expectedModCount) {
+            this.map = m;
+            this.oldTab = oldTab;
+            this.tab = tab;
+            this.index = origin;
+            this.fence = fence;
+            this.est = est;
+            this.expectedModCount = expectedModCount;
+        }
+
+        /** 第一次使用时绑定table、size和modCount */
+        final int getFence() {
+            int hi;
+            if ((hi = fence) < 0) {
+                HashMap<K,V> m = map;
+                est = m.size;
+                expectedModCount = m.modCount;
+                Node<K,V>[] ot = oldTab = m.oldTable, t = tab = m.table;
+                hi = fence = ((ot == null) ? 0 : ot.length) + ((t == null) ? 0 : t.length);
+            }
+            return hi;
+        }
+
+        /** 索引i对应的bin，小于旧table长度的索引在旧table中，其余的在新table中 */
+        final Node<K,V> bin(int i) {
+            Node<K,V>[] ot = oldTab;
+            int n = (ot == null) ? 0 : ot.length;
+            return (i < n) ? ot[i] : tab[i - n];
+        }
+
+        public final long estimateSize() {
+            getFence();
+            return (long) est;
+        }
+    }
+
+    static final class KeySpliterator<K,V>
+            extends HashMapSpliterator<K,V>
+            implements Spliterator<K> {
+        KeySpliterator(HashMap<K,V> m, Node<K,V>[] oldTab, Node<K,V>[] tab,
+                       int origin, int fence, int est,
+                       int expectedModCount) {
+            super(m, oldTab, tab, origin, fence, est, expectedModCount);
+        }
+
+        public KeySpliterator<K,V> trySplit() {
+            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
+            return (lo >= mid || current != null) ? null :
+                    new KeySpliterator<>(map, oldTab, tab, lo, index = mid, est >>>= 1,
+                            expectedModCount);
+        }
+
+        public void forEachRemaining(Consumer<? super K> action) {
+            int i, hi, mc;
+            if (action == null)
+                throw new NullPointerException();
+            HashMap<K,V> m = map;
+            hi = getFence();
+            mc = expectedModCount;
+            if ((i = index) >= 0 && (i < (index = hi) || current != null)) {
+                Node<K,V> p = current;
+                current = null;
+                do {
+                    if (p == null)
+                        p = bin(i++);
+                    else {
+                        action.accept(p.key);
+                        p = p.next;
+                    }
+                } while (p != null || i < hi);
+                if (m.modCount != mc)
+                    throw new ConcurrentModificationException();
+            }
+        }
+
+        public boolean tryAdvance(Consumer<? super K> action) {
+            int hi;
+            if (action == null)
+                throw new NullPointerException();
+            hi = getFence();
+            if (index >= 0) {
+                while (current != null || index < hi) {
+                    if (current == null)
+                        current = bin(index++);
+                    else {
+                        K k = current.key;
+                        current = current.next;
+                        action.accept(k);
+                        if (map.modCount != expectedModCount)
+                            throw new ConcurrentModificationException();
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        public int characteristics() {
+            return (fence < 0 || est == map.size ? Spliterator.SIZED : 0) |
+                    Spliterator.DISTINCT;
+        }
+    }
+
+    static final class ValueSpliterator<K,V>
+            extends HashMapSpliterator<K,V>
+            implements Spliterator<V> {
+        ValueSpliterator(HashMap<K,V> m, Node<K,V>[] oldTab, Node<K,V>[] tab,
+                         int origin, int fence, int est,
+                         int expectedModCount) {
+            super(m, oldTab, tab, origin, fence, est, expectedModCount);
+        }
+
+        public ValueSpliterator<K,V> trySplit() {
+            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
+            return (lo >= mid || current != null) ? null :
+                    new ValueSpliterator<>(map, oldTab, tab, lo, index = mid, est >>>= 1,
+                            expectedModCount);
+        }
+
+        public void forEachRemaining(Consumer<? super V> action) {
+            int i, hi, mc;
+            if (action == null)
+                throw new NullPointerException();
+            HashMap<K,V> m = map;
+            hi = getFence();
+            mc = expectedModCount;
+            if ((i = index) >= 0 && (i < (index = hi) || current != null)) {
+                Node<K,V> p = current;
+                current = null;
+                do {
+                    if (p == null)
+                        p = bin(i++);
+                    else {
+                        action.accept(p.value);
+                        p = p.next;
+                    }
+                } while (p != null || i < hi);
+                if (m.modCount != mc)
+                    throw new ConcurrentModificationException();
+            }
+        }
+
+        public boolean tryAdvance(Consumer<? super V> action) {
+            int hi;
+            if (action == null)
+                throw new NullPointerException();
+            hi = getFence();
+            if (index >= 0) {
+                while (current != null || index < hi) {
+                    if (current == null)
+                        current = bin(index++);
+                    else {
+                        V v = current.value;
+                        current = current.next;
+                        action.accept(v);
+                        if (map.modCount != expectedModCount)
+                            throw new ConcurrentModificationException();
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        public int characteristics() {
+            return (fence < 0 || est == map.size ? Spliterator.SIZED : 0);
+        }
+    }
+
+    static final class EntrySpliterator<K,V>
+            extends HashMapSpliterator<K,V>
+            implements Spliterator<Map.Entry<K,V>> {
+        EntrySpliterator(HashMap<K,V> m, Node<K,V>[] oldTab, Node<K,V>[] tab,
+                         int origin, int fence, int est,
+                         int expectedModCount) {
+            super(m, oldTab, tab, origin, fence, est, expectedModCount);
+        }
+
+        public EntrySpliterator<K,V> trySplit() {
+            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
+            return (lo >= mid || current != null) ? null :
+                    new EntrySpliterator<>(map, oldTab, tab, lo, index = mid, est >>>= 1,
+                            expectedModCount);
+        }
+
+        public void forEachRemaining(Consumer<? super Map.Entry<K,V>> action) {
+            int i, hi, mc;
+            if (action == null)
+                throw new NullPointerException();
+            HashMap<K,V> m = map;
+            hi = getFence();
+            mc = expectedModCount;
+            if ((i = index) >= 0 && (i < (index = hi) || current != null)) {
+                Node<K,V> p = current;
+                current = null;
+                do {
+                    if (p == null)
+                        p = bin(i++);
+                    else {
+                        action.accept(p);
+                        p = p.next;
+                    }
+                } while (p != null || i < hi);
+                if (m.modCount != mc)
+                    throw new ConcurrentModificationException();
+            }
+        }
+
+        public boolean tryAdvance(Consumer<? super Map.Entry<K,V>> action) {
+            int hi;
+            if (action == null)
+                throw new NullPointerException();
+            hi = getFence();
+            if (index >= 0) {
+                while (current != null || index < hi) {
+                    if (current == null)
+                        current = bin(index++);
+                    else {
+                        Node<K,V> e = current;
+                        current = current.next;
+                        action.accept(e);
+                        if (map.modCount != expectedModCount)
+                            throw new ConcurrentModificationException();
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        public int characteristics() {
+            return (fence < 0 || est == map.size ? Spliterator.SIZED : 0) |
+                    Spliterator.DISTINCT;
+        }
+    }
+
+    /* ---------------- 序列化 -------------- */
+
+    /**
+     * table是transient的，这里写出容量、size和所有的键值对，
+     * 读取的时候按照size重新计算容量，重新计算每个key的哈希值
+     * */
+    private void writeObject(java.io.ObjectOutputStream s)
+            throws java.io.IOException {
+        int buckets = capacity();
+        s.defaultWriteObject();
+        s.writeInt(buckets);
+        s.writeInt(size);
+        internalWriteEntries(s);
+    }
+
+    private void readObject(java.io.ObjectInputStream s)
+            throws java.io.IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        reinitialize();
+        if (loadFactor <= 0 || Float.isNaN(loadFactor))
+            throw new java.io.InvalidObjectException("Illegal load factor: " +
+                    loadFactor);
+        s.readInt(); // 容量，忽略
+        int mappings = s.readInt();
+        if (mappings < 0)
+            throw new java.io.InvalidObjectException("Illegal mappings count: " +
+                    mappings);
+        else if (mappings > 0) {
+            float fc = (float)mappings / loadFactor + 1.0f;
+            int cap = ((fc < DEFAULT_INITIAL_CAPACITY) ?
+                    DEFAULT_INITIAL_CAPACITY :
+                    (fc >= MAXIMUM_CAPACITY) ?
+                            MAXIMUM_CAPACITY :
+                            tableSizeFor((int)fc));
+            float ft = (float)cap * loadFactor;
+            threshold = ((cap < MAXIMUM_CAPACITY && ft < MAXIMUM_CAPACITY) ?
+                    (int)ft : Integer.MAX_VALUE);
+            @SuppressWarnings({"rawtypes","unchecked"})
+            Node<K,V>[] tab = (Node<K,V>[])new Node[cap];
+            table = tab;
+            for (int i = 0; i < mappings; i++) {
+                @SuppressWarnings("unchecked")
+                K key = (K) s.readObject();
+                @SuppressWarnings("unchecked")
+                V value = (V) s.readObject();
+                putVal(keyHash(key), key, value, false, false);
+            }
+        }
+    }
+
+    /** 按照table的顺序写出所有的键值对，LinkedHashMap按照链表的顺序写出 */
+    void internalWriteEntries(java.io.ObjectOutputStream s) throws java.io.IOException {
+        Node<K,V>[] tab = table, oldTab = oldTable;
+        if (size > 0) {
+            for (int pass = 0; pass < 2; ++pass) {
+                Node<K,V>[] t = pass == 0 ? oldTab : tab;
+                if (t == null)
+                    continue;
+                for (Node<K,V> e : t) {
+                    for (; e != null; e = e.next) {
+                        s.writeObject(e.key);
+                        s.writeObject(e.value);
+                    }
+                }
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    // 并行批量构建
+
+    /** 小于这个大小的时候build直接逐个put，并行的开销比收益更大 */
+    static final int MIN_PARALLEL_BUILD_SIZE = 1 << 13;
+
+    /**
+     * build的第一阶段，拆分entries，叶子任务创建Node并且按照分区挂到链表上
+     *
+     * 拆分出来的前缀作为左子任务，保留遇到的顺序
+     * */
+    static final class BuildScatter<K,V> extends RecursiveAction {
+        private static final long serialVersionUID = 5182604617372541832L;
+        final HashMap<K,V> map;
+        final int mask;
+        final int shift;
+        final int partitions;
+        final long leafSize;
+        Spliterator<? extends Map.Entry<? extends K, ? extends V>> spliterator;
+        BuildScatter<K,V> left, right;
+        /** 叶子任务中每个分区的链表的头和尾 */
+        Node<K,V>[] heads, tails;
+
+        BuildScatter(HashMap<K,V> map, Spliterator<? extends Map.Entry<? extends K, ? extends V>> spliterator,
+                     int mask, int shift, int partitions, long leafSize) {
+            this.map = map;
+            this.spliterator = spliterator;
+            this.mask = mask;
+            this.shift = shift;
+            this.partitions = partitions;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        @SuppressWarnings({"rawtypes","unchecked"})
+        protected void compute() {
+            Spliterator<? extends Map.Entry<? extends K, ? extends V>> rs = spliterator, ls;
+            if (rs.estimateSize() > leafSize && (ls = rs.trySplit()) != null) {
+                left = new BuildScatter<>(map, ls, mask, shift, partitions, leafSize);
+                right = new BuildScatter<>(map, rs, mask, shift, partitions, leafSize);
+                spliterator = null;
+                invokeAll(left, right);
+                return;
+            }
+            Node<K,V>[] hs = heads = (Node<K,V>[])new Node[partitions];
+            Node<K,V>[] ts = tails = (Node<K,V>[])new Node[partitions];
+            HashMap<K,V> m = map;
+            rs.forEachRemaining(e -> {
+                K key = e.getKey();
+                int hash = m.keyHash(key);
+                Node<K,V> node = m.newNode(hash, key, e.getValue(), null);
+                int p = (hash & mask) >>> shift;
+                if (ts[p] == null)
+                    hs[p] = node;
+                else
+                    ts[p].next = node;
+                ts[p] = node;
+            });
+            spliterator = null;
+        }
+
+        void collectLeaves(ArrayList<BuildScatter<K,V>> leaves) {
+            if (left == null)
+                leaves.add(this);
+            else {
+                left.collectLeaves(leaves);
+                right.collectLeaves(leaves);
+            }
+        }
+    }
+
+    /**
+     * build的第二阶段，每个任务负责[lo, hi)的分区，返回放进table的不同key的数量，
+     * 开启统计的时候，树化的次数记录在treeifies中，join之后由父任务汇总
+     * */
+    static final class BuildFill<K,V> extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = -7047216035339207147L;
+        final HashMap<K,V> map;
+        final Node<K,V>[] tab;
+        final ArrayList<BuildScatter<K,V>> leaves;
+        final int lo, hi;
+        int treeifies;
+
+        BuildFill(HashMap<K,V> map, Node<K,V>[] tab, ArrayList<BuildScatter<K,V>> leaves, int lo, int hi) {
+            this.map = map;
+            this.tab = tab;
+            this.leaves = leaves;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                BuildFill<K,V> l = new BuildFill<>(map, tab, leaves, lo, mid);
+                l.fork();
+                BuildFill<K,V> rt = new BuildFill<>(map, tab, leaves, mid, hi);
+                int r = rt.compute();
+                int c = l.join() + r;
+                treeifies = l.treeifies + rt.treeifies;
+                return c;
+            }
+            int count = 0;
+            for (int i = 0, n = leaves.size(); i < n; i++) {
+                Node<K,V> e = leaves.get(i).heads[lo], next;
+                for (; e != null; e = next) {
+                    next = e.next;
+                    e.next = null;
+                    if (map.placeNode(tab, e))
+                        ++count;
+                }
+            }
+            if (HashMapStats.ENABLED) {
+                // 分区中的bin开始的时候都是空的，placeNode也不会把树退化为链表，所以树化的bin的数量就是树化的次数
+                int len = tab.length / leaves.get(0).heads.length;
+                for (int j = lo * len, end = j + len; j < end; ++j) {
+                    if (tab[j] instanceof TreeNode)
+                        ++treeifies;
+                }
+            }
+            return count;
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    // LinkedHashMap的支持
+
+    /** 创建一个节点 */
+    Node<K,V> newNode(int hash, K key, V value, Node<K,V> next) {
+        return new Node<>(hash, key, value, next);
+    }
+
+    /** 从TreeNode转换为普通的Node */
+    Node<K,V> replacementNode(Node<K,V> p, Node<K,V> next) {
+        return new Node<>(p.hash, p.key, p.value, next);
+    }
+
+    /** 创建一个红黑树节点 */
+    TreeNode<K,V> newTreeNode(int hash, K key, V value, Node<K,V> next) {
+        return new TreeNode<>(hash, key, value, next);
+    }
+
+    /** 从普通的Node转换为TreeNode */
+    TreeNode<K,V> replacementTreeNode(Node<K,V> p, Node<K,V> next) {
+        return new TreeNode<>(p.hash, p.key, p.value, next);
+    }
+
+    /** 重置为初始的默认状态，由clone和readObject调用 */
+    void reinitialize() {
+        table = null;
+        counters = newCounters();
+        oldTable = null;
+        transferIndex = 0;
+        entrySet = null;
+        keySet = null;
+        values = null;
+        modCount = 0;
+        threshold = 0;
+        size = 0;
+    }
+
+    // 回调允许LinkedHashMap后期操作
+    void afterNodeAccess(Node<K,V> p) { }
+    void afterNodeInsertion(boolean evict) { }
+    void afterNodeRemoval(Node<K,V> p) { }
+
+    /* ------------------------------------------------------------ */
+    // Tree bins
+
+    /**
+     * 红黑树的节点，继承LinkedHashMap.Entry，所以既可以作为普通节点，也可以作为链表节点
+     *
+     * 树首先根据hash排序，hash相同的时候如果key是同一个Comparable类型的，使用compareTo排序，
+     * 否则使用tieBreakOrder决定顺序，这样即使在大量hash冲突的情况下查找也能保持O(log n)，
+     * HashMap使用HashingStrategy的时候，用策略的比较器代替compareTo
+     * */
+    static final class TreeNode<K,V> extends LinkedHashMap.Entry<K,V>{
+        TreeNode<K,V> parent;
+        TreeNode<K,V> left;
+        TreeNode<K,V> right;
+        TreeNode<K,V> prev;// 删除的时候需要解除next的链接
+        boolean red;
+        TreeNode(int hash, K key, V value, Node<K, V> next) {super(hash, key, value, next);}
+
+        /**
+         * 返回树中本结点的根节点
+         * */
+        final TreeNode<K,V> root(){
+            for(TreeNode<K,V> r=this,p;;){
+                if((p=r.parent) == null)
+                    return r;
+                r = p;
+            }
+        }
+
+        /**
+         * 确保root是bin中的第一个节点
+         * */
+        static <K,V> void moveRootToFront(Node<K,V>[] tab, TreeNode<K,V> root) {
+            int n;
+            if (root != null && tab != null && (n = tab.length) > 0) {
+                int index = (n - 1) & root.hash;
+                TreeNode<K,V> first = (TreeNode<K,V>)tab[index];
+                if (root != first) {
+                    Node<K,V> rn;
+                    tab[index] = root;
+                    // 把root从双向链表中摘除，然后放到链表的头部
+                    TreeNode<K,V> rp = root.prev;
+                    if ((rn = root.next) != null)
+                        ((TreeNode<K,V>)rn).prev = rp;
+                    if (rp != null)
+                        rp.next = rn;
+                    if (first != null)
+                        first.prev = root;
+                    root.next = first;
+                    root.prev = null;
+                }
+                assert checkInvariants(root);
+            }
+        }
+
+        /**
+         * 查找树中的元素
+         * 有策略的时候使用策略判断相等，并且只用策略的比较器决定方向，不使用key的Comparable
+         * */
+        final TreeNode<K,V> find(HashingStrategy<?> s, int h, Object k, Class<?> kc) {
+            // 记录当前节点
+            TreeNode<K,V> p = this;
+            do {
+                int ph, dir; K pk;
+                // 获取到左节点，右节点
+                TreeNode<K,V> pl = p.left, pr = p.right, q;
+                // 如果当前节点的hash大于传入的需要查找的hash，
+                // 指向左节点
+                if ((ph = p.hash) > h)
+                    p = pl;
+                // 指向右节点
+                else if (ph < h)
+                    p = pr;
+                // 如果查找到，返回
+                else if ((pk = p.key) == k || (k != null && keyEquals(s, k, pk)))
+                    return p;
+                // 出现hash冲突的，如果左节点为null，指向右节点
+                else if (pl == null)
+                    p = pr;
+                // 如果右节点为null，指向左节点
+                else if (pr == null)
+                    p = pl;
+                // 比较传入的k元素的和当前节点的key的大小，
+                // 如果如果小于，p指向左节点，否则是右节点
+                else if (s != null ? (dir = compareWith(s, k, pk)) != 0 :
+                        (kc != null || (kc = comparableClassFor(k)) != null) &&
+                        (dir = compareComparables(kc, k, pk)) != 0)
+                    p = (dir < 0) ? pl : pr;
+                // 如果key是不能比较的，返回右节点
+                else if ((q = pr.find(s, h, k, kc)) != null)
+                    return q;
+                else
+                    p = pl;
+            } while (p != null);
+            return null;
+        }
+
+        /**
+         * 从根节点开始查找
+         * */
+        final TreeNode<K,V> getTreeNode(HashingStrategy<?> s, int h, Object k) {
+            return ((parent != null) ? root() : this).find(s, h, k, null);
+        }
+
+        /**
+         * 把以当前节点开始的TreeNode链表转换为红黑树
+         * */
+        final void treeify(HashingStrategy<?> s, Node<K,V>[] tab) {
+            TreeNode<K,V> root = null;
+            for (TreeNode<K,V> x = this, next; x != null; x = next) {
+                next = (TreeNode<K,V>)x.next;
+                x.left = x.right = null;
+                if (root == null) {
+                    x.parent = null;
+                    x.red = false;
+                    root = x;
+                }
+                else {
+                    K k = x.key;
+                    int h = x.hash;
+                    Class<?> kc = null;
+                    // 从根节点开始查找插入的位置
+                    for (TreeNode<K,V> p = root;;) {
+                        int dir, ph;
+                        K pk = p.key;
+                        if ((ph = p.hash) > h)
+                            dir = -1;
+                        else if (ph < h)
+                            dir = 1;
+                        else if (s != null ? (dir = compareWith(s, k, pk)) == 0 :
+                                (kc == null &&
+                                (kc = comparableClassFor(k)) == null) ||
+                                (dir = compareComparables(kc, k, pk)) == 0)
+                            dir = tieBreakOrder(k, pk);
+
+                        TreeNode<K,V> xp = p;
+                        if ((p = (dir <= 0) ? p.left : p.right) == null) {
+                            x.parent = xp;
+                            if (dir <= 0)
+                                xp.left = x;
+                            else
+                                xp.right = x;
+                            root = balanceInsertion(root, x);
+                            break;
+                        }
+                    }
+                }
+            }
+            moveRootToFront(tab, root);
+        }
+
+        /**
+         * 把以当前节点开始的TreeNode链表转换为普通的Node链表
+         * */
+        final Node<K,V> untreeify(HashMap<K,V> map) {
+            Node<K,V> hd = null, tl = null;
+            for (Node<K,V> q = this; q != null; q = q.next) {
+                Node<K,V> p = map.replacementNode(q, null);
+                if (tl == null)
+                    hd = p;
+                else
+                    tl.next = p;
+                tl = p;
+            }
+            return hd;
+        }
+
+        /**
+         * 往树中添加元素
+         * */
+        final TreeNode<K,V> putTreeVal(HashMap<K,V> map, Node<K,V>[] tab,
+                                       int h, K k, V v) {
+            Class<?> kc = null;
+            HashingStrategy<?> s = map.strategy;
+            boolean searched = false;
+            // 获取根节点
+            TreeNode<K,V> root = (parent != null) ? root() : this;
+            // 从根节点开始
+            for (TreeNode<K,V> p = root;;) {
+                int dir, ph; K pk;
+                if ((ph = p.hash) > h)
+                    dir = -1;
+                else if (ph < h)
+                    dir = 1;
+                else if ((pk = p.key) == k || (k != null && keyEquals(s, k, pk)))
+                    return p;
+                else if (s != null ? (dir = compareWith(s, k, pk)) == 0 :
+                        (kc == null &&
+                        (kc = comparableClassFor(k)) == null) ||
+                        (dir = compareComparables(kc, k, pk)) == 0) {
+                    if (!searched) {
+                        TreeNode<K,V> q, ch;
+                        searched = true;
+                        if (((ch = p.left) != null &&
+                                (q = ch.find(s, h, k, kc)) != null) ||
+                                ((ch = p.right) != null &&
+                                        (q = ch.find(s, h, k, kc)) != null))
+                            return q;
+                    }
+                    dir = tieBreakOrder(k, pk);
+                }
+
+                TreeNode<K,V> xp = p;
+                if ((p = (dir <= 0) ? p.left : p.right) == null) {
+                    Node<K,V> xpn = xp.next;
+                    TreeNode<K,V> x = map.newTreeNode(h, k, v, xpn);
+                    if (dir <= 0)
+                        xp.left = x;
+                    else
+                        xp.right = x;
+                    xp.next = x;
+                    x.parent = x.prev = xp;
+                    if (xpn != null)
+                        ((TreeNode<K,V>)xpn).prev = x;
+                    moveRootToFront(tab, balanceInsertion(root, x));
+                    return null;
+                }
+            }
+        }
+
+        /**
+         * 移除当前节点，当前节点必须存在于树中
+         *
+         * 这里比常规的红黑树删除要复杂，因为不能交换节点的内容，
+         * 迭代器持有的next节点必须保持有效，所以这里交换的是树的链接关系
+         * 如果删除之后树中的节点太少，会把bin转换为普通的链表
+         * */
+        final void removeTreeNode(HashMap<K,V> map, Node<K,V>[] tab,
+                                  boolean movable) {
+            int n;
+            if (tab == null || (n = tab.length) == 0)
+                return;
+            int index = (n - 1) & hash;
+            TreeNode<K,V> first = (TreeNode<K,V>)tab[index], root = first, rl;
+            TreeNode<K,V> succ = (TreeNode<K,V>)next, pred = prev;
+            // 先从双向链表中摘除
+            if (pred == null)
+                tab[index] = first = succ;
+            else
+                pred.next = succ;
+            if (succ != null)
+                succ.prev = pred;
+            if (first == null)
+                return;
+            if (root.parent != null)
+                root = root.root();
+            // 树太小，转换为链表
+            if (root == null
+                    || (movable
+                    && (root.right == null
+                    || (rl = root.left) == null
+                    || rl.left == null))) {
+                tab[index] = first.untreeify(map);
+                return;
+            }
+            TreeNode<K,V> p = this, pl = left, pr = right, replacement;
+            if (pl != null && pr != null) {
+                // 找到后继节点s，然后交换p和s在树中的位置
+                TreeNode<K,V> s = pr, sl;
+                while ((sl = s.left) != null)
+                    s = sl;
+                boolean c = s.red; s.red = p.red; p.red = c; // swap colors
+                TreeNode<K,V> sr = s.right;
+                TreeNode<K,V> pp = p.parent;
+                if (s == pr) { // p was s's direct parent
+                    p.parent = s;
+                    s.right = p;
+                }
+                else {
+                    TreeNode<K,V> sp = s.parent;
+                    if ((p.parent = sp) != null) {
+                        if (s == sp.left)
+                            sp.left = p;
+                        else
+                            sp.right = p;
+                    }
+                    if ((s.right = pr) != null)
+                        pr.parent = s;
+                }
+                p.left = null;
+                if ((p.right = sr) != null)
+                    sr.parent = p;
+                if ((s.left = pl) != null)
+                    pl.parent = s;
+                if ((s.parent = pp) == null)
+                    root = s;
+                else if (p == pp.left)
+                    pp.left = s;
+                else
+                    pp.right = s;
+                if (sr != null)
+                    replacement = sr;
+                else
+                    replacement = p;
+            }
+            else if (pl != null)
+                replacement = pl;
+            else if (pr != null)
+                replacement = pr;
+            else
+                replacement = p;
+            if (replacement != p) {
+                TreeNode<K,V> pp = replacement.parent = p.parent;
+                if (pp == null)
+                    root = replacement;
+                else if (p == pp.left)
+                    pp.left = replacement;
+                else
+                    pp.right = replacement;
+                p.left = p.right = p.parent = null;
+            }
+
+            TreeNode<K,V> r = p.red ? root : balanceDeletion(root, replacement);
+
+            if (replacement == p) {  // detach
+                TreeNode<K,V> pp = p.parent;
+                p.parent = null;
+                if (pp != null) {
+                    if (p == pp.left)
+                        pp.left = null;
+                    else if (p == pp.right)
+                        pp.right = null;
+                }
+            }
+            if (movable)
+                moveRootToFront(tab, r);
+        }
+
+        /**
+         * 在resize的时候把树拆分为lo和hi两个树，
+         * 如果拆分之后的树太小，转换为普通的链表
+         *
+         * @param map 当前的HashMap
+         * @param tab 新的table
+         * @param index 拆分的bin在旧table中的索引
+         * @param bit 旧table的容量，用于决定节点留在index还是移动到index + bit
+         * */
+        final void split(HashMap<K,V> map, Node<K,V>[] tab, int index, int bit) {
+            TreeNode<K,V> b = this;
+            // 依然使用缓存的hash把节点分配到lo和hi两个链表，保持原有的顺序
+            TreeNode<K,V> loHead = null, loTail = null;
+            TreeNode<K,V> hiHead = null, hiTail = null;
+            int lc = 0, hc = 0;
+            for (TreeNode<K,V> e = b, next; e != null; e = next) {
+                next = (TreeNode<K,V>)e.next;
+                e.next = null;
+                if ((e.hash & bit) == 0) {
+                    if ((e.prev = loTail) == null)
+                        loHead = e;
+                    else
+                        loTail.next = e;
+                    loTail = e;
+                    ++lc;
+                }
+                else {
+                    if ((e.prev = hiTail) == null)
+                        hiHead = e;
+                    else
+                        hiTail.next = e;
+                    hiTail = e;
+                    ++hc;
+                }
+            }
+
+            if (loHead != null) {
+                if (lc <= UNTREEIFY_THRESHOLD)
+                    tab[index] = loHead.untreeify(map);
+                else {
+                    tab[index] = loHead;
+                    // 如果hi为空，原来的树结构依然有效
+                    if (hiHead != null)
+                        loHead.treeify(map.strategy, tab);
+                }
+            }
+            if (hiHead != null) {
+                if (hc <= UNTREEIFY_THRESHOLD)
+                    tab[index + bit] = hiHead.untreeify(map);
+                else {
+                    tab[index + bit] = hiHead;
+                    if (loHead != null)
+                        hiHead.treeify(map.strategy, tab);
+                }
+            }
+        }
+
+        /* ------------------------------------------------------------ */
+        // 红黑树的相关方法，来自CLR
+
+        /** 左旋 */
+        static <K,V> TreeNode<K,V> rotateLeft(TreeNode<K,V> root,
+                                              TreeNode<K,V> p) {
+            TreeNode<K,V> r, pp, rl;
+            if (p != null && (r = p.right) != null) {
+                if ((rl = p.right = r.left) != null)
+                    rl.parent = p;
+                if ((pp = r.parent = p.parent) == null)
+                    (root = r).red = false;
+                else if (pp.left == p)
+                    pp.left = r;
+                else
+                    pp.right = r;
+                r.left = p;
+                p.parent = r;
+            }
+            return root;
+        }
+
+        /** 右旋 */
+        static <K,V> TreeNode<K,V> rotateRight(TreeNode<K,V> root,
+                                               TreeNode<K,V> p) {
+            TreeNode<K,V> l, pp, lr;
+            if (p != null && (l = p.left) != null) {
+                if ((lr = p.left = l.right) != null)
+                    lr.parent = p;
+                if ((pp = l.parent = p.parent) == null)
+                    (root = l).red = false;
+                else if (pp.right == p)
+                    pp.right = l;
+                else
+                    pp.left = l;
+                l.right = p;
+                p.parent = l;
+            }
+            return root;
+        }
+
+        /** 插入节点x之后重新平衡，返回新的根节点 */
+        static <K,V> TreeNode<K,V> balanceInsertion(TreeNode<K,V> root,
+                                                    TreeNode<K,V> x) {
+            x.red = true;
+            for (TreeNode<K,V> xp, xpp, xppl, xppr;;) {
+                // x是根节点
+                if ((xp = x.parent) == null) {
+                    x.red = false;
+                    return x;
+                }
+                // 父节点是黑色的，或者父节点是根节点
+                else if (!xp.red || (xpp = xp.parent) == null)
+                    return root;
+                if (xp == (xppl = xpp.left)) {
+                    // 叔叔节点是红色的，重新着色然后继续向上检查
+                    if ((xppr = xpp.right) != null && xppr.red) {
+                        xppr.red = false;
+                        xp.red = false;
+                        xpp.red = true;
+                        x = xpp;
+                    }
+                    else {
+                        if (x == xp.right) {
+                            root = rotateLeft(root, x = xp);
+                            xpp = (xp = x.parent) == null ? null : xp.parent;
+                        }
+                        if (xp != null) {
+                            xp.red = false;
+                            if (xpp != null) {
+                                xpp.red = true;
+                                root = rotateRight(root, xpp);
+                            }
+                        }
+                    }
+                }
+                else {
+                    if (xppl != null && xppl.red) {
+                        xppl.red = false;
+                        xp.red = false;
+                        xpp.red = true;
+                        x = xpp;
+                    }
+                    else {
+                        if (x == xp.left) {
+                            root = rotateRight(root, x = xp);
+                            xpp = (xp = x.parent) == null ? null : xp.parent;
+                        }
+                        if (xp != null) {
+                            xp.red = false;
+                            if (xpp != null) {
+                                xpp.red = true;
+                                root = rotateLeft(root, xpp);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        /** 删除节点之后重新平衡，返回新的根节点 */
+        static <K,V> TreeNode<K,V> balanceDeletion(TreeNode<K,V> root,
+                                                   TreeNode<K,V> x) {
+            for (TreeNode<K,V> xp, xpl, xpr;;) {
+                if (x == null || x == root)
+                    return root;
+                else if ((xp = x.parent) == null) {
+                    x.red = false;
+                    return x;
+                }
+                else if (x.red) {
+                    x.red = false;
+                    return root;
+                }
+                else if ((xpl = xp.left) == x) {
+                    if ((xpr = xp.right) != null && xpr.red) {
+                        xpr.red = false;
+                        xp.red = true;
+                        root = rotateLeft(root, xp);
+                        xpr = (xp = x.parent) == null ? null : xp.right;
+                    }
+                    if (xpr == null)
+                        x = xp;
+                    else {
+                        TreeNode<K,V> sl = xpr.left, sr = xpr.right;
+                        if ((sr == null || !sr.red) &&
+                                (sl == null || !sl.red)) {
+                            xpr.red = true;
+                            x = xp;
+                        }
+                        else {
+                            if (sr == null || !sr.red) {
+                                if (sl != null)
+                                    sl.red = false;
+                                xpr.red = true;
+                                root = rotateRight(root, xpr);
+                                xpr = (xp = x.parent) == null ?
+                                        null : xp.right;
+                            }
+                            if (xpr != null) {
+                                xpr.red = (xp == null) ? false : xp.red;
+                                if ((sr = xpr.right) != null)
+                                    sr.red = false;
+                            }
+                            if (xp != null) {
+                                xp.red = false;
+                                root = rotateLeft(root, xp);
+                            }
+                            x = root;
+                        }
+                    }
+                }
+                else { // symmetric
+                    if (xpl != null && xpl.red) {
+                        xpl.red = false;
+                        xp.red = true;
+                        root = rotateRight(root, xp);
+                        xpl = (xp = x.parent) == null ? null : xp.left;
+                    }
+                    if (xpl == null)
+                        x = xp;
+                    else {
+                        TreeNode<K,V> sl = xpl.left, sr = xpl.right;
+                        if ((sl == null || !sl.red) &&
+                                (sr == null || !sr.red)) {
+                            xpl.red = true;
+                            x = xp;
+                        }
+                        else {
+                            if (sl == null || !sl.red) {
+                                if (sr != null)
+                                    sr.red = false;
+                                xpl.red = true;
+                                root = rotateLeft(root, xpl);
+                                xpl = (xp = x.parent) == null ?
+                                        null : xp.left;
+                            }
+                            if (xpl != null) {
+                                xpl.red = (xp == null) ? false : xp.red;
+                                if ((sl = xpl.left) != null)
+                                    sl.red = false;
+                            }
+                            if (xp != null) {
+                                xp.red = false;
+                                root = rotateRight(root, xp);
+                            }
+                            x = root;
+                        }
+                    }
+                }
+            }
+        }
+
+        /** 递归检查树的不变式，只在断言中使用 */
+        static <K,V> boolean checkInvariants(TreeNode<K,V> t) {
+            TreeNode<K,V> tp = t.parent, tl = t.left, tr = t.right,
+                    tb = t.prev, tn = (TreeNode<K,V>)t.next;
+            if (tb != null && tb.next != t)
+                return false;
+            if (tn != null && tn.prev != t)
+                return false;
+            if (tp != null && t != tp.left && t != tp.right)
+                return false;
+            if (tl != null && (tl.parent != t || tl.hash > t.hash))
+                return false;
+            if (tr != null && (tr.parent != t || tr.hash < t.hash))
+                return false;
+            if (t.red && tl != null && tl.red && tr != null && tr.red)
+                return false;
+            if (tl != null && !checkInvariants(tl))
+                return false;
+            if (tr != null && !checkInvariants(tr))
+                return false;
+            return true;
+        }
+    }
+
+    /**
+     * 当hash相同并且key不能比较的时候，使用类名和identityHashCode决定插入的顺序
+     * 这里不需要全序，只需要一个一致的插入规则来保持平衡
+     * */
+    static int tieBreakOrder(Object a, Object b) {
+        int d;
+        if (a == null || b == null ||
+                (d = a.getClass().getName().
+                        compareTo(b.getClass().getName())) == 0)
+            d = (System.identityHashCode(a) <= System.identityHashCode(b) ?
+                    -1 : 1);
+        return d;
     }
 
     public static void main(String[] args) {
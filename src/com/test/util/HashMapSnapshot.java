@@ -0,0 +1,518 @@
+package com.test.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * 把HashMap写成一个可以直接用FileChannel.map打开的快照文件，重新启动的时候不需要反序列化
+ *
+ * 文件的格式：
+ * <pre>
+ *     header   64字节，见下面的常量
+ *     index    long[bins + 1]，第i个bin的记录从index[i]开始，到index[i + 1]结束
+ *     records  [int hash][int keyLength][int valueLength][key][value]，同一个bin的记录相邻
+ * </pre>
+ * 长度为-1表示null，一个bin平均只有几条记录，而且在文件中是连续的，
+ * 查找的时候只比较hash和编码之后的key，命中之后才解码value
+ *
+ * 文件按照CHUNK大小分段映射，每一段额外多映射最长的一条记录的长度，所以任何记录都可以在它开始的那一段中完整读取
+ *
+ * open返回的SnapshotMap在访问的时候才从映射的区域中解码键值对，打开的开销只和页错误有关，和键值对的数量无关，
+ * 修改保存在堆上的一个HashMap中，不会写回文件
+ *
+ * key的编码必须是规范的：相等的key编码之后的字节也相同，
+ * 并且hashCode在不同的进程中必须相同，例如String、Long、Integer，不能使用Object.hashCode
+ * */
+public final class HashMapSnapshot {
+    private HashMapSnapshot() {
+    }
+
+    /** 文件开头的魔数 */
+    static final long MAGIC = 0x484D534E41505348L; // "HMSNAPSH"
+
+    static final int VERSION = 1;
+
+    /** header的长度 */
+    static final int HEADER = 64;
+
+    /** 每一段映射的大小 */
+    static final long CHUNK = 1L << 30;
+
+    /** 每条记录的头部 */
+    static final int RECORD_HEADER = 12;
+
+    // header中各个字段的偏移
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 8;
+    private static final int FLAGS_OFFSET = 12;
+    private static final int SIZE_OFFSET = 16;
+    private static final int BINS_OFFSET = 24;
+    private static final int MAX_RECORD_OFFSET = 28;
+    private static final int LENGTH_OFFSET = 32;
+
+    /** flags：快照是用HashingStrategy计算的哈希值 */
+    static final int FLAG_STRATEGY = 1;
+
+    /** key和value与字节之间的转换 */
+    public interface Codec<T> {
+        /** 编码为字节，相等的值必须得到相同的字节，value不会是null */
+        byte[] encode(T value);
+
+        /** 从buf的[offset, offset + length)中解码 */
+        T decode(ByteBuffer buf, int offset, int length);
+
+        /** UTF-8编码的String */
+        Codec<String> STRING = new Codec<String>() {
+            public byte[] encode(String value) {
+                return value.getBytes(StandardCharsets.UTF_8);
+            }
+
+            public String decode(ByteBuffer buf, int offset, int length) {
+                byte[] b = new byte[length];
+                for (int i = 0; i < length; i++)
+                    b[i] = buf.get(offset + i);
+                return new String(b, StandardCharsets.UTF_8);
+            }
+        };
+
+        /** 大端的8个字节 */
+        Codec<Long> LONG = new Codec<Long>() {
+            public byte[] encode(Long value) {
+                return ByteBuffer.allocate(8).putLong(0, value).array();
+            }
+
+            public Long decode(ByteBuffer buf, int offset, int length) {
+                return buf.getLong(offset);
+            }
+        };
+
+        /** 大端的4个字节 */
+        Codec<Integer> INTEGER = new Codec<Integer>() {
+            public byte[] encode(Integer value) {
+                return ByteBuffer.allocate(4).putInt(0, value).array();
+            }
+
+            public Integer decode(ByteBuffer buf, int offset, int length) {
+                return buf.getInt(offset);
+            }
+        };
+
+        /** 原样保存的byte[]，作为key的时候需要配合HashingStrategy.byteArrays() */
+        Codec<byte[]> BYTES = new Codec<byte[]>() {
+            public byte[] encode(byte[] value) {
+                return value;
+            }
+
+            public byte[] decode(ByteBuffer buf, int offset, int length) {
+                byte[] b = new byte[length];
+                for (int i = 0; i < length; i++)
+                    b[i] = buf.get(offset + i);
+                return b;
+            }
+        };
+    }
+
+    /** 快照中bin的数量，平均每个bin大约4条记录 */
+    static int binsFor(int size) {
+        return HashMap.tableSizeFor(Math.max(1, size >>> 2));
+    }
+
+    /**
+     * 把map写入file，已经存在的文件会被覆盖
+     *
+     * 先遍历一次map计算每个bin的字节数，再遍历一次把每条记录写到它所在的bin的位置，
+     * 写入期间map不能被修改，正在渐进式扩容的map会先完成扩容
+     * */
+    public static <K,V> void write(HashMap<K,V> map, Path file,
+                                   Codec<? super K> keyCodec, Codec<? super V> valueCodec) throws IOException {
+        Objects.requireNonNull(keyCodec);
+        Objects.requireNonNull(valueCodec);
+        if (map.oldTable != null)
+            map.finishResize();
+        int size = map.size, bins = binsFor(size), mc = map.modCount;
+        long[] cursor = new long[bins + 1];
+        int maxRecord = 0;
+        HashMap.Node<K,V>[] tab = map.table;
+        if (tab != null) {
+            for (HashMap.Node<K,V> e : tab) {
+                for (; e != null; e = e.next) {
+                    int len = RECORD_HEADER + length(keyCodec, e.key) + length(valueCodec, e.value);
+                    maxRecord = Math.max(maxRecord, len);
+                    cursor[(e.hash & (bins - 1)) + 1] += len;
+                }
+            }
+        }
+        if (maxRecord > Integer.MAX_VALUE - CHUNK)
+            throw new IllegalArgumentException("record too large: " + maxRecord);
+        // 前缀和得到每个bin的开始位置
+        cursor[0] = HEADER + 8L * (bins + 1);
+        for (int i = 0; i < bins; i++)
+            cursor[i + 1] += cursor[i];
+        long length = cursor[bins];
+
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer[] chunks = map(ch, FileChannel.MapMode.READ_WRITE, length, maxRecord);
+            try {
+                ByteBuffer h = chunks[0];
+                h.putLong(MAGIC_OFFSET, MAGIC);
+                h.putInt(VERSION_OFFSET, VERSION);
+                h.putInt(FLAGS_OFFSET, map.strategy != null ? FLAG_STRATEGY : 0);
+                h.putLong(SIZE_OFFSET, size);
+                h.putInt(BINS_OFFSET, bins);
+                h.putInt(MAX_RECORD_OFFSET, maxRecord);
+                h.putLong(LENGTH_OFFSET, length);
+                for (int i = 0; i <= bins; i++)
+                    putLong(chunks, HEADER + 8L * i, cursor[i]);
+                if (tab != null) {
+                    for (HashMap.Node<K,V> e : tab) {
+                        for (; e != null; e = e.next) {
+                            int bin = e.hash & (bins - 1);
+                            cursor[bin] = writeRecord(chunks, cursor[bin], e.hash,
+                                    encode(keyCodec, e.key), encode(valueCodec, e.value));
+                        }
+                    }
+                }
+                if (map.modCount != mc)
+                    throw new ConcurrentModificationException();
+                for (ByteBuffer c : chunks)
+                    ((MappedByteBuffer) c).force();
+            } finally {
+                DirectBuffers.free(chunks);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int length(Codec<?> codec, Object v) {
+        return v == null ? 0 : ((Codec<Object>) codec).encode(v).length;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static byte[] encode(Codec<?> codec, Object v) {
+        return v == null ? null : ((Codec<Object>) codec).encode(v);
+    }
+
+    private static long writeRecord(ByteBuffer[] chunks, long pos, int hash, byte[] k, byte[] v) {
+        ByteBuffer b = chunks[(int) (pos / CHUNK)];
+        int o = (int) (pos % CHUNK);
+        b.putInt(o, hash);
+        b.putInt(o + 4, k == null ? -1 : k.length);
+        b.putInt(o + 8, v == null ? -1 : v.length);
+        o += RECORD_HEADER;
+        if (k != null) {
+            for (byte x : k)
+                b.put(o++, x);
+        }
+        if (v != null) {
+            for (byte x : v)
+                b.put(o++, x);
+        }
+        return pos + RECORD_HEADER + (k == null ? 0 : k.length) + (v == null ? 0 : v.length);
+    }
+
+    private static void putLong(ByteBuffer[] chunks, long pos, long v) {
+        chunks[(int) (pos / CHUNK)].putLong((int) (pos % CHUNK), v);
+    }
+
+    private static long getLong(ByteBuffer[] chunks, long pos) {
+        return chunks[(int) (pos / CHUNK)].getLong((int) (pos % CHUNK));
+    }
+
+    /** 每一段从i * CHUNK开始，多映射overlap个字节，最后一段到文件结尾 */
+    private static ByteBuffer[] map(FileChannel ch, FileChannel.MapMode mode, long length, int overlap)
+            throws IOException {
+        int count = (int) Math.max(1, (length + CHUNK - 1) / CHUNK);
+        ByteBuffer[] chunks = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long start = i * CHUNK, end = Math.min(length, start + CHUNK + overlap);
+            chunks[i] = ch.map(mode, start, end - start).order(ByteOrder.BIG_ENDIAN);
+        }
+        return chunks;
+    }
+
+    /** 打开快照，使用key自身的hashCode */
+    public static <K,V> SnapshotMap<K,V> open(Path file, Codec<K> keyCodec, Codec<V> valueCodec)
+            throws IOException {
+        return open(file, keyCodec, valueCodec, null);
+    }
+
+    /**
+     * 打开快照，strategy必须和写入快照的HashMap使用的策略相同
+     * @throws java.io.InvalidObjectException 文件格式不对，或者strategy和快照不一致
+     * */
+    public static <K,V> SnapshotMap<K,V> open(Path file, Codec<K> keyCodec, Codec<V> valueCodec,
+                                              HashingStrategy<? super K> strategy) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileLength = ch.size();
+            if (fileLength < HEADER)
+                throw new java.io.InvalidObjectException("Not a snapshot: " + file);
+            ByteBuffer h = ch.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+            try {
+                if (h.getLong(MAGIC_OFFSET) != MAGIC || h.getInt(VERSION_OFFSET) != VERSION)
+                    throw new java.io.InvalidObjectException("Not a snapshot: " + file);
+                if (((h.getInt(FLAGS_OFFSET) & FLAG_STRATEGY) != 0) != (strategy != null))
+                    throw new java.io.InvalidObjectException("HashingStrategy does not match the snapshot");
+                long length = h.getLong(LENGTH_OFFSET);
+                if (length != fileLength)
+                    throw new java.io.InvalidObjectException("Truncated snapshot: " + file);
+                ByteBuffer[] chunks = map(ch, FileChannel.MapMode.READ_ONLY, length, h.getInt(MAX_RECORD_OFFSET));
+                return new SnapshotMap<>(chunks, (int) h.getLong(SIZE_OFFSET), h.getInt(BINS_OFFSET),
+                        keyCodec, valueCodec, strategy);
+            } finally {
+                DirectBuffers.free(new ByteBuffer[] {h});
+            }
+        }
+    }
+
+    /**
+     * 映射快照文件的Map，查找的时候才解码，修改保存在堆上的overlay中
+     *
+     * overlay中的value是REMOVED表示快照中的这个key已经被删除，
+     * 遍历的时候先遍历快照中没有被overlay覆盖的记录，再遍历overlay
+     * */
+    public static final class SnapshotMap<K,V> extends AbstractMap<K,V> implements AutoCloseable {
+        private static final Object REMOVED = new Object();
+
+        private ByteBuffer[] chunks;
+        private final int bins;
+        private final Codec<K> keyCodec;
+        private final Codec<V> valueCodec;
+        private final HashingStrategy<? super K> strategy;
+        private final HashMap<K,Object> overlay;
+        private int size;
+        private int modCount;
+
+        SnapshotMap(ByteBuffer[] chunks, int size, int bins, Codec<K> keyCodec, Codec<V> valueCodec,
+                    HashingStrategy<? super K> strategy) {
+            this.chunks = chunks;
+            this.size = size;
+            this.bins = bins;
+            this.keyCodec = keyCodec;
+            this.valueCodec = valueCodec;
+            this.strategy = strategy;
+            this.overlay = strategy == null ? new HashMap<>() : new HashMap<>(strategy);
+        }
+
+        private ByteBuffer[] chunks() {
+            ByteBuffer[] cs;
+            if ((cs = chunks) == null)
+                throw new IllegalStateException("closed");
+            return cs;
+        }
+
+        /** 在快照中查找key，返回记录的位置，不存在的时候返回-1 */
+        private long findRecord(Object key) {
+            ByteBuffer[] cs = chunks();
+            byte[] k;
+            int hash;
+            try {
+                @SuppressWarnings("unchecked")
+                K kk = (K) key;
+                k = key == null ? null : keyCodec.encode(kk);
+                hash = overlay.keyHash(key);
+            } catch (ClassCastException e) {
+                return -1;
+            }
+            int bin = hash & (bins - 1);
+            long pos = getLong(cs, HEADER + 8L * bin), end = getLong(cs, HEADER + 8L * (bin + 1));
+            while (pos < end) {
+                ByteBuffer b = cs[(int) (pos / CHUNK)];
+                int o = (int) (pos % CHUNK), kl = b.getInt(o + 4), vl = b.getInt(o + 8);
+                if (b.getInt(o) == hash && sameBytes(b, o + RECORD_HEADER, kl, k))
+                    return pos;
+                pos += RECORD_HEADER + Math.max(kl, 0) + Math.max(vl, 0);
+            }
+            return -1;
+        }
+
+        private static boolean sameBytes(ByteBuffer b, int o, int len, byte[] k) {
+            if (k == null)
+                return len == -1;
+            if (len != k.length)
+                return false;
+            for (int i = 0; i < len; i++) {
+                if (b.get(o + i) != k[i])
+                    return false;
+            }
+            return true;
+        }
+
+        private V valueAt(long pos) {
+            ByteBuffer b = chunks()[(int) (pos / CHUNK)];
+            int o = (int) (pos % CHUNK), kl = Math.max(b.getInt(o + 4), 0), vl = b.getInt(o + 8);
+            return vl < 0 ? null : valueCodec.decode(b, o + RECORD_HEADER + kl, vl);
+        }
+
+        private K keyAt(long pos) {
+            ByteBuffer b = chunks()[(int) (pos / CHUNK)];
+            int o = (int) (pos % CHUNK), kl = b.getInt(o + 4);
+            return kl < 0 ? null : keyCodec.decode(b, o + RECORD_HEADER, kl);
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean containsKey(Object key) {
+            HashMap.Node<K,Object> e;
+            if ((e = overlay.getNode(overlay.keyHash(key), key)) != null)
+                return e.value != REMOVED;
+            return findRecord(key) >= 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        public V get(Object key) {
+            HashMap.Node<K,Object> e;
+            if ((e = overlay.getNode(overlay.keyHash(key), key)) != null)
+                return e.value == REMOVED ? null : (V) e.value;
+            long pos = findRecord(key);
+            return pos < 0 ? null : valueAt(pos);
+        }
+
+        public V put(K key, V value) {
+            boolean present = containsKey(key);
+            V old = present ? get(key) : null;
+            overlay.put(key, value);
+            if (!present)
+                ++size;
+            ++modCount;
+            return old;
+        }
+
+        public V remove(Object key) {
+            if (!containsKey(key))
+                return null;
+            V old = get(key);
+            @SuppressWarnings("unchecked")
+            K k = (K) key;
+            if (findRecord(key) >= 0)
+                overlay.put(k, REMOVED);
+            else
+                overlay.remove(key);
+            --size;
+            ++modCount;
+            return old;
+        }
+
+        /** 快照中的记录保留在文件中，overlay把它们全部标记为删除 */
+        public void clear() {
+            for (Map.Entry<K,V> e : entrySet())
+                overlay.put(e.getKey(), REMOVED);
+            size = 0;
+            ++modCount;
+        }
+
+        /** 把所有的键值对复制到一个新的HashMap */
+        public HashMap<K,V> toHashMap() {
+            HashMap<K,V> m = strategy == null ?
+                    new HashMap<>(Math.max(16, (int) (size / 0.75f) + 1)) :
+                    new HashMap<>(Math.max(16, (int) (size / 0.75f) + 1), 0.75f, strategy);
+            for (Map.Entry<K,V> e : entrySet())
+                m.put(e.getKey(), e.getValue());
+            return m;
+        }
+
+        /**
+         * 解除文件的映射，之后不能再访问快照中的数据，
+         * 已经返回的key、value和Entry都是解码之后的对象，仍然有效，
+         * 但是还没有遍历完的迭代器失效，next会抛出IllegalStateException
+         * */
+        public void close() {
+            ByteBuffer[] cs = chunks;
+            if (cs != null) {
+                chunks = null;
+                DirectBuffers.free(cs);
+            }
+        }
+
+        private transient Set<Map.Entry<K,V>> entrySet;
+
+        public Set<Map.Entry<K,V>> entrySet() {
+            Set<Map.Entry<K,V>> es;
+            return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+        }
+
+        final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+            public int size() {
+                return size;
+            }
+
+            public Iterator<Map.Entry<K,V>> iterator() {
+                return new EntryIterator();
+            }
+
+            public boolean contains(Object o) {
+                if (!(o instanceof Map.Entry))
+                    return false;
+                Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+                Object k = e.getKey();
+                return containsKey(k) && Objects.equals(get(k), e.getValue());
+            }
+        }
+
+        /** 先顺序扫描快照中的记录，然后遍历overlay中不是REMOVED的键值对 */
+        final class EntryIterator implements Iterator<Map.Entry<K,V>> {
+            final long end = getLong(chunks(), HEADER + 8L * bins);
+            long pos = HEADER + 8L * (bins + 1);
+            Iterator<Map.Entry<K,Object>> overlayIterator;
+            Map.Entry<K,V> next;
+            int expectedModCount = modCount;
+
+            EntryIterator() {
+                advance();
+            }
+
+            @SuppressWarnings("unchecked")
+            private void advance() {
+                next = null;
+                while (pos < end) {
+                    long p = pos;
+                    // 每一步都重新检查，迭代中途close之后不会读取已经解除映射的内存
+                    ByteBuffer b = chunks()[(int) (p / CHUNK)];
+                    int o = (int) (p % CHUNK);
+                    pos += RECORD_HEADER + Math.max(b.getInt(o + 4), 0) + Math.max(b.getInt(o + 8), 0);
+                    K k = keyAt(p);
+                    if (overlay.isEmpty() || !overlay.containsKey(k)) {
+                        next = new SimpleImmutableEntry<>(k, valueAt(p));
+                        return;
+                    }
+                }
+                if (overlayIterator == null)
+                    overlayIterator = overlay.entrySet().iterator();
+                while (overlayIterator.hasNext()) {
+                    Map.Entry<K,Object> e = overlayIterator.next();
+                    if (e.getValue() != REMOVED) {
+                        next = new SimpleImmutableEntry<>(e.getKey(), (V) e.getValue());
+                        return;
+                    }
+                }
+            }
+
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            public Map.Entry<K,V> next() {
+                if (modCount != expectedModCount)
+                    throw new ConcurrentModificationException();
+                chunks();
+                Map.Entry<K,V> e = next;
+                if (e == null)
+                    throw new NoSuchElementException();
+                advance();
+                return e;
+            }
+        }
+    }
+}
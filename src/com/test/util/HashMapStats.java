@@ -0,0 +1,220 @@
+package com.test.util;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+
+/**
+ * HashMap内部状态的只读快照，由HashMap.stats()创建
+ *
+ * bin的长度分布、树化的bin数量和实际的负载在创建快照的时候遍历table得到，总是可用；
+ * 扩容次数、扩容耗时、树化次数和getNode的探测长度需要在运行时计数，
+ * 只有设置系统属性 com.test.util.HashMap.stats=true 之后才会统计，否则都是0，
+ * 没有开启的时候，HashMap中的计数点只检查一个static final的标志，JIT会把整个分支消除掉
+ *
+ * 使用渐进式扩容的时候，扩容耗时只包括创建新table和一次性完成的迁移，不包括分摊到put/get/remove中的迁移
+ *
+ * 还可以通过register把一个HashMap注册成MXBean，名字是 com.test.util:type=HashMap,name=...，
+ * 每次读取属性都会重新创建快照，HashMap不是线程安全的，所以读到的是一个近似的结果
+ * */
+public final class HashMapStats {
+    private static final String STATS_PROPERTY = "com.test.util.HashMap.stats";
+
+    /** 是否开启运行时的计数 */
+    public static final boolean ENABLED = AccessController.doPrivileged(
+            (PrivilegedAction<Boolean>) () -> Boolean.getBoolean(STATS_PROPERTY));
+
+    /** bin长度分布的最后一项统计长度大于等于这个值的bin */
+    public static final int MAX_HISTOGRAM_LENGTH = HashMap.TREEIFY_THRESHOLD;
+
+    /** 每个HashMap的运行时计数，只在ENABLED的时候创建 */
+    static final class Counters {
+        long resizeCount;
+        long resizeNanos;
+        long treeifyCount;
+        /** 在链表bin中的查找次数和比较过的节点总数 */
+        long getCount;
+        long probeCount;
+        /** 在树bin中的查找次数 */
+        long treeGetCount;
+    }
+
+    private final int size;
+    private final int capacity;
+    private final float loadFactor;
+    private final long[] binHistogram;
+    private final int maxBinLength;
+    private final int treeBins;
+    private final long resizeCount;
+    private final long resizeNanos;
+    private final long treeifyCount;
+    private final long getCount;
+    private final long probeCount;
+    private final long treeGetCount;
+
+    HashMapStats(int size, int capacity, float loadFactor, long[] binHistogram, int maxBinLength,
+                 int treeBins, Counters c) {
+        this.size = size;
+        this.capacity = capacity;
+        this.loadFactor = loadFactor;
+        this.binHistogram = binHistogram;
+        this.maxBinLength = maxBinLength;
+        this.treeBins = treeBins;
+        if (c == null)
+            c = new Counters();
+        this.resizeCount = c.resizeCount;
+        this.resizeNanos = c.resizeNanos;
+        this.treeifyCount = c.treeifyCount;
+        this.getCount = c.getCount;
+        this.probeCount = c.probeCount;
+        this.treeGetCount = c.treeGetCount;
+    }
+
+    /** 键值对的数量 */
+    public int getSize() {
+        return size;
+    }
+
+    /** table的长度，table还没有创建的时候是0 */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /** 构造时指定的负载因子 */
+    public float getLoadFactor() {
+        return loadFactor;
+    }
+
+    /** 实际的负载，也就是size / capacity */
+    public double getLoad() {
+        return capacity == 0 ? 0.0 : (double) size / capacity;
+    }
+
+    /**
+     * bin的长度分布，第i项是长度为i的bin的数量，
+     * 最后一项是长度大于等于MAX_HISTOGRAM_LENGTH的bin的数量，树化的bin按节点数计算长度
+     * */
+    public long[] getBinHistogram() {
+        return binHistogram.clone();
+    }
+
+    /** 最长的bin中的节点数 */
+    public int getMaxBinLength() {
+        return maxBinLength;
+    }
+
+    /** 当前已经转换为红黑树的bin的数量 */
+    public int getTreeBins() {
+        return treeBins;
+    }
+
+    /** 扩容的次数，不包括第一次创建table */
+    public long getResizeCount() {
+        return resizeCount;
+    }
+
+    /** 扩容累计的耗时 */
+    public long getResizeNanos() {
+        return resizeNanos;
+    }
+
+    /** 链表转换为红黑树的次数 */
+    public long getTreeifyCount() {
+        return treeifyCount;
+    }
+
+    /** getNode的调用次数，包括get、containsKey等 */
+    public long getGetCount() {
+        return getCount + treeGetCount;
+    }
+
+    /** 在树bin中完成的getNode的次数 */
+    public long getTreeGetCount() {
+        return treeGetCount;
+    }
+
+    /** 在链表bin中的getNode平均比较的节点数，空bin算作0 */
+    public double getAverageProbeLength() {
+        return getCount == 0 ? 0.0 : (double) probeCount / getCount;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("HashMapStats{size=").append(size)
+                .append(", capacity=").append(capacity)
+                .append(", load=").append(String.format("%.3f", getLoad()))
+                .append("/").append(loadFactor)
+                .append(", bins=[");
+        for (int i = 0; i < binHistogram.length; i++) {
+            if (i > 0)
+                sb.append(", ");
+            sb.append(i).append(i == binHistogram.length - 1 ? "+:" : ":").append(binHistogram[i]);
+        }
+        return sb.append("], maxBinLength=").append(maxBinLength)
+                .append(", treeBins=").append(treeBins)
+                .append(", resizes=").append(resizeCount)
+                .append(", resizeMillis=").append(resizeNanos / 1000000)
+                .append(", treeifies=").append(treeifyCount)
+                .append(", gets=").append(getGetCount())
+                .append(", avgProbe=").append(String.format("%.3f", getAverageProbeLength()))
+                .append('}').toString();
+    }
+
+    /** 注册的MXBean的名字 */
+    public static String objectName(String name) {
+        return "com.test.util:type=HashMap,name=" + ObjectName.quote(name);
+    }
+
+    /**
+     * 把map注册为MXBean，之后可以通过jconsole等工具查看，不再需要的时候必须调用unregister，
+     * 否则MBeanServer会一直持有map
+     * @throws IllegalArgumentException 名字已经被使用
+     * */
+    public static void register(String name, HashMap<?,?> map) {
+        java.util.Objects.requireNonNull(map);
+        AccessController.doPrivileged((PrivilegedAction<Void>) () -> {
+            try {
+                ManagementFactory.getPlatformMBeanServer()
+                        .registerMBean(new Monitor(map), new ObjectName(objectName(name)));
+            } catch (JMException e) {
+                throw new IllegalArgumentException(name, e);
+            }
+            return null;
+        });
+    }
+
+    /** 取消register注册的MXBean，不存在的时候什么都不做 */
+    public static void unregister(String name) {
+        AccessController.doPrivileged((PrivilegedAction<Void>) () -> {
+            try {
+                ManagementFactory.getPlatformMBeanServer()
+                        .unregisterMBean(new ObjectName(objectName(name)));
+            } catch (JMException ignore) {
+            }
+            return null;
+        });
+    }
+
+    /** 每次读取属性都重新创建快照 */
+    private static final class Monitor implements HashMapStatsMXBean {
+        private final HashMap<?,?> map;
+
+        Monitor(HashMap<?,?> map) {
+            this.map = map;
+        }
+
+        public int getSize()                  { return map.stats().getSize(); }
+        public int getCapacity()              { return map.stats().getCapacity(); }
+        public double getLoad()               { return map.stats().getLoad(); }
+        public long[] getBinHistogram()       { return map.stats().getBinHistogram(); }
+        public int getMaxBinLength()          { return map.stats().getMaxBinLength(); }
+        public int getTreeBins()              { return map.stats().getTreeBins(); }
+        public long getResizeCount()          { return map.stats().getResizeCount(); }
+        public long getResizeNanos()          { return map.stats().getResizeNanos(); }
+        public long getTreeifyCount()         { return map.stats().getTreeifyCount(); }
+        public long getGetCount()             { return map.stats().getGetCount(); }
+        public double getAverageProbeLength() { return map.stats().getAverageProbeLength(); }
+    }
+}
@@ -0,0 +1,41 @@
+package com.test.util;
+
+/**
+ * HashMapStats.register注册的JMX管理接口，名字是 com.test.util:type=HashMap,name=...
+ *
+ * 每个属性的含义和HashMapStats中同名的方法相同，运行时的计数需要开启 com.test.util.HashMap.stats
+ * */
+public interface HashMapStatsMXBean {
+    /** 键值对的数量 */
+    int getSize();
+
+    /** table的长度 */
+    int getCapacity();
+
+    /** 实际的负载 */
+    double getLoad();
+
+    /** bin的长度分布 */
+    long[] getBinHistogram();
+
+    /** 最长的bin中的节点数 */
+    int getMaxBinLength();
+
+    /** 已经转换为红黑树的bin的数量 */
+    int getTreeBins();
+
+    /** 扩容的次数 */
+    long getResizeCount();
+
+    /** 扩容累计的耗时 */
+    long getResizeNanos();
+
+    /** 链表转换为红黑树的次数 */
+    long getTreeifyCount();
+
+    /** getNode的调用次数 */
+    long getGetCount();
+
+    /** getNode在链表bin中平均比较的节点数 */
+    double getAverageProbeLength();
+}
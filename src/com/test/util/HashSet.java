@@ -0,0 +1,458 @@
+package com.test.util;
+
+import com.test.util.function.Consumer;
+
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 开放定址的哈希集合
+ *
+ * java.util.HashSet内部是一个HashMap，每个元素都要占用一个32字节的Node和一个哈希桶，
+ * 这里的元素直接存放在一个Object数组里，每个元素只占一个引用(4或8字节)除以负载因子的空间，
+ * 查找时也只需要访问连续的数组
+ *
+ * 冲突使用线性探测解决，删除时把后续探测链上的元素向前移动(backward shift)，
+ * 因此表中没有墓碑，查找遇到空槽就可以立刻结束
+ *
+ * null槽位被用来表示"空"，所以null元素单独存放在下标n的位置上，
+ * 由containsNull标记它是否存在
+ *
+ * 表中不保存哈希值，扩容时会重新调用hashCode，
+ * 元素的hashCode计算代价很高并且没有缓存的时候，HashMap可能更合适
+ */
+public class HashSet<E> extends AbstractSet<E> implements Cloneable {
+    /** 默认的初始容量 */
+    static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /** 默认的负载因子 */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /** 存放元素的数组，长度为n+1，最后一个槽位留给null元素 */
+    transient Object[] key;
+
+    /** 表的长度，是2的幂 */
+    transient int n;
+
+    /** n - 1，用于计算下标 */
+    transient int mask;
+
+    /** 扩容的阈值 */
+    transient int maxFill;
+
+    /** 是否存在null元素 */
+    transient boolean containsNull;
+
+    /** 元素个数，包括null元素 */
+    transient int size;
+
+    /** 结构修改的次数，用于快速失败 */
+    transient int modCount;
+
+    /** 负载因子 */
+    final float loadFactor;
+
+    /**
+     * 根据期望的元素个数和负载因子构造，保证插入expected个元素的过程中不会扩容
+     */
+    public HashSet(int expected, float loadFactor) {
+        if (expected < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " + expected);
+        HashCommon.checkLoadFactor(loadFactor);
+        this.loadFactor = loadFactor;
+        n = HashCommon.arraySize(expected, loadFactor);
+        mask = n - 1;
+        maxFill = HashCommon.maxFill(n, loadFactor);
+        key = new Object[n + 1];
+    }
+
+    public HashSet(int expected) {
+        this(expected, DEFAULT_LOAD_FACTOR);
+    }
+
+    public HashSet() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    public HashSet(Collection<? extends E> c) {
+        this(Math.max(c.size(), DEFAULT_INITIAL_CAPACITY), DEFAULT_LOAD_FACTOR);
+        addAll(c);
+    }
+
+    /** 除去null元素之外的元素个数 */
+    private int realSize() {
+        return containsNull ? size - 1 : size;
+    }
+
+    /**
+     * 查找元素所在的槽位
+     *
+     * 找到时返回槽位的下标，否则返回-(插入位置 + 1)
+     */
+    final int find(Object k) {
+        if (k == null)
+            return containsNull ? n : -(n + 1);
+        Object[] key = this.key;
+        Object curr;
+        int pos;
+        if ((curr = key[pos = HashCommon.mix(k.hashCode()) & mask]) == null)
+            return -(pos + 1);
+        if (k == curr || k.equals(curr))
+            return pos;
+        // 线性探测，直到遇到空槽
+        while (true) {
+            if ((curr = key[pos = (pos + 1) & mask]) == null)
+                return -(pos + 1);
+            if (k == curr || k.equals(curr))
+                return pos;
+        }
+    }
+
+    /**
+     * 加入元素，已经存在时返回false
+     */
+    public boolean add(E k) {
+        int pos = find(k);
+        if (pos >= 0)
+            return false;
+        pos = -pos - 1;
+        if (pos == n)
+            containsNull = true;
+        key[pos] = k;
+        ++modCount;
+        if (size++ >= maxFill)
+            rehash(HashCommon.arraySize(size + 1, loadFactor));
+        return true;
+    }
+
+    public boolean contains(Object k) {
+        return find(k) >= 0;
+    }
+
+    public boolean remove(Object k) {
+        int pos = find(k);
+        if (pos < 0)
+            return false;
+        ++modCount;
+        --size;
+        if (pos == n)
+            containsNull = false;
+        else
+            shiftKeys(pos);
+        return true;
+    }
+
+    /**
+     * 删除pos上的元素之后，把探测链上后面的元素向前移动填补空位
+     *
+     * 只有当元素的理想位置slot不在(last, pos]这个循环区间内时，
+     * 它才可以被移动到last，否则移动之后就无法从slot探测到它
+     */
+    final void shiftKeys(int pos) {
+        int last, slot;
+        Object curr;
+        Object[] key = this.key;
+        for (;;) {
+            pos = ((last = pos) + 1) & mask;
+            for (;;) {
+                if ((curr = key[pos]) == null) {
+                    key[last] = null;
+                    return;
+                }
+                slot = HashCommon.mix(curr.hashCode()) & mask;
+                if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos)
+                    break;
+                pos = (pos + 1) & mask;
+            }
+            key[last] = curr;
+        }
+    }
+
+    /**
+     * 扩容到newN，开放定址的表只能把所有元素重新插入一遍
+     */
+    final void rehash(int newN) {
+        Object[] key = this.key;
+        int newMask = newN - 1;
+        Object[] newKey = new Object[newN + 1];
+        int i = n, pos;
+        for (int j = realSize(); j-- != 0; ) {
+            while (key[--i] == null) ;
+            if (newKey[pos = HashCommon.mix(key[i].hashCode()) & newMask] != null)
+                while (newKey[pos = (pos + 1) & newMask] != null) ;
+            newKey[pos] = key[i];
+        }
+        n = newN;
+        mask = newMask;
+        maxFill = HashCommon.maxFill(n, loadFactor);
+        this.key = newKey;
+    }
+
+    public boolean addAll(Collection<? extends E> c) {
+        // 按照合并后的大小预先扩容，避免多次rehash
+        int s = size + c.size();
+        if (s > maxFill)
+            rehash(HashCommon.arraySize(s, loadFactor));
+        return super.addAll(c);
+    }
+
+    /**
+     * 直接遍历数组，比通过迭代器遍历快
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super E> action) {
+        if (action == null)
+            throw new NullPointerException();
+        int mc = modCount;
+        if (containsNull)
+            action.accept(null);
+        Object[] key = this.key;
+        for (int pos = n; pos-- != 0; ) {
+            if (key[pos] != null)
+                action.accept((E) key[pos]);
+        }
+        if (modCount != mc)
+            throw new ConcurrentModificationException();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        if (size == 0)
+            return;
+        size = 0;
+        containsNull = false;
+        ++modCount;
+        Arrays.fill(key, null);
+    }
+
+    /**
+     * 返回一个拷贝，只复制数组，元素本身不会被复制
+     */
+    @SuppressWarnings("unchecked")
+    public HashSet<E> clone() {
+        HashSet<E> result;
+        try {
+            result = (HashSet<E>) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError(e);
+        }
+        result.key = key.clone();
+        result.modCount = 0;
+        return result;
+    }
+
+    public int hashCode() {
+        int h = 0;
+        Object[] key = this.key;
+        for (int i = n; i-- != 0; ) {
+            if (key[i] != null)
+                h += key[i].hashCode();
+        }
+        return h;
+    }
+
+    public Iterator<E> iterator() {
+        return new SetIterator();
+    }
+
+    /**
+     * 从后往前遍历表
+     *
+     * 迭代器删除元素时，backward shift可能把表头(已经绕回)的元素移到当前位置之后，
+     * 也就是已经遍历过的区域，这些元素被记录在wrapped中，在最后单独返回
+     */
+    final class SetIterator implements Iterator<E> {
+        int pos = n;                 // 下一次从pos - 1开始向前查找
+        int last = -1;               // 上一次返回的槽位，-1表示不能删除
+        int c = size;                // 剩余的元素个数
+        boolean mustReturnNull = containsNull;
+        Object[] wrapped;            // 被移动到已遍历区域的元素
+        int wrappedSize;
+        int expectedModCount = modCount;
+
+        public boolean hasNext() {
+            return c != 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        public E next() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (c == 0)
+                throw new NoSuchElementException();
+            c--;
+            if (mustReturnNull) {
+                mustReturnNull = false;
+                last = n;
+                return null;
+            }
+            Object[] key = HashSet.this.key;
+            for (;;) {
+                if (--pos < 0) {
+                    // 表已经遍历完，开始返回wrapped中的元素
+                    last = Integer.MIN_VALUE;
+                    return (E) wrapped[-pos - 1];
+                }
+                if (key[pos] != null)
+                    return (E) key[last = pos];
+            }
+        }
+
+        /** 与HashSet.shiftKeys相同，但要记录绕回的元素 */
+        private void shiftKeys(int pos) {
+            int last, slot;
+            Object curr;
+            Object[] key = HashSet.this.key;
+            for (;;) {
+                pos = ((last = pos) + 1) & mask;
+                for (;;) {
+                    if ((curr = key[pos]) == null) {
+                        key[last] = null;
+                        return;
+                    }
+                    slot = HashCommon.mix(curr.hashCode()) & mask;
+                    if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos)
+                        break;
+                    pos = (pos + 1) & mask;
+                }
+                if (pos < last) {
+                    if (wrapped == null)
+                        wrapped = new Object[2];
+                    else if (wrappedSize == wrapped.length)
+                        wrapped = java.util.Arrays.copyOf(wrapped, wrappedSize << 1);
+                    wrapped[wrappedSize++] = curr;
+                }
+                key[last] = curr;
+            }
+        }
+
+        public void remove() {
+            if (last == -1)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (last == n) {
+                containsNull = false;
+            } else if (pos >= 0) {
+                shiftKeys(last);
+            } else {
+                // 删除wrapped中的元素，它已经不在迭代器要扫描的区域里了
+                HashSet.this.remove(wrapped[-pos - 1]);
+                last = -1;
+                expectedModCount = modCount;
+                return;
+            }
+            size--;
+            modCount++;
+            expectedModCount = modCount;
+            last = -1;
+        }
+    }
+
+    /**
+     * 按槽位的区间分割的分区迭代器，和HashMap一样是延迟绑定的
+     *
+     * 每次分割把区间的前一半交给新的分区迭代器，null元素只由最初的分区迭代器在最后返回，
+     * 元素在表中的分布是均匀的，所以大小按照区间减半估计
+     */
+    public Spliterator<E> getSpliterator() {
+        return new SetSpliterator(0, -1, 0, 0, true);
+    }
+
+    final class SetSpliterator implements Spliterator<E> {
+        int index;                   // 下一个要访问的槽位
+        int fence;                   // 区间的结束位置，-1表示还没有绑定
+        int est;                     // 估计的元素个数
+        int expectedModCount;
+        boolean mustReturnNull;      // 绑定之前表示是否负责null元素
+
+        SetSpliterator(int origin, int fence, int est, int expectedModCount,
+                       boolean mustReturnNull) {
+            this.index = origin;
+            this.fence = fence;
+            this.est = est;
+            this.expectedModCount = expectedModCount;
+            this.mustReturnNull = mustReturnNull;
+        }
+
+        /** 第一次使用时绑定到当前的表 */
+        final int getFence() {
+            int hi;
+            if ((hi = fence) < 0) {
+                est = size;
+                expectedModCount = modCount;
+                mustReturnNull = containsNull;
+                hi = fence = n;
+            }
+            return hi;
+        }
+
+        public Spliterator<E> trySplit() {
+            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
+            return lo >= mid ? null :
+                    new SetSpliterator(lo, index = mid, est >>>= 1, expectedModCount, false);
+        }
+
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance(Consumer<? super E> action) {
+            if (action == null)
+                throw new NullPointerException();
+            int hi = getFence();
+            Object[] key = HashSet.this.key;
+            while (index < hi) {
+                Object k = key[index++];
+                if (k != null) {
+                    action.accept((E) k);
+                    if (modCount != expectedModCount)
+                        throw new ConcurrentModificationException();
+                    return true;
+                }
+            }
+            if (mustReturnNull) {
+                mustReturnNull = false;
+                action.accept(null);
+                if (modCount != expectedModCount)
+                    throw new ConcurrentModificationException();
+                return true;
+            }
+            return false;
+        }
+
+        @SuppressWarnings("unchecked")
+        public void forEachRemaining(Consumer<? super E> action) {
+            if (action == null)
+                throw new NullPointerException();
+            int hi = getFence(), i = index;
+            Object[] key = HashSet.this.key;
+            index = hi;
+            for (; i < hi; i++) {
+                Object k = key[i];
+                if (k != null)
+                    action.accept((E) k);
+            }
+            if (mustReturnNull) {
+                mustReturnNull = false;
+                action.accept(null);
+            }
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+        }
+
+        public long estimateSize() {
+            getFence();
+            return est;
+        }
+
+        public int characteristics() {
+            return (fence < 0 || est == size ? Spliterator.SIZED : 0) | Spliterator.DISTINCT;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.test.util;
+
+/**
+ * 由调用者提供的哈希和相等策略，用来代替key自身的hashCode和equals
+ *
+ * 例如byte[]和char[]的hashCode和equals都是基于引用的，
+ * 通常的做法是为每次查找创建一个包装对象，使用HashMap(HashingStrategy)之后，
+ * 可以直接使用数组作为key，按照内容比较，查找时不需要分配任何对象
+ *
+ * HashMap不会把null传给策略，null的key总是使用哈希值0，并且只和null相等
+ *
+ * 当一个bin中的节点过多转换为红黑树的时候，哈希值相同的key使用comparator()排序，
+ * 比较器必须和equals一致：equals为true的两个key比较结果必须是0，
+ * 没有比较器的时候，树中哈希值相同的节点只能逐个比较
+ * @param <K> key的类型
+ */
+public interface HashingStrategy<K> {
+    /** 计算key的哈希值，equals为true的两个key必须有相同的哈希值 */
+    int hash(K key);
+
+    /** 判断两个key是否相等 */
+    boolean equals(K a, K b);
+
+    /** 哈希值相同时用于红黑树排序的比较器，默认没有 */
+    default Comparator<? super K> comparator() {
+        return null;
+    }
+
+    /** 按内容比较byte[]，树中按无符号字典序排序 */
+    static HashingStrategy<byte[]> byteArrays() {
+        return ByteArrayStrategy.INSTANCE;
+    }
+
+    /** 按内容比较char[]，树中按字典序排序 */
+    static HashingStrategy<char[]> charArrays() {
+        return CharArrayStrategy.INSTANCE;
+    }
+
+    /** byte[]的策略 */
+    final class ByteArrayStrategy implements HashingStrategy<byte[]>, java.io.Serializable {
+        private static final long serialVersionUID = -2146183470239176624L;
+        static final ByteArrayStrategy INSTANCE = new ByteArrayStrategy();
+
+        private ByteArrayStrategy() {}
+
+        public int hash(byte[] key) {
+            return java.util.Arrays.hashCode(key);
+        }
+
+        public boolean equals(byte[] a, byte[] b) {
+            return java.util.Arrays.equals(a, b);
+        }
+
+        public Comparator<? super byte[]> comparator() {
+            return (a, b) -> {
+                int n = Math.min(a.length, b.length);
+                for (int i = 0; i < n; i++) {
+                    if (a[i] != b[i])
+                        return (a[i] & 0xFF) - (b[i] & 0xFF);
+                }
+                return a.length - b.length;
+            };
+        }
+
+        private Object readResolve() {
+            return INSTANCE;
+        }
+    }
+
+    /** char[]的策略 */
+    final class CharArrayStrategy implements HashingStrategy<char[]>, java.io.Serializable {
+        private static final long serialVersionUID = 5437271283466718046L;
+        static final CharArrayStrategy INSTANCE = new CharArrayStrategy();
+
+        private CharArrayStrategy() {}
+
+        public int hash(char[] key) {
+            return java.util.Arrays.hashCode(key);
+        }
+
+        public boolean equals(char[] a, char[] b) {
+            return java.util.Arrays.equals(a, b);
+        }
+
+        public Comparator<? super char[]> comparator() {
+            return (a, b) -> {
+                int n = Math.min(a.length, b.length);
+                for (int i = 0; i < n; i++) {
+                    if (a[i] != b[i])
+                        return a[i] - b[i];
+                }
+                return a.length - b.length;
+            };
+        }
+
+        private Object readResolve() {
+            return INSTANCE;
+        }
+    }
+}
@@ -0,0 +1,503 @@
+package com.test.util;
+
+import com.test.util.function.BiConsumer;
+
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 用==比较key的开放定址哈希表，哈希值来自System.identityHashCode
+ *
+ * 图的遍历、对象访问记录和序列化时的对象图跟踪需要按照对象本身而不是equals来区分key，
+ * 这里不会调用key的hashCode和equals，也不会为每个键值对创建Node
+ *
+ * key和value交替存放在同一个Object数组中：key在偶数下标i，value在i + 1，
+ * 查找命中时value和key通常在同一个缓存行里，数组的长度是槽位数n的两倍
+ *
+ * 冲突使用线性探测解决，删除时把后续探测链上的元素向前移动(backward shift)，
+ * 与LongLongMap相同，null槽位表示空，所以null key用NULL_KEY代替存放
+ *
+ * 按照Map接口的约定，这个类的equals和hashCode也是按照引用比较的
+ */
+public class IdentityHashMap<K,V> extends AbstractMap<K,V> implements Cloneable {
+    /** 默认的初始容量 */
+    static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /**
+     * 默认的负载因子，与java.util.IdentityHashMap的最大负载相同
+     * 对象图遍历时大约一半的查找是未命中，线性探测未命中的代价随负载增长很快，所以比0.75低一些
+     */
+    static final float DEFAULT_LOAD_FACTOR = 2f / 3;
+
+    /** 槽位数的上限，数组的长度是它的两倍 */
+    static final int MAXIMUM_CAPACITY = HashCommon.MAXIMUM_CAPACITY >>> 1;
+
+    /** 代替null key存放在表中 */
+    static final Object NULL_KEY = new Object();
+
+    /** key和value交替存放，长度为2n */
+    transient Object[] table;
+
+    /** 槽位数，是2的幂 */
+    transient int n;
+
+    /** 2n - 1，用于计算key的下标，结果总是偶数 */
+    transient int mask;
+
+    /** 扩容的阈值 */
+    transient int maxFill;
+
+    /** 元素个数 */
+    transient int size;
+
+    /** 结构修改的次数，用于快速失败 */
+    transient int modCount;
+
+    /** 负载因子 */
+    final float loadFactor;
+
+    /**
+     * 根据期望的元素个数和负载因子构造，保证插入expected个元素的过程中不会扩容
+     */
+    public IdentityHashMap(int expected, float loadFactor) {
+        if (expected < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " + expected);
+        HashCommon.checkLoadFactor(loadFactor);
+        this.loadFactor = loadFactor;
+        init(capacity(expected));
+    }
+
+    public IdentityHashMap(int expected) {
+        this(expected, DEFAULT_LOAD_FACTOR);
+    }
+
+    public IdentityHashMap() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    public IdentityHashMap(Map<? extends K, ? extends V> m) {
+        this(Math.max(m.size(), DEFAULT_INITIAL_CAPACITY), DEFAULT_LOAD_FACTOR);
+        putAll(m);
+    }
+
+    /** 能够存放expected个元素的槽位数 */
+    private int capacity(int expected) {
+        int s = HashCommon.arraySize(expected, loadFactor);
+        if (s > MAXIMUM_CAPACITY)
+            throw new IllegalStateException("Capacity exhausted.");
+        return s;
+    }
+
+    private void init(int newN) {
+        n = newN;
+        mask = (newN << 1) - 1;
+        maxFill = HashCommon.maxFill(newN, loadFactor);
+        table = new Object[newN << 1];
+    }
+
+    /** null key在表中用NULL_KEY代替 */
+    private static Object maskNull(Object key) {
+        return key == null ? NULL_KEY : key;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K> K unmaskNull(Object key) {
+        return key == NULL_KEY ? null : (K) key;
+    }
+
+    /** key在表中的起始下标，是偶数 */
+    static int hash(Object k, int mask) {
+        return (HashCommon.mix(System.identityHashCode(k)) << 1) & mask;
+    }
+
+    /**
+     * 查找key所在的下标，k已经经过maskNull
+     *
+     * 找到时返回key的下标，否则返回-(插入位置 + 1)
+     */
+    final int find(Object k) {
+        Object[] tab = table;
+        Object curr;
+        int i = hash(k, mask);
+        while ((curr = tab[i]) != null) {
+            if (curr == k)
+                return i;
+            i = (i + 2) & mask;
+        }
+        return -(i + 1);
+    }
+
+    public V get(Object key) {
+        Object k = maskNull(key);
+        Object[] tab = table;
+        Object curr;
+        int i = hash(k, mask);
+        while ((curr = tab[i]) != null) {
+            if (curr == k) {
+                @SuppressWarnings("unchecked") V v = (V) tab[i + 1];
+                return v;
+            }
+            i = (i + 2) & mask;
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V getOrDefault(Object key, V defaultValue) {
+        int i = find(maskNull(key));
+        return i < 0 ? defaultValue : (V) table[i + 1];
+    }
+
+    public boolean containsKey(Object key) {
+        return find(maskNull(key)) >= 0;
+    }
+
+    public boolean containsValue(Object value) {
+        Object[] tab = table;
+        for (int i = 1; i < tab.length; i += 2) {
+            if (tab[i] == value && tab[i - 1] != null)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * 放入键值对，返回旧的value
+     */
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        Object k = maskNull(key);
+        int i = find(k);
+        if (i >= 0) {
+            V oldValue = (V) table[i + 1];
+            table[i + 1] = value;
+            return oldValue;
+        }
+        i = -i - 1;
+        table[i] = k;
+        table[i + 1] = value;
+        ++modCount;
+        if (size++ >= maxFill)
+            rehash(capacity(size + 1));
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        int i = find(maskNull(key));
+        if (i < 0)
+            return null;
+        V oldValue = (V) table[i + 1];
+        ++modCount;
+        --size;
+        shiftKeys(i);
+        return oldValue;
+    }
+
+    /** 按照引用比较value */
+    public boolean remove(Object key, Object value) {
+        int i = find(maskNull(key));
+        if (i < 0 || table[i + 1] != value)
+            return false;
+        ++modCount;
+        --size;
+        shiftKeys(i);
+        return true;
+    }
+
+    /**
+     * 删除下标i上的键值对之后，把探测链上后面的元素向前移动填补空位
+     *
+     * 与LongLongMap.shiftKeys相同，只是下标每次前进2
+     */
+    final void shiftKeys(int i) {
+        int last, slot;
+        Object curr;
+        Object[] tab = table;
+        for (;;) {
+            i = ((last = i) + 2) & mask;
+            for (;;) {
+                if ((curr = tab[i]) == null) {
+                    tab[last] = null;
+                    tab[last + 1] = null;
+                    return;
+                }
+                slot = hash(curr, mask);
+                if (last <= i ? last >= slot || slot > i : last >= slot && slot > i)
+                    break;
+                i = (i + 2) & mask;
+            }
+            tab[last] = curr;
+            tab[last + 1] = tab[i + 1];
+        }
+    }
+
+    /**
+     * 扩容到newN个槽位，所有元素重新插入一遍
+     */
+    final void rehash(int newN) {
+        Object[] oldTab = table;
+        init(newN);
+        Object[] tab = table;
+        int mask = this.mask;
+        for (int j = 0; j < oldTab.length; j += 2) {
+            Object k = oldTab[j];
+            if (k != null) {
+                int i = hash(k, mask);
+                while (tab[i] != null)
+                    i = (i + 2) & mask;
+                tab[i] = k;
+                tab[i + 1] = oldTab[j + 1];
+            }
+        }
+    }
+
+    public void putAll(Map<? extends K, ? extends V> m) {
+        // 按照合并后的大小预先扩容，避免多次rehash
+        int s = size + m.size();
+        if (s > maxFill)
+            rehash(capacity(s));
+        super.putAll(m);
+    }
+
+    /**
+     * 直接遍历数组，不会产生任何对象
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        int mc = modCount;
+        Object[] tab = table;
+        for (int i = 0; i < tab.length; i += 2) {
+            Object k = tab[i];
+            if (k != null)
+                action.accept(unmaskNull(k), (V) tab[i + 1]);
+        }
+        if (modCount != mc)
+            throw new ConcurrentModificationException();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        if (size == 0)
+            return;
+        size = 0;
+        ++modCount;
+        Arrays.fill(table, null);
+    }
+
+    /**
+     * 返回一个浅拷贝，key和value本身不会被复制
+     */
+    @SuppressWarnings("unchecked")
+    public IdentityHashMap<K,V> clone() {
+        IdentityHashMap<K,V> result;
+        try {
+            result = (IdentityHashMap<K,V>) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError(e);
+        }
+        result.table = table.clone();
+        result.keySet = null;
+        result.values = null;
+        result.entrySet = null;
+        result.modCount = 0;
+        return result;
+    }
+
+    /**
+     * 另一个IdentityHashMap按照引用比较，其它的Map按照Map接口的约定比较
+     */
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (!(o instanceof IdentityHashMap))
+            return super.equals(o);
+        IdentityHashMap<?,?> m = (IdentityHashMap<?,?>) o;
+        if (m.size() != size)
+            return false;
+        Object[] tab = table;
+        for (int i = 0; i < tab.length; i += 2) {
+            Object k = tab[i];
+            if (k != null) {
+                int j = m.find(k);
+                if (j < 0 || m.table[j + 1] != tab[i + 1])
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    public int hashCode() {
+        int h = 0;
+        Object[] tab = table;
+        for (int i = 0; i < tab.length; i += 2) {
+            Object k = tab[i];
+            if (k != null)
+                h += System.identityHashCode(unmaskNull(k)) ^ System.identityHashCode(tab[i + 1]);
+        }
+        return h;
+    }
+
+    transient Set<Map.Entry<K,V>> entrySet;
+
+    /**
+     * 返回键值对的视图，视图中的Entry在每次调用next时创建，
+     * 它直接引用表中的下标，setValue会写回表中
+     */
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public final int size()                 { return size; }
+        public final void clear()               { IdentityHashMap.this.clear(); }
+        public final Iterator<Map.Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            int i = find(maskNull(e.getKey()));
+            return i >= 0 && table[i + 1] == e.getValue();
+        }
+        public final boolean remove(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            return IdentityHashMap.this.remove(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * 指向表中某个下标的Entry，equals和hashCode按照引用比较
+     */
+    final class MapEntry implements Map.Entry<K,V> {
+        final int index;
+
+        MapEntry(int index) {
+            this.index = index;
+        }
+
+        public K getKey()         { return unmaskNull(table[index]); }
+        @SuppressWarnings("unchecked")
+        public V getValue()       { return (V) table[index + 1]; }
+        public String toString()  { return getKey() + "=" + getValue(); }
+        public int hashCode() {
+            return System.identityHashCode(getKey()) ^ System.identityHashCode(getValue());
+        }
+
+        @SuppressWarnings("unchecked")
+        public V setValue(V v) {
+            V oldValue = (V) table[index + 1];
+            table[index + 1] = v;
+            return oldValue;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            return getKey() == e.getKey() && getValue() == e.getValue();
+        }
+    }
+
+    /**
+     * 从后往前遍历表，绕回的元素记录在wrapped中，见LongLongMap.EntryIterator
+     *
+     * pos是槽位的序号，对应的key下标是pos * 2
+     */
+    final class EntryIterator implements Iterator<Map.Entry<K,V>> {
+        int pos = n;                 // 下一次从pos - 1开始向前查找
+        int last = -1;               // 上一次返回的key下标，-1表示不能删除
+        int c = size;                // 剩余的元素个数
+        Object[] wrapped;            // 被移动到已遍历区域的key
+        int wrappedSize;
+        int expectedModCount = modCount;
+
+        public boolean hasNext() {
+            return c != 0;
+        }
+
+        public Map.Entry<K,V> next() {
+            return new MapEntry(nextEntry());
+        }
+
+        int nextEntry() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (c == 0)
+                throw new NoSuchElementException();
+            c--;
+            Object[] tab = table;
+            for (;;) {
+                if (--pos < 0) {
+                    last = Integer.MIN_VALUE;
+                    return find(wrapped[-pos - 1]);
+                }
+                if (tab[pos << 1] != null)
+                    return last = pos << 1;
+            }
+        }
+
+        /** 与IdentityHashMap.shiftKeys相同，但要记录绕回的元素 */
+        private void shiftKeys(int i) {
+            int last, slot;
+            Object curr;
+            Object[] tab = table;
+            for (;;) {
+                i = ((last = i) + 2) & mask;
+                for (;;) {
+                    if ((curr = tab[i]) == null) {
+                        tab[last] = null;
+                        tab[last + 1] = null;
+                        return;
+                    }
+                    slot = hash(curr, mask);
+                    if (last <= i ? last >= slot || slot > i : last >= slot && slot > i)
+                        break;
+                    i = (i + 2) & mask;
+                }
+                if (i < last) {
+                    if (wrapped == null)
+                        wrapped = new Object[2];
+                    else if (wrappedSize == wrapped.length)
+                        wrapped = java.util.Arrays.copyOf(wrapped, wrappedSize << 1);
+                    wrapped[wrappedSize++] = curr;
+                }
+                tab[last] = curr;
+                tab[last + 1] = tab[i + 1];
+            }
+        }
+
+        public void remove() {
+            if (last == -1)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (pos >= 0) {
+                shiftKeys(last);
+            } else {
+                IdentityHashMap.this.remove(unmaskNull(wrapped[-pos - 1]));
+                last = -1;
+                expectedModCount = modCount;
+                return;
+            }
+            size--;
+            modCount++;
+            expectedModCount = modCount;
+            last = -1;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.test.util;
+
+import com.test.util.function.ObjIntConsumer;
+
+import java.util.ConcurrentModificationException;
+
+/**
+ * 用==比较key、value是int的开放定址哈希表
+ *
+ * 适合对象图遍历时记录访问次数、序列化时给对象分配句柄这类场景，
+ * 探测和删除的方式与IdentityHashMap相同，key存放在Object数组中，value存放在对应下标的int数组中，
+ * 不实现Map接口，所有操作都不会装箱，也不会产生任何对象
+ *
+ * null key用IdentityHashMap.NULL_KEY代替存放
+ */
+public class IdentityIntMap<K> implements Cloneable {
+    /** 默认的初始容量 */
+    static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /** 默认的负载因子，与IdentityHashMap相同 */
+    static final float DEFAULT_LOAD_FACTOR = 2f / 3;
+
+    /** 存放key的数组，长度n是2的幂 */
+    transient Object[] key;
+
+    /** 存放value的数组，与key一一对应 */
+    transient int[] value;
+
+    /** n - 1，用于计算下标 */
+    transient int mask;
+
+    /** 扩容的阈值 */
+    transient int maxFill;
+
+    /** 元素个数 */
+    transient int size;
+
+    /** 结构修改的次数，用于快速失败 */
+    transient int modCount;
+
+    /** 负载因子 */
+    final float loadFactor;
+
+    /**
+     * 根据期望的元素个数和负载因子构造，保证插入expected个元素的过程中不会扩容
+     */
+    public IdentityIntMap(int expected, float loadFactor) {
+        if (expected < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " + expected);
+        HashCommon.checkLoadFactor(loadFactor);
+        this.loadFactor = loadFactor;
+        init(HashCommon.arraySize(expected, loadFactor));
+    }
+
+    public IdentityIntMap(int expected) {
+        this(expected, DEFAULT_LOAD_FACTOR);
+    }
+
+    public IdentityIntMap() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    private void init(int n) {
+        mask = n - 1;
+        maxFill = HashCommon.maxFill(n, loadFactor);
+        key = new Object[n];
+        value = new int[n];
+    }
+
+    private static Object maskNull(Object k) {
+        return k == null ? IdentityHashMap.NULL_KEY : k;
+    }
+
+    private static int hash(Object k, int mask) {
+        return HashCommon.mix(System.identityHashCode(k)) & mask;
+    }
+
+    /**
+     * 查找key所在的槽位，k已经经过maskNull
+     *
+     * 找到时返回槽位的下标，否则返回-(插入位置 + 1)
+     */
+    final int find(Object k) {
+        Object[] key = this.key;
+        Object curr;
+        int pos = hash(k, mask);
+        while ((curr = key[pos]) != null) {
+            if (curr == k)
+                return pos;
+            pos = (pos + 1) & mask;
+        }
+        return -(pos + 1);
+    }
+
+    /** 在find返回的空槽pos上插入元素 */
+    private void insert(int pos, Object k, int v) {
+        key[pos] = k;
+        value[pos] = v;
+        ++modCount;
+        if (size++ >= maxFill)
+            rehash(HashCommon.arraySize(size + 1, loadFactor));
+    }
+
+    /**
+     * 返回key对应的value，不存在时返回defaultValue
+     */
+    public int getOrDefault(Object k, int defaultValue) {
+        k = maskNull(k);
+        Object[] key = this.key;
+        Object curr;
+        int pos = hash(k, mask);
+        while ((curr = key[pos]) != null) {
+            if (curr == k)
+                return value[pos];
+            pos = (pos + 1) & mask;
+        }
+        return defaultValue;
+    }
+
+    /** 返回key对应的value，不存在时返回0 */
+    public int get(Object k) {
+        return getOrDefault(k, 0);
+    }
+
+    public boolean containsKey(Object k) {
+        return find(maskNull(k)) >= 0;
+    }
+
+    /**
+     * 放入键值对，返回旧的value，不存在时返回0
+     */
+    public int put(K k, int v) {
+        Object mk = maskNull(k);
+        int pos = find(mk);
+        if (pos >= 0) {
+            int oldValue = value[pos];
+            value[pos] = v;
+            return oldValue;
+        }
+        insert(-pos - 1, mk, v);
+        return 0;
+    }
+
+    /**
+     * 把key对应的value加上incr，不存在时视为0，返回旧的value
+     */
+    public int addTo(K k, int incr) {
+        Object mk = maskNull(k);
+        int pos = find(mk);
+        if (pos >= 0) {
+            int oldValue = value[pos];
+            value[pos] = oldValue + incr;
+            return oldValue;
+        }
+        insert(-pos - 1, mk, incr);
+        return 0;
+    }
+
+    /**
+     * 删除key对应的元素，返回旧的value，不存在时返回0
+     */
+    public int remove(Object k) {
+        int pos = find(maskNull(k));
+        if (pos < 0)
+            return 0;
+        int oldValue = value[pos];
+        ++modCount;
+        --size;
+        shiftKeys(pos);
+        return oldValue;
+    }
+
+    /**
+     * 删除pos上的元素之后，把探测链上后面的元素向前移动填补空位，见LongLongMap.shiftKeys
+     */
+    final void shiftKeys(int pos) {
+        int last, slot;
+        Object curr;
+        Object[] key = this.key;
+        for (;;) {
+            pos = ((last = pos) + 1) & mask;
+            for (;;) {
+                if ((curr = key[pos]) == null) {
+                    key[last] = null;
+                    value[last] = 0;
+                    return;
+                }
+                slot = hash(curr, mask);
+                if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos)
+                    break;
+                pos = (pos + 1) & mask;
+            }
+            key[last] = curr;
+            value[last] = value[pos];
+        }
+    }
+
+    /**
+     * 扩容到newN，所有元素重新插入一遍
+     */
+    final void rehash(int newN) {
+        Object[] oldKey = key;
+        int[] oldValue = value;
+        init(newN);
+        Object[] key = this.key;
+        int[] value = this.value;
+        int mask = this.mask;
+        for (int j = 0; j < oldKey.length; j++) {
+            Object k = oldKey[j];
+            if (k != null) {
+                int pos = hash(k, mask);
+                while (key[pos] != null)
+                    pos = (pos + 1) & mask;
+                key[pos] = k;
+                value[pos] = oldValue[j];
+            }
+        }
+    }
+
+    /**
+     * 遍历所有的键值对，不会产生任何对象
+     */
+    public void forEach(ObjIntConsumer<? super K> action) {
+        if (action == null)
+            throw new NullPointerException();
+        int mc = modCount;
+        Object[] key = this.key;
+        int[] value = this.value;
+        for (int pos = 0; pos < key.length; pos++) {
+            Object k = key[pos];
+            if (k != null)
+                action.accept(IdentityHashMap.<K>unmaskNull(k), value[pos]);
+        }
+        if (modCount != mc)
+            throw new ConcurrentModificationException();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        if (size == 0)
+            return;
+        size = 0;
+        ++modCount;
+        Arrays.fill(key, null);
+        Arrays.fill(value, 0);
+    }
+
+    /**
+     * 返回一个拷贝，两个表互不影响，key本身不会被复制
+     */
+    @SuppressWarnings("unchecked")
+    public IdentityIntMap<K> clone() {
+        IdentityIntMap<K> result;
+        try {
+            result = (IdentityIntMap<K>) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError(e);
+        }
+        result.key = key.clone();
+        result.value = value.clone();
+        result.modCount = 0;
+        return result;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        forEach((k, v) -> {
+            if (sb.length() > 1)
+                sb.append(", ");
+            sb.append(k == this ? "(this Map)" : k).append('=').append(v);
+        });
+        return sb.append('}').toString();
+    }
+}
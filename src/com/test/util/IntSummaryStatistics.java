@@ -0,0 +1,56 @@
+package com.test.util;
+
+import com.test.util.function.IntConsumer;
+
+/**
+ * 收集int值的计数、最小值、最大值、和以及平均值的状态对象
+ *
+ * 可以作为IntStream#collect的结果容器，并行的时候每个分片使用自己的实例，最后通过combine合并
+ * 这个类不是线程安全的
+ * */
+public class IntSummaryStatistics implements IntConsumer {
+    private long count;
+    //使用long求和，避免溢出
+    private long sum;
+    private int min = Integer.MAX_VALUE;
+    private int max = Integer.MIN_VALUE;
+
+    /** 创建一个空的实例，最小值为Integer.MAX_VALUE，最大值为Integer.MIN_VALUE */
+    public IntSummaryStatistics(){}
+
+    /** 记录一个新的值 */
+    @Override
+    public void accept(int value){
+        ++count;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /** 把另一个实例的状态合并到当前实例当中 */
+    public void combine(IntSummaryStatistics other){
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public final long getCount(){return count;}
+
+    public final long getSum(){return sum;}
+
+    public final int getMin(){return min;}
+
+    public final int getMax(){return max;}
+
+    /** 没有记录任何值的时候返回0 */
+    public final double getAverage(){
+        return getCount() > 0 ? (double) getSum() / getCount() : 0.0d;
+    }
+
+    @Override
+    public String toString(){
+        return String.format("%s{count=%d, sum=%d, min=%d, average=%f, max=%d}",
+                this.getClass().getSimpleName(), getCount(), getSum(), getMin(), getAverage(), getMax());
+    }
+}
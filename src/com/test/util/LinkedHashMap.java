@@ -1,8 +1,438 @@
 package com.test.util;
 
-public class LinkedHashMap<K,V> extends HashMap<K,V> {
+import com.test.util.function.BiConsumer;
+import com.test.util.function.BiFunction;
+import com.test.util.function.Consumer;
+
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 在HashMap的基础上用一个双向链表把所有的节点串起来，从而拥有确定的迭代顺序
+ *
+ * accessOrder为false时，迭代顺序是插入顺序，重复put一个已经存在的key不会改变顺序；
+ * accessOrder为true时，迭代顺序是访问顺序，最近访问(get/put)的节点会被移动到链表尾部，
+ * 链表头部就是最久没有被访问的节点
+ *
+ * 每次插入之后都会调用removeEldestEntry，子类重写这个方法就可以实现一个有界的LRU缓存：
+ * <pre>
+ *     new LinkedHashMap<K,V>(16, 0.75f, true) {
+ *         protected boolean removeEldestEntry(Map.Entry<K,V> eldest) {
+ *             return size() > MAX_ENTRIES;
+ *         }
+ *     };
+ * </pre>
+ *
+ * 链表的维护依赖HashMap留下的回调：newNode/replacementNode等负责把新节点链接进来，
+ * afterNodeAccess/afterNodeInsertion/afterNodeRemoval负责移动、淘汰和摘除节点
+ */
+public class LinkedHashMap<K,V> extends HashMap<K,V> implements Map<K,V> {
+    private static final long serialVersionUID = 3801124242820219131L;
+
+    /**
+     * LinkedHashMap的节点，在HashMap.Node的基础上增加了前后指针
+     */
     static class Entry<K,V> extends HashMap.Node<K,V>{
         Entry<K,V> before,after;
         Entry(int hash, K key, V value, Node<K, V> next) {super(hash, key, value, next);}
     }
+
+    /** 双向链表的头部，最老的节点 */
+    transient LinkedHashMap.Entry<K,V> head;
+
+    /** 双向链表的尾部，最新的节点 */
+    transient LinkedHashMap.Entry<K,V> tail;
+
+    /** 迭代顺序，true表示访问顺序，false表示插入顺序 */
+    final boolean accessOrder;
+
+    /* ------------------------------------------------------------ */
+    // 内部工具方法
+
+    /** 把节点链接到链表的尾部 */
+    private void linkNodeLast(LinkedHashMap.Entry<K,V> p) {
+        LinkedHashMap.Entry<K,V> last = tail;
+        tail = p;
+        if (last == null)
+            head = p;
+        else {
+            p.before = last;
+            last.after = p;
+        }
+    }
+
+    /** 用dst替换链表中的src，在Node和TreeNode互相转换的时候使用 */
+    private void transferLinks(LinkedHashMap.Entry<K,V> src,
+                               LinkedHashMap.Entry<K,V> dst) {
+        LinkedHashMap.Entry<K,V> b = dst.before = src.before;
+        LinkedHashMap.Entry<K,V> a = dst.after = src.after;
+        if (b == null)
+            head = dst;
+        else
+            b.after = dst;
+        if (a == null)
+            tail = dst;
+        else
+            a.before = dst;
+    }
+
+    /* ------------------------------------------------------------ */
+    // 重写HashMap的钩子方法
+
+    void reinitialize() {
+        super.reinitialize();
+        head = tail = null;
+    }
+
+    Node<K,V> newNode(int hash, K key, V value, Node<K,V> e) {
+        LinkedHashMap.Entry<K,V> p =
+                new LinkedHashMap.Entry<K,V>(hash, key, value, e);
+        linkNodeLast(p);
+        return p;
+    }
+
+    Node<K,V> replacementNode(Node<K,V> p, Node<K,V> next) {
+        LinkedHashMap.Entry<K,V> q = (LinkedHashMap.Entry<K,V>)p;
+        LinkedHashMap.Entry<K,V> t =
+                new LinkedHashMap.Entry<K,V>(q.hash, q.key, q.value, next);
+        transferLinks(q, t);
+        return t;
+    }
+
+    TreeNode<K,V> newTreeNode(int hash, K key, V value, Node<K,V> next) {
+        TreeNode<K,V> p = new TreeNode<K,V>(hash, key, value, next);
+        linkNodeLast(p);
+        return p;
+    }
+
+    TreeNode<K,V> replacementTreeNode(Node<K,V> p, Node<K,V> next) {
+        LinkedHashMap.Entry<K,V> q = (LinkedHashMap.Entry<K,V>)p;
+        TreeNode<K,V> t = new TreeNode<K,V>(q.hash, q.key, q.value, next);
+        transferLinks(q, t);
+        return t;
+    }
+
+    /** 节点从HashMap中删除之后，把它从链表中摘除 */
+    void afterNodeRemoval(Node<K,V> e) {
+        LinkedHashMap.Entry<K,V> p =
+                (LinkedHashMap.Entry<K,V>)e, b = p.before, a = p.after;
+        p.before = p.after = null;
+        if (b == null)
+            head = a;
+        else
+            b.after = a;
+        if (a == null)
+            tail = b;
+        else
+            a.before = b;
+    }
+
+    /**
+     * 插入新节点之后，根据removeEldestEntry决定是否删除最老的节点
+     *
+     * 构造函数和clone中批量放入元素的时候evict为false，不会触发淘汰
+     */
+    void afterNodeInsertion(boolean evict) {
+        LinkedHashMap.Entry<K,V> first;
+        if (evict && (first = head) != null && removeEldestEntry(first)) {
+            K key = first.key;
+            removeNode(keyHash(key), key, null, false, true);
+        }
+    }
+
+    /**
+     * 访问顺序模式下，把被访问的节点移动到链表尾部
+     *
+     * 这里会修改modCount，所以在访问顺序模式下，迭代的过程中调用get也会导致快速失败
+     */
+    void afterNodeAccess(Node<K,V> e) {
+        LinkedHashMap.Entry<K,V> last;
+        if (accessOrder && (last = tail) != e) {
+            LinkedHashMap.Entry<K,V> p =
+                    (LinkedHashMap.Entry<K,V>)e, b = p.before, a = p.after;
+            p.after = null;
+            if (b == null)
+                head = a;
+            else
+                b.after = a;
+            if (a != null)
+                a.before = b;
+            else
+                last = b;
+            if (last == null)
+                head = p;
+            else {
+                p.before = last;
+                last.after = p;
+            }
+            tail = p;
+            ++modCount;
+        }
+    }
+
+    /** 按照链表的顺序写出，反序列化之后迭代顺序不变 */
+    void internalWriteEntries(java.io.ObjectOutputStream s) throws java.io.IOException {
+        for (LinkedHashMap.Entry<K,V> e = head; e != null; e = e.after) {
+            s.writeObject(e.key);
+            s.writeObject(e.value);
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    // 构造函数
+
+    public LinkedHashMap(int initialCapacity, float loadFactor) {
+        super(initialCapacity, loadFactor);
+        accessOrder = false;
+    }
+
+    public LinkedHashMap(int initialCapacity) {
+        super(initialCapacity);
+        accessOrder = false;
+    }
+
+    public LinkedHashMap() {
+        super();
+        accessOrder = false;
+    }
+
+    public LinkedHashMap(Map<? extends K, ? extends V> m) {
+        super();
+        accessOrder = false;
+        putMapEntries(m, false);
+    }
+
+    /**
+     * 指定迭代顺序，accessOrder为true时按照访问顺序迭代
+     */
+    public LinkedHashMap(int initialCapacity,
+                         float loadFactor,
+                         boolean accessOrder) {
+        super(initialCapacity, loadFactor);
+        this.accessOrder = accessOrder;
+    }
+
+    /**
+     * 是否含有某个值，直接遍历链表，不需要扫描整个table
+     */
+    public boolean containsValue(Object value) {
+        for (LinkedHashMap.Entry<K,V> e = head; e != null; e = e.after) {
+            V v = e.value;
+            if (v == value || (value != null && value.equals(v)))
+                return true;
+        }
+        return false;
+    }
+
+    /** 根据key获取值，访问顺序模式下会把节点移动到链表尾部 */
+    public V get(Object key) {
+        Node<K,V> e;
+        if ((e = getNode(keyHash(key), key)) == null)
+            return null;
+        if (accessOrder)
+            afterNodeAccess(e);
+        return e.value;
+    }
+
+    public V getOrDefault(Object key, V defaultValue) {
+        Node<K,V> e;
+        if ((e = getNode(keyHash(key), key)) == null)
+            return defaultValue;
+        if (accessOrder)
+            afterNodeAccess(e);
+        return e.value;
+    }
+
+    public void clear() {
+        super.clear();
+        head = tail = null;
+    }
+
+    /**
+     * 每次插入新的元素之后调用，返回true时最老的节点会被删除
+     *
+     * 默认总是返回false，子类可以重写它实现容量有界的缓存
+     */
+    protected boolean removeEldestEntry(Map.Entry<K,V> eldest) {
+        return false;
+    }
+
+    /* ------------------------------------------------------------ */
+    // 视图，迭代顺序都是链表的顺序
+
+    public Set<K> keySet() {
+        Set<K> ks = keySet;
+        if (ks == null) {
+            ks = new LinkedKeySet();
+            keySet = ks;
+        }
+        return ks;
+    }
+
+    final class LinkedKeySet extends AbstractSet<K> {
+        public final int size()                 { return size; }
+        public final void clear()               { LinkedHashMap.this.clear(); }
+        public final Iterator<K> iterator() {
+            return new LinkedKeyIterator();
+        }
+        public final boolean contains(Object o) { return containsKey(o); }
+        public final boolean remove(Object key) {
+            return removeNode(keyHash(key), key, null, false, true) != null;
+        }
+        public final void forEach(Consumer<? super K> action) {
+            if (action == null)
+                throw new NullPointerException();
+            int mc = modCount;
+            for (LinkedHashMap.Entry<K,V> e = head; e != null; e = e.after)
+                action.accept(e.key);
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    public Collection<V> values() {
+        Collection<V> vs = values;
+        if (vs == null) {
+            vs = new LinkedValues();
+            values = vs;
+        }
+        return vs;
+    }
+
+    final class LinkedValues extends AbstractCollection<V> {
+        public final int size()                 { return size; }
+        public final void clear()               { LinkedHashMap.this.clear(); }
+        public final Iterator<V> iterator() {
+            return new LinkedValueIterator();
+        }
+        public final boolean contains(Object o) { return containsValue(o); }
+        public final void forEach(Consumer<? super V> action) {
+            if (action == null)
+                throw new NullPointerException();
+            int mc = modCount;
+            for (LinkedHashMap.Entry<K,V> e = head; e != null; e = e.after)
+                action.accept(e.value);
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new LinkedEntrySet()) : es;
+    }
+
+    final class LinkedEntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public final int size()                 { return size; }
+        public final void clear()               { LinkedHashMap.this.clear(); }
+        public final Iterator<Map.Entry<K,V>> iterator() {
+            return new LinkedEntryIterator();
+        }
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object key = e.getKey();
+            Node<K,V> candidate = getNode(keyHash(key), key);
+            return candidate != null && candidate.equals(e);
+        }
+        public final boolean remove(Object o) {
+            if (o instanceof Map.Entry) {
+                Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+                Object key = e.getKey();
+                Object value = e.getValue();
+                return removeNode(keyHash(key), key, value, true, true) != null;
+            }
+            return false;
+        }
+        public final void forEach(Consumer<? super Map.Entry<K,V>> action) {
+            if (action == null)
+                throw new NullPointerException();
+            int mc = modCount;
+            for (LinkedHashMap.Entry<K,V> e = head; e != null; e = e.after)
+                action.accept(e);
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    // Map的默认方法，按照链表顺序遍历
+
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        int mc = modCount;
+        for (LinkedHashMap.Entry<K,V> e = head; e != null; e = e.after)
+            action.accept(e.key, e.value);
+        if (modCount != mc)
+            throw new ConcurrentModificationException();
+    }
+
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        if (function == null)
+            throw new NullPointerException();
+        int mc = modCount;
+        for (LinkedHashMap.Entry<K,V> e = head; e != null; e = e.after)
+            e.value = function.apply(e.key, e.value);
+        if (modCount != mc)
+            throw new ConcurrentModificationException();
+    }
+
+    /* ------------------------------------------------------------ */
+    // 迭代器
+
+    abstract class LinkedHashIterator {
+        LinkedHashMap.Entry<K,V> next;     // 下一个返回的节点
+        LinkedHashMap.Entry<K,V> current;  // 当前的节点
+        int expectedModCount;              // 用于快速失败
+
+        LinkedHashIterator() {
+            next = head;
+            expectedModCount = modCount;
+            current = null;
+        }
+
+        public final boolean hasNext() {
+            return next != null;
+        }
+
+        final LinkedHashMap.Entry<K,V> nextNode() {
+            LinkedHashMap.Entry<K,V> e = next;
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (e == null)
+                throw new NoSuchElementException();
+            current = e;
+            next = e.after;
+            return e;
+        }
+
+        public final void remove() {
+            Node<K,V> p = current;
+            if (p == null)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            current = null;
+            K key = p.key;
+            removeNode(keyHash(key), key, null, false, false);
+            expectedModCount = modCount;
+        }
+    }
+
+    final class LinkedKeyIterator extends LinkedHashIterator
+            implements Iterator<K> {
+        public final K next() { return nextNode().getKey(); }
+    }
+
+    final class LinkedValueIterator extends LinkedHashIterator
+            implements Iterator<V> {
+        public final V next() { return nextNode().value; }
+    }
+
+    final class LinkedEntryIterator extends LinkedHashIterator
+            implements Iterator<Map.Entry<K,V>> {
+        public final Map.Entry<K,V> next() { return nextNode(); }
+    }
 }
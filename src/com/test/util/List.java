@@ -33,6 +33,36 @@ public interface List<E> extends Collection<E> {
 
     boolean retainAll(Collection<?> c);
 
+    /**
+     * 返回index位置的元素
+     * */
+    E get(int index);
+
+    /**
+     * 把index位置的元素替换为element，返回原来的元素
+     * */
+    E set(int index, E element);
+
+    /**
+     * 在index位置插入元素，原来index及之后的元素向后移动
+     * */
+    void add(int index, E element);
+
+    /**
+     * 删除index位置的元素，之后的元素向前移动，返回被删除的元素
+     * */
+    E remove(int index);
+
+    /**
+     * 返回第一个等于o的元素的下标，不存在时返回-1
+     * */
+    int indexOf(Object o);
+
+    /**
+     * 返回最后一个等于o的元素的下标，不存在时返回-1
+     * */
+    int lastIndexOf(Object o);
+
     default void replaceAll(UnaryOperator<E> operator){
         Objects.requireNonNull(operator);
         final ListIterator<E> li = this.listIterator();
@@ -41,12 +71,28 @@ public interface List<E> extends Collection<E> {
         }
     }
 
+    /**
+     * 把列表复制到数组中排序，再通过列表迭代器写回，comparator为null的时候按自然顺序排序
+     * */
     @SuppressWarnings({"unchecked", "rawtypes"})
-    default void sort(Comparator<? extends E> comparator){
-        Objects.requireNonNull(comparator);
-        for (E e:this) {
+    default void sort(Comparator<? super E> comparator){
+        Object[] a = this.toArray();
+        Comparator c = comparator;
+        if(c == null)
+            java.util.Arrays.sort(a);
+        else
+            java.util.Arrays.sort(a, c::compare);
+        ListIterator<E> i = this.listIterator();
+        for(Object e : a){
+            i.next();
+            i.set((E) e);
         }
     }
 
     ListIterator<E> listIterator();
+
+    /**
+     * 返回从index开始的列表迭代器
+     * */
+    ListIterator<E> listIterator(int index);
 }
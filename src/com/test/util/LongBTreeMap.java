@@ -0,0 +1,1688 @@
+package com.test.util;
+
+import com.test.util.function.BiConsumer;
+import com.test.util.function.Consumer;
+import com.test.util.function.LongConsumer;
+import com.test.util.stream.LongStream;
+import com.test.util.stream.StreamSupport;
+
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * key是long的B+树，按照key的自然顺序排列
+ *
+ * 所有的键值对都存放在叶子节点中，叶子节点用连续的long数组存放key，用Object数组存放value，
+ * 并且通过prev/next链接成双向链表，范围扫描找到起点之后只需要顺序地读数组，不再访问上层节点；
+ * 内部节点只存放用于路由的分隔key和子节点
+ *
+ * 每个节点最多有64个key，叶子节点的key数组正好是8条64字节的缓存行，
+ * 一次查找只访问log64(n)层节点，红黑树则需要访问log2(n)个分散在堆中的节点
+ *
+ * 与TreeMap相比，每个key不再需要40字节的Entry和16字节的Long，只占用叶子数组中的8字节加上一个value引用
+ *
+ * 插入时叶子节点满了就分裂成两半，向当前最大key之后追加时不平分，旧的叶子保持满的状态，
+ * 这样按时间顺序写入的时间戳得到的都是满的叶子；删除时叶子节点少于1/4就和同一个父节点下的相邻叶子合并，
+ * 空的内部节点会被删掉，但内部节点之间不做合并
+ *
+ * 由于key是long，开区间可以转换成闭区间，所以子映射内部只保存闭区间[lo, hi]
+ *
+ * 通过Map接口访问时key会被装箱，
+ * 对性能敏感的代码应该使用get(long)、put(long, V)、floorKey(long, long)、ceilingKey(long, long)和keyStream
+ */
+public class LongBTreeMap<V> extends AbstractMap<Long,V> implements NavigableMap<Long,V>, Cloneable {
+    /** 叶子节点最多存放的key个数，64个long是8条缓存行 */
+    static final int LEAF_CAPACITY = 64;
+
+    /** 内部节点最多存放的分隔key个数，子节点最多多一个 */
+    static final int BRANCH_CAPACITY = 64;
+
+    /** 叶子节点少于这个数量时尝试与相邻的叶子合并 */
+    static final int MIN_LEAF_SIZE = LEAF_CAPACITY / 4;
+
+    /** 合并之后的叶子不超过这个数量，留出空间避免马上又分裂 */
+    static final int MERGE_THRESHOLD = LEAF_CAPACITY * 3 / 4;
+
+    /** 节点的基类，size对于叶子是key的个数，对于内部节点是分隔key的个数 */
+    abstract static class Node {
+        final long[] keys;
+        int size;
+
+        Node(int capacity) {
+            keys = new long[capacity];
+        }
+    }
+
+    /** 叶子节点，values[i]是keys[i]对应的value */
+    static final class Leaf extends Node {
+        final Object[] values = new Object[LEAF_CAPACITY];
+        Leaf prev, next;
+
+        Leaf() {
+            super(LEAF_CAPACITY);
+        }
+    }
+
+    /**
+     * 内部节点，children[i]中的key k满足 keys[i - 1] <= k < keys[i]
+     */
+    static final class Branch extends Node {
+        final Node[] children = new Node[BRANCH_CAPACITY + 1];
+
+        Branch() {
+            super(BRANCH_CAPACITY);
+        }
+    }
+
+    /** 根节点，为空时是null */
+    transient Node root;
+
+    /** 内部节点的层数，根节点是叶子时为0 */
+    transient int height;
+
+    /** 链表的头和尾 */
+    transient Leaf firstLeaf, lastLeaf;
+
+    /** 元素个数 */
+    transient int size;
+
+    /** 结构修改的次数，用于快速失败 */
+    transient int modCount;
+
+    /**
+     * 插入和删除时记录从根节点向下的路径，pathNode[d]是第d层的内部节点，pathIndex[d]是走向的子节点下标
+     * 修改操作不会分配任何路径对象，只读的操作不使用这两个数组
+     */
+    private transient Branch[] pathNode = new Branch[8];
+    private transient int[] pathIndex = new int[8];
+
+    public LongBTreeMap() {
+    }
+
+    public LongBTreeMap(Map<? extends Long, ? extends V> m) {
+        putAll(m);
+    }
+
+    /**
+     * 使用自然顺序的SortedMap已经是有序的，直接批量构造
+     */
+    public LongBTreeMap(SortedMap<Long, ? extends V> m) {
+        putAll(m);
+    }
+
+    /* ---------------- 查找 -------------- */
+
+    /** 在a[0, n)中二分查找k，找到时返回下标，否则返回-(插入位置 + 1) */
+    static int search(long[] a, int n, long k) {
+        int low = 0, high = n - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midVal = a[mid];
+            if (midVal < k)
+                low = mid + 1;
+            else if (midVal > k)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -(low + 1);
+    }
+
+    /** 内部节点中k所在的子节点下标，即小于等于k的分隔key的个数 */
+    static int childIndex(Branch b, long k) {
+        long[] a = b.keys;
+        int low = 0, high = b.size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (a[mid] <= k)
+                low = mid + 1;
+            else
+                high = mid - 1;
+        }
+        return low;
+    }
+
+    /** 从根节点向下找到k所在的叶子，树为空时返回null */
+    final Leaf leafFor(long k) {
+        Node x = root;
+        for (int h = height; h > 0; h--) {
+            Branch b = (Branch) x;
+            x = b.children[childIndex(b, k)];
+        }
+        return (Leaf) x;
+    }
+
+    /** 大于等于k的最小key的位置，不存在时返回null */
+    final MapEntry ceilingEntry0(long k) {
+        Leaf l = leafFor(k);
+        if (l == null)
+            return null;
+        int i = search(l.keys, l.size, k);
+        if (i < 0 && (i = -i - 1) == l.size) {
+            // leafFor(k)中所有的key都小于k，下一个叶子中的key都大于k
+            if ((l = l.next) == null)
+                return null;
+            i = 0;
+        }
+        return new MapEntry(l, i);
+    }
+
+    /** 小于等于k的最大key的位置，不存在时返回null */
+    final MapEntry floorEntry0(long k) {
+        Leaf l = leafFor(k);
+        if (l == null)
+            return null;
+        int i = search(l.keys, l.size, k);
+        if (i < 0 && (i = -i - 2) < 0) {
+            if ((l = l.prev) == null)
+                return null;
+            i = l.size - 1;
+        }
+        return new MapEntry(l, i);
+    }
+
+    final MapEntry higherEntry0(long k) {
+        return k == Long.MAX_VALUE ? null : ceilingEntry0(k + 1);
+    }
+
+    final MapEntry lowerEntry0(long k) {
+        return k == Long.MIN_VALUE ? null : floorEntry0(k - 1);
+    }
+
+    final MapEntry firstEntry0() {
+        return firstLeaf == null ? null : new MapEntry(firstLeaf, 0);
+    }
+
+    final MapEntry lastEntry0() {
+        return lastLeaf == null ? null : new MapEntry(lastLeaf, lastLeaf.size - 1);
+    }
+
+    /**
+     * 返回key对应的value，不存在时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long k) {
+        Leaf l = leafFor(k);
+        if (l == null)
+            return null;
+        int i = search(l.keys, l.size, k);
+        return i >= 0 ? (V) l.values[i] : null;
+    }
+
+    public boolean containsKey(long k) {
+        Leaf l = leafFor(k);
+        return l != null && search(l.keys, l.size, k) >= 0;
+    }
+
+    /**
+     * 小于等于k的最大key，不存在时返回defaultKey，不会装箱
+     */
+    public long floorKey(long k, long defaultKey) {
+        Leaf l = leafFor(k);
+        if (l == null)
+            return defaultKey;
+        int i = search(l.keys, l.size, k);
+        if (i >= 0)
+            return k;
+        if ((i = -i - 2) >= 0)
+            return l.keys[i];
+        return (l = l.prev) == null ? defaultKey : l.keys[l.size - 1];
+    }
+
+    /**
+     * 大于等于k的最小key，不存在时返回defaultKey，不会装箱
+     */
+    public long ceilingKey(long k, long defaultKey) {
+        Leaf l = leafFor(k);
+        if (l == null)
+            return defaultKey;
+        int i = search(l.keys, l.size, k);
+        if (i >= 0)
+            return k;
+        if ((i = -i - 1) < l.size)
+            return l.keys[i];
+        return (l = l.next) == null ? defaultKey : l.keys[0];
+    }
+
+    public V get(Object key) {
+        return get(((Long) key).longValue());
+    }
+
+    public boolean containsKey(Object key) {
+        return containsKey(((Long) key).longValue());
+    }
+
+    public boolean containsValue(Object value) {
+        for (Leaf l = firstLeaf; l != null; l = l.next) {
+            Object[] vs = l.values;
+            for (int i = 0, n = l.size; i < n; i++)
+                if (Objects.equals(value, vs[i]))
+                    return true;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /* ---------------- 插入 -------------- */
+
+    /**
+     * 放入键值对，返回旧的value
+     *
+     * 先向下找到叶子并记录路径，叶子有空位就直接插入，
+     * 否则分裂叶子，把右半部分的第一个key作为分隔key插入父节点，父节点满了再继续向上分裂
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long k, V v) {
+        if (root == null) {
+            Leaf l = new Leaf();
+            l.keys[0] = k;
+            l.values[0] = v;
+            l.size = 1;
+            root = firstLeaf = lastLeaf = l;
+            size = 1;
+            modCount++;
+            return null;
+        }
+        Node x = root;
+        for (int d = 0; d < height; d++) {
+            Branch b = (Branch) x;
+            int c = childIndex(b, k);
+            pathNode[d] = b;
+            pathIndex[d] = c;
+            x = b.children[c];
+        }
+        Leaf leaf = (Leaf) x;
+        int i = search(leaf.keys, leaf.size, k);
+        if (i >= 0) {
+            V oldValue = (V) leaf.values[i];
+            leaf.values[i] = v;
+            return oldValue;
+        }
+        i = -i - 1;
+        if (leaf.size < LEAF_CAPACITY) {
+            insertAt(leaf, i, k, v);
+        } else {
+            Leaf right = new Leaf();
+            int n = leaf.size;
+            boolean append = i == n && leaf.next == null;
+            if (append) {
+                // 向最后追加时旧的叶子保持满的状态
+                right.keys[0] = k;
+                right.values[0] = v;
+                right.size = 1;
+            } else {
+                int mid = n >>> 1;
+                System.arraycopy(leaf.keys, mid, right.keys, 0, n - mid);
+                System.arraycopy(leaf.values, mid, right.values, 0, n - mid);
+                java.util.Arrays.fill(leaf.values, mid, n, null);
+                leaf.size = mid;
+                right.size = n - mid;
+                if (i < mid)
+                    insertAt(leaf, i, k, v);
+                else
+                    insertAt(right, i - mid, k, v);
+            }
+            right.prev = leaf;
+            right.next = leaf.next;
+            if (leaf.next != null)
+                leaf.next.prev = right;
+            else
+                lastLeaf = right;
+            leaf.next = right;
+            insertIntoParents(right.keys[0], right, append);
+        }
+        size++;
+        modCount++;
+        return null;
+    }
+
+    public V put(Long key, V value) {
+        return put(key.longValue(), value);
+    }
+
+    private static void insertAt(Leaf l, int i, long k, Object v) {
+        int n = l.size;
+        if (i < n) {
+            System.arraycopy(l.keys, i, l.keys, i + 1, n - i);
+            System.arraycopy(l.values, i, l.values, i + 1, n - i);
+        }
+        l.keys[i] = k;
+        l.values[i] = v;
+        l.size = n + 1;
+    }
+
+    private static void insertAt(Branch b, int i, long sep, Node right) {
+        int n = b.size;
+        if (i < n) {
+            System.arraycopy(b.keys, i, b.keys, i + 1, n - i);
+            System.arraycopy(b.children, i + 1, b.children, i + 2, n - i);
+        }
+        b.keys[i] = sep;
+        b.children[i + 1] = right;
+        b.size = n + 1;
+    }
+
+    /**
+     * 沿着记录的路径向上，把分裂出来的right节点和它的分隔key插入父节点
+     *
+     * 内部节点分裂时中间的key被提升到上一层，append为true并且插入位置在最后时，
+     * 新节点只包含right，旧节点保持满的状态
+     */
+    private void insertIntoParents(long sep, Node right, boolean append) {
+        for (int d = height - 1; d >= 0; d--) {
+            Branch b = pathNode[d];
+            pathNode[d] = null;
+            int pos = pathIndex[d];
+            if (b.size < BRANCH_CAPACITY) {
+                insertAt(b, pos, sep, right);
+                return;
+            }
+            Branch nb = new Branch();
+            int n = b.size;
+            long up;
+            if (append && pos == n) {
+                up = sep;
+                nb.children[0] = right;
+            } else {
+                int mid = n >>> 1;
+                up = b.keys[mid];
+                System.arraycopy(b.keys, mid + 1, nb.keys, 0, n - mid - 1);
+                System.arraycopy(b.children, mid + 1, nb.children, 0, n - mid);
+                java.util.Arrays.fill(b.children, mid + 1, n + 1, null);
+                nb.size = n - mid - 1;
+                b.size = mid;
+                if (pos <= mid)
+                    insertAt(b, pos, sep, right);
+                else
+                    insertAt(nb, pos - mid - 1, sep, right);
+            }
+            sep = up;
+            right = nb;
+        }
+        // 根节点分裂，树长高一层
+        Branch r = new Branch();
+        r.keys[0] = sep;
+        r.children[0] = root;
+        r.children[1] = right;
+        r.size = 1;
+        root = r;
+        if (++height == pathNode.length) {
+            pathNode = Arrays.copyOf(pathNode, height << 1);
+            pathIndex = Arrays.copyOf(pathIndex, height << 1);
+        }
+    }
+
+    /* ---------------- 删除 -------------- */
+
+    /**
+     * 删除key对应的元素，返回旧的value
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long k) {
+        Node x = root;
+        if (x == null)
+            return null;
+        for (int d = 0; d < height; d++) {
+            Branch b = (Branch) x;
+            int c = childIndex(b, k);
+            pathNode[d] = b;
+            pathIndex[d] = c;
+            x = b.children[c];
+        }
+        Leaf leaf = (Leaf) x;
+        int i = search(leaf.keys, leaf.size, k);
+        if (i < 0) {
+            java.util.Arrays.fill(pathNode, 0, height, null);
+            return null;
+        }
+        V oldValue = (V) leaf.values[i];
+        modCount++;
+        if (--size == 0) {
+            clearNodes();
+            return oldValue;
+        }
+        int n = leaf.size - 1;
+        System.arraycopy(leaf.keys, i + 1, leaf.keys, i, n - i);
+        System.arraycopy(leaf.values, i + 1, leaf.values, i, n - i);
+        leaf.values[n] = null;
+        leaf.size = n;
+        if (n < MIN_LEAF_SIZE && height > 0)
+            mergeLeaf(leaf);
+        java.util.Arrays.fill(pathNode, 0, height, null);
+        return oldValue;
+    }
+
+    public V remove(Object key) {
+        return remove(((Long) key).longValue());
+    }
+
+    /**
+     * 叶子节点太小时与同一个父节点下的相邻叶子合并，优先合并右边的叶子，
+     * 合并之后从父节点中删掉多余的子节点，空的叶子即使不能合并也会被删掉
+     */
+    private void mergeLeaf(Leaf leaf) {
+        Branch p = pathNode[height - 1];
+        int c = pathIndex[height - 1];
+        if (c < p.size && leaf.size + p.children[c + 1].size <= MERGE_THRESHOLD) {
+            Leaf right = (Leaf) p.children[c + 1];
+            System.arraycopy(right.keys, 0, leaf.keys, leaf.size, right.size);
+            System.arraycopy(right.values, 0, leaf.values, leaf.size, right.size);
+            leaf.size += right.size;
+            unlink(right);
+            removeChild(height - 1, c + 1);
+        } else if (c > 0 && leaf.size + p.children[c - 1].size <= MERGE_THRESHOLD) {
+            Leaf left = (Leaf) p.children[c - 1];
+            System.arraycopy(leaf.keys, 0, left.keys, left.size, leaf.size);
+            System.arraycopy(leaf.values, 0, left.values, left.size, leaf.size);
+            left.size += leaf.size;
+            unlink(leaf);
+            removeChild(height - 1, c);
+        } else if (leaf.size == 0) {
+            unlink(leaf);
+            removeChild(height - 1, c);
+        }
+    }
+
+    /** 把叶子从链表中摘下来 */
+    private void unlink(Leaf l) {
+        if (l.prev != null)
+            l.prev.next = l.next;
+        else
+            firstLeaf = l.next;
+        if (l.next != null)
+            l.next.prev = l.prev;
+        else
+            lastLeaf = l.prev;
+        l.prev = l.next = null;
+    }
+
+    /**
+     * 从第d层的内部节点中删除下标为c的子节点
+     *
+     * 内部节点只剩这一个子节点时整个节点都要删除，继续在上一层删除它，
+     * 最后如果根节点只剩一个子节点，就让这个子节点成为新的根，树变矮
+     */
+    private void removeChild(int d, int c) {
+        for (; d >= 0; d--) {
+            Branch b = pathNode[d];
+            int n = b.size;
+            if (n > 0) {
+                if (c > 0)
+                    System.arraycopy(b.keys, c, b.keys, c - 1, n - c);
+                else
+                    System.arraycopy(b.keys, 1, b.keys, 0, n - 1);
+                System.arraycopy(b.children, c + 1, b.children, c, n - c);
+                b.children[n] = null;
+                b.size = n - 1;
+                break;
+            }
+            c = d > 0 ? pathIndex[d - 1] : 0;
+        }
+        while (height > 0 && root.size == 0) {
+            root = ((Branch) root).children[0];
+            pathNode[--height] = null;
+        }
+    }
+
+    public void clear() {
+        modCount++;
+        size = 0;
+        clearNodes();
+    }
+
+    private void clearNodes() {
+        root = null;
+        height = 0;
+        firstLeaf = lastLeaf = null;
+        Arrays.fill(pathNode, null);
+    }
+
+    /* ---------------- 批量构造 -------------- */
+
+    /**
+     * 从严格升序的key数组构造，时间是O(n)
+     *
+     * 叶子节点和内部节点都是满的，然后自底向上一层一层地构造内部节点，
+     * values为null时所有的value都是null，可以把它当作有序的long集合使用
+     */
+    public static <V> LongBTreeMap<V> buildFromSorted(long[] keys, V[] values) {
+        if (values != null && values.length != keys.length)
+            throw new IllegalArgumentException("keys.length != values.length");
+        LongBTreeMap<V> map = new LongBTreeMap<>();
+        for (int i = 0; i < keys.length; i++)
+            map.appendSorted(keys[i], values == null ? null : values[i]);
+        map.finishBuild();
+        return map;
+    }
+
+    /**
+     * 从按key严格升序排列的键值对构造，spliterator必须有SORTED特征，不满足升序时抛出IllegalArgumentException
+     */
+    public static <V> LongBTreeMap<V> buildFromSorted(
+            Spliterator<? extends Map.Entry<? extends Long, ? extends V>> spliterator) {
+        Objects.requireNonNull(spliterator);
+        if (!spliterator.hasCharacteristics(Spliterator.SORTED))
+            throw new IllegalArgumentException("spliterator is not SORTED");
+        LongBTreeMap<V> map = new LongBTreeMap<>();
+        spliterator.forEachRemaining(e -> map.appendSorted(e.getKey(), e.getValue()));
+        map.finishBuild();
+        return map;
+    }
+
+    /**
+     * 当前的树为空并且m是自然顺序的SortedMap时，直接按顺序批量构造
+     */
+    public void putAll(Map<? extends Long, ? extends V> m) {
+        if (size == 0 && !m.isEmpty() && m instanceof SortedMap
+                && ((SortedMap<?,?>) m).comparator() == null) {
+            for (Map.Entry<? extends Long, ? extends V> e : m.entrySet())
+                appendSorted(e.getKey(), e.getValue());
+            finishBuild();
+            return;
+        }
+        super.putAll(m);
+    }
+
+    /** 构造时把键值对追加到最后一个叶子，满了就新建一个叶子 */
+    private void appendSorted(long k, Object v) {
+        Leaf l = lastLeaf;
+        if (l == null) {
+            l = firstLeaf = lastLeaf = new Leaf();
+        } else {
+            if (k <= l.keys[l.size - 1])
+                throw new IllegalArgumentException("keys are not strictly ascending: " + l.keys[l.size - 1] + ", " + k);
+            if (l.size == LEAF_CAPACITY) {
+                Leaf next = new Leaf();
+                next.prev = l;
+                l.next = next;
+                lastLeaf = l = next;
+            }
+        }
+        l.keys[l.size] = k;
+        l.values[l.size++] = v;
+        size++;
+    }
+
+    /** 所有的叶子都追加完之后，自底向上构造内部节点 */
+    private void finishBuild() {
+        modCount++;
+        int count = 0;
+        for (Leaf l = firstLeaf; l != null; l = l.next)
+            count++;
+        if (count == 0)
+            return;
+        Node[] nodes = new Node[count];
+        long[] mins = new long[count];
+        int i = 0;
+        for (Leaf l = firstLeaf; l != null; l = l.next) {
+            nodes[i] = l;
+            mins[i++] = l.keys[0];
+        }
+        int h = 0;
+        while (count > 1) {
+            int fanOut = BRANCH_CAPACITY + 1;
+            int parents = (count + fanOut - 1) / fanOut;
+            Node[] upper = new Node[parents];
+            long[] upperMins = new long[parents];
+            for (int p = 0, c = 0; p < parents; p++) {
+                Branch b = new Branch();
+                int end = Math.min(c + fanOut, count);
+                upperMins[p] = mins[c];
+                b.children[0] = nodes[c++];
+                while (c < end) {
+                    b.keys[b.size] = mins[c];
+                    b.children[++b.size] = nodes[c++];
+                }
+                upper[p] = b;
+            }
+            nodes = upper;
+            mins = upperMins;
+            count = parents;
+            h++;
+        }
+        root = nodes[0];
+        height = h;
+        if (h >= pathNode.length) {
+            pathNode = new Branch[h << 1];
+            pathIndex = new int[h << 1];
+        }
+    }
+
+    /**
+     * 返回一个浅拷贝，按顺序重新批量构造，value本身不会被复制
+     */
+    @SuppressWarnings("unchecked")
+    public LongBTreeMap<V> clone() {
+        LongBTreeMap<V> clone;
+        try {
+            clone = (LongBTreeMap<V>) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError(e);
+        }
+        clone.root = null;
+        clone.height = 0;
+        clone.firstLeaf = clone.lastLeaf = null;
+        clone.size = 0;
+        clone.modCount = 0;
+        clone.pathNode = new Branch[8];
+        clone.pathIndex = new int[8];
+        clone.keySet = null;
+        clone.values = null;
+        clone.entrySet = null;
+        clone.descendingMap = null;
+        for (Leaf l = firstLeaf; l != null; l = l.next)
+            for (int i = 0; i < l.size; i++)
+                clone.appendSorted(l.keys[i], l.values[i]);
+        clone.finishBuild();
+        return clone;
+    }
+
+    /* ---------------- 遍历 -------------- */
+
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super Long, ? super V> action) {
+        Objects.requireNonNull(action);
+        int mc = modCount;
+        for (Leaf l = firstLeaf; l != null; l = l.next) {
+            for (int i = 0; i < l.size; i++)
+                action.accept(l.keys[i], (V) l.values[i]);
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    /** 所有key组成的有序LongStream，按叶子分割，不会装箱 */
+    public LongStream keyStream() {
+        return StreamSupport.longStream(new KeySpliterator<>(this, Long.MIN_VALUE, Long.MAX_VALUE, true), false);
+    }
+
+    /** [from, to]闭区间中的key组成的有序LongStream */
+    public LongStream keyStream(long from, long to) {
+        return StreamSupport.longStream(new KeySpliterator<>(this, from, to, false), false);
+    }
+
+    /** [lo, hi]中key的个数，只需要逐个叶子累加，不需要逐个key计数 */
+    final int countRange(long lo, long hi) {
+        if (lo > hi)
+            return 0;
+        Leaf l = leafFor(lo);
+        if (l == null)
+            return 0;
+        int i = search(l.keys, l.size, lo);
+        if (i < 0)
+            i = -i - 1;
+        int count = 0;
+        for (; l != null; l = l.next, i = 0) {
+            int n = l.size;
+            if (l.keys[n - 1] > hi) {
+                int j = search(l.keys, n, hi);
+                count += (j >= 0 ? j + 1 : -j - 1) - i;
+                break;
+            }
+            count += n - i;
+        }
+        return count;
+    }
+
+    /* ---------------- NavigableMap -------------- */
+
+    public Comparator<? super Long> comparator() {
+        return null;
+    }
+
+    public Long firstKey() {
+        return key(firstEntry0());
+    }
+
+    public Long lastKey() {
+        return key(lastEntry0());
+    }
+
+    public Map.Entry<Long,V> firstEntry() {
+        return exportEntry(firstEntry0());
+    }
+
+    public Map.Entry<Long,V> lastEntry() {
+        return exportEntry(lastEntry0());
+    }
+
+    public Map.Entry<Long,V> pollFirstEntry() {
+        return pollEntry(firstEntry0());
+    }
+
+    public Map.Entry<Long,V> pollLastEntry() {
+        return pollEntry(lastEntry0());
+    }
+
+    public Map.Entry<Long,V> lowerEntry(Long key) {
+        return exportEntry(lowerEntry0(key));
+    }
+
+    public Long lowerKey(Long key) {
+        return keyOrNull(lowerEntry0(key));
+    }
+
+    public Map.Entry<Long,V> floorEntry(Long key) {
+        return exportEntry(floorEntry0(key));
+    }
+
+    public Long floorKey(Long key) {
+        return keyOrNull(floorEntry0(key));
+    }
+
+    public Map.Entry<Long,V> ceilingEntry(Long key) {
+        return exportEntry(ceilingEntry0(key));
+    }
+
+    public Long ceilingKey(Long key) {
+        return keyOrNull(ceilingEntry0(key));
+    }
+
+    public Map.Entry<Long,V> higherEntry(Long key) {
+        return exportEntry(higherEntry0(key));
+    }
+
+    public Long higherKey(Long key) {
+        return keyOrNull(higherEntry0(key));
+    }
+
+    private transient EntrySetView entrySet;
+    private transient NavigableMap<Long,V> descendingMap;
+
+    public Set<Long> keySet() {
+        Set<Long> ks = keySet;
+        return (ks != null) ? ks : (keySet = new KeySetView(Long.MIN_VALUE, Long.MAX_VALUE, false));
+    }
+
+    public Collection<V> values() {
+        Collection<V> vs = values;
+        return (vs != null) ? vs : (values = new ValuesView(Long.MIN_VALUE, Long.MAX_VALUE, false));
+    }
+
+    public Set<Map.Entry<Long,V>> entrySet() {
+        EntrySetView es = entrySet;
+        return (es != null) ? es : (entrySet = new EntrySetView(Long.MIN_VALUE, Long.MAX_VALUE, false));
+    }
+
+    public NavigableMap<Long,V> descendingMap() {
+        NavigableMap<Long,V> dm = descendingMap;
+        return (dm != null) ? dm : (descendingMap = new SubMap(Long.MIN_VALUE, true, Long.MAX_VALUE, true, true));
+    }
+
+    public NavigableMap<Long,V> subMap(Long fromKey, boolean fromInclusive, Long toKey, boolean toInclusive) {
+        if (fromKey > toKey)
+            throw new IllegalArgumentException("fromKey > toKey");
+        return new SubMap(fromKey, fromInclusive, toKey, toInclusive, false);
+    }
+
+    public NavigableMap<Long,V> headMap(Long toKey, boolean inclusive) {
+        return new SubMap(Long.MIN_VALUE, true, toKey, inclusive, false);
+    }
+
+    public NavigableMap<Long,V> tailMap(Long fromKey, boolean inclusive) {
+        return new SubMap(fromKey, inclusive, Long.MAX_VALUE, true, false);
+    }
+
+    public SortedMap<Long,V> subMap(Long fromKey, Long toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    public SortedMap<Long,V> headMap(Long toKey) {
+        return headMap(toKey, false);
+    }
+
+    public SortedMap<Long,V> tailMap(Long fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    /** 导航方法返回不可修改的快照 */
+    @SuppressWarnings("unchecked")
+    final Map.Entry<Long,V> exportEntry(MapEntry e) {
+        return e == null ? null : new AbstractMap.SimpleImmutableEntry<>(e.leaf.keys[e.index], (V) e.leaf.values[e.index]);
+    }
+
+    final Map.Entry<Long,V> pollEntry(MapEntry e) {
+        Map.Entry<Long,V> result = exportEntry(e);
+        if (e != null)
+            remove(e.leaf.keys[e.index]);
+        return result;
+    }
+
+    static Long keyOrNull(LongBTreeMap<?>.MapEntry e) {
+        return e == null ? null : e.leaf.keys[e.index];
+    }
+
+    static Long key(LongBTreeMap<?>.MapEntry e) {
+        if (e == null)
+            throw new NoSuchElementException();
+        return e.leaf.keys[e.index];
+    }
+
+    /**
+     * 直接引用叶子中槽位的Entry，setValue会写回叶子中
+     * 叶子在插入和删除时会移动元素，所以结构修改之后这个Entry就不再有效
+     */
+    final class MapEntry implements Map.Entry<Long,V> {
+        final Leaf leaf;
+        final int index;
+
+        MapEntry(Leaf leaf, int index) {
+            this.leaf = leaf;
+            this.index = index;
+        }
+
+        public Long getKey() {
+            return leaf.keys[index];
+        }
+
+        @SuppressWarnings("unchecked")
+        public V getValue() {
+            return (V) leaf.values[index];
+        }
+
+        public V setValue(V value) {
+            V oldValue = getValue();
+            leaf.values[index] = value;
+            return oldValue;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            return getKey().equals(e.getKey()) && Objects.equals(getValue(), e.getValue());
+        }
+
+        public int hashCode() {
+            return Long.hashCode(leaf.keys[index]) ^ Objects.hashCode(leaf.values[index]);
+        }
+
+        public String toString() {
+            return leaf.keys[index] + "=" + leaf.values[index];
+        }
+    }
+
+    /* ---------------- 视图 -------------- */
+
+    /**
+     * [lo, hi]区间上的迭代器，descending为true时从hi向lo遍历
+     *
+     * 删除当前元素时叶子中的元素会移动，甚至会合并到相邻的叶子中，
+     * 所以删除之后按照被删除的key重新定位下一个元素
+     */
+    abstract class RangeIterator {
+        final long lo, hi;
+        final boolean descending;
+        Leaf leaf;          // 下一个元素所在的叶子，null表示遍历结束
+        int index;
+        Leaf lastLeaf;
+        int lastIndex = -1;
+        int expectedModCount;
+
+        RangeIterator(long lo, long hi, boolean descending) {
+            this.lo = lo;
+            this.hi = hi;
+            this.descending = descending;
+            expectedModCount = modCount;
+            if (lo <= hi) {
+                if (descending)
+                    seek(floorEntry0(hi));
+                else
+                    seek(ceilingEntry0(lo));
+            }
+        }
+
+        private void seek(MapEntry e) {
+            if (e == null || !inRange(e.leaf.keys[e.index])) {
+                leaf = null;
+            } else {
+                leaf = e.leaf;
+                index = e.index;
+            }
+        }
+
+        private boolean inRange(long k) {
+            return k >= lo && k <= hi;
+        }
+
+        public final boolean hasNext() {
+            return leaf != null;
+        }
+
+        /** 移动到下一个元素，返回当前元素的下标，当前元素的叶子记录在lastLeaf中 */
+        final int nextIndex() {
+            Leaf l = leaf;
+            if (l == null)
+                throw new NoSuchElementException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            int i = index;
+            lastLeaf = l;
+            lastIndex = i;
+            // 只需要检查前进方向上的端点
+            if (!descending) {
+                if (++index == l.size) {
+                    leaf = l.next;
+                    index = 0;
+                }
+                if (leaf != null && leaf.keys[index] > hi)
+                    leaf = null;
+            } else {
+                if (--index < 0) {
+                    leaf = l.prev;
+                    if (leaf != null)
+                        index = leaf.size - 1;
+                }
+                if (leaf != null && leaf.keys[index] < lo)
+                    leaf = null;
+            }
+            return i;
+        }
+
+        public final void remove() {
+            if (lastIndex < 0)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            long k = lastLeaf.keys[lastIndex];
+            LongBTreeMap.this.remove(k);
+            lastIndex = -1;
+            lastLeaf = null;
+            expectedModCount = modCount;
+            if (leaf != null)
+                seek(descending ? floorEntry0(k) : ceilingEntry0(k));
+        }
+    }
+
+    final class EntryIterator extends RangeIterator implements Iterator<Map.Entry<Long,V>> {
+        EntryIterator(long lo, long hi, boolean descending) {
+            super(lo, hi, descending);
+        }
+
+        public Map.Entry<Long,V> next() {
+            int i = nextIndex();
+            return new MapEntry(lastLeaf, i);
+        }
+    }
+
+    final class KeyIterator extends RangeIterator implements PrimitiveIterator.OfLong {
+        KeyIterator(long lo, long hi, boolean descending) {
+            super(lo, hi, descending);
+        }
+
+        public long nextLong() {
+            int i = nextIndex();
+            return lastLeaf.keys[i];
+        }
+
+        public Long next() {
+            return nextLong();
+        }
+    }
+
+    final class ValueIterator extends RangeIterator implements Iterator<V> {
+        ValueIterator(long lo, long hi, boolean descending) {
+            super(lo, hi, descending);
+        }
+
+        @SuppressWarnings("unchecked")
+        public V next() {
+            int i = nextIndex();
+            return (V) lastLeaf.values[i];
+        }
+    }
+
+    /** [lo, hi]区间中的元素个数，整个树的区间直接返回size */
+    final int rangeSize(long lo, long hi) {
+        return (lo == Long.MIN_VALUE && hi == Long.MAX_VALUE) ? size : countRange(lo, hi);
+    }
+
+    final class EntrySetView extends AbstractSet<Map.Entry<Long,V>> {
+        final long lo, hi;
+        final boolean descending;
+
+        EntrySetView(long lo, long hi, boolean descending) {
+            this.lo = lo;
+            this.hi = hi;
+            this.descending = descending;
+        }
+
+        public Iterator<Map.Entry<Long,V>> iterator() {
+            return new EntryIterator(lo, hi, descending);
+        }
+
+        public int size() {
+            return rangeSize(lo, hi);
+        }
+
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object k = e.getKey();
+            if (!(k instanceof Long))
+                return false;
+            long key = (Long) k;
+            if (key < lo || key > hi)
+                return false;
+            Leaf l = leafFor(key);
+            int i;
+            return l != null && (i = search(l.keys, l.size, key)) >= 0
+                    && Objects.equals(l.values[i], e.getValue());
+        }
+
+        public boolean remove(Object o) {
+            if (!contains(o))
+                return false;
+            LongBTreeMap.this.remove(((Map.Entry<?,?>) o).getKey());
+            return true;
+        }
+
+        public void clear() {
+            if (lo == Long.MIN_VALUE && hi == Long.MAX_VALUE)
+                LongBTreeMap.this.clear();
+            else
+                super.clear();
+        }
+
+        public Spliterator<Map.Entry<Long,V>> getSpliterator() {
+            if (descending)
+                return Spliterators.spliteratorUnknownSize(iterator(), Spliterator.DISTINCT | Spliterator.ORDERED);
+            return new EntrySpliterator<>(LongBTreeMap.this, lo, hi, lo == Long.MIN_VALUE && hi == Long.MAX_VALUE);
+        }
+    }
+
+    final class KeySetView extends AbstractSet<Long> {
+        final long lo, hi;
+        final boolean descending;
+
+        KeySetView(long lo, long hi, boolean descending) {
+            this.lo = lo;
+            this.hi = hi;
+            this.descending = descending;
+        }
+
+        public Iterator<Long> iterator() {
+            return new KeyIterator(lo, hi, descending);
+        }
+
+        public int size() {
+            return rangeSize(lo, hi);
+        }
+
+        public boolean contains(Object o) {
+            if (!(o instanceof Long))
+                return false;
+            long k = (Long) o;
+            return k >= lo && k <= hi && containsKey(k);
+        }
+
+        public boolean remove(Object o) {
+            if (!contains(o))
+                return false;
+            LongBTreeMap.this.remove((long) (Long) o);
+            return true;
+        }
+
+        public void clear() {
+            if (lo == Long.MIN_VALUE && hi == Long.MAX_VALUE)
+                LongBTreeMap.this.clear();
+            else
+                super.clear();
+        }
+
+        public Spliterator<Long> getSpliterator() {
+            if (descending)
+                return Spliterators.spliteratorUnknownSize(iterator(),
+                        Spliterator.DISTINCT | Spliterator.ORDERED | Spliterator.NONULL);
+            return new KeySpliterator<>(LongBTreeMap.this, lo, hi, lo == Long.MIN_VALUE && hi == Long.MAX_VALUE);
+        }
+    }
+
+    final class ValuesView extends AbstractCollection<V> {
+        final long lo, hi;
+        final boolean descending;
+
+        ValuesView(long lo, long hi, boolean descending) {
+            this.lo = lo;
+            this.hi = hi;
+            this.descending = descending;
+        }
+
+        public Iterator<V> iterator() {
+            return new ValueIterator(lo, hi, descending);
+        }
+
+        public int size() {
+            return rangeSize(lo, hi);
+        }
+
+        public void clear() {
+            if (lo == Long.MIN_VALUE && hi == Long.MAX_VALUE)
+                LongBTreeMap.this.clear();
+            else
+                super.clear();
+        }
+
+        public Spliterator<V> getSpliterator() {
+            if (descending)
+                return Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED);
+            return new ValueSpliterator<>(LongBTreeMap.this, lo, hi, lo == Long.MIN_VALUE && hi == Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * 闭区间[lo, hi]上的子映射，descending为true时是降序的视图
+     *
+     * 所有的查找都先把key限制在区间内，再到整棵树中查找，abs开头的方法按照升序，
+     * 降序时把floor和ceiling、lower和higher、first和last对调
+     */
+    final class SubMap extends AbstractMap<Long,V> implements NavigableMap<Long,V> {
+        final long lo, hi;
+        final boolean descending;
+
+        /**
+         * 把开区间的端点转换成闭区间，Long.MAX_VALUE作为开区间的下界或者Long.MIN_VALUE作为开区间的上界时
+         * 没有任何key满足，使用lo > hi表示空区间
+         */
+        SubMap(long from, boolean fromInclusive, long to, boolean toInclusive, boolean descending) {
+            if ((!fromInclusive && from == Long.MAX_VALUE) || (!toInclusive && to == Long.MIN_VALUE)) {
+                lo = Long.MAX_VALUE;
+                hi = Long.MIN_VALUE;
+            } else {
+                lo = fromInclusive ? from : from + 1;
+                hi = toInclusive ? to : to - 1;
+            }
+            this.descending = descending;
+        }
+
+        boolean inRange(long k) {
+            return k >= lo && k <= hi;
+        }
+
+        /** 开区间的端点可以在区间外一格 */
+        boolean inRange(long k, boolean inclusive) {
+            return inclusive ? inRange(k) : (k >= lo || k == lo - 1) && (k <= hi || k == hi + 1);
+        }
+
+        MapEntry checked(MapEntry e) {
+            return (e == null || !inRange(e.leaf.keys[e.index])) ? null : e;
+        }
+
+        MapEntry absLowest() {
+            return lo > hi ? null : checked(ceilingEntry0(lo));
+        }
+
+        MapEntry absHighest() {
+            return lo > hi ? null : checked(floorEntry0(hi));
+        }
+
+        MapEntry absCeiling(long k) {
+            return k < lo ? absLowest() : checked(ceilingEntry0(k));
+        }
+
+        MapEntry absFloor(long k) {
+            return k > hi ? absHighest() : checked(floorEntry0(k));
+        }
+
+        MapEntry absHigher(long k) {
+            return k < lo ? absLowest() : checked(higherEntry0(k));
+        }
+
+        MapEntry absLower(long k) {
+            return k > hi ? absHighest() : checked(lowerEntry0(k));
+        }
+
+        MapEntry subLowest()          { return descending ? absHighest() : absLowest(); }
+        MapEntry subHighest()         { return descending ? absLowest() : absHighest(); }
+        MapEntry subCeiling(long k)   { return descending ? absFloor(k) : absCeiling(k); }
+        MapEntry subFloor(long k)     { return descending ? absCeiling(k) : absFloor(k); }
+        MapEntry subHigher(long k)    { return descending ? absLower(k) : absHigher(k); }
+        MapEntry subLower(long k)     { return descending ? absHigher(k) : absLower(k); }
+
+        public int size() {
+            return rangeSize(lo, hi);
+        }
+
+        public boolean isEmpty() {
+            return absLowest() == null;
+        }
+
+        public boolean containsKey(Object key) {
+            long k = (Long) key;
+            return inRange(k) && LongBTreeMap.this.containsKey(k);
+        }
+
+        public V get(Object key) {
+            long k = (Long) key;
+            return inRange(k) ? LongBTreeMap.this.get(k) : null;
+        }
+
+        public V put(Long key, V value) {
+            if (!inRange(key))
+                throw new IllegalArgumentException("key out of range");
+            return LongBTreeMap.this.put(key.longValue(), value);
+        }
+
+        public V remove(Object key) {
+            long k = (Long) key;
+            return inRange(k) ? LongBTreeMap.this.remove(k) : null;
+        }
+
+        public Comparator<? super Long> comparator() {
+            return descending ? REVERSE_ORDER : null;
+        }
+
+        public Long firstKey() {
+            return key(subLowest());
+        }
+
+        public Long lastKey() {
+            return key(subHighest());
+        }
+
+        public Map.Entry<Long,V> firstEntry() {
+            return exportEntry(subLowest());
+        }
+
+        public Map.Entry<Long,V> lastEntry() {
+            return exportEntry(subHighest());
+        }
+
+        public Map.Entry<Long,V> pollFirstEntry() {
+            return pollEntry(subLowest());
+        }
+
+        public Map.Entry<Long,V> pollLastEntry() {
+            return pollEntry(subHighest());
+        }
+
+        public Map.Entry<Long,V> lowerEntry(Long key) {
+            return exportEntry(subLower(key));
+        }
+
+        public Long lowerKey(Long key) {
+            return keyOrNull(subLower(key));
+        }
+
+        public Map.Entry<Long,V> floorEntry(Long key) {
+            return exportEntry(subFloor(key));
+        }
+
+        public Long floorKey(Long key) {
+            return keyOrNull(subFloor(key));
+        }
+
+        public Map.Entry<Long,V> ceilingEntry(Long key) {
+            return exportEntry(subCeiling(key));
+        }
+
+        public Long ceilingKey(Long key) {
+            return keyOrNull(subCeiling(key));
+        }
+
+        public Map.Entry<Long,V> higherEntry(Long key) {
+            return exportEntry(subHigher(key));
+        }
+
+        public Long higherKey(Long key) {
+            return keyOrNull(subHigher(key));
+        }
+
+        private transient EntrySetView entrySetView;
+        private transient SubMap descendingMapView;
+
+        public Set<Map.Entry<Long,V>> entrySet() {
+            EntrySetView es = entrySetView;
+            return (es != null) ? es : (entrySetView = new EntrySetView(lo, hi, descending));
+        }
+
+        public Set<Long> keySet() {
+            Set<Long> ks = keySet;
+            return (ks != null) ? ks : (keySet = new KeySetView(lo, hi, descending));
+        }
+
+        public Collection<V> values() {
+            Collection<V> vs = values;
+            return (vs != null) ? vs : (values = new ValuesView(lo, hi, descending));
+        }
+
+        public NavigableMap<Long,V> descendingMap() {
+            SubMap dm = descendingMapView;
+            return (dm != null) ? dm : (descendingMapView = new SubMap(lo, true, hi, true, !descending));
+        }
+
+        /**
+         * 降序时fromKey是较大的一端，转换成升序的闭区间之后再检查是否在当前区间内
+         */
+        public NavigableMap<Long,V> subMap(Long fromKey, boolean fromInclusive, Long toKey, boolean toInclusive) {
+            if (descending ? fromKey < toKey : fromKey > toKey)
+                throw new IllegalArgumentException("fromKey > toKey");
+            if (!inRange(fromKey, fromInclusive))
+                throw new IllegalArgumentException("fromKey out of range");
+            if (!inRange(toKey, toInclusive))
+                throw new IllegalArgumentException("toKey out of range");
+            return descending
+                    ? new SubMap(toKey, toInclusive, fromKey, fromInclusive, true)
+                    : new SubMap(fromKey, fromInclusive, toKey, toInclusive, false);
+        }
+
+        public NavigableMap<Long,V> headMap(Long toKey, boolean inclusive) {
+            if (!inRange(toKey, inclusive))
+                throw new IllegalArgumentException("toKey out of range");
+            return descending
+                    ? new SubMap(toKey, inclusive, hi, true, true)
+                    : new SubMap(lo, true, toKey, inclusive, false);
+        }
+
+        public NavigableMap<Long,V> tailMap(Long fromKey, boolean inclusive) {
+            if (!inRange(fromKey, inclusive))
+                throw new IllegalArgumentException("fromKey out of range");
+            return descending
+                    ? new SubMap(lo, true, fromKey, inclusive, true)
+                    : new SubMap(fromKey, inclusive, hi, true, false);
+        }
+
+        public SortedMap<Long,V> subMap(Long fromKey, Long toKey) {
+            return subMap(fromKey, true, toKey, false);
+        }
+
+        public SortedMap<Long,V> headMap(Long toKey) {
+            return headMap(toKey, false);
+        }
+
+        public SortedMap<Long,V> tailMap(Long fromKey) {
+            return tailMap(fromKey, true);
+        }
+
+        /** [lo, hi]中的key组成的有序LongStream，降序的视图也按升序返回 */
+        public LongStream keyStream() {
+            return LongBTreeMap.this.keyStream(lo, hi);
+        }
+    }
+
+    /** 降序的子映射使用的比较器 */
+    static final Comparator<Long> REVERSE_ORDER = (a, b) -> Long.compare(b, a);
+
+    /* ---------------- 分区迭代器 -------------- */
+
+    /**
+     * 遍历[当前位置, hi]的分区迭代器
+     *
+     * 分割时从根节点向下，找到第一个在(当前key, hi]中有分隔key的节点，取中间的那个分隔key m，
+     * 分成[当前key, m - 1]和[m, hi]两部分，m是两个子树的分界，所以总是落在叶子的边界上，
+     * 越靠近根节点分出来的两部分越大，区间只在一个叶子中时不再分割
+     * 顶层的整棵树是SIZED的，分割之后的大小只是估计
+     */
+    abstract static class LeafSpliterator<V> {
+        final LongBTreeMap<V> tree;
+        Leaf leaf;              // 下一个元素所在的叶子，null表示结束
+        int index;
+        final long hi;
+        int est;
+        boolean sized;
+        final int expectedModCount;
+
+        LeafSpliterator(LongBTreeMap<V> tree, long lo, long hi, boolean sized) {
+            this.tree = tree;
+            this.hi = hi;
+            this.sized = sized;
+            this.expectedModCount = tree.modCount;
+            this.est = tree.size;
+            if (lo <= hi)
+                seek(tree.ceilingEntry0(lo));
+        }
+
+        LeafSpliterator(LongBTreeMap<V> tree, Leaf leaf, int index, long hi, int est, int expectedModCount) {
+            this.tree = tree;
+            this.leaf = leaf;
+            this.index = index;
+            this.hi = hi;
+            this.est = est;
+            this.expectedModCount = expectedModCount;
+        }
+
+        final void seek(LongBTreeMap<V>.MapEntry e) {
+            if (e == null || e.leaf.keys[e.index] > hi) {
+                leaf = null;
+            } else {
+                leaf = e.leaf;
+                index = e.index;
+            }
+        }
+
+        /**
+         * 找到分割点，返回的m满足 当前key < m <= hi，找不到时返回当前key
+         */
+        final long splitKey() {
+            long cur = leaf.keys[index];
+            Node x = tree.root;
+            for (int h = tree.height; h > 0; h--) {
+                Branch b = (Branch) x;
+                int a = childIndex(b, cur), c = childIndex(b, hi);
+                if (c > a)
+                    return b.keys[(a + c - 1) >>> 1];
+                x = b.children[a];
+            }
+            return cur;
+        }
+
+        public final long estimateSize() {
+            return leaf == null ? 0 : est;
+        }
+    }
+
+    static final class KeySpliterator<V> extends LeafSpliterator<V> implements Spliterator.OfLong {
+        KeySpliterator(LongBTreeMap<V> tree, long lo, long hi, boolean sized) {
+            super(tree, lo, hi, sized);
+        }
+
+        KeySpliterator(LongBTreeMap<V> tree, Leaf leaf, int index, long hi, int est, int expectedModCount) {
+            super(tree, leaf, index, hi, est, expectedModCount);
+        }
+
+        public OfLong trySplit() {
+            if (leaf == null)
+                return null;
+            long m = splitKey();
+            if (m == leaf.keys[index])
+                return null;
+            KeySpliterator<V> prefix = new KeySpliterator<>(tree, leaf, index, m - 1, est >>>= 1, expectedModCount);
+            sized = false;
+            seek(tree.ceilingEntry0(m));
+            return prefix;
+        }
+
+        /**
+         * 整个叶子都在区间内时不需要逐个比较上界
+         */
+        public void forEachRemaining(LongConsumer action) {
+            Objects.requireNonNull(action);
+            Leaf l = leaf;
+            if (l == null)
+                return;
+            leaf = null;
+            long hi = this.hi;
+            int i = index;
+            do {
+                long[] ks = l.keys;
+                int n = l.size;
+                if (ks[n - 1] <= hi) {
+                    for (; i < n; i++)
+                        action.accept(ks[i]);
+                } else {
+                    for (; i < n && ks[i] <= hi; i++)
+                        action.accept(ks[i]);
+                    break;
+                }
+                i = 0;
+            } while ((l = l.next) != null);
+            if (tree.modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+        }
+
+        public boolean tryAdvance(LongConsumer action) {
+            Objects.requireNonNull(action);
+            Leaf l = leaf;
+            if (l == null)
+                return false;
+            long k = l.keys[index];
+            if (++index == l.size) {
+                leaf = l.next;
+                index = 0;
+            }
+            if (leaf != null && leaf.keys[index] > hi)
+                leaf = null;
+            action.accept(k);
+            if (tree.modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            return true;
+        }
+
+        public int characteristics() {
+            return (sized ? Spliterator.SIZED : 0) | Spliterator.DISTINCT | Spliterator.SORTED
+                    | Spliterator.ORDERED | Spliterator.NONULL;
+        }
+
+        public Comparator<? super Long> getComparator() {
+            return null;
+        }
+    }
+
+    static final class ValueSpliterator<V> extends LeafSpliterator<V> implements Spliterator<V> {
+        ValueSpliterator(LongBTreeMap<V> tree, long lo, long hi, boolean sized) {
+            super(tree, lo, hi, sized);
+        }
+
+        ValueSpliterator(LongBTreeMap<V> tree, Leaf leaf, int index, long hi, int est, int expectedModCount) {
+            super(tree, leaf, index, hi, est, expectedModCount);
+        }
+
+        public Spliterator<V> trySplit() {
+            if (leaf == null)
+                return null;
+            long m = splitKey();
+            if (m == leaf.keys[index])
+                return null;
+            ValueSpliterator<V> prefix = new ValueSpliterator<>(tree, leaf, index, m - 1, est >>>= 1, expectedModCount);
+            sized = false;
+            seek(tree.ceilingEntry0(m));
+            return prefix;
+        }
+
+        @SuppressWarnings("unchecked")
+        public void forEachRemaining(Consumer<? super V> action) {
+            Objects.requireNonNull(action);
+            Leaf l = leaf;
+            if (l == null)
+                return;
+            leaf = null;
+            long hi = this.hi;
+            int i = index;
+            do {
+                long[] ks = l.keys;
+                Object[] vs = l.values;
+                int n = l.size;
+                if (ks[n - 1] <= hi) {
+                    for (; i < n; i++)
+                        action.accept((V) vs[i]);
+                } else {
+                    for (; i < n && ks[i] <= hi; i++)
+                        action.accept((V) vs[i]);
+                    break;
+                }
+                i = 0;
+            } while ((l = l.next) != null);
+            if (tree.modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+        }
+
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance(Consumer<? super V> action) {
+            Objects.requireNonNull(action);
+            Leaf l = leaf;
+            if (l == null)
+                return false;
+            V v = (V) l.values[index];
+            if (++index == l.size) {
+                leaf = l.next;
+                index = 0;
+            }
+            if (leaf != null && leaf.keys[index] > hi)
+                leaf = null;
+            action.accept(v);
+            if (tree.modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            return true;
+        }
+
+        public int characteristics() {
+            return (sized ? Spliterator.SIZED : 0) | Spliterator.ORDERED;
+        }
+    }
+
+    static final class EntrySpliterator<V> extends LeafSpliterator<V> implements Spliterator<Map.Entry<Long,V>> {
+        EntrySpliterator(LongBTreeMap<V> tree, long lo, long hi, boolean sized) {
+            super(tree, lo, hi, sized);
+        }
+
+        EntrySpliterator(LongBTreeMap<V> tree, Leaf leaf, int index, long hi, int est, int expectedModCount) {
+            super(tree, leaf, index, hi, est, expectedModCount);
+        }
+
+        public Spliterator<Map.Entry<Long,V>> trySplit() {
+            if (leaf == null)
+                return null;
+            long m = splitKey();
+            if (m == leaf.keys[index])
+                return null;
+            EntrySpliterator<V> prefix = new EntrySpliterator<>(tree, leaf, index, m - 1, est >>>= 1, expectedModCount);
+            sized = false;
+            seek(tree.ceilingEntry0(m));
+            return prefix;
+        }
+
+        public void forEachRemaining(Consumer<? super Map.Entry<Long,V>> action) {
+            Objects.requireNonNull(action);
+            while (tryAdvance(action)) {
+            }
+        }
+
+        public boolean tryAdvance(Consumer<? super Map.Entry<Long,V>> action) {
+            Objects.requireNonNull(action);
+            Leaf l = leaf;
+            if (l == null)
+                return false;
+            LongBTreeMap<V>.MapEntry e = tree.new MapEntry(l, index);
+            if (++index == l.size) {
+                leaf = l.next;
+                index = 0;
+            }
+            if (leaf != null && leaf.keys[index] > hi)
+                leaf = null;
+            action.accept(e);
+            if (tree.modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            return true;
+        }
+
+        public int characteristics() {
+            return (sized ? Spliterator.SIZED : 0) | Spliterator.DISTINCT | Spliterator.SORTED
+                    | Spliterator.ORDERED | Spliterator.NONULL;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Comparator<Map.Entry<Long,V>> getComparator() {
+            return (Comparator<Map.Entry<Long,V>>) (Comparator<?>) Map.Entry.comparingByKey();
+        }
+    }
+}
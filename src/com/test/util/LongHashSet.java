@@ -0,0 +1,518 @@
+package com.test.util;
+
+import com.test.util.function.Consumer;
+import com.test.util.function.LongConsumer;
+import com.test.util.stream.LongStream;
+import com.test.util.stream.StreamSupport;
+
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+
+/**
+ * 元素是long的开放定址哈希集合
+ *
+ * 与HashSet<Long>相比，每个元素只占用long数组中的一个槽位，
+ * 不再需要16字节的装箱Long，1亿个元素在负载因子0.75时大约占用1GB，
+ * java.util.HashSet<Long>需要Long、Node和哈希桶，大约是它的5倍
+ *
+ * 冲突使用线性探测解决，删除时把后续探测链上的元素向前移动(backward shift)，
+ * 因此表中没有墓碑，查找遇到空槽就可以立刻结束
+ *
+ * 0被用来表示空槽位，所以元素0单独存放在下标n的位置上，
+ * 由containsNullKey标记它是否存在
+ *
+ * 通过Set接口访问时元素会被装箱，
+ * 对性能敏感的代码应该使用add(long)、contains(long)、forEachLong(LongConsumer)和longStream()
+ */
+public class LongHashSet extends AbstractSet<Long> implements Cloneable {
+    /** 默认的初始容量 */
+    static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /** 默认的负载因子 */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /** 存放元素的数组，长度为n+1，最后一个槽位留给元素0 */
+    transient long[] key;
+
+    /** 表的长度，是2的幂 */
+    transient int n;
+
+    /** n - 1，用于计算下标 */
+    transient int mask;
+
+    /** 扩容的阈值 */
+    transient int maxFill;
+
+    /** 是否存在元素0 */
+    transient boolean containsNullKey;
+
+    /** 元素个数，包括元素0 */
+    transient int size;
+
+    /** 结构修改的次数，用于快速失败 */
+    transient int modCount;
+
+    /** 负载因子 */
+    final float loadFactor;
+
+    /**
+     * 根据期望的元素个数和负载因子构造，保证插入expected个元素的过程中不会扩容
+     */
+    public LongHashSet(int expected, float loadFactor) {
+        if (expected < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " + expected);
+        HashCommon.checkLoadFactor(loadFactor);
+        this.loadFactor = loadFactor;
+        n = HashCommon.arraySize(expected, loadFactor);
+        mask = n - 1;
+        maxFill = HashCommon.maxFill(n, loadFactor);
+        key = new long[n + 1];
+    }
+
+    public LongHashSet(int expected) {
+        this(expected, DEFAULT_LOAD_FACTOR);
+    }
+
+    public LongHashSet() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    public LongHashSet(Collection<? extends Long> c) {
+        this(Math.max(c.size(), DEFAULT_INITIAL_CAPACITY), DEFAULT_LOAD_FACTOR);
+        addAll(c);
+    }
+
+    /** 除去元素0之外的元素个数 */
+    private int realSize() {
+        return containsNullKey ? size - 1 : size;
+    }
+
+    /**
+     * 查找元素所在的槽位
+     *
+     * 找到时返回槽位的下标，否则返回-(插入位置 + 1)
+     */
+    final int find(long k) {
+        if (k == 0)
+            return containsNullKey ? n : -(n + 1);
+        long[] key = this.key;
+        long curr;
+        int pos;
+        if ((curr = key[pos = HashCommon.mix(k) & mask]) == 0)
+            return -(pos + 1);
+        if (k == curr)
+            return pos;
+        // 线性探测，直到遇到空槽
+        while (true) {
+            if ((curr = key[pos = (pos + 1) & mask]) == 0)
+                return -(pos + 1);
+            if (k == curr)
+                return pos;
+        }
+    }
+
+    /**
+     * 加入元素，已经存在时返回false，不会产生任何对象
+     */
+    public boolean add(long k) {
+        int pos = find(k);
+        if (pos >= 0)
+            return false;
+        pos = -pos - 1;
+        if (pos == n)
+            containsNullKey = true;
+        key[pos] = k;
+        ++modCount;
+        if (size++ >= maxFill)
+            rehash(HashCommon.arraySize(size + 1, loadFactor));
+        return true;
+    }
+
+    public boolean contains(long k) {
+        if (k == 0)
+            return containsNullKey;
+        long[] key = this.key;
+        long curr;
+        int pos;
+        if ((curr = key[pos = HashCommon.mix(k) & mask]) == 0)
+            return false;
+        if (k == curr)
+            return true;
+        while (true) {
+            if ((curr = key[pos = (pos + 1) & mask]) == 0)
+                return false;
+            if (k == curr)
+                return true;
+        }
+    }
+
+    /**
+     * 删除元素，不存在时返回false
+     */
+    public boolean remove(long k) {
+        int pos = find(k);
+        if (pos < 0)
+            return false;
+        ++modCount;
+        --size;
+        if (pos == n)
+            containsNullKey = false;
+        else
+            shiftKeys(pos);
+        return true;
+    }
+
+    /**
+     * 删除pos上的元素之后，把探测链上后面的元素向前移动填补空位
+     *
+     * 只有当元素的理想位置slot不在(last, pos]这个循环区间内时，
+     * 它才可以被移动到last，否则移动之后就无法从slot探测到它
+     */
+    final void shiftKeys(int pos) {
+        int last, slot;
+        long curr;
+        long[] key = this.key;
+        for (;;) {
+            pos = ((last = pos) + 1) & mask;
+            for (;;) {
+                if ((curr = key[pos]) == 0) {
+                    key[last] = 0L;
+                    return;
+                }
+                slot = HashCommon.mix(curr) & mask;
+                if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos)
+                    break;
+                pos = (pos + 1) & mask;
+            }
+            key[last] = curr;
+        }
+    }
+
+    /**
+     * 扩容到newN，开放定址的表只能把所有元素重新插入一遍
+     */
+    final void rehash(int newN) {
+        long[] key = this.key;
+        int newMask = newN - 1;
+        long[] newKey = new long[newN + 1];
+        int i = n, pos;
+        for (int j = realSize(); j-- != 0; ) {
+            while (key[--i] == 0) ;
+            if (newKey[pos = HashCommon.mix(key[i]) & newMask] != 0)
+                while (newKey[pos = (pos + 1) & newMask] != 0) ;
+            newKey[pos] = key[i];
+        }
+        n = newN;
+        mask = newMask;
+        maxFill = HashCommon.maxFill(n, loadFactor);
+        this.key = newKey;
+    }
+
+    /**
+     * 遍历所有的元素，不会产生任何对象
+     */
+    public void forEachLong(LongConsumer action) {
+        if (action == null)
+            throw new NullPointerException();
+        int mc = modCount;
+        if (containsNullKey)
+            action.accept(0L);
+        long[] key = this.key;
+        for (int pos = n; pos-- != 0; ) {
+            if (key[pos] != 0)
+                action.accept(key[pos]);
+        }
+        if (modCount != mc)
+            throw new ConcurrentModificationException();
+    }
+
+    public void forEach(Consumer<? super Long> action) {
+        if (action instanceof LongConsumer)
+            forEachLong((LongConsumer) action);
+        else if (action == null)
+            throw new NullPointerException();
+        else
+            forEachLong(action::accept);
+    }
+
+    /** 把所有元素复制到一个long数组中，顺序不确定 */
+    public long[] toLongArray() {
+        long[] a = new long[size];
+        int j = 0;
+        if (containsNullKey)
+            j++;
+        long[] key = this.key;
+        for (int pos = n; pos-- != 0; ) {
+            if (key[pos] != 0)
+                a[j++] = key[pos];
+        }
+        return a;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        if (size == 0)
+            return;
+        size = 0;
+        containsNullKey = false;
+        ++modCount;
+        Arrays.fill(key, 0L);
+    }
+
+    public boolean add(Long k) {
+        return add(k.longValue());
+    }
+
+    public boolean contains(Object k) {
+        return k instanceof Long && contains(((Long) k).longValue());
+    }
+
+    public boolean remove(Object k) {
+        return k instanceof Long && remove(((Long) k).longValue());
+    }
+
+    public boolean addAll(Collection<? extends Long> c) {
+        // 按照合并后的大小预先扩容，避免多次rehash
+        int s = size + c.size();
+        if (s > maxFill)
+            rehash(HashCommon.arraySize(s, loadFactor));
+        if (c instanceof LongHashSet) {
+            // 直接遍历数组，不需要装箱
+            int before = size;
+            ((LongHashSet) c).forEachLong(this::add);
+            return size != before;
+        }
+        return super.addAll(c);
+    }
+
+    /**
+     * 返回一个拷贝，两个集合互不影响
+     */
+    public LongHashSet clone() {
+        LongHashSet result;
+        try {
+            result = (LongHashSet) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError(e);
+        }
+        result.key = key.clone();
+        result.modCount = 0;
+        return result;
+    }
+
+    public int hashCode() {
+        int h = 0;
+        long[] key = this.key;
+        for (int i = n; i-- != 0; ) {
+            if (key[i] != 0)
+                h += Long.hashCode(key[i]);
+        }
+        return h;
+    }
+
+    public PrimitiveIterator.OfLong iterator() {
+        return new SetIterator();
+    }
+
+    /**
+     * 从后往前遍历表
+     *
+     * 迭代器删除元素时，backward shift可能把表头(已经绕回)的元素移到当前位置之后，
+     * 也就是已经遍历过的区域，这些元素被记录在wrapped中，在最后单独返回
+     */
+    final class SetIterator implements PrimitiveIterator.OfLong {
+        int pos = n;                 // 下一次从pos - 1开始向前查找
+        int last = -1;               // 上一次返回的槽位，-1表示不能删除
+        int c = size;                // 剩余的元素个数
+        boolean mustReturnNullKey = containsNullKey;
+        long[] wrapped;              // 被移动到已遍历区域的元素
+        int wrappedSize;
+        int expectedModCount = modCount;
+
+        public boolean hasNext() {
+            return c != 0;
+        }
+
+        public long nextLong() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (c == 0)
+                throw new NoSuchElementException();
+            c--;
+            if (mustReturnNullKey) {
+                mustReturnNullKey = false;
+                last = n;
+                return 0L;
+            }
+            long[] key = LongHashSet.this.key;
+            for (;;) {
+                if (--pos < 0) {
+                    // 表已经遍历完，开始返回wrapped中的元素
+                    last = Integer.MIN_VALUE;
+                    return wrapped[-pos - 1];
+                }
+                if (key[pos] != 0)
+                    return key[last = pos];
+            }
+        }
+
+        /** 与LongHashSet.shiftKeys相同，但要记录绕回的元素 */
+        private void shiftKeys(int pos) {
+            int last, slot;
+            long curr;
+            long[] key = LongHashSet.this.key;
+            for (;;) {
+                pos = ((last = pos) + 1) & mask;
+                for (;;) {
+                    if ((curr = key[pos]) == 0) {
+                        key[last] = 0L;
+                        return;
+                    }
+                    slot = HashCommon.mix(curr) & mask;
+                    if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos)
+                        break;
+                    pos = (pos + 1) & mask;
+                }
+                if (pos < last) {
+                    if (wrapped == null)
+                        wrapped = new long[2];
+                    else if (wrappedSize == wrapped.length)
+                        wrapped = Arrays.copyOf(wrapped, wrappedSize << 1);
+                    wrapped[wrappedSize++] = curr;
+                }
+                key[last] = curr;
+            }
+        }
+
+        public void remove() {
+            if (last == -1)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (last == n) {
+                containsNullKey = false;
+            } else if (pos >= 0) {
+                shiftKeys(last);
+            } else {
+                // 删除wrapped中的元素，它已经不在迭代器要扫描的区域里了
+                LongHashSet.this.remove(wrapped[-pos - 1]);
+                last = -1;
+                expectedModCount = modCount;
+                return;
+            }
+            size--;
+            modCount++;
+            expectedModCount = modCount;
+            last = -1;
+        }
+    }
+
+    /**
+     * 按槽位的区间分割的分区迭代器，和HashMap一样是延迟绑定的
+     *
+     * 每次分割把区间的前一半交给新的分区迭代器，元素0只由最初的分区迭代器在最后返回
+     */
+    public Spliterator.OfLong getSpliterator() {
+        return new SetSpliterator(0, -1, 0, 0, true);
+    }
+
+    /** 不装箱的long流，可以并行 */
+    public LongStream longStream() {
+        return StreamSupport.longStream(getSpliterator(), false);
+    }
+
+    final class SetSpliterator implements Spliterator.OfLong {
+        int index;                   // 下一个要访问的槽位
+        int fence;                   // 区间的结束位置，-1表示还没有绑定
+        int est;                     // 估计的元素个数
+        int expectedModCount;
+        boolean mustReturnNullKey;   // 绑定之前表示是否负责元素0
+
+        SetSpliterator(int origin, int fence, int est, int expectedModCount,
+                       boolean mustReturnNullKey) {
+            this.index = origin;
+            this.fence = fence;
+            this.est = est;
+            this.expectedModCount = expectedModCount;
+            this.mustReturnNullKey = mustReturnNullKey;
+        }
+
+        /** 第一次使用时绑定到当前的表 */
+        final int getFence() {
+            int hi;
+            if ((hi = fence) < 0) {
+                est = size;
+                expectedModCount = modCount;
+                mustReturnNullKey = containsNullKey;
+                hi = fence = n;
+            }
+            return hi;
+        }
+
+        public Spliterator.OfLong trySplit() {
+            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
+            return lo >= mid ? null :
+                    new SetSpliterator(lo, index = mid, est >>>= 1, expectedModCount, false);
+        }
+
+        public boolean tryAdvance(LongConsumer action) {
+            if (action == null)
+                throw new NullPointerException();
+            int hi = getFence();
+            long[] key = LongHashSet.this.key;
+            while (index < hi) {
+                long k = key[index++];
+                if (k != 0) {
+                    action.accept(k);
+                    if (modCount != expectedModCount)
+                        throw new ConcurrentModificationException();
+                    return true;
+                }
+            }
+            if (mustReturnNullKey) {
+                mustReturnNullKey = false;
+                action.accept(0L);
+                if (modCount != expectedModCount)
+                    throw new ConcurrentModificationException();
+                return true;
+            }
+            return false;
+        }
+
+        public void forEachRemaining(LongConsumer action) {
+            if (action == null)
+                throw new NullPointerException();
+            int hi = getFence(), i = index;
+            long[] key = LongHashSet.this.key;
+            index = hi;
+            for (; i < hi; i++) {
+                long k = key[i];
+                if (k != 0)
+                    action.accept(k);
+            }
+            if (mustReturnNullKey) {
+                mustReturnNullKey = false;
+                action.accept(0L);
+            }
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+        }
+
+        public long estimateSize() {
+            getFence();
+            return est;
+        }
+
+        public int characteristics() {
+            return (fence < 0 || est == size ? Spliterator.SIZED : 0) |
+                    Spliterator.DISTINCT | Spliterator.NONULL;
+        }
+    }
+}
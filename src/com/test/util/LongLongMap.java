@@ -0,0 +1,567 @@
+package com.test.util;
+
+import com.test.util.function.LongLongConsumer;
+
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * key和value都是long的开放定址哈希表
+ *
+ * 与HashMap<Long,Long>相比，每个键值对只占用两个long数组中的各一个槽位，
+ * 不再需要装箱的Long和32字节的Node，查找时也只需要访问连续的数组
+ *
+ * 冲突使用线性探测解决，删除时把后续探测链上的元素向前移动(backward shift)，
+ * 因此表中没有墓碑，查找遇到空槽就可以立刻结束
+ *
+ * key为0的槽位被用来表示"空"，所以key为0的元素单独存放在下标n的位置上，
+ * 由containsNullKey标记它是否存在
+ *
+ * 通过Map接口访问时key和value都会被装箱，
+ * 对性能敏感的代码应该使用getOrDefault(long, long)、addTo和forEachEntry(LongLongConsumer)
+ */
+public class LongLongMap extends AbstractMap<Long,Long> implements Cloneable {
+    /** 默认的初始容量 */
+    static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /** 默认的负载因子 */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /** 存放key的数组，长度为n+1，最后一个槽位留给key为0的元素 */
+    transient long[] key;
+
+    /** 存放value的数组，与key一一对应 */
+    transient long[] value;
+
+    /** 表的长度，是2的幂 */
+    transient int n;
+
+    /** n - 1，用于计算下标 */
+    transient int mask;
+
+    /** 扩容的阈值 */
+    transient int maxFill;
+
+    /** 是否存在key为0的元素 */
+    transient boolean containsNullKey;
+
+    /** 元素个数，包括key为0的元素 */
+    transient int size;
+
+    /** 结构修改的次数，用于快速失败 */
+    transient int modCount;
+
+    /** 负载因子 */
+    final float loadFactor;
+
+    /**
+     * 根据期望的元素个数和负载因子构造，保证插入expected个元素的过程中不会扩容
+     */
+    public LongLongMap(int expected, float loadFactor) {
+        if (expected < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " + expected);
+        HashCommon.checkLoadFactor(loadFactor);
+        this.loadFactor = loadFactor;
+        n = HashCommon.arraySize(expected, loadFactor);
+        mask = n - 1;
+        maxFill = HashCommon.maxFill(n, loadFactor);
+        key = new long[n + 1];
+        value = new long[n + 1];
+    }
+
+    public LongLongMap(int expected) {
+        this(expected, DEFAULT_LOAD_FACTOR);
+    }
+
+    public LongLongMap() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    public LongLongMap(Map<? extends Long, ? extends Long> m) {
+        this(Math.max(m.size(), DEFAULT_INITIAL_CAPACITY), DEFAULT_LOAD_FACTOR);
+        putAll(m);
+    }
+
+    /** 除去key为0的元素之外的元素个数 */
+    private int realSize() {
+        return containsNullKey ? size - 1 : size;
+    }
+
+    /**
+     * 查找key所在的槽位
+     *
+     * 找到时返回槽位的下标，否则返回-(插入位置 + 1)
+     */
+    final int find(long k) {
+        if (k == 0)
+            return containsNullKey ? n : -(n + 1);
+        long[] key = this.key;
+        long curr;
+        int pos;
+        if ((curr = key[pos = HashCommon.mix(k) & mask]) == 0)
+            return -(pos + 1);
+        if (k == curr)
+            return pos;
+        // 线性探测，直到遇到空槽
+        while (true) {
+            if ((curr = key[pos = (pos + 1) & mask]) == 0)
+                return -(pos + 1);
+            if (k == curr)
+                return pos;
+        }
+    }
+
+    /** 在find返回的空槽pos上插入元素 */
+    private void insert(int pos, long k, long v) {
+        if (pos == n)
+            containsNullKey = true;
+        key[pos] = k;
+        value[pos] = v;
+        ++modCount;
+        if (size++ >= maxFill)
+            rehash(HashCommon.arraySize(size + 1, loadFactor));
+    }
+
+    /**
+     * 返回key对应的value，不存在时返回defaultValue，不会产生任何对象
+     */
+    public long getOrDefault(long k, long defaultValue) {
+        if (k == 0)
+            return containsNullKey ? value[n] : defaultValue;
+        long[] key = this.key;
+        long curr;
+        int pos;
+        if ((curr = key[pos = HashCommon.mix(k) & mask]) == 0)
+            return defaultValue;
+        if (k == curr)
+            return value[pos];
+        while (true) {
+            if ((curr = key[pos = (pos + 1) & mask]) == 0)
+                return defaultValue;
+            if (k == curr)
+                return value[pos];
+        }
+    }
+
+    /** 返回key对应的value，不存在时返回0 */
+    public long get(long k) {
+        return getOrDefault(k, 0L);
+    }
+
+    public boolean containsKey(long k) {
+        return find(k) >= 0;
+    }
+
+    /**
+     * 放入键值对，返回旧的value，不存在时返回0
+     */
+    public long put(long k, long v) {
+        int pos = find(k);
+        if (pos >= 0) {
+            long oldValue = value[pos];
+            value[pos] = v;
+            return oldValue;
+        }
+        insert(-pos - 1, k, v);
+        return 0L;
+    }
+
+    /**
+     * 把key对应的value加上incr，不存在时视为0，返回旧的value
+     *
+     * 计数器场景下等价于merge(k, incr, Long::sum)，但只做一次查找并且不会装箱
+     */
+    public long addTo(long k, long incr) {
+        int pos = find(k);
+        if (pos >= 0) {
+            long oldValue = value[pos];
+            value[pos] = oldValue + incr;
+            return oldValue;
+        }
+        insert(-pos - 1, k, incr);
+        return 0L;
+    }
+
+    /**
+     * 删除key对应的元素，返回旧的value，不存在时返回0
+     */
+    public long remove(long k) {
+        int pos = find(k);
+        if (pos < 0)
+            return 0L;
+        return removeAt(pos);
+    }
+
+    /** 删除槽位pos上的元素 */
+    private long removeAt(int pos) {
+        long oldValue = value[pos];
+        ++modCount;
+        --size;
+        if (pos == n) {
+            containsNullKey = false;
+            value[n] = 0L;
+        } else {
+            shiftKeys(pos);
+        }
+        return oldValue;
+    }
+
+    /**
+     * 删除pos上的元素之后，把探测链上后面的元素向前移动填补空位
+     *
+     * 只有当元素的理想位置slot不在(last, pos]这个循环区间内时，
+     * 它才可以被移动到last，否则移动之后就无法从slot探测到它
+     */
+    final void shiftKeys(int pos) {
+        int last, slot;
+        long curr;
+        long[] key = this.key;
+        for (;;) {
+            pos = ((last = pos) + 1) & mask;
+            for (;;) {
+                if ((curr = key[pos]) == 0) {
+                    key[last] = 0L;
+                    value[last] = 0L;
+                    return;
+                }
+                slot = HashCommon.mix(curr) & mask;
+                if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos)
+                    break;
+                pos = (pos + 1) & mask;
+            }
+            key[last] = curr;
+            value[last] = value[pos];
+        }
+    }
+
+    /**
+     * 扩容到newN，开放定址的表只能把所有元素重新插入一遍
+     */
+    final void rehash(int newN) {
+        long[] key = this.key;
+        long[] value = this.value;
+        int newMask = newN - 1;
+        long[] newKey = new long[newN + 1];
+        long[] newValue = new long[newN + 1];
+        int i = n, pos;
+        for (int j = realSize(); j-- != 0; ) {
+            while (key[--i] == 0) ;
+            if (newKey[pos = HashCommon.mix(key[i]) & newMask] != 0)
+                while (newKey[pos = (pos + 1) & newMask] != 0) ;
+            newKey[pos] = key[i];
+            newValue[pos] = value[i];
+        }
+        newValue[newN] = value[n];
+        n = newN;
+        mask = newMask;
+        maxFill = HashCommon.maxFill(n, loadFactor);
+        this.key = newKey;
+        this.value = newValue;
+    }
+
+    /**
+     * 遍历所有的键值对，不会产生任何对象
+     * 不与Map.forEach(BiConsumer)重载，否则传入lambda时需要写出参数类型
+     */
+    public void forEachEntry(LongLongConsumer action) {
+        if (action == null)
+            throw new NullPointerException();
+        int mc = modCount;
+        if (containsNullKey)
+            action.accept(0L, value[n]);
+        long[] key = this.key;
+        long[] value = this.value;
+        for (int pos = n; pos-- != 0; ) {
+            if (key[pos] != 0)
+                action.accept(key[pos], value[pos]);
+        }
+        if (modCount != mc)
+            throw new ConcurrentModificationException();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        if (size == 0)
+            return;
+        size = 0;
+        containsNullKey = false;
+        ++modCount;
+        Arrays.fill(key, 0L);
+        Arrays.fill(value, 0L);
+    }
+
+    public boolean containsKey(Object key) {
+        return key instanceof Long && find((Long) key) >= 0;
+    }
+
+    public boolean containsValue(Object value) {
+        if (!(value instanceof Long))
+            return false;
+        long v = (Long) value;
+        long[] key = this.key;
+        long[] val = this.value;
+        if (containsNullKey && val[n] == v)
+            return true;
+        for (int i = n; i-- != 0; ) {
+            if (key[i] != 0 && val[i] == v)
+                return true;
+        }
+        return false;
+    }
+
+    public Long get(Object key) {
+        int pos;
+        if (!(key instanceof Long) || (pos = find((Long) key)) < 0)
+            return null;
+        return value[pos];
+    }
+
+    public Long getOrDefault(Object key, Long defaultValue) {
+        int pos;
+        if (!(key instanceof Long) || (pos = find((Long) key)) < 0)
+            return defaultValue;
+        return value[pos];
+    }
+
+    public Long put(Long k, Long v) {
+        int pos = find(k);
+        if (pos >= 0) {
+            long oldValue = value[pos];
+            value[pos] = v;
+            return oldValue;
+        }
+        insert(-pos - 1, k, v);
+        return null;
+    }
+
+    public Long remove(Object key) {
+        int pos;
+        if (!(key instanceof Long) || (pos = find((Long) key)) < 0)
+            return null;
+        return removeAt(pos);
+    }
+
+    public void putAll(Map<? extends Long, ? extends Long> m) {
+        // 按照合并后的大小预先扩容，避免多次rehash
+        int s = size + m.size();
+        if (s > maxFill)
+            rehash(HashCommon.arraySize(s, loadFactor));
+        super.putAll(m);
+    }
+
+    /**
+     * 返回一个拷贝，两个表互不影响
+     */
+    public LongLongMap clone() {
+        LongLongMap result;
+        try {
+            result = (LongLongMap) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError(e);
+        }
+        result.key = key.clone();
+        result.value = value.clone();
+        result.keySet = null;
+        result.values = null;
+        result.entrySet = null;
+        result.modCount = 0;
+        return result;
+    }
+
+    public int hashCode() {
+        int h = 0;
+        long[] key = this.key;
+        long[] value = this.value;
+        for (int i = n; i-- != 0; ) {
+            if (key[i] != 0)
+                h += Long.hashCode(key[i]) ^ Long.hashCode(value[i]);
+        }
+        if (containsNullKey)
+            h += Long.hashCode(value[n]);
+        return h;
+    }
+
+    transient Set<Map.Entry<Long,Long>> entrySet;
+
+    /**
+     * 返回键值对的视图，视图中的Entry在每次调用next时创建，
+     * 它直接引用表中的槽位，setValue会写回表中
+     */
+    public Set<Map.Entry<Long,Long>> entrySet() {
+        Set<Map.Entry<Long,Long>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<Long,Long>> {
+        public final int size()                 { return size; }
+        public final void clear()               { LongLongMap.this.clear(); }
+        public final Iterator<Map.Entry<Long,Long>> iterator() {
+            return new EntryIterator();
+        }
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object k = e.getKey(), v = e.getValue();
+            if (!(k instanceof Long) || !(v instanceof Long))
+                return false;
+            int pos = find((Long) k);
+            return pos >= 0 && value[pos] == (Long) v;
+        }
+        public final boolean remove(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object k = e.getKey(), v = e.getValue();
+            if (!(k instanceof Long) || !(v instanceof Long))
+                return false;
+            int pos = find((Long) k);
+            if (pos < 0 || value[pos] != (Long) v)
+                return false;
+            removeAt(pos);
+            return true;
+        }
+    }
+
+    /**
+     * 指向表中某个槽位的Entry
+     */
+    final class MapEntry implements Map.Entry<Long,Long> {
+        final int index;
+
+        MapEntry(int index) {
+            this.index = index;
+        }
+
+        public Long getKey()      { return key[index]; }
+        public Long getValue()    { return value[index]; }
+        public String toString()  { return key[index] + "=" + value[index]; }
+        public int hashCode()     { return Long.hashCode(key[index]) ^ Long.hashCode(value[index]); }
+
+        public Long setValue(Long v) {
+            long oldValue = value[index];
+            value[index] = v;
+            return oldValue;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            return Objects.equals(getKey(), e.getKey()) &&
+                    Objects.equals(getValue(), e.getValue());
+        }
+    }
+
+    /**
+     * 从后往前遍历表
+     *
+     * 迭代器删除元素时，backward shift可能把表头(已经绕回)的元素移到当前位置之后，
+     * 也就是已经遍历过的区域，这些元素的key被记录在wrapped中，在最后单独返回
+     */
+    final class EntryIterator implements Iterator<Map.Entry<Long,Long>> {
+        int pos = n;                 // 下一次从pos - 1开始向前查找
+        int last = -1;               // 上一次返回的槽位，-1表示不能删除
+        int c = size;                // 剩余的元素个数
+        boolean mustReturnNullKey = containsNullKey;
+        long[] wrapped;              // 被移动到已遍历区域的key
+        int wrappedSize;
+        int expectedModCount = modCount;
+
+        public boolean hasNext() {
+            return c != 0;
+        }
+
+        public Map.Entry<Long,Long> next() {
+            return new MapEntry(nextEntry());
+        }
+
+        int nextEntry() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (c == 0)
+                throw new NoSuchElementException();
+            c--;
+            if (mustReturnNullKey) {
+                mustReturnNullKey = false;
+                return last = n;
+            }
+            long[] key = LongLongMap.this.key;
+            for (;;) {
+                if (--pos < 0) {
+                    // 表已经遍历完，开始返回wrapped中的元素
+                    last = Integer.MIN_VALUE;
+                    long k = wrapped[-pos - 1];
+                    int p = HashCommon.mix(k) & mask;
+                    while (k != key[p])
+                        p = (p + 1) & mask;
+                    return p;
+                }
+                if (key[pos] != 0)
+                    return last = pos;
+            }
+        }
+
+        /** 与LongLongMap.shiftKeys相同，但要记录绕回的元素 */
+        private void shiftKeys(int pos) {
+            int last, slot;
+            long curr;
+            long[] key = LongLongMap.this.key;
+            for (;;) {
+                pos = ((last = pos) + 1) & mask;
+                for (;;) {
+                    if ((curr = key[pos]) == 0) {
+                        key[last] = 0L;
+                        value[last] = 0L;
+                        return;
+                    }
+                    slot = HashCommon.mix(curr) & mask;
+                    if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos)
+                        break;
+                    pos = (pos + 1) & mask;
+                }
+                if (pos < last) {
+                    if (wrapped == null)
+                        wrapped = new long[2];
+                    else if (wrappedSize == wrapped.length)
+                        wrapped = Arrays.copyOf(wrapped, wrappedSize << 1);
+                    wrapped[wrappedSize++] = curr;
+                }
+                key[last] = curr;
+                value[last] = value[pos];
+            }
+        }
+
+        public void remove() {
+            if (last == -1)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (last == n) {
+                containsNullKey = false;
+                value[n] = 0L;
+            } else if (pos >= 0) {
+                shiftKeys(last);
+            } else {
+                // 删除wrapped中的元素，它已经不在迭代器要扫描的区域里了
+                LongLongMap.this.remove(wrapped[-pos - 1]);
+                last = -1;
+                expectedModCount = modCount;
+                return;
+            }
+            size--;
+            modCount++;
+            expectedModCount = modCount;
+            last = -1;
+        }
+    }
+}
@@ -0,0 +1,505 @@
+package com.test.util;
+
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * key是long的开放定址哈希表，value可以是任意对象(包括null)
+ *
+ * 探测、删除和迭代的方式与LongLongMap相同，
+ * 每个键值对只占用一个long槽位和一个引用槽位
+ *
+ * key为0的元素单独存放在下标n的位置上，由containsNullKey标记它是否存在
+ */
+public class LongObjectMap<V> extends AbstractMap<Long,V> implements Cloneable {
+    /** 默认的初始容量 */
+    static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /** 默认的负载因子 */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /** 存放key的数组，长度为n+1，最后一个槽位留给key为0的元素 */
+    transient long[] key;
+
+    /** 存放value的数组，与key一一对应 */
+    transient V[] value;
+
+    /** 表的长度，是2的幂 */
+    transient int n;
+
+    /** n - 1，用于计算下标 */
+    transient int mask;
+
+    /** 扩容的阈值 */
+    transient int maxFill;
+
+    /** 是否存在key为0的元素 */
+    transient boolean containsNullKey;
+
+    /** 元素个数，包括key为0的元素 */
+    transient int size;
+
+    /** 结构修改的次数，用于快速失败 */
+    transient int modCount;
+
+    /** 负载因子 */
+    final float loadFactor;
+
+    /**
+     * 根据期望的元素个数和负载因子构造，保证插入expected个元素的过程中不会扩容
+     */
+    @SuppressWarnings("unchecked")
+    public LongObjectMap(int expected, float loadFactor) {
+        if (expected < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " + expected);
+        HashCommon.checkLoadFactor(loadFactor);
+        this.loadFactor = loadFactor;
+        n = HashCommon.arraySize(expected, loadFactor);
+        mask = n - 1;
+        maxFill = HashCommon.maxFill(n, loadFactor);
+        key = new long[n + 1];
+        value = (V[]) new Object[n + 1];
+    }
+
+    public LongObjectMap(int expected) {
+        this(expected, DEFAULT_LOAD_FACTOR);
+    }
+
+    public LongObjectMap() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    public LongObjectMap(Map<? extends Long, ? extends V> m) {
+        this(Math.max(m.size(), DEFAULT_INITIAL_CAPACITY), DEFAULT_LOAD_FACTOR);
+        putAll(m);
+    }
+
+    /** 除去key为0的元素之外的元素个数 */
+    private int realSize() {
+        return containsNullKey ? size - 1 : size;
+    }
+
+    /**
+     * 查找key所在的槽位
+     *
+     * 找到时返回槽位的下标，否则返回-(插入位置 + 1)
+     */
+    final int find(long k) {
+        if (k == 0)
+            return containsNullKey ? n : -(n + 1);
+        long[] key = this.key;
+        long curr;
+        int pos;
+        if ((curr = key[pos = HashCommon.mix(k) & mask]) == 0)
+            return -(pos + 1);
+        if (k == curr)
+            return pos;
+        while (true) {
+            if ((curr = key[pos = (pos + 1) & mask]) == 0)
+                return -(pos + 1);
+            if (k == curr)
+                return pos;
+        }
+    }
+
+    /** 在find返回的空槽pos上插入元素 */
+    private void insert(int pos, long k, V v) {
+        if (pos == n)
+            containsNullKey = true;
+        key[pos] = k;
+        value[pos] = v;
+        ++modCount;
+        if (size++ >= maxFill)
+            rehash(HashCommon.arraySize(size + 1, loadFactor));
+    }
+
+    /**
+     * 返回key对应的value，不存在时返回defaultValue
+     */
+    public V getOrDefault(long k, V defaultValue) {
+        if (k == 0)
+            return containsNullKey ? value[n] : defaultValue;
+        long[] key = this.key;
+        long curr;
+        int pos;
+        if ((curr = key[pos = HashCommon.mix(k) & mask]) == 0)
+            return defaultValue;
+        if (k == curr)
+            return value[pos];
+        while (true) {
+            if ((curr = key[pos = (pos + 1) & mask]) == 0)
+                return defaultValue;
+            if (k == curr)
+                return value[pos];
+        }
+    }
+
+    /** 返回key对应的value，不存在时返回null */
+    public V get(long k) {
+        return getOrDefault(k, null);
+    }
+
+    public boolean containsKey(long k) {
+        return find(k) >= 0;
+    }
+
+    /**
+     * 放入键值对，返回旧的value，不存在时返回null
+     */
+    public V put(long k, V v) {
+        int pos = find(k);
+        if (pos >= 0) {
+            V oldValue = value[pos];
+            value[pos] = v;
+            return oldValue;
+        }
+        insert(-pos - 1, k, v);
+        return null;
+    }
+
+    /**
+     * 删除key对应的元素，返回旧的value，不存在时返回null
+     */
+    public V remove(long k) {
+        int pos = find(k);
+        if (pos < 0)
+            return null;
+        return removeAt(pos);
+    }
+
+    /** 删除槽位pos上的元素 */
+    private V removeAt(int pos) {
+        V oldValue = value[pos];
+        ++modCount;
+        --size;
+        if (pos == n) {
+            containsNullKey = false;
+            value[n] = null;
+        } else {
+            shiftKeys(pos);
+        }
+        return oldValue;
+    }
+
+    /**
+     * 删除pos上的元素之后，把探测链上后面的元素向前移动填补空位，见LongLongMap.shiftKeys
+     */
+    final void shiftKeys(int pos) {
+        int last, slot;
+        long curr;
+        long[] key = this.key;
+        for (;;) {
+            pos = ((last = pos) + 1) & mask;
+            for (;;) {
+                if ((curr = key[pos]) == 0) {
+                    key[last] = 0L;
+                    value[last] = null;
+                    return;
+                }
+                slot = HashCommon.mix(curr) & mask;
+                if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos)
+                    break;
+                pos = (pos + 1) & mask;
+            }
+            key[last] = curr;
+            value[last] = value[pos];
+        }
+    }
+
+    /**
+     * 扩容到newN，把所有元素重新插入一遍
+     */
+    @SuppressWarnings("unchecked")
+    final void rehash(int newN) {
+        long[] key = this.key;
+        V[] value = this.value;
+        int newMask = newN - 1;
+        long[] newKey = new long[newN + 1];
+        V[] newValue = (V[]) new Object[newN + 1];
+        int i = n, pos;
+        for (int j = realSize(); j-- != 0; ) {
+            while (key[--i] == 0) ;
+            if (newKey[pos = HashCommon.mix(key[i]) & newMask] != 0)
+                while (newKey[pos = (pos + 1) & newMask] != 0) ;
+            newKey[pos] = key[i];
+            newValue[pos] = value[i];
+        }
+        newValue[newN] = value[n];
+        n = newN;
+        mask = newMask;
+        maxFill = HashCommon.maxFill(n, loadFactor);
+        this.key = newKey;
+        this.value = newValue;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        if (size == 0)
+            return;
+        size = 0;
+        containsNullKey = false;
+        ++modCount;
+        Arrays.fill(key, 0L);
+        Arrays.fill(value, null);
+    }
+
+    public boolean containsKey(Object key) {
+        return key instanceof Long && find((Long) key) >= 0;
+    }
+
+    public boolean containsValue(Object v) {
+        long[] key = this.key;
+        V[] value = this.value;
+        if (containsNullKey && Objects.equals(value[n], v))
+            return true;
+        for (int i = n; i-- != 0; ) {
+            if (key[i] != 0 && Objects.equals(value[i], v))
+                return true;
+        }
+        return false;
+    }
+
+    public V get(Object key) {
+        int pos;
+        if (!(key instanceof Long) || (pos = find((Long) key)) < 0)
+            return null;
+        return value[pos];
+    }
+
+    public V getOrDefault(Object key, V defaultValue) {
+        int pos;
+        if (!(key instanceof Long) || (pos = find((Long) key)) < 0)
+            return defaultValue;
+        return value[pos];
+    }
+
+    public V put(Long k, V v) {
+        return put(k.longValue(), v);
+    }
+
+    public V remove(Object key) {
+        int pos;
+        if (!(key instanceof Long) || (pos = find((Long) key)) < 0)
+            return null;
+        return removeAt(pos);
+    }
+
+    public void putAll(Map<? extends Long, ? extends V> m) {
+        // 按照合并后的大小预先扩容，避免多次rehash
+        int s = size + m.size();
+        if (s > maxFill)
+            rehash(HashCommon.arraySize(s, loadFactor));
+        super.putAll(m);
+    }
+
+    /**
+     * 返回一个浅拷贝，value本身不会被复制
+     */
+    @SuppressWarnings("unchecked")
+    public LongObjectMap<V> clone() {
+        LongObjectMap<V> result;
+        try {
+            result = (LongObjectMap<V>) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError(e);
+        }
+        result.key = key.clone();
+        result.value = value.clone();
+        result.keySet = null;
+        result.values = null;
+        result.entrySet = null;
+        result.modCount = 0;
+        return result;
+    }
+
+    public int hashCode() {
+        int h = 0;
+        long[] key = this.key;
+        V[] value = this.value;
+        for (int i = n; i-- != 0; ) {
+            if (key[i] != 0)
+                h += Long.hashCode(key[i]) ^ Objects.hashCode(value[i]);
+        }
+        if (containsNullKey)
+            h += Objects.hashCode(value[n]);
+        return h;
+    }
+
+    transient Set<Map.Entry<Long,V>> entrySet;
+
+    /**
+     * 返回键值对的视图，视图中的Entry直接引用表中的槽位
+     */
+    public Set<Map.Entry<Long,V>> entrySet() {
+        Set<Map.Entry<Long,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<Long,V>> {
+        public final int size()                 { return size; }
+        public final void clear()               { LongObjectMap.this.clear(); }
+        public final Iterator<Map.Entry<Long,V>> iterator() {
+            return new EntryIterator();
+        }
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object k = e.getKey();
+            if (!(k instanceof Long))
+                return false;
+            int pos = find((Long) k);
+            return pos >= 0 && Objects.equals(value[pos], e.getValue());
+        }
+        public final boolean remove(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object k = e.getKey();
+            if (!(k instanceof Long))
+                return false;
+            int pos = find((Long) k);
+            if (pos < 0 || !Objects.equals(value[pos], e.getValue()))
+                return false;
+            removeAt(pos);
+            return true;
+        }
+    }
+
+    /**
+     * 指向表中某个槽位的Entry
+     */
+    final class MapEntry implements Map.Entry<Long,V> {
+        final int index;
+
+        MapEntry(int index) {
+            this.index = index;
+        }
+
+        public Long getKey()      { return key[index]; }
+        public V getValue()       { return value[index]; }
+        public String toString()  { return key[index] + "=" + value[index]; }
+        public int hashCode()     { return Long.hashCode(key[index]) ^ Objects.hashCode(value[index]); }
+
+        public V setValue(V v) {
+            V oldValue = value[index];
+            value[index] = v;
+            return oldValue;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            return Objects.equals(getKey(), e.getKey()) &&
+                    Objects.equals(getValue(), e.getValue());
+        }
+    }
+
+    /**
+     * 从后往前遍历表，绕回的元素记录在wrapped中，见LongLongMap.EntryIterator
+     */
+    final class EntryIterator implements Iterator<Map.Entry<Long,V>> {
+        int pos = n;                 // 下一次从pos - 1开始向前查找
+        int last = -1;               // 上一次返回的槽位，-1表示不能删除
+        int c = size;                // 剩余的元素个数
+        boolean mustReturnNullKey = containsNullKey;
+        long[] wrapped;              // 被移动到已遍历区域的key
+        int wrappedSize;
+        int expectedModCount = modCount;
+
+        public boolean hasNext() {
+            return c != 0;
+        }
+
+        public Map.Entry<Long,V> next() {
+            return new MapEntry(nextEntry());
+        }
+
+        int nextEntry() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (c == 0)
+                throw new NoSuchElementException();
+            c--;
+            if (mustReturnNullKey) {
+                mustReturnNullKey = false;
+                return last = n;
+            }
+            long[] key = LongObjectMap.this.key;
+            for (;;) {
+                if (--pos < 0) {
+                    last = Integer.MIN_VALUE;
+                    long k = wrapped[-pos - 1];
+                    int p = HashCommon.mix(k) & mask;
+                    while (k != key[p])
+                        p = (p + 1) & mask;
+                    return p;
+                }
+                if (key[pos] != 0)
+                    return last = pos;
+            }
+        }
+
+        /** 与LongObjectMap.shiftKeys相同，但要记录绕回的元素 */
+        private void shiftKeys(int pos) {
+            int last, slot;
+            long curr;
+            long[] key = LongObjectMap.this.key;
+            for (;;) {
+                pos = ((last = pos) + 1) & mask;
+                for (;;) {
+                    if ((curr = key[pos]) == 0) {
+                        key[last] = 0L;
+                        value[last] = null;
+                        return;
+                    }
+                    slot = HashCommon.mix(curr) & mask;
+                    if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos)
+                        break;
+                    pos = (pos + 1) & mask;
+                }
+                if (pos < last) {
+                    if (wrapped == null)
+                        wrapped = new long[2];
+                    else if (wrappedSize == wrapped.length)
+                        wrapped = Arrays.copyOf(wrapped, wrappedSize << 1);
+                    wrapped[wrappedSize++] = curr;
+                }
+                key[last] = curr;
+                value[last] = value[pos];
+            }
+        }
+
+        public void remove() {
+            if (last == -1)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (last == n) {
+                containsNullKey = false;
+                value[n] = null;
+            } else if (pos >= 0) {
+                shiftKeys(last);
+            } else {
+                LongObjectMap.this.remove(wrapped[-pos - 1]);
+                last = -1;
+                expectedModCount = modCount;
+                return;
+            }
+            size--;
+            modCount++;
+            expectedModCount = modCount;
+            last = -1;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.test.util;
+
+import com.test.util.function.IntConsumer;
+import com.test.util.function.LongConsumer;
+
+/**
+ * 收集long值的计数、最小值、最大值、和以及平均值的状态对象
+ *
+ * 可以作为LongStream#collect的结果容器，并行的时候每个分片使用自己的实例，最后通过combine合并
+ * 这个类不是线程安全的
+ * */
+public class LongSummaryStatistics implements LongConsumer, IntConsumer {
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    /** 创建一个空的实例，最小值为Long.MAX_VALUE，最大值为Long.MIN_VALUE */
+    public LongSummaryStatistics(){}
+
+    /** 记录一个新的int值 */
+    @Override
+    public void accept(int value){
+        accept((long) value);
+    }
+
+    /** 记录一个新的值 */
+    @Override
+    public void accept(long value){
+        ++count;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /** 把另一个实例的状态合并到当前实例当中 */
+    public void combine(LongSummaryStatistics other){
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public final long getCount(){return count;}
+
+    public final long getSum(){return sum;}
+
+    public final long getMin(){return min;}
+
+    public final long getMax(){return max;}
+
+    /** 没有记录任何值的时候返回0 */
+    public final double getAverage(){
+        return getCount() > 0 ? (double) getSum() / getCount() : 0.0d;
+    }
+
+    @Override
+    public String toString(){
+        return String.format("%s{count=%d, sum=%d, min=%d, average=%f, max=%d}",
+                this.getClass().getSimpleName(), getCount(), getSum(), getMin(), getAverage(), getMax());
+    }
+}
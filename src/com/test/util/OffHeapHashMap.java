@@ -0,0 +1,670 @@
+package com.test.util;
+
+import com.test.util.function.Consumer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * key和value都是定长字节串的哈希表，所有数据都放在堆外的direct ByteBuffer中
+ *
+ * 结构和HashMap相同：bin的头是一个堆外的int数组，每个键值对是一条定长的记录，
+ * 记录的格式是 [int next][int hash][key][value]，next是同一个bin中下一条记录的编号，0表示没有，
+ * hash使用和HashMap.hash相同的扰动，扩容的时候把每个bin拆分为lo和hi两个链表，
+ * 只需要重新创建bin的头数组，记录本身不会移动，也不会复制
+ *
+ * 记录按编号依次放在若干个slab中，一个slab是一个direct ByteBuffer，写满之后追加新的slab，
+ * 删除的记录通过next串成空闲链表，之后的put优先复用，
+ * 所以堆上只有少量的ByteBuffer对象，键值对的数量不会影响GC的扫描和复制
+ *
+ * 查找和遍历返回的Record是复用的享元对象，key()和value()返回的是直接指向slab的视图，不复制数据，
+ * 这些视图只在下一次修改之前有效，asMap()返回的Map视图也是通过同样的享元访问数据
+ *
+ * 和HashMap一样不是线程安全的，不再使用的时候调用close立即释放堆外内存，
+ * close之后Record和asMap()的视图都会抛出IllegalStateException，
+ * 但是之前已经返回的key()、value()视图指向的内存已经释放，继续读写可能导致JVM崩溃，不能再使用
+ */
+public final class OffHeapHashMap implements AutoCloseable {
+    /** 默认的bin数量 */
+    static final int DEFAULT_INITIAL_CAPACITY = 1 << 4;
+
+    /** bin数量的上限 */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /** 负载因子 */
+    static final float LOAD_FACTOR = 0.75f;
+
+    /** 一个slab的最大字节数 */
+    static final int MAX_SLAB_BYTES = 1 << 26;
+
+    /** 记录头部next和hash占用的字节数 */
+    static final int HEADER = 8;
+
+    private final int keySize;
+    private final int valueSize;
+    private final int recordSize;
+
+    /** bin的头，每个元素是一条记录的编号 */
+    private Slabs bins;
+    private int binCount;
+    private int threshold;
+
+    /** 记录，编号0不使用 */
+    private final Slabs records;
+
+    /** 下一个从来没有使用过的记录编号 */
+    private int nextRecord = 1;
+
+    /** 空闲链表的头 */
+    private int freeRecord;
+
+    private long size;
+    private int modCount;
+
+    /** find返回的享元 */
+    private final Record cursor = new Record();
+
+    private Set<Record> recordSet;
+
+    /** 使用默认的初始容量构造一个空的表 */
+    public OffHeapHashMap(int keySize, int valueSize) {
+        this(keySize, valueSize, 0);
+    }
+
+    /**
+     * 构造一个空的表，预先分配可以放下expected个键值对的bin
+     * @param keySize key的字节数
+     * @param valueSize value的字节数
+     * */
+    public OffHeapHashMap(int keySize, int valueSize, long expected) {
+        if (keySize <= 0 || valueSize < 0)
+            throw new IllegalArgumentException("Illegal record size: " + keySize + "/" + valueSize);
+        if (expected < 0)
+            throw new IllegalArgumentException("Illegal expected size: " + expected);
+        this.keySize = keySize;
+        this.valueSize = valueSize;
+        this.recordSize = HEADER + keySize + valueSize;
+        long n = (long) Math.ceil(expected / (double) LOAD_FACTOR);
+        this.binCount = n >= MAXIMUM_CAPACITY ? MAXIMUM_CAPACITY :
+                Math.max(DEFAULT_INITIAL_CAPACITY, HashMap.tableSizeFor((int) n));
+        this.threshold = thresholdFor(binCount);
+        this.bins = new Slabs(4, binCount);
+        this.bins.ensureCapacity(binCount);
+        this.records = new Slabs(recordSize, Integer.MAX_VALUE);
+    }
+
+    private static int thresholdFor(int bins) {
+        return bins >= MAXIMUM_CAPACITY ? Integer.MAX_VALUE : (int) (bins * LOAD_FACTOR);
+    }
+
+    /* ------------------------------------------------------------ */
+    // slab
+
+    /**
+     * 由多个direct ByteBuffer组成的定长元素数组，每个slab的元素数量是2的幂，
+     * 只会追加新的slab，已经分配的元素不会移动
+     * */
+    static final class Slabs {
+        final int elementSize;
+        final int shift;
+        final int mask;
+        ByteBuffer[] buffers = new ByteBuffer[0];
+
+        /**
+         * @param elementSize 每个元素的字节数
+         * @param maxElements 最多需要的元素数量，用来避免为很小的数组分配很大的slab
+         * */
+        Slabs(int elementSize, long maxElements) {
+            this.elementSize = elementSize;
+            long perSlab = Math.max(1, Integer.highestOneBit(MAX_SLAB_BYTES / elementSize));
+            perSlab = Math.min(perSlab, HashCommon.nextPowerOfTwo(Math.max(maxElements, 1)));
+            this.shift = Long.numberOfTrailingZeros(perSlab);
+            this.mask = (int) perSlab - 1;
+        }
+
+        long capacity() {
+            return (long) buffers.length << shift;
+        }
+
+        /** 追加slab直到可以放下n个元素 */
+        void ensureCapacity(long n) {
+            if (n <= capacity())
+                return;
+            int count = (int) ((n + mask) >>> shift);
+            ByteBuffer[] bs = java.util.Arrays.copyOf(buffers, count);
+            for (int i = buffers.length; i < count; i++)
+                bs[i] = ByteBuffer.allocateDirect((mask + 1) * elementSize).order(ByteOrder.nativeOrder());
+            buffers = bs;
+        }
+
+        ByteBuffer buffer(long i) {
+            return buffers[(int) (i >>> shift)];
+        }
+
+        int offset(long i) {
+            return (int) (i & mask) * elementSize;
+        }
+
+        /** 立即释放所有的slab，不等待ByteBuffer被回收 */
+        void free() {
+            DirectBuffers.free(buffers);
+            buffers = new ByteBuffer[0];
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    // 哈希和比较
+
+    /** 按照大端的顺序读取long，和ByteBuffer自身的字节序无关 */
+    private static long readLong(ByteBuffer b, int index, boolean swap) {
+        long l = b.getLong(index);
+        return swap ? Long.reverseBytes(l) : l;
+    }
+
+    /**
+     * key的哈希值，和HashMap.hash一样把高16位异或到低16位，
+     * 每次读取8个字节，结果只和字节的内容有关，和ByteBuffer的字节序无关
+     * */
+    static int hash(ByteBuffer key, int pos, int len) {
+        boolean swap = key.order() != ByteOrder.BIG_ENDIAN;
+        int h = 1, i = 0;
+        for (; i + 8 <= len; i += 8) {
+            long l = readLong(key, pos + i, swap);
+            h = 31 * h + (int) (l ^ (l >>> 32));
+        }
+        for (; i < len; i++)
+            h = 31 * h + key.get(pos + i);
+        return h ^ (h >>> 16);
+    }
+
+    /** 比较记录中的key和key中从pos开始的keySize个字节 */
+    private boolean keyEquals(ByteBuffer rb, int ro, ByteBuffer key, int pos) {
+        boolean swapR = rb.order() != ByteOrder.BIG_ENDIAN, swapK = key.order() != ByteOrder.BIG_ENDIAN;
+        int len = keySize, i = 0;
+        ro += HEADER;
+        for (; i + 8 <= len; i += 8) {
+            if (readLong(rb, ro + i, swapR) != readLong(key, pos + i, swapK))
+                return false;
+        }
+        for (; i < len; i++) {
+            if (rb.get(ro + i) != key.get(pos + i))
+                return false;
+        }
+        return true;
+    }
+
+    private void checkKey(ByteBuffer key) {
+        if (key.remaining() < keySize)
+            throw new IllegalArgumentException("key needs " + keySize + " bytes, remaining " + key.remaining());
+    }
+
+    private void checkOpen() {
+        if (bins == null)
+            throw new IllegalStateException("closed");
+    }
+
+    /* ------------------------------------------------------------ */
+    // 基本操作
+
+    /** key的字节数 */
+    public int keySize() {
+        return keySize;
+    }
+
+    /** value的字节数 */
+    public int valueSize() {
+        return valueSize;
+    }
+
+    /** 键值对的数量 */
+    public long size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** 查找key所在的记录，不存在的时候返回0 */
+    private int findRecord(int hash, ByteBuffer key, int pos) {
+        checkOpen();
+        long bi = hash & (binCount - 1);
+        int r = bins.buffer(bi).getInt(bins.offset(bi));
+        Slabs rs = records;
+        while (r != 0) {
+            ByteBuffer rb = rs.buffer(r);
+            int ro = rs.offset(r);
+            if (rb.getInt(ro + 4) == hash && keyEquals(rb, ro, key, pos))
+                return r;
+            r = rb.getInt(ro);
+        }
+        return 0;
+    }
+
+    /**
+     * 查找key，key是从key.position()开始的keySize个字节，不改变key的position
+     * @return 复用的享元，指向找到的记录，下一次调用find或者修改之后失效，不存在的时候返回null
+     * */
+    public Record find(ByteBuffer key) {
+        checkKey(key);
+        int pos = key.position();
+        int r = findRecord(hash(key, pos, keySize), key, pos);
+        return r == 0 ? null : cursor.moveTo(r);
+    }
+
+    /** 是否存在key */
+    public boolean containsKey(ByteBuffer key) {
+        checkKey(key);
+        int pos = key.position();
+        return findRecord(hash(key, pos, keySize), key, pos) != 0;
+    }
+
+    /**
+     * 把key对应的value复制到dst中，从dst.position()开始写入，不改变任何position
+     * @return key是否存在
+     * */
+    public boolean get(ByteBuffer key, ByteBuffer dst) {
+        checkKey(key);
+        int pos = key.position();
+        int r = findRecord(hash(key, pos, keySize), key, pos);
+        if (r == 0)
+            return false;
+        ByteBuffer rb = records.buffer(r);
+        int vo = records.offset(r) + HEADER + keySize, dp = dst.position();
+        for (int i = 0; i < valueSize; i++)
+            dst.put(dp + i, rb.get(vo + i));
+        return true;
+    }
+
+    /** 返回key对应的value的副本，不存在的时候返回null */
+    public byte[] get(byte[] key) {
+        Record rec = find(ByteBuffer.wrap(key));
+        if (rec == null)
+            return null;
+        byte[] v = new byte[valueSize];
+        rec.value().get(v);
+        return v;
+    }
+
+    /**
+     * 添加或者替换键值对，key和value分别从各自的position开始读取，不改变任何position
+     * @return key原来是否不存在
+     * */
+    public boolean put(ByteBuffer key, ByteBuffer value) {
+        checkKey(key);
+        if (value.remaining() < valueSize)
+            throw new IllegalArgumentException("value needs " + valueSize + " bytes, remaining " + value.remaining());
+        int pos = key.position(), hash = hash(key, pos, keySize);
+        int r = findRecord(hash, key, pos);
+        boolean added = r == 0;
+        if (added) {
+            r = allocateRecord();
+            ByteBuffer rb = records.buffer(r);
+            int ro = records.offset(r);
+            long bi = hash & (binCount - 1);
+            ByteBuffer bb = bins.buffer(bi);
+            int bo = bins.offset(bi);
+            // 插入到bin的头部，不需要遍历到链表的末尾
+            rb.putInt(ro, bb.getInt(bo));
+            rb.putInt(ro + 4, hash);
+            for (int i = 0; i < keySize; i++)
+                rb.put(ro + HEADER + i, key.get(pos + i));
+            bb.putInt(bo, r);
+            ++modCount;
+            if (++size > threshold)
+                resize();
+        }
+        ByteBuffer rb = records.buffer(r);
+        int vo = records.offset(r) + HEADER + keySize, vp = value.position();
+        for (int i = 0; i < valueSize; i++)
+            rb.put(vo + i, value.get(vp + i));
+        return added;
+    }
+
+    /** 使用数组添加或者替换键值对 */
+    public boolean put(byte[] key, byte[] value) {
+        return put(ByteBuffer.wrap(key), ByteBuffer.wrap(value));
+    }
+
+    /**
+     * 删除key，记录放入空闲链表
+     * @return key原来是否存在
+     * */
+    public boolean remove(ByteBuffer key) {
+        checkKey(key);
+        checkOpen();
+        int pos = key.position(), hash = hash(key, pos, keySize);
+        long bi = hash & (binCount - 1);
+        ByteBuffer bb = bins.buffer(bi);
+        int bo = bins.offset(bi);
+        Slabs rs = records;
+        for (int prev = 0, r = bb.getInt(bo); r != 0; ) {
+            ByteBuffer rb = rs.buffer(r);
+            int ro = rs.offset(r), next = rb.getInt(ro);
+            if (rb.getInt(ro + 4) == hash && keyEquals(rb, ro, key, pos)) {
+                if (prev == 0)
+                    bb.putInt(bo, next);
+                else
+                    rs.buffer(prev).putInt(rs.offset(prev), next);
+                rb.putInt(ro, freeRecord);
+                freeRecord = r;
+                ++modCount;
+                --size;
+                return true;
+            }
+            prev = r;
+            r = next;
+        }
+        return false;
+    }
+
+    /** 删除所有键值对，已经分配的slab保留下来继续使用 */
+    public void clear() {
+        checkOpen();
+        for (ByteBuffer b : bins.buffers) {
+            for (int i = 0; i < b.capacity(); i += 4)
+                b.putInt(i, 0);
+        }
+        nextRecord = 1;
+        freeRecord = 0;
+        size = 0;
+        ++modCount;
+    }
+
+    /**
+     * 释放所有的堆外内存，之后不能再使用，
+     * 之前通过Record返回的ByteBuffer视图同时失效
+     * */
+    public void close() {
+        if (bins != null) {
+            bins.free();
+            records.free();
+            cursor.dropViews();
+            bins = null;
+            size = 0;
+            ++modCount;
+        }
+    }
+
+    private int allocateRecord() {
+        int r = freeRecord;
+        if (r != 0) {
+            freeRecord = records.buffer(r).getInt(records.offset(r));
+            return r;
+        }
+        if ((r = nextRecord) == Integer.MAX_VALUE)
+            throw new IllegalStateException("Too many records");
+        records.ensureCapacity((long) r + 1);
+        nextRecord = r + 1;
+        return r;
+    }
+
+    /**
+     * bin的数量加倍，和HashMap.splitBin一样把每个bin拆分为lo和hi两个链表，
+     * 只修改记录中的next，记录本身留在原来的位置
+     * */
+    private void resize() {
+        int oldCap = binCount;
+        if (oldCap >= MAXIMUM_CAPACITY) {
+            threshold = Integer.MAX_VALUE;
+            return;
+        }
+        int newCap = oldCap << 1;
+        Slabs oldBins = bins, newBins = new Slabs(4, newCap);
+        newBins.ensureCapacity(newCap);
+        Slabs rs = records;
+        for (int j = 0; j < oldCap; ++j) {
+            int r = oldBins.buffer(j).getInt(oldBins.offset(j));
+            int loHead = 0, loTail = 0, hiHead = 0, hiTail = 0;
+            while (r != 0) {
+                ByteBuffer rb = rs.buffer(r);
+                int ro = rs.offset(r), next = rb.getInt(ro);
+                if ((rb.getInt(ro + 4) & oldCap) == 0) {
+                    if (loTail == 0)
+                        loHead = r;
+                    else
+                        rs.buffer(loTail).putInt(rs.offset(loTail), r);
+                    loTail = r;
+                }
+                else {
+                    if (hiTail == 0)
+                        hiHead = r;
+                    else
+                        rs.buffer(hiTail).putInt(rs.offset(hiTail), r);
+                    hiTail = r;
+                }
+                r = next;
+            }
+            if (loTail != 0) {
+                rs.buffer(loTail).putInt(rs.offset(loTail), 0);
+                newBins.buffer(j).putInt(newBins.offset(j), loHead);
+            }
+            if (hiTail != 0) {
+                rs.buffer(hiTail).putInt(rs.offset(hiTail), 0);
+                newBins.buffer(j + oldCap).putInt(newBins.offset(j + oldCap), hiHead);
+            }
+        }
+        bins = newBins;
+        binCount = newCap;
+        threshold = thresholdFor(newCap);
+        oldBins.free();
+    }
+
+    /* ------------------------------------------------------------ */
+    // 享元和视图
+
+    /**
+     * 指向一条记录的享元，key()和value()返回直接指向slab的ByteBuffer视图，
+     * position是数据的开始，limit是数据的结束，key()是只读的，可以通过value()原地修改value
+     *
+     * 每个Record为用到的slab各保留一个key视图和一个value视图，之后移动到同一个slab中的记录不再创建对象，
+     * 视图的字节序固定为ByteOrder.nativeOrder()，和put时传入的ByteBuffer的字节序无关，
+     * 哈希值和比较只和字节的内容有关，需要按其他字节序读取多字节的值时自己设置视图的order
+     *
+     * close之后所有的访问方法都会抛出IllegalStateException
+     * */
+    public final class Record implements Map.Entry<ByteBuffer, ByteBuffer> {
+        private int record;
+        private ByteBuffer[] keyViews = new ByteBuffer[0];
+        private ByteBuffer[] valueViews = new ByteBuffer[0];
+
+        Record moveTo(int r) {
+            record = r;
+            return this;
+        }
+
+        private int slab() {
+            checkOpen();
+            int s = (int) ((long) record >>> records.shift);
+            if (s >= keyViews.length) {
+                keyViews = java.util.Arrays.copyOf(keyViews, records.buffers.length);
+                valueViews = java.util.Arrays.copyOf(valueViews, records.buffers.length);
+            }
+            if (keyViews[s] == null) {
+                keyViews[s] = records.buffers[s].asReadOnlyBuffer().order(ByteOrder.nativeOrder());
+                valueViews[s] = records.buffers[s].duplicate().order(ByteOrder.nativeOrder());
+            }
+            return s;
+        }
+
+        /** 释放缓存的视图，slab被释放之后调用 */
+        void dropViews() {
+            keyViews = new ByteBuffer[0];
+            valueViews = new ByteBuffer[0];
+        }
+
+        /** key的只读视图 */
+        public ByteBuffer getKey() {
+            return key();
+        }
+
+        /** value的视图 */
+        public ByteBuffer getValue() {
+            return value();
+        }
+
+        /** key的只读视图 */
+        public ByteBuffer key() {
+            int o = records.offset(record) + HEADER, s = slab();
+            ByteBuffer b = keyViews[s];
+            b.limit(o + keySize).position(o);
+            return b;
+        }
+
+        /** value的视图，写入的内容直接修改表中的value */
+        public ByteBuffer value() {
+            int o = records.offset(record) + HEADER + keySize, s = slab();
+            ByteBuffer b = valueViews[s];
+            b.limit(o + valueSize).position(o);
+            return b;
+        }
+
+        /** 把value的内容替换为v中从position开始的valueSize个字节，返回null */
+        public ByteBuffer setValue(ByteBuffer v) {
+            ByteBuffer b = value();
+            int vp = v.position();
+            for (int i = 0; i < valueSize; i++)
+                b.put(b.position() + i, v.get(vp + i));
+            return null;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            return key().equals(e.getKey()) && value().equals(e.getValue());
+        }
+
+        public int hashCode() {
+            return key().hashCode() ^ value().hashCode();
+        }
+
+        public String toString() {
+            return "Record#" + record;
+        }
+    }
+
+    /** 按照bin的顺序遍历所有的记录，action收到的是同一个享元 */
+    public void forEach(Consumer<? super Record> action) {
+        Objects.requireNonNull(action);
+        checkOpen();
+        Record rec = new Record();
+        int mc = modCount;
+        for (long j = 0; j < binCount; ++j) {
+            for (int r = bins.buffer(j).getInt(bins.offset(j)); r != 0;
+                 r = records.buffer(r).getInt(records.offset(r))) {
+                action.accept(rec.moveTo(r));
+            }
+        }
+        if (modCount != mc)
+            throw new ConcurrentModificationException();
+    }
+
+    /** 遍历所有记录的迭代器，每次next返回同一个享元 */
+    final class RecordIterator implements Iterator<Record> {
+        final Record rec = new Record();
+        int expectedModCount = modCount;
+        long bin;
+        int next;
+
+        RecordIterator() {
+            checkOpen();
+            advance(0);
+        }
+
+        private void advance(int r) {
+            while (r == 0 && bin < binCount) {
+                long j = bin++;
+                r = bins.buffer(j).getInt(bins.offset(j));
+            }
+            next = r;
+        }
+
+        public boolean hasNext() {
+            return next != 0;
+        }
+
+        public Record next() {
+            checkOpen();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            int r = next;
+            if (r == 0)
+                throw new NoSuchElementException();
+            advance(records.buffer(r).getInt(records.offset(r)));
+            return rec.moveTo(r);
+        }
+    }
+
+    /**
+     * 返回一个只读的Map视图，key和value都是ByteBuffer，按照remaining的内容比较，
+     * get返回的是find的享元中的value视图，不复制数据，在下一次访问之前有效，
+     * 遍历entrySet的时候每个Entry也是同一个享元，修改需要通过OffHeapHashMap自身的方法，
+     * close之后查找和遍历都会抛出IllegalStateException
+     * */
+    public Map<ByteBuffer, ByteBuffer> asMap() {
+        return new MapView();
+    }
+
+    final class MapView extends AbstractMap<ByteBuffer, ByteBuffer> {
+        public int size() {
+            return (int) Math.min(size, Integer.MAX_VALUE);
+        }
+
+        public boolean containsKey(Object key) {
+            checkOpen();
+            return key instanceof ByteBuffer && ((ByteBuffer) key).remaining() == keySize &&
+                    OffHeapHashMap.this.containsKey((ByteBuffer) key);
+        }
+
+        public ByteBuffer get(Object key) {
+            Record rec;
+            checkOpen();
+            return key instanceof ByteBuffer && ((ByteBuffer) key).remaining() == keySize &&
+                    (rec = find((ByteBuffer) key)) != null ? rec.value() : null;
+        }
+
+        public ByteBuffer remove(Object key) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void clear() {
+            throw new UnsupportedOperationException();
+        }
+
+        public Set<Map.Entry<ByteBuffer, ByteBuffer>> entrySet() {
+            @SuppressWarnings({"rawtypes","unchecked"})
+            Set<Map.Entry<ByteBuffer, ByteBuffer>> es = (Set) records();
+            return es;
+        }
+    }
+
+    /** 所有记录组成的只读Set，迭代器返回同一个享元 */
+    Set<Record> records() {
+        Set<Record> rs;
+        return (rs = recordSet) == null ? (recordSet = new AbstractSet<Record>() {
+            public int size() {
+                return (int) Math.min(size, Integer.MAX_VALUE);
+            }
+
+            public Iterator<Record> iterator() {
+                return new RecordIterator();
+            }
+
+            public boolean contains(Object o) {
+                checkOpen();
+                if (!(o instanceof Map.Entry))
+                    return false;
+                Object k = ((Map.Entry<?,?>) o).getKey(), v = ((Map.Entry<?,?>) o).getValue();
+                if (!(k instanceof ByteBuffer) || ((ByteBuffer) k).remaining() != keySize)
+                    return false;
+                Record rec = find((ByteBuffer) k);
+                return rec != null && rec.value().equals(v);
+            }
+        }) : rs;
+    }
+}
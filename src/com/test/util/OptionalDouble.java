@@ -0,0 +1,101 @@
+package com.test.util;
+
+import com.test.util.function.DoubleConsumer;
+import com.test.util.function.DoubleSupplier;
+import com.test.util.function.Supplier;
+
+import java.util.NoSuchElementException;
+
+/**
+ * 可能包含或不包含double值的容器对象，DoubleStream的查找和归约操作使用它来避免装箱
+ * */
+public final class OptionalDouble {
+    private static final OptionalDouble EMPTY = new OptionalDouble();
+
+    /** 如果为true，表示存在值 */
+    private final boolean isPresent;
+    private final double value;
+
+    private OptionalDouble(){
+        this.isPresent = false;
+        this.value = 0;
+    }
+
+    /**
+     * 返回一个空的 OptionalDouble实例
+     * */
+    public static OptionalDouble empty(){return EMPTY;}
+
+    private OptionalDouble(double value){
+        this.isPresent = true;
+        this.value = value;
+    }
+
+    /**
+     * 返回一个包含value的OptionalDouble
+     * */
+    public static OptionalDouble of(double value){return new OptionalDouble(value);}
+
+    /**
+     * 如果有值，返回值，否则抛出 NoSuchElementException
+     * */
+    public double getAsDouble(){
+        if(!isPresent)
+            throw new NoSuchElementException("No value present");
+        return value;
+    }
+
+    /**
+     * 判断是否有值
+     * */
+    public boolean isPresent(){return isPresent;}
+
+    /**
+     * 如果有值，action消费value
+     * */
+    public void ifPresent(DoubleConsumer action){
+        if(isPresent)
+            action.accept(value);
+    }
+
+    /**
+     * 如果有值，返回值，否则返回other
+     * */
+    public double orElse(double other){return isPresent ? value : other;}
+
+    /**
+     * 如果有值，返回值，否则返回供应商提供的数据
+     * */
+    public double orElseGet(DoubleSupplier other){return isPresent ? value : other.getAsDouble();}
+
+    /**
+     * 如果有值，返回值，否则抛出供应商提供的异常
+     * */
+    public <X extends Throwable> double orElseThrow(Supplier<X> exceptionSupplier) throws X{
+        if(isPresent)
+            return value;
+        else
+            throw exceptionSupplier.get();
+    }
+
+    @Override
+    public boolean equals(Object obj){
+        if(this == obj)
+            return true;
+        if(!(obj instanceof OptionalDouble))
+            return false;
+
+        OptionalDouble other = (OptionalDouble) obj;
+        return (isPresent && other.isPresent)
+                ? Double.compare(value, other.value) == 0
+                : isPresent == other.isPresent;
+    }
+
+    @Override
+    public int hashCode(){return isPresent ? Double.hashCode(value) : 0;}
+
+    @Override
+    public String toString(){
+        return isPresent ? String.format("OptionalDouble[%s]", value) : "OptionalDouble.empty";
+    }
+}
@@ -0,0 +1,101 @@
+package com.test.util;
+
+import com.test.util.function.IntConsumer;
+import com.test.util.function.IntSupplier;
+import com.test.util.function.Supplier;
+
+import java.util.NoSuchElementException;
+
+/**
+ * 可能包含或不包含int值的容器对象，IntStream的查找和归约操作使用它来避免装箱
+ * */
+public final class OptionalInt {
+    private static final OptionalInt EMPTY = new OptionalInt();
+
+    /** 如果为true，表示存在值 */
+    private final boolean isPresent;
+    private final int value;
+
+    private OptionalInt(){
+        this.isPresent = false;
+        this.value = 0;
+    }
+
+    /**
+     * 返回一个空的 OptionalInt实例
+     * */
+    public static OptionalInt empty(){return EMPTY;}
+
+    private OptionalInt(int value){
+        this.isPresent = true;
+        this.value = value;
+    }
+
+    /**
+     * 返回一个包含value的OptionalInt
+     * */
+    public static OptionalInt of(int value){return new OptionalInt(value);}
+
+    /**
+     * 如果有值，返回值，否则抛出 NoSuchElementException
+     * */
+    public int getAsInt(){
+        if(!isPresent)
+            throw new NoSuchElementException("No value present");
+        return value;
+    }
+
+    /**
+     * 判断是否有值
+     * */
+    public boolean isPresent(){return isPresent;}
+
+    /**
+     * 如果有值，action消费value
+     * */
+    public void ifPresent(IntConsumer action){
+        if(isPresent)
+            action.accept(value);
+    }
+
+    /**
+     * 如果有值，返回值，否则返回other
+     * */
+    public int orElse(int other){return isPresent ? value : other;}
+
+    /**
+     * 如果有值，返回值，否则返回供应商提供的数据
+     * */
+    public int orElseGet(IntSupplier other){return isPresent ? value : other.getAsInt();}
+
+    /**
+     * 如果有值，返回值，否则抛出供应商提供的异常
+     * */
+    public <X extends Throwable> int orElseThrow(Supplier<X> exceptionSupplier) throws X{
+        if(isPresent)
+            return value;
+        else
+            throw exceptionSupplier.get();
+    }
+
+    @Override
+    public boolean equals(Object obj){
+        if(this == obj)
+            return true;
+        if(!(obj instanceof OptionalInt))
+            return false;
+
+        OptionalInt other = (OptionalInt) obj;
+        return (isPresent && other.isPresent)
+                ? value == other.value
+                : isPresent == other.isPresent;
+    }
+
+    @Override
+    public int hashCode(){return isPresent ? Integer.hashCode(value) : 0;}
+
+    @Override
+    public String toString(){
+        return isPresent ? String.format("OptionalInt[%s]", value) : "OptionalInt.empty";
+    }
+}
@@ -0,0 +1,101 @@
+package com.test.util;
+
+import com.test.util.function.LongConsumer;
+import com.test.util.function.LongSupplier;
+import com.test.util.function.Supplier;
+
+import java.util.NoSuchElementException;
+
+/**
+ * 可能包含或不包含long值的容器对象，LongStream的查找和归约操作使用它来避免装箱
+ * */
+public final class OptionalLong {
+    private static final OptionalLong EMPTY = new OptionalLong();
+
+    /** 如果为true，表示存在值 */
+    private final boolean isPresent;
+    private final long value;
+
+    private OptionalLong(){
+        this.isPresent = false;
+        this.value = 0;
+    }
+
+    /**
+     * 返回一个空的 OptionalLong实例
+     * */
+    public static OptionalLong empty(){return EMPTY;}
+
+    private OptionalLong(long value){
+        this.isPresent = true;
+        this.value = value;
+    }
+
+    /**
+     * 返回一个包含value的OptionalLong
+     * */
+    public static OptionalLong of(long value){return new OptionalLong(value);}
+
+    /**
+     * 如果有值，返回值，否则抛出 NoSuchElementException
+     * */
+    public long getAsLong(){
+        if(!isPresent)
+            throw new NoSuchElementException("No value present");
+        return value;
+    }
+
+    /**
+     * 判断是否有值
+     * */
+    public boolean isPresent(){return isPresent;}
+
+    /**
+     * 如果有值，action消费value
+     * */
+    public void ifPresent(LongConsumer action){
+        if(isPresent)
+            action.accept(value);
+    }
+
+    /**
+     * 如果有值，返回值，否则返回other
+     * */
+    public long orElse(long other){return isPresent ? value : other;}
+
+    /**
+     * 如果有值，返回值，否则返回供应商提供的数据
+     * */
+    public long orElseGet(LongSupplier other){return isPresent ? value : other.getAsLong();}
+
+    /**
+     * 如果有值，返回值，否则抛出供应商提供的异常
+     * */
+    public <X extends Throwable> long orElseThrow(Supplier<X> exceptionSupplier) throws X{
+        if(isPresent)
+            return value;
+        else
+            throw exceptionSupplier.get();
+    }
+
+    @Override
+    public boolean equals(Object obj){
+        if(this == obj)
+            return true;
+        if(!(obj instanceof OptionalLong))
+            return false;
+
+        OptionalLong other = (OptionalLong) obj;
+        return (isPresent && other.isPresent)
+                ? value == other.value
+                : isPresent == other.isPresent;
+    }
+
+    @Override
+    public int hashCode(){return isPresent ? Long.hashCode(value) : 0;}
+
+    @Override
+    public String toString(){
+        return isPresent ? String.format("OptionalLong[%s]", value) : "OptionalLong.empty";
+    }
+}
@@ -77,7 +77,7 @@ public interface PrimitiveIterator<T,T_CONS> extends Iterator<T> {
             else{
                 Objects.requireNonNull(action);
                 if(Tripwire.ENABLE)
-                    Tripwire.trip(getClass(),"{0} calling PrimitiveIterator.OfLong.forEachRemainingInt(action::accept)");
+                    Tripwire.trip(getClass(),"{0} calling PrimitiveIterator.OfLong.forEachRemainingLong(action::accept)");
                 forEachRemaining((LongConsumer) action::accept);
             }
         }
@@ -110,7 +110,7 @@ public interface PrimitiveIterator<T,T_CONS> extends Iterator<T> {
             else{
                 Objects.requireNonNull(action);
                 if(Tripwire.ENABLE)
-                    Tripwire.trip(getClass(),"{0} calling PrimitiveIterator.OfDouble.forEachRemainingInt(action::accept)");
+                    Tripwire.trip(getClass(),"{0} calling PrimitiveIterator.OfDouble.forEachRemainingDouble(action::accept)");
                 forEachRemaining((DoubleConsumer) action::accept);
             }
         }
@@ -37,7 +37,7 @@ public final class Spliterators {
     /**
      * 返回LONG类型的空分区迭代器
      * */
-    private static Spliterator.OfLong emptyLongSpliterator(){return (Spliterator.OfLong) EMPTY_LONG_SPLITERATOR;}
+    public static Spliterator.OfLong emptyLongSpliterator(){return (Spliterator.OfLong) EMPTY_LONG_SPLITERATOR;}
     private static final Spliterator.OfLong EMPTY_LONG_SPLITERATOR =
             new EmptySpliterator.OfLong();
 
@@ -76,7 +76,7 @@ public final class Spliterators {
      * */
     public static Spliterator.OfInt spliterator(int[] array,int fromIndex,int toIndex,int additionalCharacteristics){
         checkFromToBounds(Objects.requireNonNull(array).length,fromIndex,toIndex);
-        return new IntArraySpliterator(Objects.requireNonNull(array),0,array.length,additionalCharacteristics);
+        return new IntArraySpliterator(Objects.requireNonNull(array),fromIndex,toIndex,additionalCharacteristics);
     }
 
     /**
@@ -91,7 +91,7 @@ public final class Spliterators {
      * */
     public static Spliterator.OfLong spliterator(long[] array,int fromIndex,int toIndex,int additionalCharacteristics){
         checkFromToBounds(Objects.requireNonNull(array).length,fromIndex,toIndex);
-        return new LongArraySpliterator(Objects.requireNonNull(array),0,array.length,additionalCharacteristics);
+        return new LongArraySpliterator(Objects.requireNonNull(array),fromIndex,toIndex,additionalCharacteristics);
     }
 
     /**
@@ -106,7 +106,7 @@ public final class Spliterators {
      * */
     public static Spliterator.OfDouble spliterator(double[] array,int fromIndex,int toIndex,int additionalCharacteristics){
         checkFromToBounds(Objects.requireNonNull(array).length,fromIndex,toIndex);
-        return new DoubleArraySpliterator(Objects.requireNonNull(array),0,array.length,additionalCharacteristics);
+        return new DoubleArraySpliterator(Objects.requireNonNull(array),fromIndex,toIndex,additionalCharacteristics);
     }
 
     private static void checkFromToBounds(int arrayLength,int origin,int fence){
@@ -1026,7 +1026,7 @@ public final class Spliterators {
 
             @Override
             public void accept(T t) {
-                this.value = value;
+                this.value = t;
             }
         }
 
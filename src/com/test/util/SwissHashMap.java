@@ -0,0 +1,587 @@
+package com.test.util;
+
+import com.test.util.function.BiConsumer;
+import com.test.util.function.BiFunction;
+
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Swiss table风格的开放定址哈希表，key和value可以是null
+ *
+ * 每个槽位对应一个控制字节，8个槽位组成一组，一组的控制字节正好放在一个long当中：
+ * 空槽是EMPTY(0x80)，删除过的槽位是DELETED(0xFE)，
+ * 占用的槽位是0后面跟着哈希值的低7位(h2)，最高位是0
+ *
+ * 查找的时候用哈希值的其余位(h1)选出起始的组，用SWAR一次比较一组中的8个控制字节，
+ * 只有控制字节等于h2的槽位才需要读取key调用equals，
+ * 不相等的key几乎不会被访问，key和value相邻存放，一次查找通常只访问一个控制字节的long和一个键值对
+ *
+ * 组和组之间使用三角数探测：g, g+1, g+3, g+6 ...，组数是2的幂时可以遍历所有的组，
+ * 一组中只要存在EMPTY，探测就可以在这一组结束
+ *
+ * 和HashMap相比，每个键值对不需要一个32字节的Node，
+ * 只占用一个字节的控制字节和table中的两个引用
+ */
+public class SwissHashMap<K,V> extends AbstractMap<K,V> implements Cloneable {
+    /** 默认的初始容量 */
+    static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /** 每组的槽位数 */
+    static final int GROUP_WIDTH = 8;
+
+    /** 最大负载因子是7/8 */
+    static final float MAX_LOAD_FACTOR = 0.875f;
+
+    /** 空槽的控制字节 */
+    static final byte EMPTY = (byte) 0x80;
+
+    /** 删除过的槽位的控制字节 */
+    static final byte DELETED = (byte) 0xFE;
+
+    /** 每个字节的最低位 */
+    private static final long LSB = 0x0101010101010101L;
+
+    /** 每个字节的最高位，也是一组全部是EMPTY时的控制字节 */
+    private static final long MSB = 0x8080808080808080L;
+
+    /** 代替null存放在key数组中，null表示空槽 */
+    static final Object NULL_KEY = new Object();
+
+    /** 控制字节，ctrl[g]的第j个字节对应槽位g * 8 + j */
+    transient long[] ctrl;
+
+    /**
+     * 键值对交替存放，槽位i的key在table[2i]，value在table[2i + 1]，null的key存放为NULL_KEY
+     * key和value相邻，命中的查找读取value时不会再多一次缓存不命中
+     */
+    transient Object[] table;
+
+    /** 组数 - 1，组数是2的幂 */
+    transient int groupMask;
+
+    /** 元素个数 */
+    transient int size;
+
+    /** 在需要扩容之前还能占用的EMPTY槽位个数，DELETED槽位被重新使用时不会减少 */
+    transient int growthLeft;
+
+    /** 结构修改的次数，用于快速失败 */
+    transient int modCount;
+
+    /**
+     * 根据期望的元素个数构造，保证插入expected个元素的过程中不会扩容
+     */
+    public SwissHashMap(int expected) {
+        if (expected < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " + expected);
+        allocate(Math.max(GROUP_WIDTH, HashCommon.arraySize(expected, MAX_LOAD_FACTOR)));
+    }
+
+    public SwissHashMap() {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    public SwissHashMap(Map<? extends K, ? extends V> m) {
+        this(Math.max(m.size(), DEFAULT_INITIAL_CAPACITY));
+        putAll(m);
+    }
+
+    /** 分配capacity个槽位，所有控制字节都是EMPTY */
+    private void allocate(int capacity) {
+        long[] ctrl = new long[capacity / GROUP_WIDTH];
+        Arrays.fill(ctrl, MSB);
+        this.ctrl = ctrl;
+        table = new Object[capacity << 1];
+        groupMask = ctrl.length - 1;
+        growthLeft = maxLoad(capacity) - size;
+    }
+
+    /** 槽位数为capacity时最多能存放的元素个数 */
+    static int maxLoad(int capacity) {
+        return capacity - (capacity >>> 3);
+    }
+
+    /** 扰动key的哈希值，低7位作为h2，其余位作为h1 */
+    static int hash(Object key) {
+        return key == null ? 0 : HashCommon.mix(key.hashCode());
+    }
+
+    static Object maskNull(Object key) {
+        return key == null ? NULL_KEY : key;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K> K unmaskNull(Object key) {
+        return key == NULL_KEY ? null : (K) key;
+    }
+
+    // SWAR：每个方法返回一个掩码，匹配的字节的最高位是1
+
+    /**
+     * 控制字节等于h2的字节
+     * 异或之后相等的字节变成0，(x - LSB) & ~x 只会在0字节上留下最高位，
+     * 借位可能让紧挨着一个0字节的0x01字节也被选中，这种假阳性只会多比较一次key
+     */
+    static long matchByte(long group, int h2) {
+        long x = group ^ (LSB * h2);
+        return (x - LSB) & ~x & MSB;
+    }
+
+    /** EMPTY的字节：最高位是1并且第1位是1，DELETED的第1位是0 */
+    static long matchEmpty(long group) {
+        return group & (~group << 6) & MSB;
+    }
+
+    /** EMPTY或者DELETED的字节：最高位是1并且第0位是0 */
+    static long matchEmptyOrDeleted(long group) {
+        return group & (~group << 7) & MSB;
+    }
+
+    /** 占用的字节：最高位是0 */
+    static long matchFull(long group) {
+        return ~group & MSB;
+    }
+
+    /** 掩码中最低的一个匹配字节在组中的下标 */
+    static int lowestIndex(long mask) {
+        return Long.numberOfTrailingZeros(mask) >>> 3;
+    }
+
+    /** 槽位数 */
+    final int capacity() {
+        return ctrl.length << 3;
+    }
+
+    /** 槽位i上的value */
+    @SuppressWarnings("unchecked")
+    final V valueAt(int i) {
+        return (V) table[(i << 1) + 1];
+    }
+
+    /** 设置槽位i的控制字节 */
+    final void setCtrl(int i, byte b) {
+        int shift = (i & (GROUP_WIDTH - 1)) << 3;
+        long[] ctrl = this.ctrl;
+        int g = i >>> 3;
+        ctrl[g] = (ctrl[g] & ~(0xFFL << shift)) | ((b & 0xFFL) << shift);
+    }
+
+    /**
+     * 查找key所在的槽位，不存在时返回-1
+     */
+    final int find(Object key) {
+        return find(maskNull(key), hash(key));
+    }
+
+    final int find(Object mk, int h) {
+        long[] ctrl = this.ctrl;
+        Object[] table = this.table;
+        int mask = groupMask;
+        int h2 = h & 0x7F;
+        for (int g = (h >>> 7) & mask, step = 0; ; g = (g + ++step) & mask) {
+            long group = ctrl[g];
+            for (long m = matchByte(group, h2); m != 0; m &= m - 1) {
+                int i = (g << 3) + lowestIndex(m);
+                Object k = table[i << 1];
+                if (k == mk || mk.equals(k))
+                    return i;
+            }
+            if (matchEmpty(group) != 0)
+                return -1;
+        }
+    }
+
+    /** 沿着h的探测序列找到第一个EMPTY或者DELETED的槽位 */
+    private int findInsertSlot(int h) {
+        long[] ctrl = this.ctrl;
+        int mask = groupMask;
+        for (int g = (h >>> 7) & mask, step = 0; ; g = (g + ++step) & mask) {
+            long m = matchEmptyOrDeleted(ctrl[g]);
+            if (m != 0)
+                return (g << 3) + lowestIndex(m);
+        }
+    }
+
+    /** 插入一个不存在的key */
+    private void insert(int h, Object mk, V v) {
+        int i = findInsertSlot(h);
+        boolean wasEmpty = (byte) (ctrl[i >>> 3] >>> ((i & (GROUP_WIDTH - 1)) << 3)) == EMPTY;
+        if (wasEmpty && growthLeft == 0) {
+            rehashForInsert();
+            i = findInsertSlot(h);
+            wasEmpty = true;
+        }
+        if (wasEmpty)
+            growthLeft--;
+        setCtrl(i, (byte) (h & 0x7F));
+        table[i << 1] = mk;
+        table[(i << 1) + 1] = v;
+        ++size;
+        ++modCount;
+    }
+
+    /**
+     * 没有可用的EMPTY槽位时调用
+     * 如果一半以上的负载是DELETED，原地按相同的容量重建以清除删除标记，否则容量翻倍
+     */
+    private void rehashForInsert() {
+        int capacity = capacity();
+        if (size <= maxLoad(capacity) >>> 1)
+            rehash(capacity);
+        else if (capacity >= HashCommon.MAXIMUM_CAPACITY)
+            throw new IllegalStateException("SwissHashMap is full");
+        else
+            rehash(capacity << 1);
+    }
+
+    /**
+     * 把所有元素重新插入到newCapacity个槽位的新表中，新表中没有DELETED
+     */
+    final void rehash(int newCapacity) {
+        long[] oldCtrl = ctrl;
+        Object[] oldTable = table;
+        allocate(newCapacity);
+        for (int g = 0; g < oldCtrl.length; g++) {
+            for (long m = matchFull(oldCtrl[g]); m != 0; m &= m - 1) {
+                int i = (g << 3) + lowestIndex(m);
+                Object mk = oldTable[i << 1];
+                int h = hash(unmaskNull(mk));
+                int j = findInsertSlot(h);
+                setCtrl(j, (byte) (h & 0x7F));
+                table[j << 1] = mk;
+                table[(j << 1) + 1] = oldTable[(i << 1) + 1];
+            }
+        }
+    }
+
+    /**
+     * 删除槽位i上的元素
+     * 如果这一组中还有EMPTY，经过这一组的探测都会在这里结束，槽位可以直接标记为EMPTY，
+     * 否则后面的组中可能有探测经过这里的key，只能标记为DELETED
+     */
+    final V removeAt(int i) {
+        V oldValue = valueAt(i);
+        if (matchEmpty(ctrl[i >>> 3]) != 0) {
+            setCtrl(i, EMPTY);
+            growthLeft++;
+        } else {
+            setCtrl(i, DELETED);
+        }
+        table[i << 1] = null;
+        table[(i << 1) + 1] = null;
+        --size;
+        ++modCount;
+        return oldValue;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(Object key) {
+        return find(key) >= 0;
+    }
+
+    public V get(Object key) {
+        int i = find(key);
+        return i < 0 ? null : valueAt(i);
+    }
+
+    public V getOrDefault(Object key, V defaultValue) {
+        int i = find(key);
+        return i < 0 ? defaultValue : valueAt(i);
+    }
+
+    /**
+     * 放入键值对，返回旧的value，不存在时返回null
+     */
+    public V put(K key, V value) {
+        Object mk = maskNull(key);
+        int h = hash(key);
+        int i = find(mk, h);
+        if (i >= 0) {
+            V oldValue = valueAt(i);
+            table[(i << 1) + 1] = value;
+            return oldValue;
+        }
+        insert(h, mk, value);
+        return null;
+    }
+
+    public V putIfAbsent(K key, V value) {
+        Object mk = maskNull(key);
+        int h = hash(key);
+        int i = find(mk, h);
+        if (i >= 0) {
+            V oldValue = valueAt(i);
+            if (oldValue == null)
+                table[(i << 1) + 1] = value;
+            return oldValue;
+        }
+        insert(h, mk, value);
+        return null;
+    }
+
+    public V remove(Object key) {
+        int i = find(key);
+        return i < 0 ? null : removeAt(i);
+    }
+
+    public void putAll(Map<? extends K, ? extends V> m) {
+        // 按照合并后的大小预先扩容，避免多次rehash
+        int s = size + m.size();
+        if (s > maxLoad(capacity()))
+            rehash(Math.max(capacity(), HashCommon.arraySize(s, MAX_LOAD_FACTOR)));
+        super.putAll(m);
+    }
+
+    public void clear() {
+        if (size == 0 && growthLeft == maxLoad(capacity()))
+            return;
+        Arrays.fill(ctrl, MSB);
+        Arrays.fill(table, null);
+        size = 0;
+        growthLeft = maxLoad(capacity());
+        ++modCount;
+    }
+
+    public boolean containsValue(Object value) {
+        long[] ctrl = this.ctrl;
+        Object[] table = this.table;
+        for (int g = 0; g < ctrl.length; g++) {
+            for (long m = matchFull(ctrl[g]); m != 0; m &= m - 1) {
+                if (Objects.equals(table[(((g << 3) + lowestIndex(m)) << 1) + 1], value))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        Objects.requireNonNull(action);
+        long[] ctrl = this.ctrl;
+        int mc = modCount;
+        for (int g = 0; g < ctrl.length && mc == modCount; g++) {
+            for (long m = matchFull(ctrl[g]); m != 0; m &= m - 1) {
+                int i = (g << 3) + lowestIndex(m);
+                action.accept(unmaskNull(table[i << 1]), valueAt(i));
+            }
+        }
+        if (mc != modCount)
+            throw new ConcurrentModificationException();
+    }
+
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        Objects.requireNonNull(function);
+        long[] ctrl = this.ctrl;
+        int mc = modCount;
+        for (int g = 0; g < ctrl.length && mc == modCount; g++) {
+            for (long m = matchFull(ctrl[g]); m != 0; m &= m - 1) {
+                int i = (g << 3) + lowestIndex(m);
+                table[(i << 1) + 1] = function.apply(unmaskNull(table[i << 1]), valueAt(i));
+            }
+        }
+        if (mc != modCount)
+            throw new ConcurrentModificationException();
+    }
+
+    /**
+     * 返回一个浅拷贝，key和value本身不会被复制
+     */
+    @SuppressWarnings("unchecked")
+    public SwissHashMap<K,V> clone() {
+        SwissHashMap<K,V> result;
+        try {
+            result = (SwissHashMap<K,V>) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError(e);
+        }
+        result.ctrl = ctrl.clone();
+        result.table = table.clone();
+        result.keySet = null;
+        result.values = null;
+        result.entrySet = null;
+        result.modCount = 0;
+        return result;
+    }
+
+    public int hashCode() {
+        int h = 0;
+        long[] ctrl = this.ctrl;
+        for (int g = 0; g < ctrl.length; g++) {
+            for (long m = matchFull(ctrl[g]); m != 0; m &= m - 1) {
+                int i = (g << 3) + lowestIndex(m);
+                h += Objects.hashCode(unmaskNull(table[i << 1])) ^ Objects.hashCode(valueAt(i));
+            }
+        }
+        return h;
+    }
+
+    transient Set<Map.Entry<K,V>> entrySet;
+
+    public Set<K> keySet() {
+        Set<K> ks;
+        return (ks = keySet) == null ? (keySet = new KeySet()) : ks;
+    }
+
+    public Collection<V> values() {
+        Collection<V> vs;
+        return (vs = values) == null ? (values = new Values()) : vs;
+    }
+
+    /**
+     * 返回键值对的视图，视图中的Entry直接引用表中的槽位
+     */
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class KeySet extends AbstractSet<K> {
+        public final int size()                 { return size; }
+        public final void clear()               { SwissHashMap.this.clear(); }
+        public final Iterator<K> iterator()     { return new KeyIterator(); }
+        public final boolean contains(Object o) { return containsKey(o); }
+        public final boolean remove(Object key) {
+            int i = find(key);
+            if (i < 0)
+                return false;
+            removeAt(i);
+            return true;
+        }
+    }
+
+    final class Values extends AbstractCollection<V> {
+        public final int size()                 { return size; }
+        public final void clear()               { SwissHashMap.this.clear(); }
+        public final Iterator<V> iterator()     { return new ValueIterator(); }
+        public final boolean contains(Object o) { return containsValue(o); }
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public final int size()                 { return size; }
+        public final void clear()               { SwissHashMap.this.clear(); }
+        public final Iterator<Map.Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            int i = find(e.getKey());
+            return i >= 0 && Objects.equals(valueAt(i), e.getValue());
+        }
+        public final boolean remove(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            int i = find(e.getKey());
+            if (i < 0 || !Objects.equals(valueAt(i), e.getValue()))
+                return false;
+            removeAt(i);
+            return true;
+        }
+    }
+
+    /**
+     * 指向表中某个槽位的Entry
+     */
+    final class MapEntry implements Map.Entry<K,V> {
+        final int index;
+
+        MapEntry(int index) {
+            this.index = index;
+        }
+
+        public K getKey()         { return unmaskNull(table[index << 1]); }
+        public V getValue()       { return valueAt(index); }
+        public String toString()  { return getKey() + "=" + getValue(); }
+        public int hashCode()     { return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue()); }
+
+        public V setValue(V v) {
+            V oldValue = valueAt(index);
+            table[(index << 1) + 1] = v;
+            return oldValue;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            return Objects.equals(getKey(), e.getKey()) &&
+                    Objects.equals(getValue(), e.getValue());
+        }
+    }
+
+    /**
+     * 按槽位的顺序遍历，每次取一组控制字节找出占用的槽位
+     * 删除只会修改控制字节，不会移动其他元素，所以迭代器删除之后可以继续遍历
+     */
+    abstract class HashIterator {
+        int next;                    // 下一个占用的槽位，等于槽位数表示结束
+        int last = -1;               // 上一次返回的槽位，-1表示不能删除
+        int expectedModCount = modCount;
+
+        HashIterator() {
+            next = nextFull(0);
+        }
+
+        /** 从槽位from开始找到第一个占用的槽位 */
+        private int nextFull(int from) {
+            long[] ctrl = SwissHashMap.this.ctrl;
+            int g = from >>> 3;
+            if (g >= ctrl.length)
+                return capacity();
+            long m = matchFull(ctrl[g]) & (-1L << ((from & (GROUP_WIDTH - 1)) << 3));
+            while (m == 0) {
+                if (++g == ctrl.length)
+                    return capacity();
+                m = matchFull(ctrl[g]);
+            }
+            return (g << 3) + lowestIndex(m);
+        }
+
+        public final boolean hasNext() {
+            return next < capacity();
+        }
+
+        final int nextIndex() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (next >= capacity())
+                throw new NoSuchElementException();
+            last = next;
+            next = nextFull(next + 1);
+            return last;
+        }
+
+        public final void remove() {
+            if (last == -1)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            removeAt(last);
+            expectedModCount = modCount;
+            last = -1;
+        }
+    }
+
+    final class KeyIterator extends HashIterator implements Iterator<K> {
+        public final K next() { return unmaskNull(table[nextIndex() << 1]); }
+    }
+
+    final class ValueIterator extends HashIterator implements Iterator<V> {
+        public final V next() { return valueAt(nextIndex()); }
+    }
+
+    final class EntryIterator extends HashIterator implements Iterator<Map.Entry<K,V>> {
+        public final Map.Entry<K,V> next() { return new MapEntry(nextIndex()); }
+    }
+}
@@ -0,0 +1,381 @@
+package com.test.util;
+
+import com.test.util.function.Function;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 容量有界的W-TinyLFU缓存，key和value都不能是null
+ *
+ * 访问顺序的LinkedHashMap实现的LRU只看最近一次访问，一次扫描就会把所有的热点挤出去；
+ * W-TinyLFU在LRU前面加了一个准入过滤，由FrequencySketch估计每个key最近的访问频率：
+ *
+ * 1. 新的key先进入窗口(window)，窗口是一个LRU，大小是容量的1%，用来容纳突发的新热点
+ * 2. 从窗口淘汰出来的候选者进入主区域的试用段(probation)，
+ *    主区域超出容量的时候，候选者和试用段中最久没有访问的牺牲者比较频率，频率高的留下
+ * 3. 主区域是分段LRU(SLRU)：试用段中的key再次被访问时晋升到保护段(protected)，
+ *    保护段占主区域的80%，超出的时候最久没有访问的key降级回试用段
+ *
+ * 只访问一次的扫描流量频率很低，通不过准入，不会挤掉主区域中的热点
+ *
+ * 并发：按照key的哈希值分成多个段，每个段是一个ReentrantLock，有自己的HashMap索引、
+ * 三个LRU链表和FrequencySketch，所有操作都只锁住一个段，
+ * 包括get，因为命中时也要调整LRU链表的顺序；每个段的容量是总容量平分的结果，
+ * 所以一个段中的淘汰只考虑这个段中的key
+ *
+ * get、put、computeIfAbsent和remove都是O(1)的，
+ * 淘汰只比较链表头部的两个节点，老化每经过容量10倍次的访问遍历一次sketch，分摊之后也是O(1)
+ */
+public class TinyLfuCache<K,V> {
+    /** 默认的并发级别，也就是段数的上限 */
+    static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    /** 每个段的最小容量，容量太小的时候减少段数，否则每个段中的LRU和准入都失去意义 */
+    static final int MIN_SEGMENT_SIZE = 32;
+
+    /** 窗口占容量的比例 */
+    static final double WINDOW_RATIO = 0.01;
+
+    /** 保护段占主区域的比例 */
+    static final double PROTECTED_RATIO = 0.8;
+
+    /** 节点所在的链表 */
+    static final byte WINDOW = 0, PROBATION = 1, PROTECTED = 2;
+
+    /** 缓存中的节点，同时是所在LRU链表中的一个节点 */
+    static final class Node<K,V> {
+        final K key;
+        final int hash;
+        V value;
+        Node<K,V> prev, next;
+        byte queue;
+
+        Node(K key, int hash, V value) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+        }
+
+        /** 创建一个链表的哨兵节点，链表是环形的，空链表的prev和next都指向自己 */
+        static <K,V> Node<K,V> sentinel() {
+            Node<K,V> head = new Node<>(null, 0, null);
+            head.prev = head.next = head;
+            return head;
+        }
+    }
+
+    final Segment<K,V>[] segments;
+
+    /** 选择段时使用哈希值的高位 */
+    final int segmentShift;
+    final int segmentMask;
+
+    final int maximumSize;
+
+    /**
+     * @param maximumSize 最多缓存的键值对个数
+     * @param concurrencyLevel 预计同时访问的线程数，段数是不小于它的2的幂，
+     *                         容量太小的时候会减少段数，保证每个段至少有MIN_SEGMENT_SIZE个位置
+     * @throws IllegalArgumentException maximumSize或者concurrencyLevel不是正数
+     */
+    @SuppressWarnings("unchecked")
+    public TinyLfuCache(int maximumSize, int concurrencyLevel) {
+        if (maximumSize <= 0 || concurrencyLevel <= 0)
+            throw new IllegalArgumentException();
+        int ssize = (int) HashCommon.nextPowerOfTwo(Math.min(concurrencyLevel, 1 << 16));
+        while (ssize > 1 && maximumSize / ssize < MIN_SEGMENT_SIZE)
+            ssize >>>= 1;
+        segmentShift = 32 - Integer.numberOfTrailingZeros(ssize);
+        segmentMask = ssize - 1;
+        segments = (Segment<K,V>[]) new Segment<?,?>[ssize];
+        // 容量不能整除的时候，前面的段各多分一个位置
+        for (int i = 0; i < ssize; i++)
+            segments[i] = new Segment<>(maximumSize / ssize + (i < maximumSize % ssize ? 1 : 0));
+        this.maximumSize = maximumSize;
+    }
+
+    public TinyLfuCache(int maximumSize) {
+        this(maximumSize, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /** 扰动key的哈希值 */
+    static int hash(Object key) {
+        return HashCommon.mix(key.hashCode());
+    }
+
+    /** 哈希值h所在的段，只有一个段的时候移位32相当于没有移位，所以单独处理 */
+    final Segment<K,V> segmentFor(int h) {
+        return segments[segmentMask == 0 ? 0 : (h >>> segmentShift) & segmentMask];
+    }
+
+    /**
+     * 返回key对应的value，不存在时返回null
+     * 不管是否命中都会记录一次访问，命中时调整key在LRU中的位置
+     */
+    public V get(Object key) {
+        int h = hash(key);
+        return segmentFor(h).get(key, h);
+    }
+
+    /**
+     * 放入键值对，返回旧的value，不存在时返回null
+     * 新的key先进入窗口，可能导致同一个段中的某个key被淘汰，也可能是这个key自己没有通过准入
+     */
+    public V put(K key, V value) {
+        if (value == null)
+            throw new NullPointerException();
+        int h = hash(key);
+        return segmentFor(h).put(key, h, value);
+    }
+
+    /**
+     * key存在时返回对应的value，否则使用mappingFunction计算value并放入缓存，
+     * mappingFunction返回null时不放入，返回null
+     *
+     * mappingFunction在持有段的锁的时候调用，同一个key的并发调用只会计算一次，
+     * 但同一个段中的其他操作会等待计算完成，所以计算应该简短，并且不能修改这个缓存
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        if (mappingFunction == null)
+            throw new NullPointerException();
+        int h = hash(key);
+        return segmentFor(h).computeIfAbsent(key, h, mappingFunction);
+    }
+
+    /** 删除key，返回对应的value，不存在时返回null */
+    public V remove(Object key) {
+        int h = hash(key);
+        return segmentFor(h).remove(key, h);
+    }
+
+    /** 缓存的键值对个数，并发修改的时候是一个近似值 */
+    public int size() {
+        int n = 0;
+        for (Segment<K,V> s : segments)
+            n += s.count;
+        return n;
+    }
+
+    /** 最多缓存的键值对个数 */
+    public int maximumSize() {
+        return maximumSize;
+    }
+
+    /** 删除所有的键值对，同时清除所有的访问频率 */
+    public void clear() {
+        for (Segment<K,V> s : segments)
+            s.clear();
+    }
+
+    /**
+     * 一个段是一个独立的W-TinyLFU缓存，继承ReentrantLock，所有操作都在持有锁的时候完成
+     */
+    static final class Segment<K,V> extends ReentrantLock {
+        private static final long serialVersionUID = 2249069246763182397L;
+
+        final HashMap<K, Node<K,V>> index;
+        final FrequencySketch sketch;
+
+        /** 三个LRU链表的哨兵，head.next是最久没有访问的节点，head.prev是最近访问的节点 */
+        final Node<K,V> window = Node.sentinel();
+        final Node<K,V> probation = Node.sentinel();
+        final Node<K,V> protectedQueue = Node.sentinel();
+
+        final int maximumSize;
+        final int windowMax;
+        final int protectedMax;
+
+        int windowSize;
+        int probationSize;
+        int protectedSize;
+
+        /** 键值对个数，size()不加锁读取 */
+        volatile int count;
+
+        Segment(int maximumSize) {
+            this.maximumSize = maximumSize;
+            windowMax = Math.max(1, (int) (maximumSize * WINDOW_RATIO));
+            protectedMax = (int) ((maximumSize - windowMax) * PROTECTED_RATIO);
+            index = new HashMap<>((int) (maximumSize / 0.75f) + 1);
+            sketch = new FrequencySketch(maximumSize);
+        }
+
+        V get(Object key, int h) {
+            lock();
+            try {
+                sketch.increment(h);
+                Node<K,V> n = index.get(key);
+                if (n == null)
+                    return null;
+                onAccess(n);
+                return n.value;
+            } finally {
+                unlock();
+            }
+        }
+
+        V put(K key, int h, V value) {
+            lock();
+            try {
+                sketch.increment(h);
+                Node<K,V> n = index.get(key);
+                if (n != null) {
+                    V oldValue = n.value;
+                    n.value = value;
+                    onAccess(n);
+                    return oldValue;
+                }
+                add(new Node<>(key, h, value));
+                return null;
+            } finally {
+                unlock();
+            }
+        }
+
+        V computeIfAbsent(K key, int h, Function<? super K, ? extends V> mappingFunction) {
+            lock();
+            try {
+                sketch.increment(h);
+                Node<K,V> n = index.get(key);
+                if (n != null) {
+                    onAccess(n);
+                    return n.value;
+                }
+                V value = mappingFunction.apply(key);
+                if (value != null)
+                    add(new Node<>(key, h, value));
+                return value;
+            } finally {
+                unlock();
+            }
+        }
+
+        V remove(Object key, int h) {
+            lock();
+            try {
+                Node<K,V> n = index.remove(key);
+                if (n == null)
+                    return null;
+                unlinkFromQueue(n);
+                count = index.size();
+                return n.value;
+            } finally {
+                unlock();
+            }
+        }
+
+        void clear() {
+            lock();
+            try {
+                index.clear();
+                window.prev = window.next = window;
+                probation.prev = probation.next = probation;
+                protectedQueue.prev = protectedQueue.next = protectedQueue;
+                windowSize = probationSize = protectedSize = 0;
+                sketch.clear();
+                count = 0;
+            } finally {
+                unlock();
+            }
+        }
+
+        /** 命中之后调整位置：窗口和保护段中移到最后，试用段中晋升到保护段 */
+        private void onAccess(Node<K,V> n) {
+            if (n.queue == PROBATION) {
+                unlink(n);
+                probationSize--;
+                n.queue = PROTECTED;
+                linkLast(protectedQueue, n);
+                // 保护段超出的时候，最久没有访问的节点降级回试用段
+                if (++protectedSize > protectedMax) {
+                    Node<K,V> demoted = protectedQueue.next;
+                    unlink(demoted);
+                    protectedSize--;
+                    demoted.queue = PROBATION;
+                    linkLast(probation, demoted);
+                    probationSize++;
+                }
+            } else {
+                unlink(n);
+                linkLast(n.queue == WINDOW ? window : protectedQueue, n);
+            }
+        }
+
+        /** 新的节点进入窗口，然后按照需要淘汰 */
+        private void add(Node<K,V> n) {
+            index.put(n.key, n);
+            n.queue = WINDOW;
+            linkLast(window, n);
+            windowSize++;
+            evict();
+            count = index.size();
+        }
+
+        /**
+         * 窗口超出的时候，最久没有访问的节点作为候选者进入试用段，
+         * 总数超出的时候，候选者和主区域中最久没有访问的牺牲者比较频率，
+         * 候选者的频率更高才能留下，否则淘汰候选者，频率相同时保留原来的牺牲者
+         */
+        private void evict() {
+            Node<K,V> candidate = null;
+            if (windowSize > windowMax) {
+                candidate = window.next;
+                unlink(candidate);
+                windowSize--;
+                candidate.queue = PROBATION;
+                linkLast(probation, candidate);
+                probationSize++;
+            }
+            while (windowSize + probationSize + protectedSize > maximumSize) {
+                Node<K,V> victim = victim(candidate);
+                if (candidate != null && victim != candidate &&
+                        sketch.frequency(candidate.hash) <= sketch.frequency(victim.hash)) {
+                    victim = candidate;
+                }
+                if (victim == candidate)
+                    candidate = null;
+                unlinkFromQueue(victim);
+                index.remove(victim.key);
+            }
+        }
+
+        /** 试用段中最久没有访问的节点，跳过候选者；试用段中没有的时候依次从保护段和窗口中选 */
+        private Node<K,V> victim(Node<K,V> candidate) {
+            Node<K,V> v = probation.next;
+            if (v == candidate)
+                v = v.next;
+            if (v != probation)
+                return v;
+            if ((v = protectedQueue.next) != protectedQueue)
+                return v;
+            if ((v = window.next) != window)
+                return v;
+            return candidate;
+        }
+
+        /** 从节点所在的链表中删除，并更新链表的长度 */
+        private void unlinkFromQueue(Node<K,V> n) {
+            unlink(n);
+            if (n.queue == WINDOW)
+                windowSize--;
+            else if (n.queue == PROBATION)
+                probationSize--;
+            else
+                protectedSize--;
+        }
+
+        private static <K,V> void linkLast(Node<K,V> head, Node<K,V> n) {
+            Node<K,V> last = head.prev;
+            n.prev = last;
+            n.next = head;
+            last.next = n;
+            head.prev = n;
+        }
+
+        private static <K,V> void unlink(Node<K,V> n) {
+            n.prev.next = n.next;
+            n.next.prev = n.prev;
+            n.prev = n.next = null;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.test.util;
 
+import com.test.util.stream.TripwireMonitor;
 import sun.util.logging.PlatformLogger;
 
 import java.security.AccessController;
@@ -8,17 +9,26 @@ import java.security.PrivilegedAction;
 /**
  * @Created by JYB
  * @Date 2019/7/13 20:20
- * @Description TODO
+ * @Description 检测原始类型的分裂器和迭代器被当作装箱的版本使用的情况，
+ * 警告和计数的开关和com.test.util.stream.Tripwire相同
  */
 final class Tripwire {
     private static final String TRIPWIRE_PROPERTY = "org.openjdk.java.util.stream.tripwire";
 
-    static final boolean ENABLE = AccessController.doPrivileged(
+    /** 是否输出警告 */
+    private static final boolean LOGGING = AccessController.doPrivileged(
             (PrivilegedAction<Boolean>) () -> Boolean.getBoolean(TRIPWIRE_PROPERTY));
 
+    /** 调用点在调用trip之前需要检查这个标志 */
+    static final boolean ENABLE = LOGGING || TripwireMonitor.ENABLED;
+
     private Tripwire(){}
 
+    /** 这个包中的调用点都是装箱事件 */
     static void trip(Class<?> trippingClass, String msg){
-        PlatformLogger.getLogger(trippingClass.getCanonicalName()).warning(msg);
+        if(TripwireMonitor.ENABLED)
+            TripwireMonitor.record(TripwireMonitor.Kind.BOXING, trippingClass, msg);
+        if(LOGGING)
+            PlatformLogger.getLogger(trippingClass.getName()).warning(msg, trippingClass.getName());
     }
 }
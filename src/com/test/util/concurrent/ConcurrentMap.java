@@ -0,0 +1,41 @@
+package com.test.util.concurrent;
+
+import com.test.util.Map;
+
+/**
+ * 提供线程安全和原子性保证的Map
+ *
+ * Map中的putIfAbsent、remove(key, value)和两个replace的默认实现都是"先读再写"，
+ * 在并发的情况下不是原子的，实现类必须重新实现这几个方法
+ * */
+public interface ConcurrentMap<K,V> extends Map<K,V> {
+
+    /**
+     * 并发Map不允许null值，所以get返回null就说明key不存在，不需要再调用containsKey
+     * */
+    @Override
+    default V getOrDefault(Object key, V defaultValue) {
+        V v;
+        return ((v = get(key)) != null) ? v : defaultValue;
+    }
+
+    /**
+     * 如果key不存在，原子地放入value，返回之前的值
+     * */
+    V putIfAbsent(K key, V value);
+
+    /**
+     * 只有当key当前映射到value的时候，原子地删除这个条目
+     * */
+    boolean remove(Object key, Object value);
+
+    /**
+     * 只有当key当前映射到oldValue的时候，原子地替换为newValue
+     * */
+    boolean replace(K key, V oldValue, V newValue);
+
+    /**
+     * 只有当key存在的时候，原子地替换它的值
+     * */
+    V replace(K key, V value);
+}
@@ -0,0 +1,16 @@
+package com.test.util.function;
+
+import java.util.Objects;
+
+/**
+ * 接收两个long参数的消费者，用于遍历long-long映射时避免装箱
+ */
+@FunctionalInterface
+public interface LongLongConsumer {
+    void accept(long key, long value);
+
+    default LongLongConsumer andThen(LongLongConsumer after){
+        Objects.requireNonNull(after);
+        return (k, v) -> {accept(k, v);after.accept(k, v);};
+    }
+}
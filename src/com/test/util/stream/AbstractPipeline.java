@@ -321,7 +321,7 @@ abstract class AbstractPipeline<E_IN, E_OUT, S extends BaseStream<E_OUT, S>>
         }
 
         if(terminalFlags != 0){
-            StreamOpFlag.combineOpFlags(terminalFlags,combinedFlags);
+            combinedFlags = StreamOpFlag.combineOpFlags(terminalFlags,combinedFlags);
         }
         return spliterator;
     }
@@ -332,6 +332,17 @@ abstract class AbstractPipeline<E_IN, E_OUT, S extends BaseStream<E_OUT, S>>
         return sourceStage.parallel;
     }
 
+    /** PipelineHelper#getSourceShape()的实现，返回最近一个有状态阶段或者源阶段的输出形状 */
+    @Override
+    final StreamShape getSourceShape() {
+        @SuppressWarnings("rawtypes")
+        AbstractPipeline p = AbstractPipeline.this;
+        while (p.depth > 0) {
+            p = p.previousStage;
+        }
+        return p.getOutputShape();
+    }
+
     /** PipelineHelper#exactOutputSizeIfKnown(Spliterator<P_IN>)的实现 */
     @Override
     final <P_IN> long exactOutputSizeIfKnown(Spliterator<P_IN> spliterator) {
@@ -506,6 +517,9 @@ abstract class AbstractPipeline<E_IN, E_OUT, S extends BaseStream<E_OUT, S>>
     @SuppressWarnings("unchecked")
     <P_IN> Spliterator<E_OUT> opEvaluateParallelLazy(PipelineHelper<E_OUT> helper,
                                                      Spliterator<P_IN> spliterator) {
+        if (Tripwire.ENABLED)
+            Tripwire.trip(TripwireMonitor.Kind.NODE_COPY, getClass(),
+                    "{0} buffering the upstream of a parallel stateful op into a Node");
         return opEvaluateParallel(helper, spliterator, i -> (E_OUT[]) new Object[i]).getSpliterator();
     }
 }
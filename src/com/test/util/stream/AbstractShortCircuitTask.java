@@ -0,0 +1,147 @@
+package com.test.util.stream;
+
+import com.test.util.Spliterator;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 可以短路的并行任务的抽象基类，用于find和match操作
+ *
+ * 所有任务共享一个结果，只要有一个任务得到了最终结果，其他任务在拆分或者开始计算叶子之前就会停止，
+ * 对于需要保持顺序的操作，一个任务找到结果之后只能取消它右边的任务，
+ * 左边的任务可能找到一个更靠前的结果
+ * @param <P_IN> 管道输入元素的类型
+ * @param <P_OUT> 管道输出元素的类型
+ * @param <R> 结果的类型
+ * @param <K> 子任务的具体类型
+ * */
+@SuppressWarnings("serial")
+abstract class AbstractShortCircuitTask<P_IN, P_OUT, R,
+                                        K extends AbstractShortCircuitTask<P_IN, P_OUT, R, K>>
+        extends AbstractTask<P_IN, P_OUT, R, K> {
+    /** 所有任务共享的结果，第一个设置的结果生效 */
+    protected final AtomicReference<R> sharedResult;
+
+    /** 任务是否被取消，父任务被取消的时候子任务也被视为取消 */
+    protected volatile boolean canceled;
+
+    /** 创建根任务 */
+    protected AbstractShortCircuitTask(PipelineHelper<P_OUT> helper,
+                                       Spliterator<P_IN> spliterator) {
+        super(helper, spliterator);
+        sharedResult = new AtomicReference<>(null);
+    }
+
+    /** 创建子任务 */
+    protected AbstractShortCircuitTask(K parent,
+                                       Spliterator<P_IN> spliterator) {
+        super(parent, spliterator);
+        sharedResult = parent.sharedResult;
+    }
+
+    /** 没有找到结果的时候返回的值 */
+    protected abstract R getEmptyResult();
+
+    /** 和AbstractTask.compute()一样，但是每次拆分之前检查是否已经有了结果或者被取消了 */
+    @Override
+    public void compute() {
+        Spliterator<P_IN> rs = spliterator, ls;
+        long sizeEstimate = rs.estimateSize();
+        long sizeThreshold = getTargetSize(sizeEstimate);
+        boolean forkRight = false;
+        @SuppressWarnings("unchecked") K task = (K) this;
+        AtomicReference<R> sr = sharedResult;
+        R result;
+        while ((result = sr.get()) == null) {
+            if (task.taskCanceled()) {
+                result = task.getEmptyResult();
+                break;
+            }
+            if (sizeEstimate <= sizeThreshold || (ls = rs.trySplit()) == null) {
+                result = task.doLeaf();
+                break;
+            }
+            K leftChild, rightChild, taskToFork;
+            task.leftChild  = leftChild = task.makeChild(ls);
+            task.rightChild = rightChild = task.makeChild(rs);
+            task.setPendingCount(1);
+            if (forkRight) {
+                forkRight = false;
+                rs = ls;
+                task = leftChild;
+                taskToFork = rightChild;
+            }
+            else {
+                forkRight = true;
+                task = rightChild;
+                taskToFork = leftChild;
+            }
+            taskToFork.fork();
+            sizeEstimate = rs.estimateSize();
+        }
+        task.setLocalResult(result);
+        task.tryComplete();
+    }
+
+    /** 设置共享的结果，如果已经有结果则什么也不做 */
+    protected void shortCircuit(R result) {
+        if (result != null)
+            sharedResult.compareAndSet(null, result);
+    }
+
+    /** 根任务的结果就是共享的结果 */
+    @Override
+    protected void setLocalResult(R localResult) {
+        if (isRoot()) {
+            if (localResult != null)
+                sharedResult.compareAndSet(null, localResult);
+        }
+        else
+            super.setLocalResult(localResult);
+    }
+
+    @Override
+    public R getRawResult() {
+        return getLocalResult();
+    }
+
+    @Override
+    public R getLocalResult() {
+        if (isRoot()) {
+            R answer = sharedResult.get();
+            return (answer == null) ? getEmptyResult() : answer;
+        }
+        else
+            return super.getLocalResult();
+    }
+
+    protected void cancel() {
+        canceled = true;
+    }
+
+    /** 当前任务或者任何一个祖先任务被取消，返回true */
+    protected boolean taskCanceled() {
+        boolean cancel = canceled;
+        if (!cancel) {
+            for (K parent = getParent(); !cancel && parent != null; parent = parent.getParent())
+                cancel = parent.canceled;
+        }
+        return cancel;
+    }
+
+    /**
+     * 取消所有在当前任务右边的任务，
+     * 也就是从当前任务到根的路径上，每个作为左孩子的任务的右兄弟
+     * */
+    protected void cancelLaterNodes() {
+        for (@SuppressWarnings("unchecked") K parent = getParent(), node = (K) this;
+             parent != null;
+             node = parent, parent = parent.getParent()) {
+            if (parent.leftChild == node) {
+                K rightSibling = parent.rightChild;
+                if (!rightSibling.canceled)
+                    rightSibling.cancel();
+            }
+        }
+    }
+}
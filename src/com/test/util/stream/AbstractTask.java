@@ -0,0 +1,178 @@
+package com.test.util.stream;
+
+import com.test.util.Spliterator;
+
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 并行评估流管道的ForkJoin任务的抽象基类
+ *
+ * 任务不断地对半拆分源分裂器，直到分裂器的大小不超过目标大小或者不能再拆分，
+ * 然后在叶子任务中调用doLeaf()计算这一段的结果，
+ * 所有子任务完成之后，在onCompletion()中把左右两个孩子的结果合并为父任务的结果
+ *
+ * 目标大小是 源的估计大小 / (并行度 * 4)，也就是说大约会产生并行度4倍的叶子任务，
+ * 任务之间的负载不均衡时，空闲的线程可以窃取剩下的任务
+ *
+ * 拆分的时候交替地fork左孩子和右孩子，当前线程继续处理另一个孩子，
+ * 这样可以避免分裂器总是不均匀拆分时，当前线程只处理一侧导致栈太深
+ * @param <P_IN> 管道输入元素的类型
+ * @param <P_OUT> 管道输出元素的类型
+ * @param <R> 中间结果的类型，可能和操作的结果类型不同
+ * @param <K> 子任务的具体类型
+ * */
+@SuppressWarnings("serial")
+abstract class AbstractTask<P_IN, P_OUT, R,
+                            K extends AbstractTask<P_IN, P_OUT, R, K>>
+        extends CountedCompleter<R> {
+    /** 默认的叶子任务数量，是公共池并行度的4倍 */
+    static final int LEAF_TARGET = ForkJoinPool.getCommonPoolParallelism() << 2;
+
+    /** 管道的助手，所有任务共享 */
+    protected final PipelineHelper<P_OUT> helper;
+
+    /** 当前任务处理的分裂器，任务完成之后置为null */
+    protected Spliterator<P_IN> spliterator;
+
+    /** 叶子任务的目标大小，由根任务计算一次之后传给所有的子任务 */
+    protected long targetSize;
+
+    /** 左孩子，如果是叶子任务则为null */
+    protected K leftChild;
+
+    /** 右孩子，如果是叶子任务则为null */
+    protected K rightChild;
+
+    /** 当前任务的结果 */
+    private R localResult;
+
+    /** 创建根任务 */
+    protected AbstractTask(PipelineHelper<P_OUT> helper,
+                           Spliterator<P_IN> spliterator) {
+        super(null);
+        this.helper = helper;
+        this.spliterator = spliterator;
+        this.targetSize = 0L;
+    }
+
+    /** 创建子任务 */
+    protected AbstractTask(K parent,
+                           Spliterator<P_IN> spliterator) {
+        super(parent);
+        this.spliterator = spliterator;
+        this.helper = parent.helper;
+        this.targetSize = parent.targetSize;
+    }
+
+    /** 用拆分出来的分裂器创建一个子任务 */
+    protected abstract K makeChild(Spliterator<P_IN> spliterator);
+
+    /** 在叶子任务中计算这一段的结果 */
+    protected abstract R doLeaf();
+
+    /** 根据源的估计大小计算叶子任务的目标大小，至少为1 */
+    public static long suggestTargetSize(long sizeEstimate) {
+        long est = sizeEstimate / LEAF_TARGET;
+        return est > 0L ? est : 1L;
+    }
+
+    /** 返回目标大小，第一次调用的时候计算 */
+    protected final long getTargetSize(long sizeEstimate) {
+        long s;
+        return ((s = targetSize) != 0 ? s :
+                (targetSize = suggestTargetSize(sizeEstimate)));
+    }
+
+    /** 返回当前任务的结果，invoke()的返回值 */
+    @Override
+    public R getRawResult() {
+        return localResult;
+    }
+
+    /** 结果只能通过setLocalResult设置 */
+    @Override
+    protected void setRawResult(R result) {
+        if (result != null)
+            throw new IllegalStateException();
+    }
+
+    protected R getLocalResult() {
+        return localResult;
+    }
+
+    protected void setLocalResult(R localResult) {
+        this.localResult = localResult;
+    }
+
+    protected boolean isLeaf() {
+        return leftChild == null;
+    }
+
+    protected boolean isRoot() {
+        return getParent() == null;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected K getParent() {
+        return (K) getCompleter();
+    }
+
+    /**
+     * 拆分分裂器直到不超过目标大小，然后计算叶子，
+     * 每次拆分都会设置一个待完成计数，两个孩子都完成之后才会调用父任务的onCompletion
+     * */
+    @Override
+    public void compute() {
+        Spliterator<P_IN> rs = spliterator, ls;
+        long sizeEstimate = rs.estimateSize();
+        long sizeThreshold = getTargetSize(sizeEstimate);
+        boolean forkRight = false;
+        @SuppressWarnings("unchecked") K task = (K) this;
+        while (sizeEstimate > sizeThreshold && (ls = rs.trySplit()) != null) {
+            K leftChild, rightChild, taskToFork;
+            task.leftChild  = leftChild = task.makeChild(ls);
+            task.rightChild = rightChild = task.makeChild(rs);
+            task.setPendingCount(1);
+            if (forkRight) {
+                forkRight = false;
+                rs = ls;
+                task = leftChild;
+                taskToFork = rightChild;
+            }
+            else {
+                forkRight = true;
+                task = rightChild;
+                taskToFork = leftChild;
+            }
+            taskToFork.fork();
+            sizeEstimate = rs.estimateSize();
+        }
+        //根任务一次都没有拆分，整个计算都在一个线程中完成
+        if (Tripwire.ENABLED && task == this && isRoot() && sizeEstimate > sizeThreshold)
+            Tripwire.trip(TripwireMonitor.Kind.SEQUENTIAL_FALLBACK, rs.getClass(),
+                    "{0} could not be split, parallel task ran as a single leaf");
+        task.setLocalResult(task.doLeaf());
+        task.tryComplete();
+    }
+
+    /** 子类合并完结果之后应该调用这个方法，释放分裂器和孩子 */
+    @Override
+    public void onCompletion(CountedCompleter<?> caller) {
+        spliterator = null;
+        leftChild = rightChild = null;
+    }
+
+    /** 如果从根到当前任务的路径上，每个任务都是父任务的左孩子，返回true */
+    protected boolean isLeftmostNode() {
+        @SuppressWarnings("unchecked")
+        K node = (K) this;
+        while (node != null) {
+            K parent = node.getParent();
+            if (parent != null && parent.leftChild != node)
+                return false;
+            node = parent;
+        }
+        return true;
+    }
+}
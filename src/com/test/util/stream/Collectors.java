@@ -16,6 +16,32 @@ public final class Collectors {
         return i -> (R) i;
     }
 
+    /**
+     * Kahan补偿求和的一步
+     * intermediateSum[0]是补偿之后的和的高位部分，intermediateSum[1]是低位的补偿部分
+     * */
+    static double[] sumWithCompensation(double[] intermediateSum, double value) {
+        double tmp = value - intermediateSum[1];
+        double sum = intermediateSum[0];
+        double velvel = sum + tmp;
+        intermediateSum[1] = (velvel - sum) - tmp;
+        intermediateSum[0] = velvel;
+        return intermediateSum;
+    }
+
+    /**
+     * 得到补偿求和的最终结果，summands的最后一个元素是没有补偿的简单求和，
+     * 补偿之后的和是NaN而简单求和是无穷大的时候，说明有同号的无穷大相加，返回简单求和的结果
+     * */
+    static double computeFinalSum(double[] summands) {
+        double tmp = summands[0] - summands[1];
+        double simpleSum = summands[summands.length - 1];
+        if (Double.isNaN(tmp) && Double.isInfinite(simpleSum))
+            return simpleSum;
+        else
+            return tmp;
+    }
+
     /** Collector的实现类 */
     static class CollectorImpl<T,A,R> implements Collector<T,A,R>{
         private final Supplier<A> supplier;
@@ -0,0 +1,273 @@
+package com.test.util.stream;
+
+import com.test.util.HashSet;
+import com.test.util.IntHashSet;
+import com.test.util.LongHashSet;
+import com.test.util.Spliterator;
+import com.test.util.function.IntConsumer;
+import com.test.util.function.IntFunction;
+import com.test.util.function.LongConsumer;
+
+import java.util.Objects;
+
+/**
+ * 创建去重的有状态中间操作
+ * */
+final class DistinctOps {
+    private DistinctOps(){}
+
+    /**
+     * 去重之后注入DISTINCT标志，清除SIZED标志
+     * 如果上游已经是DISTINCT的，这个操作什么也不做
+     * */
+    static <T> ReferencePipeline<T,T> makeRef(AbstractPipeline<?,T,?> upstream){
+        return new ReferencePipeline.StatefulOp<T,T>(upstream, StreamShape.REFERENCE,
+                StreamOpFlag.IS_DISTINCT | StreamOpFlag.NOT_SIZED) {
+
+            /**
+             * 先把上游的结果收集为一个Node，再用顺序的去重Sink遍历这个Node，
+             * 遇到的第一个元素会被保留，所以结果的顺序和顺序执行的时候相同
+             * */
+            @Override
+            <P_IN> Node<T> opEvaluateParallel(PipelineHelper<T> helper,
+                                              Spliterator<P_IN> spliterator,
+                                              IntFunction<T[]> generator){
+                if(StreamOpFlag.DISTINCT.isKnown(helper.getStreamAndOpFlags())){
+                    return helper.evaluate(spliterator, false, generator);
+                }
+                Node<T> node = helper.evaluate(spliterator, true, generator);
+                Node.Builder<T> nb = Nodes.builder(-1, generator);
+                Sink<T> sink = opWrapSink(helper.getStreamAndOpFlags(), nb);
+                sink.begin(-1);
+                node.forEach(sink);
+                sink.end();
+                return nb.build();
+            }
+
+            @Override
+            Sink<T> opWrapSink(int flags, Sink<T> sink){
+                Objects.requireNonNull(sink);
+
+                if(StreamOpFlag.DISTINCT.isKnown(flags)){
+                    return sink;
+                }
+                else if(StreamOpFlag.SORTED.isKnown(flags)){
+                    //已经排好序的流，相等的元素是相邻的，只需要和上一个元素比较
+                    return new Sink.ChainedReference<T,T>(sink) {
+                        boolean seenNull;
+                        T lastSeen;
+
+                        @Override
+                        public void begin(long size){
+                            seenNull = false;
+                            lastSeen = null;
+                            downstream.begin(-1);
+                        }
+
+                        @Override
+                        public void end(){
+                            seenNull = false;
+                            lastSeen = null;
+                            downstream.end();
+                        }
+
+                        @Override
+                        public void accept(T t){
+                            if(t == null){
+                                if(!seenNull){
+                                    seenNull = true;
+                                    downstream.accept(lastSeen = null);
+                                }
+                            }
+                            else if(lastSeen == null || !t.equals(lastSeen)){
+                                downstream.accept(lastSeen = t);
+                            }
+                        }
+                    };
+                }
+                else{
+                    //使用开放定址的HashSet记录已经出现过的元素，add只需要查找一次，也不会为每个元素创建Node
+                    return new Sink.ChainedReference<T,T>(sink) {
+                        HashSet<T> seen;
+
+                        @Override
+                        public void begin(long size){
+                            seen = new HashSet<>();
+                            downstream.begin(-1);
+                        }
+
+                        @Override
+                        public void end(){
+                            seen = null;
+                            downstream.end();
+                        }
+
+                        @Override
+                        public void accept(T t){
+                            if(seen.add(t))
+                                downstream.accept(t);
+                        }
+                    };
+                }
+            }
+        };
+    }
+
+    /**
+     * int流的去重，使用IntHashSet记录出现过的元素，不会装箱
+     * */
+    static IntStream makeInt(AbstractPipeline<?,Integer,?> upstream){
+        return new IntPipeline.StatefulOp<Integer>(upstream, StreamShape.INT_VALUE,
+                StreamOpFlag.IS_DISTINCT | StreamOpFlag.NOT_SIZED) {
+
+            /** 与makeRef相同，收集为Node之后再顺序去重 */
+            @Override
+            <P_IN> Node<Integer> opEvaluateParallel(PipelineHelper<Integer> helper,
+                                                    Spliterator<P_IN> spliterator,
+                                                    IntFunction<Integer[]> generator){
+                if(StreamOpFlag.DISTINCT.isKnown(helper.getStreamAndOpFlags())){
+                    return helper.evaluate(spliterator, false, generator);
+                }
+                Node.OfInt node = (Node.OfInt) helper.evaluate(spliterator, true, generator);
+                Node.Builder.OfInt nb = Nodes.intBuilder(-1);
+                Sink.OfInt sink = (Sink.OfInt) opWrapSink(helper.getStreamAndOpFlags(), nb);
+                sink.begin(-1);
+                node.forEach((IntConsumer) sink);
+                sink.end();
+                return nb.build();
+            }
+
+            @Override
+            Sink<Integer> opWrapSink(int flags, Sink<Integer> sink){
+                Objects.requireNonNull(sink);
+
+                if(StreamOpFlag.DISTINCT.isKnown(flags)){
+                    return sink;
+                }
+                else if(StreamOpFlag.SORTED.isKnown(flags)){
+                    //已经排好序的流，只需要和上一个元素比较
+                    return new Sink.ChainedInt<Integer>(sink) {
+                        boolean seenAny;
+                        int lastSeen;
+
+                        @Override
+                        public void begin(long size){
+                            seenAny = false;
+                            downstream.begin(-1);
+                        }
+
+                        @Override
+                        public void accept(int t){
+                            if(!seenAny || t != lastSeen){
+                                seenAny = true;
+                                downstream.accept(lastSeen = t);
+                            }
+                        }
+                    };
+                }
+                else{
+                    return new Sink.ChainedInt<Integer>(sink) {
+                        IntHashSet seen;
+
+                        @Override
+                        public void begin(long size){
+                            seen = new IntHashSet();
+                            downstream.begin(-1);
+                        }
+
+                        @Override
+                        public void end(){
+                            seen = null;
+                            downstream.end();
+                        }
+
+                        @Override
+                        public void accept(int t){
+                            if(seen.add(t))
+                                downstream.accept(t);
+                        }
+                    };
+                }
+            }
+        };
+    }
+
+    /**
+     * long流的去重，使用LongHashSet记录出现过的元素，不会装箱
+     * */
+    static LongStream makeLong(AbstractPipeline<?,Long,?> upstream){
+        return new LongPipeline.StatefulOp<Long>(upstream, StreamShape.LONG_VALUE,
+                StreamOpFlag.IS_DISTINCT | StreamOpFlag.NOT_SIZED) {
+
+            /** 与makeRef相同，收集为Node之后再顺序去重 */
+            @Override
+            <P_IN> Node<Long> opEvaluateParallel(PipelineHelper<Long> helper,
+                                                 Spliterator<P_IN> spliterator,
+                                                 IntFunction<Long[]> generator){
+                if(StreamOpFlag.DISTINCT.isKnown(helper.getStreamAndOpFlags())){
+                    return helper.evaluate(spliterator, false, generator);
+                }
+                Node.OfLong node = (Node.OfLong) helper.evaluate(spliterator, true, generator);
+                Node.Builder.OfLong nb = Nodes.longBuilder(-1);
+                Sink.OfLong sink = (Sink.OfLong) opWrapSink(helper.getStreamAndOpFlags(), nb);
+                sink.begin(-1);
+                node.forEach((LongConsumer) sink);
+                sink.end();
+                return nb.build();
+            }
+
+            @Override
+            Sink<Long> opWrapSink(int flags, Sink<Long> sink){
+                Objects.requireNonNull(sink);
+
+                if(StreamOpFlag.DISTINCT.isKnown(flags)){
+                    return sink;
+                }
+                else if(StreamOpFlag.SORTED.isKnown(flags)){
+                    //已经排好序的流，只需要和上一个元素比较
+                    return new Sink.ChainedLong<Long>(sink) {
+                        boolean seenAny;
+                        long lastSeen;
+
+                        @Override
+                        public void begin(long size){
+                            seenAny = false;
+                            downstream.begin(-1);
+                        }
+
+                        @Override
+                        public void accept(long t){
+                            if(!seenAny || t != lastSeen){
+                                seenAny = true;
+                                downstream.accept(lastSeen = t);
+                            }
+                        }
+                    };
+                }
+                else{
+                    return new Sink.ChainedLong<Long>(sink) {
+                        LongHashSet seen;
+
+                        @Override
+                        public void begin(long size){
+                            seen = new LongHashSet();
+                            downstream.begin(-1);
+                        }
+
+                        @Override
+                        public void end(){
+                            seen = null;
+                            downstream.end();
+                        }
+
+                        @Override
+                        public void accept(long t){
+                            if(seen.add(t))
+                                downstream.accept(t);
+                        }
+                    };
+                }
+            }
+        };
+    }
+}
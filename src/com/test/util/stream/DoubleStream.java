@@ -1,13 +1,137 @@
 package com.test.util.stream;
 
-import com.test.util.function.DoubleFunction;
-import com.test.util.function.DoublePredicate;
-import com.test.util.function.DoubleUnaryOperator;
+import com.test.util.Arrays;
+import com.test.util.DoubleSummaryStatistics;
+import com.test.util.OptionalDouble;
+import com.test.util.PrimitiveIterator;
+import com.test.util.Spliterator;
+import com.test.util.Spliterators;
+import com.test.util.function.*;
 
-public interface DoubleStream extends BaseStream<Double, DoubleStream> {
+/**
+ * 元素是double的流，中间操作和终端操作都直接处理double，不会把元素装箱成Double
+ *
+ * 只有调用boxed或者mapToObj之后，元素才会变成对象
+ * */
+public interface DoubleStream extends BaseStream<Double,DoubleStream> {
+    /** 筛选元素 */
     DoubleStream filter(DoublePredicate predicate);
 
+    /** 把每个元素映射成另一个double */
     DoubleStream map(DoubleUnaryOperator mapper);
 
+    /** 把每个元素映射成一个对象，返回一个引用流 */
     <U> Stream<U> mapToObj(DoubleFunction<? extends U> mapper);
+
+    /** 把每个元素映射成一个int，返回一个IntStream */
+    IntStream mapToInt(DoubleToIntFunction mapper);
+
+    /** 把每个元素映射成一个long，返回一个LongStream */
+    LongStream mapToLong(DoubleToLongFunction mapper);
+
+    /** 把每个元素映射成的流的元素依次放入当前流当中 */
+    DoubleStream flatMap(DoubleFunction<? extends DoubleStream> mapper);
+
+    /** 去掉重复的元素 */
+    DoubleStream distinct();
+
+    /** 按从小到大的顺序排序 */
+    DoubleStream sorted();
+
+    /** 每个元素被消费的时候执行一个动作，主要用于调试 */
+    DoubleStream peek(DoubleConsumer action);
+
+    /** 最多保留maxSize个元素 */
+    DoubleStream limit(long maxSize);
+
+    /** 跳过前n个元素 */
+    DoubleStream skip(long n);
+
+    /** 对每个元素执行一个动作，并行的时候不保证顺序 */
+    void forEach(DoubleConsumer action);
+
+    /** 按照遇到的顺序对每个元素执行一个动作 */
+    void forEachOrdered(DoubleConsumer action);
+
+    /** 返回包含所有元素的数组 */
+    double[] toArray();
+
+    /** 使用初始值identity和累加函数op归约所有元素 */
+    double reduce(double identity, DoubleBinaryOperator op);
+
+    /** 没有初始值的归约，流为空的时候返回OptionalDouble.empty() */
+    OptionalDouble reduce(DoubleBinaryOperator op);
+
+    /**
+     * 可变归约
+     * @param supplier 创建新的结果容器
+     * @param accumulator 把一个元素合并到结果容器当中
+     * @param combiner 把第二个结果容器合并到第一个当中
+     * */
+    <R> R collect(Supplier<R> supplier,
+                  ObjDoubleConsumer<R> accumulator,
+                  BiConsumer<R, R> combiner);
+
+    /** 所有元素的和 */
+    double sum();
+
+    /** 最小的元素 */
+    OptionalDouble min();
+
+    /** 最大的元素 */
+    OptionalDouble max();
+
+    /** 元素的个数 */
+    long count();
+
+    /** 元素的平均值，流为空的时候返回OptionalDouble.empty() */
+    OptionalDouble average();
+
+    /** 只遍历一次，得到元素的个数、和、最小值、最大值以及平均值 */
+    DoubleSummaryStatistics summaryStatistics();
+
+    /** 流中是否有元素匹配谓词predicate */
+    boolean anyMatch(DoublePredicate predicate);
+
+    /** 流中所有元素是否都匹配谓词predicate */
+    boolean allMatch(DoublePredicate predicate);
+
+    /** 没有元素符合谓词predicate，返回true，否则返回false */
+    boolean noneMatch(DoublePredicate predicate);
+
+    /** 返回第一个元素 */
+    OptionalDouble findFirst();
+
+    /** 返回任意的一个元素 */
+    OptionalDouble findAny();
+
+    /** 把每个元素装箱，返回一个引用流 */
+    Stream<Double> boxed();
+
+    @Override
+    DoubleStream sequential();
+
+    @Override
+    DoubleStream parallel();
+
+    @Override
+    PrimitiveIterator.OfDouble iterator();
+
+    @Override
+    Spliterator.OfDouble spliterator();
+
+    /** 返回一个空的顺序流 */
+    public static DoubleStream empty(){
+        return StreamSupport.doubleStream(Spliterators.getEmptyDoubleSpliterator(), false);
+    }
+
+    /** 返回只包含一个元素的顺序流 */
+    public static DoubleStream of(double t){
+        return StreamSupport.doubleStream(Arrays.spliterator(new double[]{t}, 0, 1), false);
+    }
+
+    /** 返回包含给定元素的顺序流 */
+    public static DoubleStream of(double... values){
+        return StreamSupport.doubleStream(Arrays.spliterator(values, 0, values.length), false);
+    }
 }
@@ -0,0 +1,238 @@
+package com.test.util.stream;
+
+import com.test.util.Optional;
+import com.test.util.OptionalDouble;
+import com.test.util.OptionalInt;
+import com.test.util.OptionalLong;
+import com.test.util.Spliterator;
+import com.test.util.function.Predicate;
+import com.test.util.function.Supplier;
+
+import java.util.concurrent.CountedCompleter;
+
+/**
+ * 创建短路的查找终端操作：findFirst和findAny
+ * */
+final class FindOps {
+    private FindOps(){}
+
+    /** 创建一个引用流的查找终端操作 */
+    public static <T> TerminalOp<T,Optional<T>> makeRef(boolean mustFindFirst){
+        return new FindOp<>(mustFindFirst, StreamShape.REFERENCE, Optional.empty(),
+                Optional::isPresent, FindSink.OfRef::new);
+    }
+
+    /** 创建一个int流的查找终端操作 */
+    public static TerminalOp<Integer,OptionalInt> makeInt(boolean mustFindFirst){
+        return new FindOp<>(mustFindFirst, StreamShape.INT_VALUE, OptionalInt.empty(),
+                OptionalInt::isPresent, FindSink.OfInt::new);
+    }
+
+    /** 创建一个long流的查找终端操作 */
+    public static TerminalOp<Long,OptionalLong> makeLong(boolean mustFindFirst){
+        return new FindOp<>(mustFindFirst, StreamShape.LONG_VALUE, OptionalLong.empty(),
+                OptionalLong::isPresent, FindSink.OfLong::new);
+    }
+
+    /** 创建一个double流的查找终端操作 */
+    public static TerminalOp<Double,OptionalDouble> makeDouble(boolean mustFindFirst){
+        return new FindOp<>(mustFindFirst, StreamShape.DOUBLE_VALUE, OptionalDouble.empty(),
+                OptionalDouble::isPresent, FindSink.OfDouble::new);
+    }
+
+    /**
+     * 查找的终端操作
+     * @param <T> 流中元素的类型
+     * @param <O> 查找结果的类型，一般是Optional
+     * */
+    private static final class FindOp<T,O> implements TerminalOp<T,O> {
+        private final StreamShape shape;
+        final boolean mustFindFirst;
+        final O emptyValue;
+        final Predicate<O> presentPredicate;
+        final Supplier<TerminalSink<T,O>> sinkSupplier;
+
+        FindOp(boolean mustFindFirst,
+               StreamShape shape,
+               O emptyValue,
+               Predicate<O> presentPredicate,
+               Supplier<TerminalSink<T,O>> sinkSupplier){
+            this.mustFindFirst = mustFindFirst;
+            this.shape = shape;
+            this.emptyValue = emptyValue;
+            this.presentPredicate = presentPredicate;
+            this.sinkSupplier = sinkSupplier;
+        }
+
+        /** findAny不需要保持顺序 */
+        @Override
+        public int getOpFlags(){
+            return StreamOpFlag.IS_SHORT_CIRCUIT | (mustFindFirst ? 0 : StreamOpFlag.NOT_ORDERED);
+        }
+
+        @Override
+        public StreamShape inputShape(){
+            return shape;
+        }
+
+        @Override
+        public <S> O evaluateSequential(PipelineHelper<T> helper,
+                                        Spliterator<S> spliterator){
+            O result = helper.wrapAndCopyInto(sinkSupplier.get(), spliterator).get();
+            return result != null ? result : emptyValue;
+        }
+
+        @Override
+        public <P_IN> O evaluateParallel(PipelineHelper<T> helper,
+                                         Spliterator<P_IN> spliterator){
+            return new FindTask<>(this, helper, spliterator).invoke();
+        }
+    }
+
+    /**
+     * 查找操作的Sink，接收到第一个元素之后就请求取消
+     * */
+    private static abstract class FindSink<T,O> implements TerminalSink<T,O> {
+        boolean hasValue;
+        T value;
+
+        FindSink(){}
+
+        @Override
+        public void accept(T value){
+            if(!hasValue){
+                hasValue = true;
+                this.value = value;
+            }
+        }
+
+        @Override
+        public boolean cancellationRequested(){
+            return hasValue;
+        }
+
+        /** 引用流的实现，没有找到元素的时候返回null */
+        static final class OfRef<T> extends FindSink<T,Optional<T>> {
+            @Override
+            public Optional<T> get(){
+                return hasValue ? Optional.of(value) : null;
+            }
+        }
+
+        /** int流的实现，直接接收int，只有找到的那一个元素会被装箱 */
+        static final class OfInt extends FindSink<Integer,OptionalInt> implements Sink.OfInt {
+            @Override
+            public void accept(int value){
+                accept((Integer) value);
+            }
+
+            @Override
+            public OptionalInt get(){
+                return hasValue ? OptionalInt.of(value) : null;
+            }
+        }
+
+        /** long流的实现，直接接收long，只有找到的那一个元素会被装箱 */
+        static final class OfLong extends FindSink<Long,OptionalLong> implements Sink.OfLong {
+            @Override
+            public void accept(long value){
+                accept((Long) value);
+            }
+
+            @Override
+            public OptionalLong get(){
+                return hasValue ? OptionalLong.of(value) : null;
+            }
+        }
+
+        /** double流的实现，直接接收double，只有找到的那一个元素会被装箱 */
+        static final class OfDouble extends FindSink<Double,OptionalDouble> implements Sink.OfDouble {
+            @Override
+            public void accept(double value){
+                accept((Double) value);
+            }
+
+            @Override
+            public OptionalDouble get(){
+                return hasValue ? OptionalDouble.of(value) : null;
+            }
+        }
+    }
+
+    /**
+     * 并行查找的任务
+     *
+     * findAny的任何一个叶子找到元素都可以直接作为结果，
+     * findFirst只有最左边的叶子找到元素的时候才能确定结果，其他叶子找到元素的时候取消它右边的任务，
+     * 等左边的任务完成之后，在onCompletion中选出最靠左的结果
+     * */
+    @SuppressWarnings("serial")
+    private static final class FindTask<P_IN,P_OUT,O>
+            extends AbstractShortCircuitTask<P_IN,P_OUT,O,FindTask<P_IN,P_OUT,O>> {
+        private final FindOp<P_OUT,O> op;
+
+        FindTask(FindOp<P_OUT,O> op,
+                 PipelineHelper<P_OUT> helper,
+                 Spliterator<P_IN> spliterator){
+            super(helper, spliterator);
+            this.op = op;
+        }
+
+        FindTask(FindTask<P_IN,P_OUT,O> parent, Spliterator<P_IN> spliterator){
+            super(parent, spliterator);
+            this.op = parent.op;
+        }
+
+        @Override
+        protected FindTask<P_IN,P_OUT,O> makeChild(Spliterator<P_IN> spliterator){
+            return new FindTask<>(this, spliterator);
+        }
+
+        @Override
+        protected O getEmptyResult(){
+            return op.emptyValue;
+        }
+
+        private void foundResult(O answer){
+            if(isLeftmostNode())
+                shortCircuit(answer);
+            else
+                cancelLaterNodes();
+        }
+
+        @Override
+        protected O doLeaf(){
+            O result = helper.wrapAndCopyInto(op.sinkSupplier.get(), spliterator).get();
+            if(!op.mustFindFirst){
+                if(result != null)
+                    shortCircuit(result);
+                return null;
+            }
+            else{
+                if(result != null){
+                    foundResult(result);
+                    return result;
+                }
+                else
+                    return null;
+            }
+        }
+
+        /** findFirst先检查左孩子再检查右孩子，第一个有结果的孩子就是当前任务的结果 */
+        @Override
+        public void onCompletion(CountedCompleter<?> caller){
+            if(op.mustFindFirst){
+                for(FindTask<P_IN,P_OUT,O> child = leftChild, p = null; child != p;
+                    p = child, child = rightChild){
+                    O result = child.getLocalResult();
+                    if(result != null && op.presentPredicate.test(result)){
+                        setLocalResult(result);
+                        foundResult(result);
+                        break;
+                    }
+                }
+            }
+            super.onCompletion(caller);
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package com.test.util.stream;
+
+import com.test.util.Spliterator;
+import com.test.util.concurrent.ConcurrentHashMap;
+import com.test.util.function.Consumer;
+import com.test.util.function.DoubleConsumer;
+import com.test.util.function.IntConsumer;
+import com.test.util.function.IntFunction;
+import com.test.util.function.LongConsumer;
+
+import java.util.Objects;
+import java.util.concurrent.CountedCompleter;
+
+/**
+ * 创建对流中的每个元素执行一个动作的终端操作
+ *
+ * 如果不需要按顺序执行，元素会以任意的顺序被处理，
+ * 否则，前一个元素的动作发生在后一个元素的动作之前
+ * */
+final class ForEachOps {
+    private ForEachOps(){}
+
+    /** 创建一个对引用流中的每个元素执行动作的终端操作 */
+    public static <T> TerminalOp<T,Void> makeRef(Consumer<? super T> action,
+                                                 boolean ordered){
+        Objects.requireNonNull(action);
+        return new ForEachOp.OfRef<>(action, ordered);
+    }
+
+    /** 创建一个对int流中的每个元素执行动作的终端操作 */
+    public static TerminalOp<Integer,Void> makeInt(IntConsumer action,
+                                               boolean ordered){
+        Objects.requireNonNull(action);
+        return new ForEachOp.OfInt(action, ordered);
+    }
+
+    /** 创建一个对long流中的每个元素执行动作的终端操作 */
+    public static TerminalOp<Long,Void> makeLong(LongConsumer action,
+                                               boolean ordered){
+        Objects.requireNonNull(action);
+        return new ForEachOp.OfLong(action, ordered);
+    }
+
+    /** 创建一个对double流中的每个元素执行动作的终端操作 */
+    public static TerminalOp<Double,Void> makeDouble(DoubleConsumer action,
+                                               boolean ordered){
+        Objects.requireNonNull(action);
+        return new ForEachOp.OfDouble(action, ordered);
+    }
+
+    /**
+     * 既是终端操作又是终端Sink，评估的时候把自己作为管道最下游的Sink
+     * */
+    static abstract class ForEachOp<T> implements TerminalOp<T,Void>, TerminalSink<T,Void> {
+        private final boolean ordered;
+
+        protected ForEachOp(boolean ordered){
+            this.ordered = ordered;
+        }
+
+        /** 不需要按顺序执行的时候清除ORDERED标志 */
+        @Override
+        public int getOpFlags(){
+            return ordered ? 0 : StreamOpFlag.NOT_ORDERED;
+        }
+
+        @Override
+        public <S> Void evaluateSequential(PipelineHelper<T> helper,
+                                           Spliterator<S> spliterator){
+            return helper.wrapAndCopyInto(this, spliterator).get();
+        }
+
+        /**
+         * 不需要保持顺序的时候，所有叶子任务直接把元素推入同一个Sink，
+         * 否则由ForEachOrderedTask保证按照遇到的顺序执行
+         * */
+        @Override
+        public <S> Void evaluateParallel(PipelineHelper<T> helper,
+                                         Spliterator<S> spliterator){
+            if(ordered)
+                new ForEachOrderedTask<>(helper, spliterator, this).invoke();
+            else
+                new ForEachTask<>(helper, spliterator, helper.wrapSink(this)).invoke();
+            return null;
+        }
+
+        /** forEach没有结果 */
+        @Override
+        public Void get(){
+            return null;
+        }
+
+        /** 引用流的实现 */
+        static final class OfRef<T> extends ForEachOp<T> {
+            final Consumer<? super T> consumer;
+
+            OfRef(Consumer<? super T> consumer, boolean ordered){
+                super(ordered);
+                this.consumer = consumer;
+            }
+
+            @Override
+            public void accept(T t){
+                consumer.accept(t);
+            }
+        }
+
+        /** int流的实现 */
+        static final class OfInt extends ForEachOp<Integer> implements Sink.OfInt {
+            final IntConsumer consumer;
+
+            OfInt(IntConsumer consumer, boolean ordered){
+                super(ordered);
+                this.consumer = consumer;
+            }
+
+            @Override
+            public StreamShape inputShape(){
+                return StreamShape.INT_VALUE;
+            }
+
+            @Override
+            public void accept(int t){
+                consumer.accept(t);
+            }
+        }
+
+        /** long流的实现 */
+        static final class OfLong extends ForEachOp<Long> implements Sink.OfLong {
+            final LongConsumer consumer;
+
+            OfLong(LongConsumer consumer, boolean ordered){
+                super(ordered);
+                this.consumer = consumer;
+            }
+
+            @Override
+            public StreamShape inputShape(){
+                return StreamShape.LONG_VALUE;
+            }
+
+            @Override
+            public void accept(long t){
+                consumer.accept(t);
+            }
+        }
+
+        /** double流的实现 */
+        static final class OfDouble extends ForEachOp<Double> implements Sink.OfDouble {
+            final DoubleConsumer consumer;
+
+            OfDouble(DoubleConsumer consumer, boolean ordered){
+                super(ordered);
+                this.consumer = consumer;
+            }
+
+            @Override
+            public StreamShape inputShape(){
+                return StreamShape.DOUBLE_VALUE;
+            }
+
+            @Override
+            public void accept(double t){
+                consumer.accept(t);
+            }
+        }
+    }
+
+    /**
+     * 不保持顺序的并行forEach任务
+     * 没有需要合并的结果，叶子任务直接把自己那一段元素推入共享的Sink
+     * */
+    @SuppressWarnings("serial")
+    static final class ForEachTask<S,T> extends CountedCompleter<Void> {
+        private Spliterator<S> spliterator;
+        private final Sink<S> sink;
+        private final PipelineHelper<T> helper;
+        private long targetSize;
+
+        ForEachTask(PipelineHelper<T> helper,
+                    Spliterator<S> spliterator,
+                    Sink<S> sink){
+            super(null);
+            this.sink = sink;
+            this.helper = helper;
+            this.spliterator = spliterator;
+            this.targetSize = 0L;
+        }
+
+        ForEachTask(ForEachTask<S,T> parent, Spliterator<S> spliterator){
+            super(parent);
+            this.spliterator = spliterator;
+            this.sink = parent.sink;
+            this.targetSize = parent.targetSize;
+            this.helper = parent.helper;
+        }
+
+        /** 和AbstractTask.compute()相同的拆分方式，有短路操作的时候每次拆分前检查是否请求取消 */
+        @Override
+        public void compute(){
+            Spliterator<S> rightSplit = spliterator, leftSplit;
+            long sizeEstimate = rightSplit.estimateSize(), sizeThreshold;
+            if((sizeThreshold = targetSize) == 0L)
+                targetSize = sizeThreshold = AbstractTask.suggestTargetSize(sizeEstimate);
+            boolean isShortCircuit = StreamOpFlag.SHORT_CIRCUIT.isKnown(helper.getStreamAndOpFlags());
+            boolean forkRight = false;
+            Sink<S> taskSink = sink;
+            ForEachTask<S,T> task = this;
+            while(!isShortCircuit || !taskSink.cancellationRequested()){
+                if(sizeEstimate <= sizeThreshold ||
+                        (leftSplit = rightSplit.trySplit()) == null){
+                    //根任务一次都没有拆分，整个forEach都在一个线程中完成
+                    if(Tripwire.ENABLED && task == this && getCompleter() == null && sizeEstimate > sizeThreshold)
+                        Tripwire.trip(TripwireMonitor.Kind.SEQUENTIAL_FALLBACK, rightSplit.getClass(),
+                                "{0} could not be split, parallel forEach ran as a single leaf");
+                    task.helper.copyInto(taskSink, rightSplit);
+                    break;
+                }
+                ForEachTask<S,T> leftTask = new ForEachTask<>(task, leftSplit);
+                task.addToPendingCount(1);
+                ForEachTask<S,T> taskToFork;
+                if(forkRight){
+                    forkRight = false;
+                    rightSplit = leftSplit;
+                    taskToFork = task;
+                    task = leftTask;
+                }
+                else{
+                    forkRight = true;
+                    taskToFork = leftTask;
+                }
+                taskToFork.fork();
+                sizeEstimate = rightSplit.estimateSize();
+            }
+            task.spliterator = null;
+            task.propagateCompletion();
+        }
+    }
+
+    /**
+     * 保持顺序的并行forEach任务
+     *
+     * 每个叶子任务都有一个左前驱，也就是紧挨着它左边的那一段，
+     * 只有左前驱完成之后，当前叶子才能把元素推入Sink，
+     * 叶子在等待的时候先把自己那一段的输出缓存到一个Node当中
+     *
+     * completionMap记录了"某个任务完成之后应该通知谁"，
+     * 一个任务完成的时候从表中取出它的右后继并尝试完成它
+     * */
+    @SuppressWarnings("serial")
+    static final class ForEachOrderedTask<S,T> extends CountedCompleter<Void> {
+        private final PipelineHelper<T> helper;
+        private Spliterator<S> spliterator;
+        private final long targetSize;
+        private final ConcurrentHashMap<ForEachOrderedTask<S,T>,ForEachOrderedTask<S,T>> completionMap;
+        private final Sink<T> action;
+        private final ForEachOrderedTask<S,T> leftPredecessor;
+        //左前驱还没有完成时，缓存当前叶子的输出
+        private Node<T> node;
+
+        protected ForEachOrderedTask(PipelineHelper<T> helper,
+                                     Spliterator<S> spliterator,
+                                     Sink<T> action){
+            super(null);
+            this.helper = helper;
+            this.spliterator = spliterator;
+            this.targetSize = AbstractTask.suggestTargetSize(spliterator.estimateSize());
+            this.completionMap = new ConcurrentHashMap<>(Math.max(16, AbstractTask.LEAF_TARGET << 1));
+            this.action = action;
+            this.leftPredecessor = null;
+        }
+
+        ForEachOrderedTask(ForEachOrderedTask<S,T> parent,
+                           Spliterator<S> spliterator,
+                           ForEachOrderedTask<S,T> leftPredecessor){
+            super(parent);
+            this.helper = parent.helper;
+            this.spliterator = spliterator;
+            this.targetSize = parent.targetSize;
+            this.completionMap = parent.completionMap;
+            this.action = parent.action;
+            this.leftPredecessor = leftPredecessor;
+        }
+
+        @Override
+        public final void compute(){
+            doCompute(this);
+        }
+
+        private static <S,T> void doCompute(ForEachOrderedTask<S,T> task){
+            Spliterator<S> rightSplit = task.spliterator, leftSplit;
+            long sizeThreshold = task.targetSize;
+            boolean forkRight = false;
+            while(rightSplit.estimateSize() > sizeThreshold &&
+                    (leftSplit = rightSplit.trySplit()) != null){
+                ForEachOrderedTask<S,T> leftChild =
+                        new ForEachOrderedTask<>(task, leftSplit, task.leftPredecessor);
+                ForEachOrderedTask<S,T> rightChild =
+                        new ForEachOrderedTask<>(task, rightSplit, leftChild);
+
+                //父任务在两个孩子都完成之后才完成，右孩子要等左孩子完成
+                task.addToPendingCount(1);
+                rightChild.addToPendingCount(1);
+                task.completionMap.put(leftChild, rightChild);
+
+                //如果父任务有左前驱，把左前驱完成之后要通知的任务从父任务换成左孩子
+                if(task.leftPredecessor != null){
+                    leftChild.addToPendingCount(1);
+                    if(task.completionMap.replace(task.leftPredecessor, task, leftChild)){
+                        //替换成功，父任务不再需要等待左前驱
+                        task.addToPendingCount(-1);
+                    }
+                    else{
+                        //左前驱已经完成了，左孩子不需要等待
+                        leftChild.addToPendingCount(-1);
+                    }
+                }
+
+                ForEachOrderedTask<S,T> taskToFork;
+                if(forkRight){
+                    forkRight = false;
+                    rightSplit = leftSplit;
+                    task = leftChild;
+                    taskToFork = rightChild;
+                }
+                else{
+                    forkRight = true;
+                    task = rightChild;
+                    taskToFork = leftChild;
+                }
+                taskToFork.fork();
+            }
+
+            //还需要等待左前驱的时候，先把输出缓存起来
+            if(task.getPendingCount() > 0){
+                @SuppressWarnings("unchecked")
+                IntFunction<T[]> generator = size -> (T[]) new Object[size];
+                Node.Builder<T> nb = task.helper.makeNodeBuilder(
+                        task.helper.exactOutputSizeIfKnown(rightSplit), generator);
+                task.node = task.helper.wrapAndCopyInto(nb, rightSplit).build();
+                task.spliterator = null;
+            }
+            task.tryComplete();
+        }
+
+        @Override
+        public void onCompletion(CountedCompleter<?> caller){
+            if(node != null){
+                //把缓存的输出推入Sink
+                node.forEach(action);
+                node = null;
+            }
+            else if(spliterator != null){
+                //左前驱已经完成，直接把这一段推入Sink
+                helper.wrapAndCopyInto(action, spliterator);
+                spliterator = null;
+            }
+
+            //通知右后继
+            ForEachOrderedTask<S,T> leftDescendant = completionMap.remove(this);
+            if(leftDescendant != null)
+                leftDescendant.tryComplete();
+        }
+    }
+}
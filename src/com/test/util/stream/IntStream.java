@@ -1,23 +1,160 @@
 package com.test.util.stream;
 
+import com.test.util.Arrays;
+import com.test.util.IntSummaryStatistics;
+import com.test.util.OptionalDouble;
+import com.test.util.OptionalInt;
+import com.test.util.PrimitiveIterator;
+import com.test.util.Spliterator;
+import com.test.util.Spliterators;
 import com.test.util.function.*;
 
+/**
+ * 元素是int的流，中间操作和终端操作都直接处理int，不会把元素装箱成Integer
+ *
+ * 只有调用boxed或者mapToObj之后，元素才会变成对象
+ * */
 public interface IntStream extends BaseStream<Integer,IntStream> {
+    /** 筛选元素 */
     IntStream filter(IntPredicate predicate);
 
+    /** 把每个元素映射成另一个int */
     IntStream map(IntUnaryOperator mapper);
 
+    /** 把每个元素映射成一个对象，返回一个引用流 */
     <U> Stream<U> mapToObj(IntFunction<? extends U> mapper);
 
+    /** 把每个元素映射成一个long，返回一个LongStream */
     LongStream mapToLong(IntToLongFunction mapper);
 
+    /** 把每个元素映射成一个double，返回一个DoubleStream */
     DoubleStream mapToDouble(IntToDoubleFunction mapper);
 
+    /** 把每个元素映射成的流的元素依次放入当前流当中 */
     IntStream flatMap(IntFunction<? extends IntStream> mapper);
 
+    /** 去掉重复的元素 */
     IntStream distinct();
 
+    /** 按从小到大的顺序排序 */
     IntStream sorted();
 
-    IntStream peek();
+    /** 每个元素被消费的时候执行一个动作，主要用于调试 */
+    IntStream peek(IntConsumer action);
+
+    /** 最多保留maxSize个元素 */
+    IntStream limit(long maxSize);
+
+    /** 跳过前n个元素 */
+    IntStream skip(long n);
+
+    /** 对每个元素执行一个动作，并行的时候不保证顺序 */
+    void forEach(IntConsumer action);
+
+    /** 按照遇到的顺序对每个元素执行一个动作 */
+    void forEachOrdered(IntConsumer action);
+
+    /** 返回包含所有元素的数组 */
+    int[] toArray();
+
+    /** 使用初始值identity和累加函数op归约所有元素 */
+    int reduce(int identity, IntBinaryOperator op);
+
+    /** 没有初始值的归约，流为空的时候返回OptionalInt.empty() */
+    OptionalInt reduce(IntBinaryOperator op);
+
+    /**
+     * 可变归约
+     * @param supplier 创建新的结果容器
+     * @param accumulator 把一个元素合并到结果容器当中
+     * @param combiner 把第二个结果容器合并到第一个当中
+     * */
+    <R> R collect(Supplier<R> supplier,
+                  ObjIntConsumer<R> accumulator,
+                  BiConsumer<R, R> combiner);
+
+    /** 所有元素的和 */
+    int sum();
+
+    /** 最小的元素 */
+    OptionalInt min();
+
+    /** 最大的元素 */
+    OptionalInt max();
+
+    /** 元素的个数 */
+    long count();
+
+    /** 元素的平均值，流为空的时候返回OptionalDouble.empty() */
+    OptionalDouble average();
+
+    /** 只遍历一次，得到元素的个数、和、最小值、最大值以及平均值 */
+    IntSummaryStatistics summaryStatistics();
+
+    /** 流中是否有元素匹配谓词predicate */
+    boolean anyMatch(IntPredicate predicate);
+
+    /** 流中所有元素是否都匹配谓词predicate */
+    boolean allMatch(IntPredicate predicate);
+
+    /** 没有元素符合谓词predicate，返回true，否则返回false */
+    boolean noneMatch(IntPredicate predicate);
+
+    /** 返回第一个元素 */
+    OptionalInt findFirst();
+
+    /** 返回任意的一个元素 */
+    OptionalInt findAny();
+
+    /** 把每个元素转换成long，返回一个LongStream */
+    LongStream asLongStream();
+
+    /** 把每个元素转换成double，返回一个DoubleStream */
+    DoubleStream asDoubleStream();
+
+    /** 把每个元素装箱，返回一个引用流 */
+    Stream<Integer> boxed();
+
+    @Override
+    IntStream sequential();
+
+    @Override
+    IntStream parallel();
+
+    @Override
+    PrimitiveIterator.OfInt iterator();
+
+    @Override
+    Spliterator.OfInt spliterator();
+
+    /** 返回一个空的顺序流 */
+    public static IntStream empty(){
+        return StreamSupport.intStream(Spliterators.emptyIntSpliterator(), false);
+    }
+
+    /** 返回只包含一个元素的顺序流 */
+    public static IntStream of(int t){
+        return StreamSupport.intStream(Arrays.spliterator(new int[]{t}, 0, 1), false);
+    }
+
+    /** 返回包含给定元素的顺序流 */
+    public static IntStream of(int... values){
+        return StreamSupport.intStream(Arrays.spliterator(values, 0, values.length), false);
+    }
+
+    /** 返回[startInclusive, endExclusive)区间内步长为1的有序流 */
+    public static IntStream range(int startInclusive, int endExclusive){
+        if(startInclusive >= endExclusive)
+            return empty();
+        return StreamSupport.intStream(
+                new Streams.RangeIntSpliterator(startInclusive, endExclusive, false), false);
+    }
+
+    /** 返回[startInclusive, endInclusive]区间内步长为1的有序流 */
+    public static IntStream rangeClosed(int startInclusive, int endInclusive){
+        if(startInclusive > endInclusive)
+            return empty();
+        return StreamSupport.intStream(
+                new Streams.RangeIntSpliterator(startInclusive, endInclusive, true), false);
+    }
 }
@@ -1,13 +1,161 @@
 package com.test.util.stream;
 
-import com.test.util.function.LongFunction;
-import com.test.util.function.LongPredicate;
-import com.test.util.function.LongUnaryOperator;
+import com.test.util.Arrays;
+import com.test.util.LongSummaryStatistics;
+import com.test.util.OptionalDouble;
+import com.test.util.OptionalLong;
+import com.test.util.PrimitiveIterator;
+import com.test.util.Spliterator;
+import com.test.util.Spliterators;
+import com.test.util.function.*;
 
-public interface LongStream extends BaseStream<Long, LongStream> {
+/**
+ * 元素是long的流，中间操作和终端操作都直接处理long，不会把元素装箱成Long
+ *
+ * 只有调用boxed或者mapToObj之后，元素才会变成对象
+ * */
+public interface LongStream extends BaseStream<Long,LongStream> {
+    /** 筛选元素 */
     LongStream filter(LongPredicate predicate);
 
+    /** 把每个元素映射成另一个long */
     LongStream map(LongUnaryOperator mapper);
 
+    /** 把每个元素映射成一个对象，返回一个引用流 */
     <U> Stream<U> mapToObj(LongFunction<? extends U> mapper);
+
+    /** 把每个元素映射成一个int，返回一个IntStream */
+    IntStream mapToInt(LongToIntFunction mapper);
+
+    /** 把每个元素映射成一个double，返回一个DoubleStream */
+    DoubleStream mapToDouble(LongToDoubleFunction mapper);
+
+    /** 把每个元素映射成的流的元素依次放入当前流当中 */
+    LongStream flatMap(LongFunction<? extends LongStream> mapper);
+
+    /** 去掉重复的元素 */
+    LongStream distinct();
+
+    /** 按从小到大的顺序排序 */
+    LongStream sorted();
+
+    /** 每个元素被消费的时候执行一个动作，主要用于调试 */
+    LongStream peek(LongConsumer action);
+
+    /** 最多保留maxSize个元素 */
+    LongStream limit(long maxSize);
+
+    /** 跳过前n个元素 */
+    LongStream skip(long n);
+
+    /** 对每个元素执行一个动作，并行的时候不保证顺序 */
+    void forEach(LongConsumer action);
+
+    /** 按照遇到的顺序对每个元素执行一个动作 */
+    void forEachOrdered(LongConsumer action);
+
+    /** 返回包含所有元素的数组 */
+    long[] toArray();
+
+    /** 使用初始值identity和累加函数op归约所有元素 */
+    long reduce(long identity, LongBinaryOperator op);
+
+    /** 没有初始值的归约，流为空的时候返回OptionalLong.empty() */
+    OptionalLong reduce(LongBinaryOperator op);
+
+    /**
+     * 可变归约
+     * @param supplier 创建新的结果容器
+     * @param accumulator 把一个元素合并到结果容器当中
+     * @param combiner 把第二个结果容器合并到第一个当中
+     * */
+    <R> R collect(Supplier<R> supplier,
+                  ObjLongConsumer<R> accumulator,
+                  BiConsumer<R, R> combiner);
+
+    /** 所有元素的和 */
+    long sum();
+
+    /** 最小的元素 */
+    OptionalLong min();
+
+    /** 最大的元素 */
+    OptionalLong max();
+
+    /** 元素的个数 */
+    long count();
+
+    /** 元素的平均值，流为空的时候返回OptionalDouble.empty() */
+    OptionalDouble average();
+
+    /** 只遍历一次，得到元素的个数、和、最小值、最大值以及平均值 */
+    LongSummaryStatistics summaryStatistics();
+
+    /** 流中是否有元素匹配谓词predicate */
+    boolean anyMatch(LongPredicate predicate);
+
+    /** 流中所有元素是否都匹配谓词predicate */
+    boolean allMatch(LongPredicate predicate);
+
+    /** 没有元素符合谓词predicate，返回true，否则返回false */
+    boolean noneMatch(LongPredicate predicate);
+
+    /** 返回第一个元素 */
+    OptionalLong findFirst();
+
+    /** 返回任意的一个元素 */
+    OptionalLong findAny();
+
+    /** 把每个元素转换成double，返回一个DoubleStream */
+    DoubleStream asDoubleStream();
+
+    /** 把每个元素装箱，返回一个引用流 */
+    Stream<Long> boxed();
+
+    @Override
+    LongStream sequential();
+
+    @Override
+    LongStream parallel();
+
+    @Override
+    PrimitiveIterator.OfLong iterator();
+
+    @Override
+    Spliterator.OfLong spliterator();
+
+    /** 返回一个空的顺序流 */
+    public static LongStream empty(){
+        return StreamSupport.longStream(Spliterators.emptyLongSpliterator(), false);
+    }
+
+    /** 返回只包含一个元素的顺序流 */
+    public static LongStream of(long t){
+        return StreamSupport.longStream(Arrays.spliterator(new long[]{t}, 0, 1), false);
+    }
+
+    /** 返回包含给定元素的顺序流 */
+    public static LongStream of(long... values){
+        return StreamSupport.longStream(Arrays.spliterator(values, 0, values.length), false);
+    }
+
+    /** 返回[startInclusive, endExclusive)区间内步长为1的有序流 */
+    public static LongStream range(long startInclusive, long endExclusive){
+        if(startInclusive >= endExclusive)
+            return empty();
+        if(endExclusive - startInclusive < 0)
+            throw new IllegalArgumentException("range size exceeds Long.MAX_VALUE");
+        return StreamSupport.longStream(
+                new Streams.RangeLongSpliterator(startInclusive, endExclusive, false), false);
+    }
+
+    /** 返回[startInclusive, endInclusive]区间内步长为1的有序流 */
+    public static LongStream rangeClosed(long startInclusive, long endInclusive){
+        if(startInclusive > endInclusive)
+            return empty();
+        if(endInclusive - startInclusive + 1 <= 0)
+            throw new IllegalArgumentException("range size exceeds Long.MAX_VALUE");
+        return StreamSupport.longStream(
+                new Streams.RangeLongSpliterator(startInclusive, endInclusive, true), false);
+    }
 }
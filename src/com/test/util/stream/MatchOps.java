@@ -0,0 +1,228 @@
+package com.test.util.stream;
+
+import com.test.util.Spliterator;
+import com.test.util.function.DoublePredicate;
+import com.test.util.function.IntPredicate;
+import com.test.util.function.LongPredicate;
+import com.test.util.function.Predicate;
+import com.test.util.function.Supplier;
+
+import java.util.Objects;
+
+/**
+ * 创建短路的匹配终端操作：anyMatch、allMatch和noneMatch
+ * */
+final class MatchOps {
+    private MatchOps(){}
+
+    /**
+     * 匹配的种类
+     * 遍历元素的时候，一旦谓词的结果等于stopOnPredicateMatches就可以停止，并返回shortCircuitResult
+     * */
+    enum MatchKind {
+        /** 有任何一个元素匹配的时候停止，返回true */
+        ANY(true, true),
+
+        /** 有任何一个元素不匹配的时候停止，返回false */
+        ALL(false, false),
+
+        /** 有任何一个元素匹配的时候停止，返回false */
+        NONE(true, false);
+
+        private final boolean stopOnPredicateMatches;
+        private final boolean shortCircuitResult;
+
+        private MatchKind(boolean stopOnPredicateMatches,
+                          boolean shortCircuitResult){
+            this.stopOnPredicateMatches = stopOnPredicateMatches;
+            this.shortCircuitResult = shortCircuitResult;
+        }
+    }
+
+    /** 创建一个引用流的匹配终端操作 */
+    public static <T> TerminalOp<T,Boolean> makeRef(Predicate<? super T> predicate,
+                                                    MatchKind matchKind){
+        Objects.requireNonNull(predicate);
+        Objects.requireNonNull(matchKind);
+        class MatchSink extends BooleanTerminalSink<T> {
+            MatchSink(){
+                super(matchKind);
+            }
+
+            @Override
+            public void accept(T t){
+                if(!stop && predicate.test(t) == matchKind.stopOnPredicateMatches){
+                    stop = true;
+                    value = matchKind.shortCircuitResult;
+                }
+            }
+        }
+
+        return new MatchOp<>(StreamShape.REFERENCE, matchKind, MatchSink::new);
+    }
+
+    /** 创建一个int流的匹配终端操作 */
+    public static TerminalOp<Integer,Boolean> makeInt(IntPredicate predicate,
+                                                  MatchKind matchKind){
+        Objects.requireNonNull(predicate);
+        Objects.requireNonNull(matchKind);
+        class MatchSink extends BooleanTerminalSink<Integer> implements Sink.OfInt {
+            MatchSink(){
+                super(matchKind);
+            }
+
+            @Override
+            public void accept(int t){
+                if(!stop && predicate.test(t) == matchKind.stopOnPredicateMatches){
+                    stop = true;
+                    value = matchKind.shortCircuitResult;
+                }
+            }
+        }
+
+        return new MatchOp<>(StreamShape.INT_VALUE, matchKind, MatchSink::new);
+    }
+
+    /** 创建一个long流的匹配终端操作 */
+    public static TerminalOp<Long,Boolean> makeLong(LongPredicate predicate,
+                                                  MatchKind matchKind){
+        Objects.requireNonNull(predicate);
+        Objects.requireNonNull(matchKind);
+        class MatchSink extends BooleanTerminalSink<Long> implements Sink.OfLong {
+            MatchSink(){
+                super(matchKind);
+            }
+
+            @Override
+            public void accept(long t){
+                if(!stop && predicate.test(t) == matchKind.stopOnPredicateMatches){
+                    stop = true;
+                    value = matchKind.shortCircuitResult;
+                }
+            }
+        }
+
+        return new MatchOp<>(StreamShape.LONG_VALUE, matchKind, MatchSink::new);
+    }
+
+    /** 创建一个double流的匹配终端操作 */
+    public static TerminalOp<Double,Boolean> makeDouble(DoublePredicate predicate,
+                                                  MatchKind matchKind){
+        Objects.requireNonNull(predicate);
+        Objects.requireNonNull(matchKind);
+        class MatchSink extends BooleanTerminalSink<Double> implements Sink.OfDouble {
+            MatchSink(){
+                super(matchKind);
+            }
+
+            @Override
+            public void accept(double t){
+                if(!stop && predicate.test(t) == matchKind.stopOnPredicateMatches){
+                    stop = true;
+                    value = matchKind.shortCircuitResult;
+                }
+            }
+        }
+
+        return new MatchOp<>(StreamShape.DOUBLE_VALUE, matchKind, MatchSink::new);
+    }
+
+    /**
+     * 匹配的终端操作，结果只和有没有元素匹配有关，所以不需要保持顺序
+     * */
+    private static final class MatchOp<T> implements TerminalOp<T,Boolean> {
+        private final StreamShape inputShape;
+        final MatchKind matchKind;
+        final Supplier<BooleanTerminalSink<T>> sinkSupplier;
+
+        MatchOp(StreamShape shape,
+                MatchKind matchKind,
+                Supplier<BooleanTerminalSink<T>> sinkSupplier){
+            this.inputShape = shape;
+            this.matchKind = matchKind;
+            this.sinkSupplier = sinkSupplier;
+        }
+
+        @Override
+        public int getOpFlags(){
+            return StreamOpFlag.IS_SHORT_CIRCUIT | StreamOpFlag.NOT_ORDERED;
+        }
+
+        @Override
+        public StreamShape inputShape(){
+            return inputShape;
+        }
+
+        @Override
+        public <S> Boolean evaluateSequential(PipelineHelper<T> helper,
+                                              Spliterator<S> spliterator){
+            return helper.wrapAndCopyInto(sinkSupplier.get(), spliterator).getAndClearState();
+        }
+
+        @Override
+        public <S> Boolean evaluateParallel(PipelineHelper<T> helper,
+                                            Spliterator<S> spliterator){
+            return new MatchTask<>(this, helper, spliterator).invoke();
+        }
+    }
+
+    /**
+     * 匹配操作的Sink，一旦找到可以确定结果的元素就请求取消
+     * */
+    private static abstract class BooleanTerminalSink<T> implements Sink<T> {
+        boolean stop;
+        boolean value;
+
+        BooleanTerminalSink(MatchKind matchKind){
+            value = !matchKind.shortCircuitResult;
+        }
+
+        public boolean getAndClearState(){
+            return value;
+        }
+
+        @Override
+        public boolean cancellationRequested(){
+            return stop;
+        }
+    }
+
+    /**
+     * 并行匹配的任务，叶子任务得到可以确定最终结果的值时，
+     * 设置共享结果，其他任务看到共享结果之后不再继续
+     * */
+    @SuppressWarnings("serial")
+    private static final class MatchTask<P_IN,P_OUT>
+            extends AbstractShortCircuitTask<P_IN,P_OUT,Boolean,MatchTask<P_IN,P_OUT>> {
+        private final MatchOp<P_OUT> op;
+
+        MatchTask(MatchOp<P_OUT> op, PipelineHelper<P_OUT> helper,
+                  Spliterator<P_IN> spliterator){
+            super(helper, spliterator);
+            this.op = op;
+        }
+
+        MatchTask(MatchTask<P_IN,P_OUT> parent, Spliterator<P_IN> spliterator){
+            super(parent, spliterator);
+            this.op = parent.op;
+        }
+
+        @Override
+        protected MatchTask<P_IN,P_OUT> makeChild(Spliterator<P_IN> spliterator){
+            return new MatchTask<>(this, spliterator);
+        }
+
+        @Override
+        protected Boolean doLeaf(){
+            boolean b = helper.wrapAndCopyInto(op.sinkSupplier.get(), spliterator).getAndClearState();
+            if(b == op.matchKind.shortCircuitResult)
+                shortCircuit(b);
+            return null;
+        }
+
+        @Override
+        protected Boolean getEmptyResult(){
+            return !op.matchKind.shortCircuitResult;
+        }
+    }
+}
@@ -115,7 +115,7 @@ interface Node<T> {
         default T[] asArray(IntFunction<T[]> generator){
             Objects.requireNonNull(generator);
             if(Tripwire.ENABLED)
-                Tripwire.trip(getClass(),"{0} calling Node.OfPrimitive.asArray");
+                Tripwire.trip(TripwireMonitor.Kind.BOXING, getClass(), "{0} calling Node.OfPrimitive.asArray");
             long size = count();
             if(size >= Nodes.MAX_ARRAY_SIZE)
                 throw new IllegalStateException(Nodes.BAD_SIZE);
@@ -151,7 +151,7 @@ interface Node<T> {
                 forEach((IntConsumer) action);
             else{
                 if(Tripwire.ENABLED)
-                    Tripwire.trip(getClass(),"{0} calling Node.OfInt.forEachRemaining(Consumer)");
+                    Tripwire.trip(TripwireMonitor.Kind.BOXING, getClass(),"{0} calling Node.OfInt.forEachRemaining(Consumer)");
                 getSpliterator().forEachRemaining(action);
             }
         }
@@ -159,7 +159,7 @@ interface Node<T> {
         @Override
         default void copyInto(Integer[] boxed,int offset){
             if (Tripwire.ENABLED)
-                Tripwire.trip(getClass(), "{0} calling Node.OfInt.copyInto(Integer[], int)");
+                Tripwire.trip(TripwireMonitor.Kind.BOXING, getClass(), "{0} calling Node.OfInt.copyInto(Integer[], int)");
             int[] array = asPrimitiveArray();
             for(int i=0;i<array.length;i++){
                 boxed[i+offset] = array[i];
@@ -201,7 +201,7 @@ interface Node<T> {
                 forEach((LongConsumer) action);
             else{
                 if(Tripwire.ENABLED)
-                    Tripwire.trip(getClass(),"{0} calling Node.OfInt.forEachRemaining(Consumer)");
+                    Tripwire.trip(TripwireMonitor.Kind.BOXING, getClass(),"{0} calling Node.OfLong.forEachRemaining(Consumer)");
                 getSpliterator().forEachRemaining(action);
             }
         }
@@ -209,7 +209,7 @@ interface Node<T> {
         @Override
         default void copyInto(Long[] boxed,int offset){
             if (Tripwire.ENABLED)
-                Tripwire.trip(getClass(), "{0} calling Node.OfInt.copyInto(Integer[], int)");
+                Tripwire.trip(TripwireMonitor.Kind.BOXING, getClass(), "{0} calling Node.OfLong.copyInto(Long[], int)");
             long[] array = asPrimitiveArray();
             for(int i=0;i<array.length;i++){
                 boxed[i+offset] = array[i];
@@ -251,7 +251,7 @@ interface Node<T> {
                 forEach((DoubleConsumer) action);
             else{
                 if(Tripwire.ENABLED)
-                    Tripwire.trip(getClass(),"{0} calling Node.OfInt.forEachRemaining(Consumer)");
+                    Tripwire.trip(TripwireMonitor.Kind.BOXING, getClass(),"{0} calling Node.OfDouble.forEachRemaining(Consumer)");
                 getSpliterator().forEachRemaining(action);
             }
         }
@@ -259,7 +259,7 @@ interface Node<T> {
         @Override
         default void copyInto(Double[] boxed,int offset){
             if (Tripwire.ENABLED)
-                Tripwire.trip(getClass(), "{0} calling Node.OfInt.copyInto(Integer[], int)");
+                Tripwire.trip(TripwireMonitor.Kind.BOXING, getClass(), "{0} calling Node.OfDouble.copyInto(Double[], int)");
             double[] array = asPrimitiveArray();
             for(int i=0;i<array.length;i++){
                 boxed[i+offset] = array[i];
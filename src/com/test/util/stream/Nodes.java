@@ -5,6 +5,7 @@ import com.test.util.Spliterator;
 import com.test.util.function.*;
 
 import java.util.Objects;
+import java.util.concurrent.CountedCompleter;
 
 /**
  * 提供各种Node节点
@@ -73,6 +74,247 @@ final class Nodes {
         return new DoubleSpinedNodeBuilder();
     }
 
+    /** 使用给定的数组创建一个Node，数组不会被复制 */
+    static <T> Node<T> node(T[] array) {
+        return new ArrayNode<>(array);
+    }
+
+    /** 使用给定的int数组创建一个Node，数组不会被复制 */
+    static Node.OfInt node(int[] array) {
+        return new IntArrayNode(array);
+    }
+
+    /** 使用给定的long数组创建一个Node，数组不会被复制 */
+    static Node.OfLong node(long[] array) {
+        return new LongArrayNode(array);
+    }
+
+    /** 使用给定的double数组创建一个Node，数组不会被复制 */
+    static Node.OfDouble node(double[] array) {
+        return new DoubleArrayNode(array);
+    }
+
+    /**
+     * 连接两个节点，如果其中一个是空的，直接返回另一个
+     * */
+    static <T> Node<T> conc(Node<T> left, Node<T> right) {
+        if(left.count() == 0)
+            return right;
+        else if(right.count() == 0)
+            return left;
+        else
+            return new ConcNode<>(left, right);
+    }
+
+    /** 连接两个int节点，如果其中一个是空的，直接返回另一个 */
+    static Node.OfInt conc(Node.OfInt left, Node.OfInt right) {
+        if(left.count() == 0)
+            return right;
+        else if(right.count() == 0)
+            return left;
+        else
+            return new ConcNode.OfInt(left, right);
+    }
+
+    /** 连接两个long节点，如果其中一个是空的，直接返回另一个 */
+    static Node.OfLong conc(Node.OfLong left, Node.OfLong right) {
+        if(left.count() == 0)
+            return right;
+        else if(right.count() == 0)
+            return left;
+        else
+            return new ConcNode.OfLong(left, right);
+    }
+
+    /** 连接两个double节点，如果其中一个是空的，直接返回另一个 */
+    static Node.OfDouble conc(Node.OfDouble left, Node.OfDouble right) {
+        if(left.count() == 0)
+            return right;
+        else if(right.count() == 0)
+            return left;
+        else
+            return new ConcNode.OfDouble(left, right);
+    }
+
+    /** 按照形状连接两个节点，用于对四种形状通用的并行任务 */
+    @SuppressWarnings("unchecked")
+    static <T> Node<T> conc(StreamShape shape, Node<T> left, Node<T> right) {
+        switch (shape) {
+            case REFERENCE:
+                return conc(left, right);
+            case INT_VALUE:
+                return (Node<T>) conc((Node.OfInt) left, (Node.OfInt) right);
+            case LONG_VALUE:
+                return (Node<T>) conc((Node.OfLong) left, (Node.OfLong) right);
+            case DOUBLE_VALUE:
+                return (Node<T>) conc((Node.OfDouble) left, (Node.OfDouble) right);
+            default:
+                throw new IllegalStateException("Unknown shape " + shape);
+        }
+    }
+
+    /**
+     * 并行地把管道的输出收集到一个Node当中
+     *
+     * 如果输出的大小已知，并且源分裂器拆分之后的大小也是精确的(SUBSIZED)，
+     * 那么直接分配一个数组，每个叶子任务写入数组中属于自己的区间，不需要合并
+     * 否则每个叶子任务收集到自己的Node，再用ConcNode连接成一棵树
+     * @param flattenTree 为true的时候，把树展开成一个数组节点
+     * */
+    static <P_IN, P_OUT> Node<P_OUT> collect(PipelineHelper<P_OUT> helper,
+                                             Spliterator<P_IN> spliterator,
+                                             boolean flattenTree,
+                                             IntFunction<P_OUT[]> generator) {
+        long size = helper.exactOutputSizeIfKnown(spliterator);
+        if(size >= 0 && spliterator.hasCharacteristics(Spliterator.SUBSIZED)){
+            if(size >= MAX_ARRAY_SIZE)
+                throw new IllegalArgumentException(BAD_SIZE);
+            P_OUT[] array = generator.apply((int) size);
+            new SizedCollectorTask.OfRef<>(spliterator, helper, array).invoke();
+            return node(array);
+        }
+        else{
+            Node<P_OUT> node = new CollectorTask.OfRef<>(helper, generator, spliterator).invoke();
+            return flattenTree ? flatten(node, generator) : node;
+        }
+    }
+
+    /**
+     * 如果节点是一棵树，并行地把它复制到一个数组当中，返回一个数组节点
+     * */
+    static <T> Node<T> flatten(Node<T> node, IntFunction<T[]> generator) {
+        if(node.getChildCount() > 0){
+            if(Tripwire.ENABLED)
+                Tripwire.trip(TripwireMonitor.Kind.NODE_COPY, node.getClass(), "{0} flattening a Node tree into an array");
+            long size = node.count();
+            if(size >= MAX_ARRAY_SIZE)
+                throw new IllegalArgumentException(BAD_SIZE);
+            T[] array = generator.apply((int) size);
+            new ToArrayTask.OfRef<>(node, array, 0).invoke();
+            return node(array);
+        }
+        else{
+            return node;
+        }
+    }
+
+    /**
+     * 并行地把int管道的输出收集到一个Node.OfInt当中，元素不会被装箱
+     * */
+    static <P_IN> Node.OfInt collectInt(PipelineHelper<Integer> helper,
+                                         Spliterator<P_IN> spliterator,
+                                         boolean flattenTree) {
+        long size = helper.exactOutputSizeIfKnown(spliterator);
+        if(size >= 0 && spliterator.hasCharacteristics(Spliterator.SUBSIZED)){
+            if(size >= MAX_ARRAY_SIZE)
+                throw new IllegalArgumentException(BAD_SIZE);
+            int[] array = new int[(int) size];
+            new SizedCollectorTask.OfInt<>(spliterator, helper, array).invoke();
+            return node(array);
+        }
+        else{
+            Node.OfInt node = new CollectorTask.OfInt<>(helper, spliterator).invoke();
+            return flattenTree ? flattenInt(node) : node;
+        }
+    }
+
+    /**
+     * 如果int节点是一棵树，并行地把它复制到一个int数组当中，返回一个数组节点
+     * */
+    static Node.OfInt flattenInt(Node.OfInt node) {
+        if(node.getChildCount() > 0){
+            if(Tripwire.ENABLED)
+                Tripwire.trip(TripwireMonitor.Kind.NODE_COPY, node.getClass(), "{0} flattening a Node tree into an array");
+            long size = node.count();
+            if(size >= MAX_ARRAY_SIZE)
+                throw new IllegalArgumentException(BAD_SIZE);
+            int[] array = new int[(int) size];
+            new ToArrayTask.OfInt(node, array, 0).invoke();
+            return node(array);
+        }
+        else{
+            return node;
+        }
+    }
+
+    /**
+     * 并行地把long管道的输出收集到一个Node.OfLong当中，元素不会被装箱
+     * */
+    static <P_IN> Node.OfLong collectLong(PipelineHelper<Long> helper,
+                                         Spliterator<P_IN> spliterator,
+                                         boolean flattenTree) {
+        long size = helper.exactOutputSizeIfKnown(spliterator);
+        if(size >= 0 && spliterator.hasCharacteristics(Spliterator.SUBSIZED)){
+            if(size >= MAX_ARRAY_SIZE)
+                throw new IllegalArgumentException(BAD_SIZE);
+            long[] array = new long[(int) size];
+            new SizedCollectorTask.OfLong<>(spliterator, helper, array).invoke();
+            return node(array);
+        }
+        else{
+            Node.OfLong node = new CollectorTask.OfLong<>(helper, spliterator).invoke();
+            return flattenTree ? flattenLong(node) : node;
+        }
+    }
+
+    /**
+     * 如果long节点是一棵树，并行地把它复制到一个long数组当中，返回一个数组节点
+     * */
+    static Node.OfLong flattenLong(Node.OfLong node) {
+        if(node.getChildCount() > 0){
+            if(Tripwire.ENABLED)
+                Tripwire.trip(TripwireMonitor.Kind.NODE_COPY, node.getClass(), "{0} flattening a Node tree into an array");
+            long size = node.count();
+            if(size >= MAX_ARRAY_SIZE)
+                throw new IllegalArgumentException(BAD_SIZE);
+            long[] array = new long[(int) size];
+            new ToArrayTask.OfLong(node, array, 0).invoke();
+            return node(array);
+        }
+        else{
+            return node;
+        }
+    }
+
+    /**
+     * 并行地把double管道的输出收集到一个Node.OfDouble当中，元素不会被装箱
+     * */
+    static <P_IN> Node.OfDouble collectDouble(PipelineHelper<Double> helper,
+                                         Spliterator<P_IN> spliterator,
+                                         boolean flattenTree) {
+        long size = helper.exactOutputSizeIfKnown(spliterator);
+        if(size >= 0 && spliterator.hasCharacteristics(Spliterator.SUBSIZED)){
+            if(size >= MAX_ARRAY_SIZE)
+                throw new IllegalArgumentException(BAD_SIZE);
+            double[] array = new double[(int) size];
+            new SizedCollectorTask.OfDouble<>(spliterator, helper, array).invoke();
+            return node(array);
+        }
+        else{
+            Node.OfDouble node = new CollectorTask.OfDouble<>(helper, spliterator).invoke();
+            return flattenTree ? flattenDouble(node) : node;
+        }
+    }
+
+    /**
+     * 如果double节点是一棵树，并行地把它复制到一个double数组当中，返回一个数组节点
+     * */
+    static Node.OfDouble flattenDouble(Node.OfDouble node) {
+        if(node.getChildCount() > 0){
+            if(Tripwire.ENABLED)
+                Tripwire.trip(TripwireMonitor.Kind.NODE_COPY, node.getClass(), "{0} flattening a Node tree into an array");
+            long size = node.count();
+            if(size >= MAX_ARRAY_SIZE)
+                throw new IllegalArgumentException(BAD_SIZE);
+            double[] array = new double[(int) size];
+            new ToArrayTask.OfDouble(node, array, 0).invoke();
+            return node(array);
+        }
+        else{
+            return node;
+        }
+    }
+
     /** 一个具有Sink功能的和使用数组存储Node节点 */
     private static final class FixedNodeBuilder<T>
             extends ArrayNode<T>
@@ -86,7 +328,7 @@ final class Nodes {
         /** 返回当前Node节点 */
         @Override
         public Node<T> build() {
-            if(curSize > MAX_ARRAY_SIZE)
+            if(curSize < array.length)
                 throw new IllegalStateException(String.format("Current size %d is less than fixed size %d",
                         curSize, array.length));
             return this;
@@ -105,7 +347,7 @@ final class Nodes {
         @Override
         public void accept(T t) {
             if(curSize < array.length)
-                array[++curSize] = t;
+                array[curSize++] = t;
             else
                 throw new IllegalStateException(String.format("Accept exceeded fixed size of %d",
                         array.length));//如果array的容量不够，抛出异常
@@ -139,7 +381,7 @@ final class Nodes {
         /** 返回当前Node节点 */
         @Override
         public Node.OfInt build() {
-            if(curSize > MAX_ARRAY_SIZE)
+            if(curSize < array.length)
                 throw new IllegalStateException(String.format("Current size %d is less than fixed size %d",
                         curSize, array.length));
             return this;
@@ -158,7 +400,7 @@ final class Nodes {
         @Override
         public void accept(int t) {
             if(curSize < array.length)
-                array[++curSize] = t;
+                array[curSize++] = t;
             else
                 throw new IllegalStateException(String.format("Accept exceeded fixed size of %d",
                         array.length));//如果array的容量不够，抛出异常
@@ -192,7 +434,7 @@ final class Nodes {
         /** 返回当前Node节点 */
         @Override
         public Node.OfLong build() {
-            if(curSize > MAX_ARRAY_SIZE)
+            if(curSize < array.length)
                 throw new IllegalStateException(String.format("Current size %d is less than fixed size %d",
                         curSize, array.length));
             return this;
@@ -211,7 +453,7 @@ final class Nodes {
         @Override
         public void accept(long t) {
             if(curSize < array.length)
-                array[++curSize] = t;
+                array[curSize++] = t;
             else
                 throw new IllegalStateException(String.format("Accept exceeded fixed size of %d",
                         array.length));//如果array的容量不够，抛出异常
@@ -245,7 +487,7 @@ final class Nodes {
         /** 返回当前Node节点 */
         @Override
         public Node.OfDouble build() {
-            if(curSize > MAX_ARRAY_SIZE)
+            if(curSize < array.length)
                 throw new IllegalStateException(String.format("Current size %d is less than fixed size %d",
                         curSize, array.length));
             return this;
@@ -264,7 +506,7 @@ final class Nodes {
         @Override
         public void accept(double t) {
             if(curSize < array.length)
-                array[++curSize] = t;
+                array[curSize++] = t;
             else
                 throw new IllegalStateException(String.format("Accept exceeded fixed size of %d",
                         array.length));//如果array的容量不够，抛出异常
@@ -318,7 +560,7 @@ final class Nodes {
         @Override
         public void forEach(Consumer<? super T> action) {
             Objects.requireNonNull(action);
-            for(int i=0;i<array.length;i++){
+            for(int i=0;i<curSize;i++){
                 action.accept(array[i]);
             }
         }
@@ -347,7 +589,7 @@ final class Nodes {
 
         @Override
         public String toString(){
-            return String.format("ArrayNode[%d%][%s%]",array.length-curSize,Arrays.toString(array));
+            return String.format("ArrayNode[%d][%s]",array.length-curSize,Arrays.toString(array));
         }
     }
 
@@ -383,7 +625,7 @@ final class Nodes {
         @Override
         public void forEach(IntConsumer action) {
             Objects.requireNonNull(action);
-            for(int i=0;i<array.length;i++){
+            for(int i=0;i<curSize;i++){
                 action.accept(array[i]);
             }
         }
@@ -411,7 +653,7 @@ final class Nodes {
 
         @Override
         public String toString(){
-            return String.format("IntArrayNode[%d%][%s%]",array.length-curSize,Arrays.toString(array));
+            return String.format("IntArrayNode[%d][%s]",array.length-curSize,Arrays.toString(array));
         }
     }
 
@@ -447,7 +689,7 @@ final class Nodes {
         @Override
         public void forEach(LongConsumer action) {
             Objects.requireNonNull(action);
-            for(int i=0;i<array.length;i++){
+            for(int i=0;i<curSize;i++){
                 action.accept(array[i]);
             }
         }
@@ -475,7 +717,7 @@ final class Nodes {
 
         @Override
         public String toString(){
-            return String.format("LongArrayNode[%d%][%s%]",array.length-curSize,Arrays.toString(array));
+            return String.format("LongArrayNode[%d][%s]",array.length-curSize,Arrays.toString(array));
         }
     }
 
@@ -511,7 +753,7 @@ final class Nodes {
         @Override
         public void forEach(DoubleConsumer action) {
             Objects.requireNonNull(action);
-            for(int i=0;i<array.length;i++){
+            for(int i=0;i<curSize;i++){
                 action.accept(array[i]);
             }
         }
@@ -539,7 +781,7 @@ final class Nodes {
 
         @Override
         public String toString(){
-            return String.format("DoubleArrayNode[%d%][%s%]",array.length-curSize,Arrays.toString(array));
+            return String.format("DoubleArrayNode[%d][%s]",array.length-curSize,Arrays.toString(array));
         }
     }
 
@@ -798,4 +1040,600 @@ final class Nodes {
             return this;
         }
     }
+
+    /**
+     * 由两个子节点连接而成的节点，只在并行收集的时候使用
+     * */
+    private static final class ConcNode<T> implements Node<T> {
+        private final Node<T> left;
+        private final Node<T> right;
+        private final long size;
+
+        ConcNode(Node<T> left, Node<T> right) {
+            this.left = left;
+            this.right = right;
+            //节点的大小会被多次使用，所以提前计算好
+            this.size = left.count() + right.count();
+        }
+
+        @Override
+        public int getChildCount() {
+            return 2;
+        }
+
+        @Override
+        public Node<T> getChild(int i) {
+            if(i == 0) return left;
+            if(i == 1) return right;
+            throw new IndexOutOfBoundsException();
+        }
+
+        /** 先把两个子节点复制到一个数组当中，再返回数组的分区迭代器 */
+        @Override
+        @SuppressWarnings("unchecked")
+        public Spliterator<T> getSpliterator() {
+            if(size >= MAX_ARRAY_SIZE)
+                throw new IllegalArgumentException(BAD_SIZE);
+            T[] array = (T[]) new Object[(int) size];
+            copyInto(array, 0);
+            return Arrays.spliterator(array, 0, array.length);
+        }
+
+        @Override
+        public void forEach(Consumer<? super T> consumer) {
+            left.forEach(consumer);
+            right.forEach(consumer);
+        }
+
+        @Override
+        public T[] asArray(IntFunction<T[]> generator) {
+            long size = count();
+            if(size >= MAX_ARRAY_SIZE)
+                throw new IllegalArgumentException(BAD_SIZE);
+            T[] array = generator.apply((int) size);
+            copyInto(array, 0);
+            return array;
+        }
+
+        @Override
+        public void copyInto(T[] array, int offset) {
+            Objects.requireNonNull(array);
+            left.copyInto(array, offset);
+            right.copyInto(array, offset + (int) left.count());
+        }
+
+        @Override
+        public long count() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            if(count() < 32)
+                return String.format("ConcNode[%s.%s]", left, right);
+            else
+                return String.format("ConcNode[size=%d]", count());
+        }
+
+        /**
+         * 基本类型的连接节点，子节点和数组都是基本类型的，复制的时候不会装箱
+         * */
+        private static abstract class OfPrimitive<E, T_CONS, T_ARR,
+                                                  T_SPLITR extends Spliterator.OfPrimitive<E, T_CONS, T_SPLITR>,
+                                                  T_NODE extends Node.OfPrimitive<E, T_CONS, T_ARR, T_SPLITR, T_NODE>>
+                implements Node.OfPrimitive<E, T_CONS, T_ARR, T_SPLITR, T_NODE> {
+            protected final T_NODE left;
+            protected final T_NODE right;
+            private final long size;
+
+            OfPrimitive(T_NODE left, T_NODE right) {
+                this.left = left;
+                this.right = right;
+                this.size = left.count() + right.count();
+            }
+
+            @Override
+            public int getChildCount() {
+                return 2;
+            }
+
+            @Override
+            public T_NODE getChild(int i) {
+                if(i == 0) return left;
+                if(i == 1) return right;
+                throw new IndexOutOfBoundsException();
+            }
+
+            @Override
+            public void forEach(T_CONS consumer) {
+                left.forEach(consumer);
+                right.forEach(consumer);
+            }
+
+            @Override
+            public void copyInto(T_ARR array, int offset) {
+                left.copyInto(array, offset);
+                right.copyInto(array, offset + (int) left.count());
+            }
+
+            @Override
+            public T_ARR asPrimitiveArray() {
+                long size = count();
+                if(size >= MAX_ARRAY_SIZE)
+                    throw new IllegalArgumentException(BAD_SIZE);
+                T_ARR array = newArray((int) size);
+                copyInto(array, 0);
+                return array;
+            }
+
+            @Override
+            public long count() {
+                return size;
+            }
+
+            @Override
+            public String toString() {
+                if(count() < 32)
+                    return String.format("%s[%s.%s]", getClass().getName(), left, right);
+                else
+                    return String.format("%s[size=%d]", getClass().getName(), count());
+            }
+        }
+
+        private static final class OfInt
+                extends OfPrimitive<Integer, IntConsumer, int[], Spliterator.OfInt, Node.OfInt>
+                implements Node.OfInt {
+            OfInt(Node.OfInt left, Node.OfInt right) {
+                super(left, right);
+            }
+
+            /** 先把两个子节点复制到一个数组当中，再返回数组的分区迭代器 */
+            @Override
+            public Spliterator.OfInt getSpliterator() {
+                int[] array = asPrimitiveArray();
+                return Arrays.spliterator(array, 0, array.length);
+            }
+        }
+
+        private static final class OfLong
+                extends OfPrimitive<Long, LongConsumer, long[], Spliterator.OfLong, Node.OfLong>
+                implements Node.OfLong {
+            OfLong(Node.OfLong left, Node.OfLong right) {
+                super(left, right);
+            }
+
+            /** 先把两个子节点复制到一个数组当中，再返回数组的分区迭代器 */
+            @Override
+            public Spliterator.OfLong getSpliterator() {
+                long[] array = asPrimitiveArray();
+                return Arrays.spliterator(array, 0, array.length);
+            }
+        }
+
+        private static final class OfDouble
+                extends OfPrimitive<Double, DoubleConsumer, double[], Spliterator.OfDouble, Node.OfDouble>
+                implements Node.OfDouble {
+            OfDouble(Node.OfDouble left, Node.OfDouble right) {
+                super(left, right);
+            }
+
+            /** 先把两个子节点复制到一个数组当中，再返回数组的分区迭代器 */
+            @Override
+            public Spliterator.OfDouble getSpliterator() {
+                double[] array = asPrimitiveArray();
+                return Arrays.spliterator(array, 0, array.length);
+            }
+        }
+    }
+
+    /**
+     * 大小已知时的并行收集任务，任务本身就是写入数组的Sink
+     * 每个任务负责数组中的区间[offset, offset + length)，
+     * 拆分的时候左孩子的区间长度就是左分裂器的精确大小
+     * */
+    @SuppressWarnings("serial")
+    private static abstract class SizedCollectorTask<P_IN, P_OUT, T_SINK extends Sink<P_OUT>,
+                                                     K extends SizedCollectorTask<P_IN, P_OUT, T_SINK, K>>
+            extends CountedCompleter<Void>
+            implements Sink<P_OUT> {
+        protected final Spliterator<P_IN> spliterator;
+        protected final PipelineHelper<P_OUT> helper;
+        protected final long targetSize;
+        protected long offset;
+        protected long length;
+        //写入的下一个下标，以及区间的结尾
+        protected int index, fence;
+
+        SizedCollectorTask(Spliterator<P_IN> spliterator,
+                           PipelineHelper<P_OUT> helper,
+                           int arrayLength) {
+            assert spliterator.hasCharacteristics(Spliterator.SUBSIZED);
+            this.spliterator = spliterator;
+            this.helper = helper;
+            this.targetSize = AbstractTask.suggestTargetSize(spliterator.estimateSize());
+            this.offset = 0;
+            this.length = arrayLength;
+        }
+
+        SizedCollectorTask(K parent, Spliterator<P_IN> spliterator,
+                           long offset, long length, int arrayLength) {
+            super(parent);
+            assert spliterator.hasCharacteristics(Spliterator.SUBSIZED);
+            this.spliterator = spliterator;
+            this.helper = parent.helper;
+            this.targetSize = parent.targetSize;
+            this.offset = offset;
+            this.length = length;
+
+            if(offset < 0 || length < 0 || (offset + length - 1 >= arrayLength)){
+                throw new IllegalArgumentException(
+                        String.format("offset and length interval [%d, %d + %d) is not within array size interval [0, %d)",
+                                offset, offset, length, arrayLength));
+            }
+        }
+
+        @Override
+        public void compute() {
+            SizedCollectorTask<P_IN, P_OUT, T_SINK, K> task = this;
+            Spliterator<P_IN> rightSplit = spliterator, leftSplit;
+            while(rightSplit.estimateSize() > task.targetSize &&
+                    (leftSplit = rightSplit.trySplit()) != null){
+                task.setPendingCount(1);
+                long leftSplitSize = leftSplit.estimateSize();
+                task.makeChild(leftSplit, task.offset, leftSplitSize).fork();
+                task = task.makeChild(rightSplit, task.offset + leftSplitSize,
+                        task.length - leftSplitSize);
+            }
+
+            assert task.offset + task.length < MAX_ARRAY_SIZE;
+            @SuppressWarnings("unchecked")
+            T_SINK sink = (T_SINK) task;
+            task.helper.wrapAndCopyInto(sink, rightSplit);
+            task.propagateCompletion();
+        }
+
+        abstract K makeChild(Spliterator<P_IN> spliterator, long offset, long size);
+
+        @Override
+        public void begin(long size) {
+            if(size > length)
+                throw new IllegalStateException("size passed to Sink.begin exceeds array length");
+            index = (int) offset;
+            fence = index + (int) length;
+        }
+
+        @SuppressWarnings("serial")
+        static final class OfRef<P_IN, P_OUT>
+                extends SizedCollectorTask<P_IN, P_OUT, Sink<P_OUT>, OfRef<P_IN, P_OUT>>
+                implements Sink<P_OUT> {
+            private final P_OUT[] array;
+
+            OfRef(Spliterator<P_IN> spliterator, PipelineHelper<P_OUT> helper, P_OUT[] array) {
+                super(spliterator, helper, array.length);
+                this.array = array;
+            }
+
+            OfRef(OfRef<P_IN, P_OUT> parent, Spliterator<P_IN> spliterator,
+                  long offset, long length) {
+                super(parent, spliterator, offset, length, parent.array.length);
+                this.array = parent.array;
+            }
+
+            @Override
+            OfRef<P_IN, P_OUT> makeChild(Spliterator<P_IN> spliterator,
+                                         long offset, long size) {
+                return new OfRef<>(this, spliterator, offset, size);
+            }
+
+            @Override
+            public void accept(P_OUT value) {
+                if(index >= fence)
+                    throw new IndexOutOfBoundsException(Integer.toString(index));
+                array[index++] = value;
+            }
+        }
+
+        @SuppressWarnings("serial")
+        static final class OfInt<P_IN>
+                extends SizedCollectorTask<P_IN, Integer, Sink.OfInt, SizedCollectorTask.OfInt<P_IN>>
+                implements Sink.OfInt {
+            private final int[] array;
+
+            OfInt(Spliterator<P_IN> spliterator, PipelineHelper<Integer> helper, int[] array) {
+                super(spliterator, helper, array.length);
+                this.array = array;
+            }
+
+            OfInt(SizedCollectorTask.OfInt<P_IN> parent, Spliterator<P_IN> spliterator,
+                  long offset, long length) {
+                super(parent, spliterator, offset, length, parent.array.length);
+                this.array = parent.array;
+            }
+
+            @Override
+            SizedCollectorTask.OfInt<P_IN> makeChild(Spliterator<P_IN> spliterator,
+                                long offset, long size) {
+                return new SizedCollectorTask.OfInt<>(this, spliterator, offset, size);
+            }
+
+            @Override
+            public void accept(int value) {
+                if(index >= fence)
+                    throw new IndexOutOfBoundsException(Integer.toString(index));
+                array[index++] = value;
+            }
+        }
+
+        @SuppressWarnings("serial")
+        static final class OfLong<P_IN>
+                extends SizedCollectorTask<P_IN, Long, Sink.OfLong, SizedCollectorTask.OfLong<P_IN>>
+                implements Sink.OfLong {
+            private final long[] array;
+
+            OfLong(Spliterator<P_IN> spliterator, PipelineHelper<Long> helper, long[] array) {
+                super(spliterator, helper, array.length);
+                this.array = array;
+            }
+
+            OfLong(SizedCollectorTask.OfLong<P_IN> parent, Spliterator<P_IN> spliterator,
+                  long offset, long length) {
+                super(parent, spliterator, offset, length, parent.array.length);
+                this.array = parent.array;
+            }
+
+            @Override
+            SizedCollectorTask.OfLong<P_IN> makeChild(Spliterator<P_IN> spliterator,
+                                long offset, long size) {
+                return new SizedCollectorTask.OfLong<>(this, spliterator, offset, size);
+            }
+
+            @Override
+            public void accept(long value) {
+                if(index >= fence)
+                    throw new IndexOutOfBoundsException(Integer.toString(index));
+                array[index++] = value;
+            }
+        }
+
+        @SuppressWarnings("serial")
+        static final class OfDouble<P_IN>
+                extends SizedCollectorTask<P_IN, Double, Sink.OfDouble, SizedCollectorTask.OfDouble<P_IN>>
+                implements Sink.OfDouble {
+            private final double[] array;
+
+            OfDouble(Spliterator<P_IN> spliterator, PipelineHelper<Double> helper, double[] array) {
+                super(spliterator, helper, array.length);
+                this.array = array;
+            }
+
+            OfDouble(SizedCollectorTask.OfDouble<P_IN> parent, Spliterator<P_IN> spliterator,
+                  long offset, long length) {
+                super(parent, spliterator, offset, length, parent.array.length);
+                this.array = parent.array;
+            }
+
+            @Override
+            SizedCollectorTask.OfDouble<P_IN> makeChild(Spliterator<P_IN> spliterator,
+                                long offset, long size) {
+                return new SizedCollectorTask.OfDouble<>(this, spliterator, offset, size);
+            }
+
+            @Override
+            public void accept(double value) {
+                if(index >= fence)
+                    throw new IndexOutOfBoundsException(Integer.toString(index));
+                array[index++] = value;
+            }
+        }
+    }
+
+    /**
+     * 大小未知时的并行收集任务，叶子任务收集到自己的Node，
+     * 完成的时候用concFactory把左右孩子的Node连接起来
+     * */
+    @SuppressWarnings("serial")
+    private static class CollectorTask<P_IN, P_OUT, T_NODE extends Node<P_OUT>, T_BUILDER extends Node.Builder<P_OUT>>
+            extends AbstractTask<P_IN, P_OUT, T_NODE, CollectorTask<P_IN, P_OUT, T_NODE, T_BUILDER>> {
+        protected final LongFunction<T_BUILDER> builderFactory;
+        protected final BinaryOperator<T_NODE> concFactory;
+
+        CollectorTask(PipelineHelper<P_OUT> helper,
+                      Spliterator<P_IN> spliterator,
+                      LongFunction<T_BUILDER> builderFactory,
+                      BinaryOperator<T_NODE> concFactory) {
+            super(helper, spliterator);
+            this.builderFactory = builderFactory;
+            this.concFactory = concFactory;
+        }
+
+        CollectorTask(CollectorTask<P_IN, P_OUT, T_NODE, T_BUILDER> parent,
+                      Spliterator<P_IN> spliterator) {
+            super(parent, spliterator);
+            this.builderFactory = parent.builderFactory;
+            this.concFactory = parent.concFactory;
+        }
+
+        @Override
+        protected CollectorTask<P_IN, P_OUT, T_NODE, T_BUILDER> makeChild(Spliterator<P_IN> spliterator) {
+            return new CollectorTask<>(this, spliterator);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected T_NODE doLeaf() {
+            T_BUILDER builder = builderFactory.apply(helper.exactOutputSizeIfKnown(spliterator));
+            return (T_NODE) helper.wrapAndCopyInto(builder, spliterator).build();
+        }
+
+        @Override
+        public void onCompletion(CountedCompleter<?> caller) {
+            if(!isLeaf())
+                setLocalResult(concFactory.apply(leftChild.getLocalResult(), rightChild.getLocalResult()));
+            super.onCompletion(caller);
+        }
+
+        @SuppressWarnings("serial")
+        private static final class OfRef<P_IN, P_OUT>
+                extends CollectorTask<P_IN, P_OUT, Node<P_OUT>, Node.Builder<P_OUT>> {
+            OfRef(PipelineHelper<P_OUT> helper,
+                  IntFunction<P_OUT[]> generator,
+                  Spliterator<P_IN> spliterator) {
+                super(helper, spliterator, s -> builder(s, generator), Nodes::conc);
+            }
+        }
+
+        @SuppressWarnings("serial")
+        private static final class OfInt<P_IN>
+                extends CollectorTask<P_IN, Integer, Node.OfInt, Node.Builder.OfInt> {
+            OfInt(PipelineHelper<Integer> helper, Spliterator<P_IN> spliterator) {
+                super(helper, spliterator, Nodes::intBuilder, Nodes::conc);
+            }
+        }
+
+        @SuppressWarnings("serial")
+        private static final class OfLong<P_IN>
+                extends CollectorTask<P_IN, Long, Node.OfLong, Node.Builder.OfLong> {
+            OfLong(PipelineHelper<Long> helper, Spliterator<P_IN> spliterator) {
+                super(helper, spliterator, Nodes::longBuilder, Nodes::conc);
+            }
+        }
+
+        @SuppressWarnings("serial")
+        private static final class OfDouble<P_IN>
+                extends CollectorTask<P_IN, Double, Node.OfDouble, Node.Builder.OfDouble> {
+            OfDouble(PipelineHelper<Double> helper, Spliterator<P_IN> spliterator) {
+                super(helper, spliterator, Nodes::doubleBuilder, Nodes::conc);
+            }
+        }
+    }
+
+    /**
+     * 把一棵Node树并行地复制到数组当中，每个子节点写入自己的偏移量开始的区间
+     * @param <K> 任务自身的类型
+     * */
+    @SuppressWarnings("serial")
+    private static abstract class ToArrayTask<T, T_NODE extends Node<T>, K extends ToArrayTask<T, T_NODE, K>>
+            extends CountedCompleter<Void> {
+        protected final T_NODE node;
+        protected final int offset;
+
+        ToArrayTask(T_NODE node, int offset) {
+            this.node = node;
+            this.offset = offset;
+        }
+
+        ToArrayTask(K parent, T_NODE node, int offset) {
+            super(parent);
+            this.node = node;
+            this.offset = offset;
+        }
+
+        /** 把叶子节点复制到数组中从offset开始的区间 */
+        abstract void copyNodeToArray();
+
+        /** 创建负责第childIndex个子节点的任务 */
+        abstract K makeChild(int childIndex, int offset);
+
+        @Override
+        public void compute() {
+            ToArrayTask<T, T_NODE, K> task = this;
+            while(true){
+                if(task.node.getChildCount() == 0){
+                    task.copyNodeToArray();
+                    task.propagateCompletion();
+                    return;
+                }
+                else{
+                    task.setPendingCount(task.node.getChildCount() - 1);
+
+                    int size = 0;
+                    int i = 0;
+                    for(; i < task.node.getChildCount() - 1; i++){
+                        K leftTask = task.makeChild(i, task.offset + size);
+                        size += leftTask.node.count();
+                        leftTask.fork();
+                    }
+                    task = task.makeChild(i, task.offset + size);
+                }
+            }
+        }
+
+        @SuppressWarnings("serial")
+        private static final class OfRef<T>
+                extends ToArrayTask<T, Node<T>, OfRef<T>> {
+            private final T[] array;
+
+            OfRef(Node<T> node, T[] array, int offset) {
+                super(node, offset);
+                this.array = array;
+            }
+
+            OfRef(OfRef<T> parent, Node<T> node, int offset) {
+                super(parent, node, offset);
+                this.array = parent.array;
+            }
+
+            @Override
+            OfRef<T> makeChild(int childIndex, int offset) {
+                return new OfRef<>(this, node.getChild(childIndex), offset);
+            }
+
+            @Override
+            void copyNodeToArray() {
+                node.copyInto(array, offset);
+            }
+        }
+
+        @SuppressWarnings("serial")
+        private static class OfPrimitive<T, T_CONS, T_ARR,
+                                         T_SPLITR extends Spliterator.OfPrimitive<T, T_CONS, T_SPLITR>,
+                                         T_NODE extends Node.OfPrimitive<T, T_CONS, T_ARR, T_SPLITR, T_NODE>>
+                extends ToArrayTask<T, T_NODE, OfPrimitive<T, T_CONS, T_ARR, T_SPLITR, T_NODE>> {
+            private final T_ARR array;
+
+            OfPrimitive(T_NODE node, T_ARR array, int offset) {
+                super(node, offset);
+                this.array = array;
+            }
+
+            OfPrimitive(OfPrimitive<T, T_CONS, T_ARR, T_SPLITR, T_NODE> parent, T_NODE node, int offset) {
+                super(parent, node, offset);
+                this.array = parent.array;
+            }
+
+            @Override
+            OfPrimitive<T, T_CONS, T_ARR, T_SPLITR, T_NODE> makeChild(int childIndex, int offset) {
+                return new OfPrimitive<>(this, node.getChild(childIndex), offset);
+            }
+
+            @Override
+            void copyNodeToArray() {
+                node.copyInto(array, offset);
+            }
+        }
+
+        @SuppressWarnings("serial")
+        private static final class OfInt
+                extends OfPrimitive<Integer, IntConsumer, int[], Spliterator.OfInt, Node.OfInt> {
+            OfInt(Node.OfInt node, int[] array, int offset) {
+                super(node, array, offset);
+            }
+        }
+
+        @SuppressWarnings("serial")
+        private static final class OfLong
+                extends OfPrimitive<Long, LongConsumer, long[], Spliterator.OfLong, Node.OfLong> {
+            OfLong(Node.OfLong node, long[] array, int offset) {
+                super(node, array, offset);
+            }
+        }
+
+        @SuppressWarnings("serial")
+        private static final class OfDouble
+                extends OfPrimitive<Double, DoubleConsumer, double[], Spliterator.OfDouble, Node.OfDouble> {
+            OfDouble(Node.OfDouble node, double[] array, int offset) {
+                super(node, array, offset);
+            }
+        }
+    }
 }
@@ -0,0 +1,724 @@
+package com.test.util.stream;
+
+import com.test.util.Optional;
+import com.test.util.OptionalDouble;
+import com.test.util.OptionalInt;
+import com.test.util.OptionalLong;
+import com.test.util.Spliterator;
+import com.test.util.function.*;
+
+import java.util.Objects;
+import java.util.concurrent.CountedCompleter;
+
+/**
+ * 创建归约的终端操作：reduce、collect和count
+ *
+ * 每个操作都由一个可以合并的AccumulatingSink完成，
+ * 顺序执行的时候只使用一个Sink，并行执行的时候由ReduceTask给每个叶子任务创建一个Sink，最后两两合并
+ * */
+final class ReduceOps {
+    private ReduceOps(){}
+
+    /**
+     * 创建一个带初始值的归约操作
+     * @param seed 归约的初始值
+     * @param reducer 把一个元素合并到结果当中
+     * @param combiner 合并两个结果
+     * */
+    public static <T,U> TerminalOp<T,U> makeRef(U seed,
+                                                BiFunction<U,? super T,U> reducer,
+                                                BinaryOperator<U> combiner){
+        Objects.requireNonNull(reducer);
+        Objects.requireNonNull(combiner);
+        class ReducingSink extends Box<U> implements AccumulatingSink<T,U,ReducingSink> {
+            @Override
+            public void begin(long size){
+                state = seed;
+            }
+
+            @Override
+            public void accept(T t){
+                state = reducer.apply(state, t);
+            }
+
+            @Override
+            public void combine(ReducingSink other){
+                state = combiner.apply(state, other.state);
+            }
+        }
+        return new ReduceOp<T,U,ReducingSink>(StreamShape.REFERENCE) {
+            @Override
+            public ReducingSink makeSink(){
+                return new ReducingSink();
+            }
+        };
+    }
+
+    /**
+     * 创建一个没有初始值的归约操作，流为空的时候返回Optional.empty()
+     * */
+    public static <T> TerminalOp<T,Optional<T>> makeRef(BinaryOperator<T> operator){
+        Objects.requireNonNull(operator);
+        class ReducingSink implements AccumulatingSink<T,Optional<T>,ReducingSink> {
+            private boolean empty;
+            private T state;
+
+            @Override
+            public void begin(long size){
+                empty = true;
+                state = null;
+            }
+
+            @Override
+            public void accept(T t){
+                if(empty){
+                    empty = false;
+                    state = t;
+                }
+                else{
+                    state = operator.apply(state, t);
+                }
+            }
+
+            @Override
+            public Optional<T> get(){
+                return empty ? Optional.empty() : Optional.of(state);
+            }
+
+            @Override
+            public void combine(ReducingSink other){
+                if(!other.empty)
+                    accept(other.state);
+            }
+        }
+        return new ReduceOp<T,Optional<T>,ReducingSink>(StreamShape.REFERENCE) {
+            @Override
+            public ReducingSink makeSink(){
+                return new ReducingSink();
+            }
+        };
+    }
+
+    /**
+     * 创建一个使用Collector的可变归约操作，返回的是还没有执行finisher的结果容器
+     * */
+    public static <T,I> TerminalOp<T,I> makeRef(Collector<? super T,I,?> collector){
+        Supplier<I> supplier = Objects.requireNonNull(collector).supplier();
+        BiConsumer<I,? super T> accumulator = collector.accumulator();
+        BinaryOperator<I> combiner = collector.combiner();
+        class ReducingSink extends Box<I> implements AccumulatingSink<T,I,ReducingSink> {
+            @Override
+            public void begin(long size){
+                state = supplier.get();
+            }
+
+            @Override
+            public void accept(T t){
+                accumulator.accept(state, t);
+            }
+
+            @Override
+            public void combine(ReducingSink other){
+                state = combiner.apply(state, other.state);
+            }
+        }
+        return new ReduceOp<T,I,ReducingSink>(StreamShape.REFERENCE) {
+            @Override
+            public ReducingSink makeSink(){
+                return new ReducingSink();
+            }
+
+            /** 无序的收集器不需要保持顺序 */
+            @Override
+            public int getOpFlags(){
+                return collector.characteristics().contains(Collector.Characteristics.UNORDERED)
+                        ? StreamOpFlag.NOT_ORDERED
+                        : 0;
+            }
+        };
+    }
+
+    /**
+     * 创建一个可变归约操作
+     * @param seedFactory 创建新的结果容器
+     * @param accumulator 把一个元素合并到结果容器当中
+     * @param reducer 把第二个结果容器合并到第一个当中
+     * */
+    public static <T,R> TerminalOp<T,R> makeRef(Supplier<R> seedFactory,
+                                                BiConsumer<R,? super T> accumulator,
+                                                BiConsumer<R,R> reducer){
+        Objects.requireNonNull(seedFactory);
+        Objects.requireNonNull(accumulator);
+        Objects.requireNonNull(reducer);
+        class ReducingSink extends Box<R> implements AccumulatingSink<T,R,ReducingSink> {
+            @Override
+            public void begin(long size){
+                state = seedFactory.get();
+            }
+
+            @Override
+            public void accept(T t){
+                accumulator.accept(state, t);
+            }
+
+            @Override
+            public void combine(ReducingSink other){
+                reducer.accept(state, other.state);
+            }
+        }
+        return new ReduceOp<T,R,ReducingSink>(StreamShape.REFERENCE) {
+            @Override
+            public ReducingSink makeSink(){
+                return new ReducingSink();
+            }
+        };
+    }
+
+    /**
+     * 创建一个int流带初始值的归约操作，状态保存在int字段当中，不会装箱
+     * */
+    public static TerminalOp<Integer,Integer> makeInt(int identity, IntBinaryOperator operator){
+        Objects.requireNonNull(operator);
+        class ReducingSink implements AccumulatingSink<Integer,Integer,ReducingSink>, Sink.OfInt {
+            private int state;
+
+            @Override
+            public void begin(long size){
+                state = identity;
+            }
+
+            @Override
+            public void accept(int t){
+                state = operator.applyAsInt(state, t);
+            }
+
+            @Override
+            public Integer get(){
+                return state;
+            }
+
+            @Override
+            public void combine(ReducingSink other){
+                accept(other.state);
+            }
+        }
+        return new ReduceOp<Integer,Integer,ReducingSink>(StreamShape.INT_VALUE) {
+            @Override
+            public ReducingSink makeSink(){
+                return new ReducingSink();
+            }
+        };
+    }
+
+    /**
+     * 创建一个int流没有初始值的归约操作，流为空的时候返回OptionalInt.empty()
+     * */
+    public static TerminalOp<Integer,OptionalInt> makeInt(IntBinaryOperator operator){
+        Objects.requireNonNull(operator);
+        class ReducingSink implements AccumulatingSink<Integer,OptionalInt,ReducingSink>, Sink.OfInt {
+            private boolean empty;
+            private int state;
+
+            @Override
+            public void begin(long size){
+                empty = true;
+                state = 0;
+            }
+
+            @Override
+            public void accept(int t){
+                if(empty){
+                    empty = false;
+                    state = t;
+                }
+                else{
+                    state = operator.applyAsInt(state, t);
+                }
+            }
+
+            @Override
+            public OptionalInt get(){
+                return empty ? OptionalInt.empty() : OptionalInt.of(state);
+            }
+
+            @Override
+            public void combine(ReducingSink other){
+                if(!other.empty)
+                    accept(other.state);
+            }
+        }
+        return new ReduceOp<Integer,OptionalInt,ReducingSink>(StreamShape.INT_VALUE) {
+            @Override
+            public ReducingSink makeSink(){
+                return new ReducingSink();
+            }
+        };
+    }
+
+    /**
+     * 创建一个int流的可变归约操作
+     * @param supplier 创建新的结果容器
+     * @param accumulator 把一个元素合并到结果容器当中
+     * @param combiner 把第二个结果容器合并到第一个当中
+     * */
+    public static <R> TerminalOp<Integer,R> makeInt(Supplier<R> supplier,
+                                                 ObjIntConsumer<R> accumulator,
+                                                 BiConsumer<R,R> combiner){
+        Objects.requireNonNull(supplier);
+        Objects.requireNonNull(accumulator);
+        Objects.requireNonNull(combiner);
+        class ReducingSink extends Box<R> implements AccumulatingSink<Integer,R,ReducingSink>, Sink.OfInt {
+            @Override
+            public void begin(long size){
+                state = supplier.get();
+            }
+
+            @Override
+            public void accept(int t){
+                accumulator.accept(state, t);
+            }
+
+            @Override
+            public void combine(ReducingSink other){
+                combiner.accept(state, other.state);
+            }
+        }
+        return new ReduceOp<Integer,R,ReducingSink>(StreamShape.INT_VALUE) {
+            @Override
+            public ReducingSink makeSink(){
+                return new ReducingSink();
+            }
+        };
+    }
+
+    /**
+     * 创建一个long流带初始值的归约操作，状态保存在long字段当中，不会装箱
+     * */
+    public static TerminalOp<Long,Long> makeLong(long identity, LongBinaryOperator operator){
+        Objects.requireNonNull(operator);
+        class ReducingSink implements AccumulatingSink<Long,Long,ReducingSink>, Sink.OfLong {
+            private long state;
+
+            @Override
+            public void begin(long size){
+                state = identity;
+            }
+
+            @Override
+            public void accept(long t){
+                state = operator.applyAsLong(state, t);
+            }
+
+            @Override
+            public Long get(){
+                return state;
+            }
+
+            @Override
+            public void combine(ReducingSink other){
+                accept(other.state);
+            }
+        }
+        return new ReduceOp<Long,Long,ReducingSink>(StreamShape.LONG_VALUE) {
+            @Override
+            public ReducingSink makeSink(){
+                return new ReducingSink();
+            }
+        };
+    }
+
+    /**
+     * 创建一个long流没有初始值的归约操作，流为空的时候返回OptionalLong.empty()
+     * */
+    public static TerminalOp<Long,OptionalLong> makeLong(LongBinaryOperator operator){
+        Objects.requireNonNull(operator);
+        class ReducingSink implements AccumulatingSink<Long,OptionalLong,ReducingSink>, Sink.OfLong {
+            private boolean empty;
+            private long state;
+
+            @Override
+            public void begin(long size){
+                empty = true;
+                state = 0;
+            }
+
+            @Override
+            public void accept(long t){
+                if(empty){
+                    empty = false;
+                    state = t;
+                }
+                else{
+                    state = operator.applyAsLong(state, t);
+                }
+            }
+
+            @Override
+            public OptionalLong get(){
+                return empty ? OptionalLong.empty() : OptionalLong.of(state);
+            }
+
+            @Override
+            public void combine(ReducingSink other){
+                if(!other.empty)
+                    accept(other.state);
+            }
+        }
+        return new ReduceOp<Long,OptionalLong,ReducingSink>(StreamShape.LONG_VALUE) {
+            @Override
+            public ReducingSink makeSink(){
+                return new ReducingSink();
+            }
+        };
+    }
+
+    /**
+     * 创建一个long流的可变归约操作
+     * @param supplier 创建新的结果容器
+     * @param accumulator 把一个元素合并到结果容器当中
+     * @param combiner 把第二个结果容器合并到第一个当中
+     * */
+    public static <R> TerminalOp<Long,R> makeLong(Supplier<R> supplier,
+                                                 ObjLongConsumer<R> accumulator,
+                                                 BiConsumer<R,R> combiner){
+        Objects.requireNonNull(supplier);
+        Objects.requireNonNull(accumulator);
+        Objects.requireNonNull(combiner);
+        class ReducingSink extends Box<R> implements AccumulatingSink<Long,R,ReducingSink>, Sink.OfLong {
+            @Override
+            public void begin(long size){
+                state = supplier.get();
+            }
+
+            @Override
+            public void accept(long t){
+                accumulator.accept(state, t);
+            }
+
+            @Override
+            public void combine(ReducingSink other){
+                combiner.accept(state, other.state);
+            }
+        }
+        return new ReduceOp<Long,R,ReducingSink>(StreamShape.LONG_VALUE) {
+            @Override
+            public ReducingSink makeSink(){
+                return new ReducingSink();
+            }
+        };
+    }
+
+    /**
+     * 创建一个double流带初始值的归约操作，状态保存在double字段当中，不会装箱
+     * */
+    public static TerminalOp<Double,Double> makeDouble(double identity, DoubleBinaryOperator operator){
+        Objects.requireNonNull(operator);
+        class ReducingSink implements AccumulatingSink<Double,Double,ReducingSink>, Sink.OfDouble {
+            private double state;
+
+            @Override
+            public void begin(long size){
+                state = identity;
+            }
+
+            @Override
+            public void accept(double t){
+                state = operator.applyAsDouble(state, t);
+            }
+
+            @Override
+            public Double get(){
+                return state;
+            }
+
+            @Override
+            public void combine(ReducingSink other){
+                accept(other.state);
+            }
+        }
+        return new ReduceOp<Double,Double,ReducingSink>(StreamShape.DOUBLE_VALUE) {
+            @Override
+            public ReducingSink makeSink(){
+                return new ReducingSink();
+            }
+        };
+    }
+
+    /**
+     * 创建一个double流没有初始值的归约操作，流为空的时候返回OptionalDouble.empty()
+     * */
+    public static TerminalOp<Double,OptionalDouble> makeDouble(DoubleBinaryOperator operator){
+        Objects.requireNonNull(operator);
+        class ReducingSink implements AccumulatingSink<Double,OptionalDouble,ReducingSink>, Sink.OfDouble {
+            private boolean empty;
+            private double state;
+
+            @Override
+            public void begin(long size){
+                empty = true;
+                state = 0;
+            }
+
+            @Override
+            public void accept(double t){
+                if(empty){
+                    empty = false;
+                    state = t;
+                }
+                else{
+                    state = operator.applyAsDouble(state, t);
+                }
+            }
+
+            @Override
+            public OptionalDouble get(){
+                return empty ? OptionalDouble.empty() : OptionalDouble.of(state);
+            }
+
+            @Override
+            public void combine(ReducingSink other){
+                if(!other.empty)
+                    accept(other.state);
+            }
+        }
+        return new ReduceOp<Double,OptionalDouble,ReducingSink>(StreamShape.DOUBLE_VALUE) {
+            @Override
+            public ReducingSink makeSink(){
+                return new ReducingSink();
+            }
+        };
+    }
+
+    /**
+     * 创建一个double流的可变归约操作
+     * @param supplier 创建新的结果容器
+     * @param accumulator 把一个元素合并到结果容器当中
+     * @param combiner 把第二个结果容器合并到第一个当中
+     * */
+    public static <R> TerminalOp<Double,R> makeDouble(Supplier<R> supplier,
+                                                 ObjDoubleConsumer<R> accumulator,
+                                                 BiConsumer<R,R> combiner){
+        Objects.requireNonNull(supplier);
+        Objects.requireNonNull(accumulator);
+        Objects.requireNonNull(combiner);
+        class ReducingSink extends Box<R> implements AccumulatingSink<Double,R,ReducingSink>, Sink.OfDouble {
+            @Override
+            public void begin(long size){
+                state = supplier.get();
+            }
+
+            @Override
+            public void accept(double t){
+                accumulator.accept(state, t);
+            }
+
+            @Override
+            public void combine(ReducingSink other){
+                combiner.accept(state, other.state);
+            }
+        }
+        return new ReduceOp<Double,R,ReducingSink>(StreamShape.DOUBLE_VALUE) {
+            @Override
+            public ReducingSink makeSink(){
+                return new ReducingSink();
+            }
+        };
+    }
+
+    /**
+     * 创建一个计数操作
+     * 如果管道的大小是已知的，直接返回大小而不遍历元素
+     * */
+    public static <T> TerminalOp<T,Long> makeRefCounting(){
+        return makeCounting(StreamShape.REFERENCE, CountingSink::new);
+    }
+
+    /** 创建一个int流的计数操作 */
+    public static TerminalOp<Integer,Long> makeIntCounting(){
+        return makeCounting(StreamShape.INT_VALUE, CountingSink.OfInt::new);
+    }
+
+    /** 创建一个long流的计数操作 */
+    public static TerminalOp<Long,Long> makeLongCounting(){
+        return makeCounting(StreamShape.LONG_VALUE, CountingSink.OfLong::new);
+    }
+
+    /** 创建一个double流的计数操作 */
+    public static TerminalOp<Double,Long> makeDoubleCounting(){
+        return makeCounting(StreamShape.DOUBLE_VALUE, CountingSink.OfDouble::new);
+    }
+
+    private static <T> TerminalOp<T,Long> makeCounting(StreamShape shape,
+                                                       Supplier<CountingSink<T>> sinkSupplier){
+        return new ReduceOp<T,Long,CountingSink<T>>(shape) {
+            @Override
+            public CountingSink<T> makeSink(){
+                return sinkSupplier.get();
+            }
+
+            @Override
+            public <P_IN> Long evaluateSequential(PipelineHelper<T> helper,
+                                                  Spliterator<P_IN> spliterator){
+                if(StreamOpFlag.SIZED.isKnown(helper.getStreamAndOpFlags()))
+                    return spliterator.getExactSizeIfKnown();
+                return super.evaluateSequential(helper, spliterator);
+            }
+
+            @Override
+            public <P_IN> Long evaluateParallel(PipelineHelper<T> helper,
+                                                Spliterator<P_IN> spliterator){
+                if(StreamOpFlag.SIZED.isKnown(helper.getStreamAndOpFlags()))
+                    return spliterator.getExactSizeIfKnown();
+                return super.evaluateParallel(helper, spliterator);
+            }
+
+            /** 计数的结果和顺序无关 */
+            @Override
+            public int getOpFlags(){
+                return StreamOpFlag.NOT_ORDERED;
+            }
+        };
+    }
+
+    /** 计数的Sink，直接使用long计数，避免每个元素都装箱 */
+    static class CountingSink<T> implements AccumulatingSink<T,Long,CountingSink<T>> {
+        long count;
+
+        @Override
+        public void begin(long size){
+            count = 0L;
+        }
+
+        @Override
+        public void accept(T t){
+            count++;
+        }
+
+        @Override
+        public Long get(){
+            return count;
+        }
+
+        @Override
+        public void combine(CountingSink<T> other){
+            count += other.count;
+        }
+
+        static final class OfInt extends CountingSink<Integer> implements Sink.OfInt {
+            @Override
+            public void accept(int t){
+                count++;
+            }
+        }
+
+        static final class OfLong extends CountingSink<Long> implements Sink.OfLong {
+            @Override
+            public void accept(long t){
+                count++;
+            }
+        }
+
+        static final class OfDouble extends CountingSink<Double> implements Sink.OfDouble {
+            @Override
+            public void accept(double t){
+                count++;
+            }
+        }
+    }
+
+    /**
+     * 可以和另一个同类型的Sink合并结果的终端Sink
+     * @param <K> Sink自身的类型
+     * */
+    interface AccumulatingSink<T,R,K extends AccumulatingSink<T,R,K>> extends TerminalSink<T,R> {
+        void combine(K other);
+    }
+
+    /** 持有一个归约状态的容器 */
+    static abstract class Box<U> {
+        U state;
+
+        Box(){} // 避免创建特殊的访问者
+
+        public U get(){
+            return state;
+        }
+    }
+
+    /**
+     * 归约的终端操作，由makeSink创建的AccumulatingSink完成归约
+     * @param <S> AccumulatingSink的类型
+     * */
+    private static abstract class ReduceOp<T,R,S extends AccumulatingSink<T,R,S>>
+            implements TerminalOp<T,R> {
+        private final StreamShape inputShape;
+
+        ReduceOp(StreamShape shape){
+            inputShape = shape;
+        }
+
+        /** 创建一个新的Sink，并行的时候每个分片都需要一个 */
+        public abstract S makeSink();
+
+        @Override
+        public StreamShape inputShape(){
+            return inputShape;
+        }
+
+        @Override
+        public <P_IN> R evaluateSequential(PipelineHelper<T> helper,
+                                           Spliterator<P_IN> spliterator){
+            return helper.wrapAndCopyInto(makeSink(), spliterator).get();
+        }
+
+        /** 每个叶子任务使用自己的Sink归约，最后两两合并 */
+        @Override
+        public <P_IN> R evaluateParallel(PipelineHelper<T> helper,
+                                         Spliterator<P_IN> spliterator){
+            return new ReduceTask<>(this, helper, spliterator).invoke().get();
+        }
+    }
+
+    /**
+     * 并行归约的任务，叶子任务的结果是一个完成归约的Sink，
+     * 完成的时候把右孩子的Sink合并到左孩子的Sink当中
+     * */
+    @SuppressWarnings("serial")
+    private static final class ReduceTask<P_IN,P_OUT,R,S extends AccumulatingSink<P_OUT,R,S>>
+            extends AbstractTask<P_IN,P_OUT,S,ReduceTask<P_IN,P_OUT,R,S>> {
+        private final ReduceOp<P_OUT,R,S> op;
+
+        ReduceTask(ReduceOp<P_OUT,R,S> op,
+                   PipelineHelper<P_OUT> helper,
+                   Spliterator<P_IN> spliterator){
+            super(helper, spliterator);
+            this.op = op;
+        }
+
+        ReduceTask(ReduceTask<P_IN,P_OUT,R,S> parent,
+                   Spliterator<P_IN> spliterator){
+            super(parent, spliterator);
+            this.op = parent.op;
+        }
+
+        @Override
+        protected ReduceTask<P_IN,P_OUT,R,S> makeChild(Spliterator<P_IN> spliterator){
+            return new ReduceTask<>(this, spliterator);
+        }
+
+        @Override
+        protected S doLeaf(){
+            return helper.wrapAndCopyInto(op.makeSink(), spliterator);
+        }
+
+        @Override
+        public void onCompletion(CountedCompleter<?> caller){
+            if(!isLeaf()){
+                S leftResult = leftChild.getLocalResult();
+                leftResult.combine(rightChild.getLocalResult());
+                setLocalResult(leftResult);
+            }
+            super.onCompletion(caller);
+        }
+    }
+}
@@ -51,7 +51,7 @@ interface Sink<T> extends Consumer<T> {
         @Override
         default void accept(Integer i){
             if(Tripwire.ENABLED)
-                Tripwire.trip(getClass(),"{0} calling Sink.OfInt.accept(Integer)");
+                Tripwire.trip(TripwireMonitor.Kind.BOXING, getClass(),"{0} calling Sink.OfInt.accept(Integer)");
             accept(i.intValue());
         }
     }
@@ -66,7 +66,7 @@ interface Sink<T> extends Consumer<T> {
         @Override
         default void accept(Long i){
             if(Tripwire.ENABLED)
-                Tripwire.trip(getClass(),"{0} calling Sink.LongConsumer.accept(Long)");
+                Tripwire.trip(TripwireMonitor.Kind.BOXING, getClass(),"{0} calling Sink.OfLong.accept(Long)");
             accept(i.longValue());
         }
     }
@@ -81,7 +81,7 @@ interface Sink<T> extends Consumer<T> {
         @Override
         default void accept(Double i){
             if(Tripwire.ENABLED)
-                Tripwire.trip(getClass(),"{0} calling Sink.DoubleConsumer.accept(Double)");
+                Tripwire.trip(TripwireMonitor.Kind.BOXING, getClass(),"{0} calling Sink.OfDouble.accept(Double)");
             accept(i.doubleValue());
         }
     }
@@ -0,0 +1,479 @@
+package com.test.util.stream;
+
+import com.test.util.Spliterator;
+import com.test.util.function.IntFunction;
+
+import java.util.concurrent.CountedCompleter;
+
+/**
+ * 创建截取的有状态中间操作：skip和limit
+ *
+ * 四种形状的操作共用同一个Sink、同一个并行评估的方法和同一个SliceTask，只在创建的时候区分形状
+ * */
+final class SliceOps {
+    private SliceOps(){}
+
+    /**
+     * 计算截取之后的大小
+     * @param size 截取之前的大小，-1表示未知
+     * @param skip 跳过的元素数量
+     * @param limit 最多保留的元素数量
+     * */
+    private static long calcSize(long size, long skip, long limit){
+        return size >= 0 ? Math.max(-1, Math.min(size - skip, limit)) : -1;
+    }
+
+    /** 截取的结束位置skip + limit，没有limit或者溢出的时候为Long.MAX_VALUE */
+    private static long calcSliceFence(long skip, long limit){
+        long sliceFence = limit >= 0 ? skip + limit : Long.MAX_VALUE;
+        return (sliceFence >= 0) ? sliceFence : Long.MAX_VALUE;
+    }
+
+    /** 截取之后大小未知，有limit的时候是短路操作 */
+    private static int flags(long limit){
+        return StreamOpFlag.NOT_SIZED | ((limit != -1) ? StreamOpFlag.IS_SHORT_CIRCUIT : 0);
+    }
+
+    /**
+     * 先跳过skip个元素，再最多保留limit个元素
+     * @param limit 为-1的时候表示不限制
+     * */
+    public static <T> Stream<T> makeRef(AbstractPipeline<?,T,?> upstream,
+                                        long skip, long limit){
+        if(skip < 0)
+            throw new IllegalArgumentException("Skip must be non-negative: " + skip);
+
+        return new ReferencePipeline.StatefulOp<T,T>(upstream, StreamShape.REFERENCE,
+                flags(limit)) {
+            @Override
+            <P_IN> Node<T> opEvaluateParallel(PipelineHelper<T> helper,
+                                              Spliterator<P_IN> spliterator,
+                                              IntFunction<T[]> generator){
+                return evaluateParallel(StreamShape.REFERENCE, helper, spliterator, generator, skip, limit);
+            }
+
+            @Override
+            <P_IN> Spliterator<T> opEvaluateParallelLazy(PipelineHelper<T> helper,
+                                                         Spliterator<P_IN> spliterator){
+                Spliterator<T> s = lazySlice(StreamShape.REFERENCE, helper, spliterator, skip, limit);
+                return s != null ? s : super.opEvaluateParallelLazy(helper, spliterator);
+            }
+
+            @Override
+            Sink<T> opWrapSink(int flags, Sink<T> sink){
+                return sliceSink(StreamShape.REFERENCE, sink, skip, limit);
+            }
+        };
+    }
+
+    /** int流的截取操作 */
+    public static IntStream makeInt(AbstractPipeline<?,Integer,?> upstream,
+                                     long skip, long limit){
+        if(skip < 0)
+            throw new IllegalArgumentException("Skip must be non-negative: " + skip);
+
+        return new IntPipeline.StatefulOp<Integer>(upstream, StreamShape.INT_VALUE,
+                flags(limit)) {
+            @Override
+            <P_IN> Node<Integer> opEvaluateParallel(PipelineHelper<Integer> helper,
+                                                Spliterator<P_IN> spliterator,
+                                                IntFunction<Integer[]> generator){
+                return evaluateParallel(StreamShape.INT_VALUE, helper, spliterator, generator, skip, limit);
+            }
+
+            @Override
+            <P_IN> Spliterator<Integer> opEvaluateParallelLazy(PipelineHelper<Integer> helper,
+                                                         Spliterator<P_IN> spliterator){
+                Spliterator<Integer> s = lazySlice(StreamShape.INT_VALUE, helper, spliterator, skip, limit);
+                return s != null ? s : super.opEvaluateParallelLazy(helper, spliterator);
+            }
+
+            @Override
+            Sink<Integer> opWrapSink(int flags, Sink<Integer> sink){
+                return sliceSink(StreamShape.INT_VALUE, sink, skip, limit);
+            }
+        };
+    }
+
+    /** long流的截取操作 */
+    public static LongStream makeLong(AbstractPipeline<?,Long,?> upstream,
+                                     long skip, long limit){
+        if(skip < 0)
+            throw new IllegalArgumentException("Skip must be non-negative: " + skip);
+
+        return new LongPipeline.StatefulOp<Long>(upstream, StreamShape.LONG_VALUE,
+                flags(limit)) {
+            @Override
+            <P_IN> Node<Long> opEvaluateParallel(PipelineHelper<Long> helper,
+                                                Spliterator<P_IN> spliterator,
+                                                IntFunction<Long[]> generator){
+                return evaluateParallel(StreamShape.LONG_VALUE, helper, spliterator, generator, skip, limit);
+            }
+
+            @Override
+            <P_IN> Spliterator<Long> opEvaluateParallelLazy(PipelineHelper<Long> helper,
+                                                         Spliterator<P_IN> spliterator){
+                Spliterator<Long> s = lazySlice(StreamShape.LONG_VALUE, helper, spliterator, skip, limit);
+                return s != null ? s : super.opEvaluateParallelLazy(helper, spliterator);
+            }
+
+            @Override
+            Sink<Long> opWrapSink(int flags, Sink<Long> sink){
+                return sliceSink(StreamShape.LONG_VALUE, sink, skip, limit);
+            }
+        };
+    }
+
+    /** double流的截取操作 */
+    public static DoubleStream makeDouble(AbstractPipeline<?,Double,?> upstream,
+                                     long skip, long limit){
+        if(skip < 0)
+            throw new IllegalArgumentException("Skip must be non-negative: " + skip);
+
+        return new DoublePipeline.StatefulOp<Double>(upstream, StreamShape.DOUBLE_VALUE,
+                flags(limit)) {
+            @Override
+            <P_IN> Node<Double> opEvaluateParallel(PipelineHelper<Double> helper,
+                                                Spliterator<P_IN> spliterator,
+                                                IntFunction<Double[]> generator){
+                return evaluateParallel(StreamShape.DOUBLE_VALUE, helper, spliterator, generator, skip, limit);
+            }
+
+            @Override
+            <P_IN> Spliterator<Double> opEvaluateParallelLazy(PipelineHelper<Double> helper,
+                                                         Spliterator<P_IN> spliterator){
+                Spliterator<Double> s = lazySlice(StreamShape.DOUBLE_VALUE, helper, spliterator, skip, limit);
+                return s != null ? s : super.opEvaluateParallelLazy(helper, spliterator);
+            }
+
+            @Override
+            Sink<Double> opWrapSink(int flags, Sink<Double> sink){
+                return sliceSink(StreamShape.DOUBLE_VALUE, sink, skip, limit);
+            }
+        };
+    }
+
+    /**
+     * 并行地截取，不会先收集上游所有的元素
+     *
+     * 输出的大小已知并且源是SUBSIZED的时候，截取的位置就是源中的位置，先截取源分裂器再收集，
+     * 截取范围之外的部分在拆分的时候就被丢弃了；
+     * 否则交给SliceTask，每个叶子最多收集自己这一段中的前skip + limit个元素，
+     * 左边的任务已经收集够了之后取消右边的任务
+     * */
+    private static <P_IN, T> Node<T> evaluateParallel(StreamShape shape, PipelineHelper<T> helper,
+                                                      Spliterator<P_IN> spliterator,
+                                                      IntFunction<T[]> generator,
+                                                      long skip, long limit){
+        long size = helper.exactOutputSizeIfKnown(spliterator);
+        if(size > 0 && spliterator.hasCharacteristics(Spliterator.SUBSIZED)){
+            Spliterator<P_IN> s = sliceSpliterator(helper.getSourceShape(), spliterator, skip, limit);
+            return helper.evaluate(s, true, generator);
+        }
+        return new SliceTask<>(shape, helper, spliterator, generator, skip, limit).invoke();
+    }
+
+    /**
+     * 输出的大小已知并且源是SUBSIZED的时候，不收集任何元素，直接返回截取上游输出的分裂器，
+     * 例如parallel().skip(n).limit(m)中的skip交给下游的时候，否则返回null
+     * */
+    private static <P_IN, T> Spliterator<T> lazySlice(StreamShape shape, PipelineHelper<T> helper,
+                                                      Spliterator<P_IN> spliterator,
+                                                      long skip, long limit){
+        long size = helper.exactOutputSizeIfKnown(spliterator);
+        if(size > 0 && spliterator.hasCharacteristics(Spliterator.SUBSIZED))
+            return sliceSpliterator(shape, helper.wrapSpliterator(spliterator), skip, limit);
+        return null;
+    }
+
+    /** 按照源的形状创建截取源分裂器的分裂器 */
+    @SuppressWarnings("unchecked")
+    private static <P_IN> Spliterator<P_IN> sliceSpliterator(StreamShape shape, Spliterator<P_IN> s,
+                                                             long skip, long limit){
+        long sliceFence = calcSliceFence(skip, limit);
+        switch (shape) {
+            case REFERENCE:
+                return new StreamSpliterators.SliceSpliterator.OfRef<>(s, skip, sliceFence);
+            case INT_VALUE:
+                return (Spliterator<P_IN>) new StreamSpliterators.SliceSpliterator.OfInt(
+                        (Spliterator.OfInt) s, skip, sliceFence);
+            case LONG_VALUE:
+                return (Spliterator<P_IN>) new StreamSpliterators.SliceSpliterator.OfLong(
+                        (Spliterator.OfLong) s, skip, sliceFence);
+            case DOUBLE_VALUE:
+                return (Spliterator<P_IN>) new StreamSpliterators.SliceSpliterator.OfDouble(
+                        (Spliterator.OfDouble) s, skip, sliceFence);
+            default:
+                throw new IllegalStateException("Unknown shape " + shape);
+        }
+    }
+
+    /**
+     * 跳过skip个元素，再最多保留limit个元素的Sink，基本类型的Sink不会装箱
+     * @param limit 为-1的时候表示不限制
+     * */
+    @SuppressWarnings({"rawtypes","unchecked"})
+    private static <T> Sink<T> sliceSink(StreamShape shape, Sink<T> sink, long skip, long limit){
+        switch (shape) {
+            case REFERENCE:
+                return new Sink.ChainedReference<T,T>(sink) {
+                    //还需要跳过的元素数量
+                    long n = skip;
+                    //还可以保留的元素数量
+                    long m = limit >= 0 ? limit : Long.MAX_VALUE;
+
+                    @Override
+                    public void begin(long size){
+                        downstream.begin(calcSize(size, skip, m));
+                    }
+
+                    @Override
+                    public void accept(T t){
+                        if(n == 0){
+                            if(m > 0){
+                                m--;
+                                downstream.accept(t);
+                            }
+                        }
+                        else{
+                            n--;
+                        }
+                    }
+
+                    /** 保留了limit个元素之后就不需要更多的元素了 */
+                    @Override
+                    public boolean cancellationRequested(){
+                        return m == 0 || downstream.cancellationRequested();
+                    }
+                };
+            case INT_VALUE:
+                return (Sink<T>) new Sink.ChainedInt<Integer>((Sink) sink) {
+                    long n = skip;
+                    long m = limit >= 0 ? limit : Long.MAX_VALUE;
+
+                    @Override
+                    public void begin(long size){
+                        downstream.begin(calcSize(size, skip, m));
+                    }
+
+                    @Override
+                    public void accept(int t){
+                        if(n == 0){
+                            if(m > 0){
+                                m--;
+                                downstream.accept(t);
+                            }
+                        }
+                        else{
+                            n--;
+                        }
+                    }
+
+                    @Override
+                    public boolean cancellationRequested(){
+                        return m == 0 || downstream.cancellationRequested();
+                    }
+                };
+            case LONG_VALUE:
+                return (Sink<T>) new Sink.ChainedLong<Long>((Sink) sink) {
+                    long n = skip;
+                    long m = limit >= 0 ? limit : Long.MAX_VALUE;
+
+                    @Override
+                    public void begin(long size){
+                        downstream.begin(calcSize(size, skip, m));
+                    }
+
+                    @Override
+                    public void accept(long t){
+                        if(n == 0){
+                            if(m > 0){
+                                m--;
+                                downstream.accept(t);
+                            }
+                        }
+                        else{
+                            n--;
+                        }
+                    }
+
+                    @Override
+                    public boolean cancellationRequested(){
+                        return m == 0 || downstream.cancellationRequested();
+                    }
+                };
+            case DOUBLE_VALUE:
+                return (Sink<T>) new Sink.ChainedDouble<Double>((Sink) sink) {
+                    long n = skip;
+                    long m = limit >= 0 ? limit : Long.MAX_VALUE;
+
+                    @Override
+                    public void begin(long size){
+                        downstream.begin(calcSize(size, skip, m));
+                    }
+
+                    @Override
+                    public void accept(double t){
+                        if(n == 0){
+                            if(m > 0){
+                                m--;
+                                downstream.accept(t);
+                            }
+                        }
+                        else{
+                            n--;
+                        }
+                    }
+
+                    @Override
+                    public boolean cancellationRequested(){
+                        return m == 0 || downstream.cancellationRequested();
+                    }
+                };
+            default:
+                throw new IllegalStateException("Unknown shape " + shape);
+        }
+    }
+
+    /**
+     * 并行截取的短路任务，用于大小未知或者源不是SUBSIZED的时候
+     *
+     * 有limit的时候每个叶子最多收集前skip + limit个元素，更靠后的元素不可能出现在结果中，
+     * 一个任务完成之后，如果它和左边所有已经完成的任务一共收集够了skip + limit个元素，
+     * 就取消右边所有的任务，根任务连接所有孩子的结果之后再截取
+     * */
+    @SuppressWarnings("serial")
+    private static final class SliceTask<P_IN, P_OUT>
+            extends AbstractShortCircuitTask<P_IN, P_OUT, Node<P_OUT>, SliceTask<P_IN, P_OUT>> {
+        private final StreamShape shape;
+        private final IntFunction<P_OUT[]> generator;
+        private final long targetOffset, targetSize;
+
+        /** 当前任务收集到的元素数量，叶子最多收集targetOffset + targetSize个 */
+        private long thisNodeSize;
+
+        /** 当前任务的结果是否已经计算完成 */
+        private volatile boolean completed;
+
+        SliceTask(StreamShape shape, PipelineHelper<P_OUT> helper, Spliterator<P_IN> spliterator,
+                  IntFunction<P_OUT[]> generator, long offset, long size) {
+            super(helper, spliterator);
+            this.shape = shape;
+            this.generator = generator;
+            this.targetOffset = offset;
+            this.targetSize = size;
+        }
+
+        SliceTask(SliceTask<P_IN, P_OUT> parent, Spliterator<P_IN> spliterator) {
+            super(parent, spliterator);
+            this.shape = parent.shape;
+            this.generator = parent.generator;
+            this.targetOffset = parent.targetOffset;
+            this.targetSize = parent.targetSize;
+        }
+
+        @Override
+        protected SliceTask<P_IN, P_OUT> makeChild(Spliterator<P_IN> spliterator) {
+            return new SliceTask<>(this, spliterator);
+        }
+
+        @Override
+        protected Node<P_OUT> getEmptyResult() {
+            Node.Builder<P_OUT> nb = helper.makeNodeBuilder(0, generator);
+            nb.begin(0);
+            nb.end();
+            return nb.build();
+        }
+
+        @Override
+        protected Node<P_OUT> doLeaf() {
+            Node.Builder<P_OUT> nb = helper.makeNodeBuilder(-1, generator);
+            if (isRoot()) {
+                //没有拆分，直接截取
+                helper.copyIntoWithCancel(helper.wrapSink(sliceSink(shape, nb, targetOffset, targetSize)),
+                        spliterator);
+                return nb.build();
+            }
+            if (targetSize < 0)
+                //只有skip的时候，跳过的位置之后的元素都需要
+                helper.wrapAndCopyInto(nb, spliterator);
+            else
+                helper.copyIntoWithCancel(helper.wrapSink(
+                        sliceSink(shape, nb, 0, calcSliceFence(targetOffset, targetSize))), spliterator);
+            Node<P_OUT> node = nb.build();
+            thisNodeSize = node.count();
+            completed = true;
+            spliterator = null;
+            return node;
+        }
+
+        @Override
+        public void onCompletion(CountedCompleter<?> caller) {
+            if (!isLeaf()) {
+                Node<P_OUT> result;
+                thisNodeSize = leftChild.thisNodeSize + rightChild.thisNodeSize;
+                if (canceled) {
+                    thisNodeSize = 0;
+                    result = getEmptyResult();
+                }
+                else if (thisNodeSize == 0)
+                    result = getEmptyResult();
+                else if (leftChild.thisNodeSize == 0)
+                    result = rightChild.getLocalResult();
+                else
+                    result = Nodes.conc(shape, leftChild.getLocalResult(), rightChild.getLocalResult());
+                setLocalResult(isRoot() ? doTruncate(result) : result);
+                completed = true;
+            }
+            if (targetSize >= 0 && !isRoot() && isLeftCompleted(calcSliceFence(targetOffset, targetSize)))
+                cancelLaterNodes();
+            super.onCompletion(caller);
+        }
+
+        /** 已经完成的任务被取消之后，它的结果也不再需要 */
+        @Override
+        protected void cancel() {
+            super.cancel();
+            if (completed)
+                setLocalResult(getEmptyResult());
+        }
+
+        private Node<P_OUT> doTruncate(Node<P_OUT> input) {
+            long count = input.count();
+            long from = Math.min(targetOffset, count);
+            long to = targetSize >= 0 ? from + Math.min(count - from, targetSize) : count;
+            return input.truncate(from, to, generator);
+        }
+
+        /** 当前任务以及所有在它左边的任务一共是否已经收集了至少target个元素 */
+        private boolean isLeftCompleted(long target) {
+            long size = completed ? thisNodeSize : completedSize(target);
+            if (size >= target)
+                return true;
+            for (SliceTask<P_IN, P_OUT> parent = getParent(), node = this;
+                 parent != null;
+                 node = parent, parent = parent.getParent()) {
+                if (node == parent.rightChild) {
+                    SliceTask<P_IN, P_OUT> left = parent.leftChild;
+                    if (left != null) {
+                        size += left.completedSize(target);
+                        if (size >= target)
+                            return true;
+                    }
+                }
+            }
+            return size >= target;
+        }
+
+        /** 当前子树中从左边开始连续完成的任务收集的元素数量，超过target之后不再继续累加 */
+        private long completedSize(long target) {
+            if (completed)
+                return thisNodeSize;
+            SliceTask<P_IN, P_OUT> left = leftChild, right = rightChild;
+            if (left == null || right == null)
+                return thisNodeSize;
+            long leftSize = left.completedSize(target);
+            return (leftSize >= target) ? leftSize : leftSize + right.completedSize(target);
+        }
+    }
+}
@@ -0,0 +1,590 @@
+package com.test.util.stream;
+
+import com.test.util.ArrayList;
+import com.test.util.Comparator;
+import com.test.util.Spliterator;
+import com.test.util.function.IntFunction;
+
+import java.util.Objects;
+
+/**
+ * 创建排序的有状态中间操作
+ *
+ * 排序需要看到所有的元素之后才能向下游发送，
+ * 所以排序的Sink在end()的时候才开始把元素推给下游
+ * */
+final class SortedOps {
+    private SortedOps(){}
+
+    /** 自然顺序的比较器，元素必须实现Comparable */
+    @SuppressWarnings({"unchecked","rawtypes"})
+    private static final Comparator<Object> NATURAL_ORDER =
+            (a, b) -> ((Comparable) a).compareTo(b);
+
+    /** 按自然顺序排序 */
+    static <T> Stream<T> makeRef(AbstractPipeline<?,T,?> upstream){
+        return new OfRef<>(upstream);
+    }
+
+    /** 按给定的比较器排序 */
+    static <T> Stream<T> makeRef(AbstractPipeline<?,T,?> upstream,
+                                 Comparator<? super T> comparator){
+        return new OfRef<>(upstream, comparator);
+    }
+
+    /** int流按从小到大的顺序排序 */
+    static IntStream makeInt(AbstractPipeline<?,Integer,?> upstream){
+        return new OfInt(upstream);
+    }
+
+    /** long流按从小到大的顺序排序 */
+    static LongStream makeLong(AbstractPipeline<?,Long,?> upstream){
+        return new OfLong(upstream);
+    }
+
+    /** double流按从小到大的顺序排序 */
+    static DoubleStream makeDouble(AbstractPipeline<?,Double,?> upstream){
+        return new OfDouble(upstream);
+    }
+
+    /**
+     * 引用流的排序操作
+     * 按自然顺序排序之后会注入SORTED标志，如果上游已经按自然顺序排好序，这个操作什么也不做
+     * */
+    private static final class OfRef<T> extends ReferencePipeline.StatefulOp<T,T> {
+        private final boolean isNaturalSort;
+        private final Comparator<? super T> comparator;
+
+        OfRef(AbstractPipeline<?,T,?> upstream){
+            super(upstream, StreamShape.REFERENCE,
+                    StreamOpFlag.IS_SORDERED | StreamOpFlag.IS_SORTED);
+            this.isNaturalSort = true;
+            this.comparator = NATURAL_ORDER;
+        }
+
+        OfRef(AbstractPipeline<?,T,?> upstream, Comparator<? super T> comparator){
+            super(upstream, StreamShape.REFERENCE,
+                    StreamOpFlag.IS_SORDERED | StreamOpFlag.NOT_SORTED);
+            this.isNaturalSort = false;
+            this.comparator = Objects.requireNonNull(comparator);
+        }
+
+        /** 大小已知的时候直接使用数组，否则使用ArrayList收集元素 */
+        @Override
+        Sink<T> opWrapSink(int flags, Sink<T> sink){
+            Objects.requireNonNull(sink);
+
+            if(StreamOpFlag.SORTED.isKnown(flags) && isNaturalSort)
+                return sink;
+            else if(StreamOpFlag.SIZED.isKnown(flags))
+                return new SizedRefSortingSink<>(sink, comparator);
+            else
+                return new RefSortingSink<>(sink, comparator);
+        }
+
+        @Override
+        <P_IN> Node<T> opEvaluateParallel(PipelineHelper<T> helper,
+                                          Spliterator<P_IN> spliterator,
+                                          IntFunction<T[]> generator){
+            if(StreamOpFlag.SORTED.isKnown(helper.getStreamAndOpFlags()) && isNaturalSort){
+                return helper.evaluate(spliterator, false, generator);
+            }
+            else{
+                T[] flattenedData = helper.evaluate(spliterator, true, generator).asArray(generator);
+                java.util.Arrays.parallelSort(flattenedData, comparator::compare);
+                return Nodes.node(flattenedData);
+            }
+        }
+    }
+
+    /**
+     * int流的排序操作，使用int数组排序，不会装箱
+     * */
+    private static final class OfInt extends IntPipeline.StatefulOp<Integer> {
+        OfInt(AbstractPipeline<?,Integer,?> upstream){
+            super(upstream, StreamShape.INT_VALUE,
+                    StreamOpFlag.IS_SORDERED | StreamOpFlag.IS_SORTED);
+        }
+
+        @Override
+        Sink<Integer> opWrapSink(int flags, Sink<Integer> sink){
+            Objects.requireNonNull(sink);
+
+            if(StreamOpFlag.SORTED.isKnown(flags))
+                return sink;
+            else if(StreamOpFlag.SIZED.isKnown(flags))
+                return new SizedIntSortingSink(sink);
+            else
+                return new IntSortingSink(sink);
+        }
+
+        @Override
+        <P_IN> Node<Integer> opEvaluateParallel(PipelineHelper<Integer> helper,
+                                            Spliterator<P_IN> spliterator,
+                                            IntFunction<Integer[]> generator){
+            if(StreamOpFlag.SORTED.isKnown(helper.getStreamAndOpFlags())){
+                return helper.evaluate(spliterator, false, generator);
+            }
+            else{
+                Node.OfInt n = (Node.OfInt) helper.evaluate(spliterator, true, generator);
+                int[] content = n.asPrimitiveArray();
+                java.util.Arrays.parallelSort(content);
+                return Nodes.node(content);
+            }
+        }
+    }
+
+    /**
+     * long流的排序操作，使用long数组排序，不会装箱
+     * */
+    private static final class OfLong extends LongPipeline.StatefulOp<Long> {
+        OfLong(AbstractPipeline<?,Long,?> upstream){
+            super(upstream, StreamShape.LONG_VALUE,
+                    StreamOpFlag.IS_SORDERED | StreamOpFlag.IS_SORTED);
+        }
+
+        @Override
+        Sink<Long> opWrapSink(int flags, Sink<Long> sink){
+            Objects.requireNonNull(sink);
+
+            if(StreamOpFlag.SORTED.isKnown(flags))
+                return sink;
+            else if(StreamOpFlag.SIZED.isKnown(flags))
+                return new SizedLongSortingSink(sink);
+            else
+                return new LongSortingSink(sink);
+        }
+
+        @Override
+        <P_IN> Node<Long> opEvaluateParallel(PipelineHelper<Long> helper,
+                                            Spliterator<P_IN> spliterator,
+                                            IntFunction<Long[]> generator){
+            if(StreamOpFlag.SORTED.isKnown(helper.getStreamAndOpFlags())){
+                return helper.evaluate(spliterator, false, generator);
+            }
+            else{
+                Node.OfLong n = (Node.OfLong) helper.evaluate(spliterator, true, generator);
+                long[] content = n.asPrimitiveArray();
+                java.util.Arrays.parallelSort(content);
+                return Nodes.node(content);
+            }
+        }
+    }
+
+    /**
+     * double流的排序操作，使用double数组排序，不会装箱
+     * */
+    private static final class OfDouble extends DoublePipeline.StatefulOp<Double> {
+        OfDouble(AbstractPipeline<?,Double,?> upstream){
+            super(upstream, StreamShape.DOUBLE_VALUE,
+                    StreamOpFlag.IS_SORDERED | StreamOpFlag.IS_SORTED);
+        }
+
+        @Override
+        Sink<Double> opWrapSink(int flags, Sink<Double> sink){
+            Objects.requireNonNull(sink);
+
+            if(StreamOpFlag.SORTED.isKnown(flags))
+                return sink;
+            else if(StreamOpFlag.SIZED.isKnown(flags))
+                return new SizedDoubleSortingSink(sink);
+            else
+                return new DoubleSortingSink(sink);
+        }
+
+        @Override
+        <P_IN> Node<Double> opEvaluateParallel(PipelineHelper<Double> helper,
+                                            Spliterator<P_IN> spliterator,
+                                            IntFunction<Double[]> generator){
+            if(StreamOpFlag.SORTED.isKnown(helper.getStreamAndOpFlags())){
+                return helper.evaluate(spliterator, false, generator);
+            }
+            else{
+                Node.OfDouble n = (Node.OfDouble) helper.evaluate(spliterator, true, generator);
+                double[] content = n.asPrimitiveArray();
+                java.util.Arrays.parallelSort(content);
+                return Nodes.node(content);
+            }
+        }
+    }
+
+    /**
+     * 排序Sink的抽象基类
+     * 排序需要所有的元素，所以不能把取消请求传给上游，
+     * 只记录下游是否有过短路操作，在end()的时候推送元素时再检查
+     * */
+    private static abstract class AbstractRefSortingSink<T> extends Sink.ChainedReference<T,T> {
+        protected final Comparator<? super T> comparator;
+        //如果下游有短路操作，为true
+        protected boolean cancellationWasRequested;
+
+        AbstractRefSortingSink(Sink<? super T> downstream, Comparator<? super T> comparator){
+            super(downstream);
+            this.comparator = comparator;
+        }
+
+        @Override
+        public final boolean cancellationRequested(){
+            cancellationWasRequested = true;
+            return false;
+        }
+    }
+
+    /** 大小已知的排序Sink，把元素放入一个固定大小的数组 */
+    private static final class SizedRefSortingSink<T> extends AbstractRefSortingSink<T> {
+        private T[] array;
+        private int offset;
+
+        SizedRefSortingSink(Sink<? super T> sink, Comparator<? super T> comparator){
+            super(sink, comparator);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void begin(long size){
+            if(size >= Nodes.MAX_ARRAY_SIZE)
+                throw new IllegalArgumentException(Nodes.BAD_SIZE);
+            array = (T[]) new Object[(int) size];
+        }
+
+        @Override
+        public void end(){
+            java.util.Arrays.sort(array, 0, offset, comparator::compare);
+            downstream.begin(offset);
+            if(!cancellationWasRequested){
+                for(int i = 0; i < offset; i++)
+                    downstream.accept(array[i]);
+            }
+            else{
+                for(int i = 0; i < offset && !downstream.cancellationRequested(); i++)
+                    downstream.accept(array[i]);
+            }
+            downstream.end();
+            array = null;
+        }
+
+        @Override
+        public void accept(T t){
+            array[offset++] = t;
+        }
+    }
+
+    /** 大小未知的排序Sink，把元素放入一个ArrayList */
+    private static final class RefSortingSink<T> extends AbstractRefSortingSink<T> {
+        private ArrayList<T> list;
+
+        RefSortingSink(Sink<? super T> sink, Comparator<? super T> comparator){
+            super(sink, comparator);
+        }
+
+        @Override
+        public void begin(long size){
+            if(size >= Nodes.MAX_ARRAY_SIZE)
+                throw new IllegalArgumentException(Nodes.BAD_SIZE);
+            list = (size >= 0) ? new ArrayList<>((int) size) : new ArrayList<>();
+        }
+
+        @Override
+        public void end(){
+            list.sort(comparator);
+            downstream.begin(list.size());
+            if(!cancellationWasRequested){
+                for(int i = 0, n = list.size(); i < n; i++)
+                    downstream.accept(list.get(i));
+            }
+            else{
+                for(int i = 0, n = list.size(); i < n && !downstream.cancellationRequested(); i++)
+                    downstream.accept(list.get(i));
+            }
+            downstream.end();
+            list = null;
+        }
+
+        @Override
+        public void accept(T t){
+            list.add(t);
+        }
+    }
+
+    /** int流排序Sink的抽象基类 */
+    private static abstract class AbstractIntSortingSink extends Sink.ChainedInt<Integer> {
+        protected boolean cancellationWasRequested;
+
+        AbstractIntSortingSink(Sink<? super Integer> downstream){
+            super(downstream);
+        }
+
+        @Override
+        public final boolean cancellationRequested(){
+            cancellationWasRequested = true;
+            return false;
+        }
+    }
+
+    /** 大小已知的int排序Sink */
+    private static final class SizedIntSortingSink extends AbstractIntSortingSink {
+        private int[] array;
+        private int offset;
+
+        SizedIntSortingSink(Sink<? super Integer> downstream){
+            super(downstream);
+        }
+
+        @Override
+        public void begin(long size){
+            if(size >= Nodes.MAX_ARRAY_SIZE)
+                throw new IllegalArgumentException(Nodes.BAD_SIZE);
+            array = new int[(int) size];
+        }
+
+        @Override
+        public void end(){
+            java.util.Arrays.sort(array, 0, offset);
+            downstream.begin(offset);
+            if(!cancellationWasRequested){
+                for(int i = 0; i < offset; i++)
+                    downstream.accept(array[i]);
+            }
+            else{
+                for(int i = 0; i < offset && !downstream.cancellationRequested(); i++)
+                    downstream.accept(array[i]);
+            }
+            downstream.end();
+            array = null;
+        }
+
+        @Override
+        public void accept(int t){
+            array[offset++] = t;
+        }
+    }
+
+    /** 大小未知的int排序Sink，把元素放入一个SpinedBuffer.OfInt */
+    private static final class IntSortingSink extends AbstractIntSortingSink {
+        private SpinedBuffer.OfInt b;
+
+        IntSortingSink(Sink<? super Integer> sink){
+            super(sink);
+        }
+
+        @Override
+        public void begin(long size){
+            if(size >= Nodes.MAX_ARRAY_SIZE)
+                throw new IllegalArgumentException(Nodes.BAD_SIZE);
+            b = (size > 0) ? new SpinedBuffer.OfInt((int) size) : new SpinedBuffer.OfInt();
+        }
+
+        @Override
+        public void end(){
+            int[] ints = b.asPrimitiveArray();
+            java.util.Arrays.sort(ints);
+            downstream.begin(ints.length);
+            if(!cancellationWasRequested){
+                for(int aint : ints)
+                    downstream.accept(aint);
+            }
+            else{
+                for(int aint : ints){
+                    if(downstream.cancellationRequested())
+                        break;
+                    downstream.accept(aint);
+                }
+            }
+            downstream.end();
+            b = null;
+        }
+
+        @Override
+        public void accept(int t){
+            b.accept(t);
+        }
+    }
+
+    /** long流排序Sink的抽象基类 */
+    private static abstract class AbstractLongSortingSink extends Sink.ChainedLong<Long> {
+        protected boolean cancellationWasRequested;
+
+        AbstractLongSortingSink(Sink<? super Long> downstream){
+            super(downstream);
+        }
+
+        @Override
+        public final boolean cancellationRequested(){
+            cancellationWasRequested = true;
+            return false;
+        }
+    }
+
+    /** 大小已知的long排序Sink */
+    private static final class SizedLongSortingSink extends AbstractLongSortingSink {
+        private long[] array;
+        private int offset;
+
+        SizedLongSortingSink(Sink<? super Long> downstream){
+            super(downstream);
+        }
+
+        @Override
+        public void begin(long size){
+            if(size >= Nodes.MAX_ARRAY_SIZE)
+                throw new IllegalArgumentException(Nodes.BAD_SIZE);
+            array = new long[(int) size];
+        }
+
+        @Override
+        public void end(){
+            java.util.Arrays.sort(array, 0, offset);
+            downstream.begin(offset);
+            if(!cancellationWasRequested){
+                for(int i = 0; i < offset; i++)
+                    downstream.accept(array[i]);
+            }
+            else{
+                for(int i = 0; i < offset && !downstream.cancellationRequested(); i++)
+                    downstream.accept(array[i]);
+            }
+            downstream.end();
+            array = null;
+        }
+
+        @Override
+        public void accept(long t){
+            array[offset++] = t;
+        }
+    }
+
+    /** 大小未知的long排序Sink，把元素放入一个SpinedBuffer.OfLong */
+    private static final class LongSortingSink extends AbstractLongSortingSink {
+        private SpinedBuffer.OfLong b;
+
+        LongSortingSink(Sink<? super Long> sink){
+            super(sink);
+        }
+
+        @Override
+        public void begin(long size){
+            if(size >= Nodes.MAX_ARRAY_SIZE)
+                throw new IllegalArgumentException(Nodes.BAD_SIZE);
+            b = (size > 0) ? new SpinedBuffer.OfLong((int) size) : new SpinedBuffer.OfLong();
+        }
+
+        @Override
+        public void end(){
+            long[] longs = b.asPrimitiveArray();
+            java.util.Arrays.sort(longs);
+            downstream.begin(longs.length);
+            if(!cancellationWasRequested){
+                for(long along : longs)
+                    downstream.accept(along);
+            }
+            else{
+                for(long along : longs){
+                    if(downstream.cancellationRequested())
+                        break;
+                    downstream.accept(along);
+                }
+            }
+            downstream.end();
+            b = null;
+        }
+
+        @Override
+        public void accept(long t){
+            b.accept(t);
+        }
+    }
+
+    /** double流排序Sink的抽象基类 */
+    private static abstract class AbstractDoubleSortingSink extends Sink.ChainedDouble<Double> {
+        protected boolean cancellationWasRequested;
+
+        AbstractDoubleSortingSink(Sink<? super Double> downstream){
+            super(downstream);
+        }
+
+        @Override
+        public final boolean cancellationRequested(){
+            cancellationWasRequested = true;
+            return false;
+        }
+    }
+
+    /** 大小已知的double排序Sink */
+    private static final class SizedDoubleSortingSink extends AbstractDoubleSortingSink {
+        private double[] array;
+        private int offset;
+
+        SizedDoubleSortingSink(Sink<? super Double> downstream){
+            super(downstream);
+        }
+
+        @Override
+        public void begin(long size){
+            if(size >= Nodes.MAX_ARRAY_SIZE)
+                throw new IllegalArgumentException(Nodes.BAD_SIZE);
+            array = new double[(int) size];
+        }
+
+        @Override
+        public void end(){
+            java.util.Arrays.sort(array, 0, offset);
+            downstream.begin(offset);
+            if(!cancellationWasRequested){
+                for(int i = 0; i < offset; i++)
+                    downstream.accept(array[i]);
+            }
+            else{
+                for(int i = 0; i < offset && !downstream.cancellationRequested(); i++)
+                    downstream.accept(array[i]);
+            }
+            downstream.end();
+            array = null;
+        }
+
+        @Override
+        public void accept(double t){
+            array[offset++] = t;
+        }
+    }
+
+    /** 大小未知的double排序Sink，把元素放入一个SpinedBuffer.OfDouble */
+    private static final class DoubleSortingSink extends AbstractDoubleSortingSink {
+        private SpinedBuffer.OfDouble b;
+
+        DoubleSortingSink(Sink<? super Double> sink){
+            super(sink);
+        }
+
+        @Override
+        public void begin(long size){
+            if(size >= Nodes.MAX_ARRAY_SIZE)
+                throw new IllegalArgumentException(Nodes.BAD_SIZE);
+            b = (size > 0) ? new SpinedBuffer.OfDouble((int) size) : new SpinedBuffer.OfDouble();
+        }
+
+        @Override
+        public void end(){
+            double[] doubles = b.asPrimitiveArray();
+            java.util.Arrays.sort(doubles);
+            downstream.begin(doubles.length);
+            if(!cancellationWasRequested){
+                for(double adouble : doubles)
+                    downstream.accept(adouble);
+            }
+            else{
+                for(double adouble : doubles){
+                    if(downstream.cancellationRequested())
+                        break;
+                    downstream.accept(adouble);
+                }
+            }
+            downstream.end();
+            b = null;
+        }
+
+        @Override
+        public void accept(double t){
+            b.accept(t);
+        }
+    }
+}
@@ -60,7 +60,7 @@ class SpinedBuffer<E>
             inflateSpine();
             for(int i=spineIndex+1;targetSize > capacity;i++){
                 //如果i大于spine.length
-                if(i > spine.length){
+                if(i >= spine.length){
                     //把spine，priorElementCount的容量扩充为原来的两倍
                     int newSpineSize = spine.length * 2;
                     spine = Arrays.copyOf(spine,newSpineSize);
@@ -91,11 +91,11 @@ class SpinedBuffer<E>
                 throw new IndexOutOfBoundsException(Long.toString(index));
         }
 
-        //如果index大于缓存池中的元素总数量，抛出异常
-        if(index > count())
+        //如果index大于等于缓存池中的元素总数量，抛出异常
+        if(index >= count())
             throw new IndexOutOfBoundsException(Long.toString(index));
 
-        for(int j=0;j<spineIndex;j++)
+        for(int j=0;j<=spineIndex;j++)
             // 当index < 索引j之前元素的总和加上spine数组的第j行的长度，表示查找到index元素所在的行
             if(index < priorElementCount[j] + spine[j].length)
                 return spine[j][((int)(index - priorElementCount[j]))];
@@ -132,7 +132,7 @@ class SpinedBuffer<E>
         if(size > Nodes.MAX_ARRAY_SIZE)
             throw new IllegalStateException(Nodes.BAD_SIZE);
         E[] array = arrayFactory.apply((int)size);
-        copyInto(array,array.length);
+        copyInto(array,0);
         return array;
     }
 
@@ -304,12 +304,12 @@ class SpinedBuffer<E>
                 //如果开始索引等于结束索引，那么把splChunk分出去一半
                 else if(splSpineIndex == lastSpineIndex){
                     //得到原来元素的一半的值
-                    int t = (lastSpineElementFence - lastSpineIndex) / 2;
+                    int t = (lastSpineElementFence - splElementIndex) / 2;
                     if(t == 0)
                         return null;
                     else{
-                        //返回开始splChunk数组当中的 splElementIndex 到 splSpineIndex+t 的元素
-                        Spliterator<E> ret = Arrays.spliterator(splChunk,splElementIndex,splSpineIndex + t);
+                        //返回开始splChunk数组当中的 splElementIndex 到 splElementIndex+t 的元素
+                        Spliterator<E> ret = Arrays.spliterator(splChunk,splElementIndex,splElementIndex + t);
                         splElementIndex += t;
                         return ret;
                     }
@@ -330,7 +330,7 @@ class SpinedBuffer<E>
             @Override
             public int characteristics() {return SPLITERATOR_CHARACTERISTICS;}
         }
-        return new Splitr(0,spine.length,0,elementIndex);
+        return new Splitr(0,spineIndex,0,elementIndex);
     }
 
     /** 接受一个元素进入缓冲池 */
@@ -432,7 +432,7 @@ class SpinedBuffer<E>
                     throw new IndexOutOfBoundsException(Long.toString(index));
             }
 
-            if(index > count())
+            if(index >= count())
                 throw new IndexOutOfBoundsException(Long.toString(index));
 
             for(int j=0;j <= spineIndex;j++)
@@ -468,7 +468,7 @@ class SpinedBuffer<E>
             if(size > Nodes.MAX_ARRAY_SIZE)
                 throw new IllegalStateException();
             T_ARR result = newArray((int)size);
-            copyInto(result,arrayLength(result));
+            copyInto(result,0);
             return result;
         }
 
@@ -656,7 +656,7 @@ class SpinedBuffer<E>
                 forEach((IntConsumer)consumer);
             else{
                 if(Tripwire.ENABLED)
-                    Tripwire.trip(getClass(),"{0} calling SpinedBuffer.OfInt.forEach(Consumer)");
+                    Tripwire.trip(TripwireMonitor.Kind.BOXING, getClass(),"{0} calling SpinedBuffer.OfInt.forEach(Consumer)");
                 getSpliterator().forEachRemaining(consumer);
             }
         }
@@ -753,7 +753,7 @@ class SpinedBuffer<E>
                 forEach((LongConsumer)consumer);
             else{
                 if(Tripwire.ENABLED)
-                    Tripwire.trip(getClass(),"{0} calling SpinedBuffer.OfLong.forEach(Consumer)");
+                    Tripwire.trip(TripwireMonitor.Kind.BOXING, getClass(),"{0} calling SpinedBuffer.OfLong.forEach(Consumer)");
                 getSpliterator().forEachRemaining(consumer);
             }
         }
@@ -850,7 +850,7 @@ class SpinedBuffer<E>
                 forEach((DoubleConsumer)consumer);
             else{
                 if(Tripwire.ENABLED)
-                    Tripwire.trip(getClass(),"{0} calling SpinedBuffer.OfDouble.forEach(Consumer)");
+                    Tripwire.trip(TripwireMonitor.Kind.BOXING, getClass(),"{0} calling SpinedBuffer.OfDouble.forEach(Consumer)");
                 getSpliterator().forEachRemaining(consumer);
             }
         }
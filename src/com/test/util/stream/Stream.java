@@ -1,8 +1,10 @@
 package com.test.util.stream;
 
+import com.test.util.Arrays;
 import com.test.util.Collection;
 import com.test.util.Comparator;
 import com.test.util.Optional;
+import com.test.util.Spliterators;
 import com.test.util.function.*;
 
 public interface Stream<T> extends BaseStream<T,Stream<T>> {
@@ -33,7 +35,7 @@ public interface Stream<T> extends BaseStream<T,Stream<T>> {
     /**
      * 把当前Stream<T>流转换为DoubleStream流
      * */
-    DoubleStream mapToDouble(ToDoubleFunction<? super Double> mapper);
+    DoubleStream mapToDouble(ToDoubleFunction<? super T> mapper);
 
     /**
      * 把Stream<T>流转换为Stream<R>流
@@ -191,6 +193,23 @@ public interface Stream<T> extends BaseStream<T,Stream<T>> {
     /** 返回任意的一个元素 */
     Optional<T> findAny();
 
+    /** 返回一个空的顺序流 */
+    public static<T> Stream<T> empty(){
+        return StreamSupport.stream(Spliterators.<T>emptySpliterator(), false);
+    }
+
+    /** 返回只包含一个元素的顺序流 */
+    public static<T> Stream<T> of(T t){
+        return StreamSupport.stream(new Streams.StreamBuilderImpl<>(t), false);
+    }
+
+    /** 返回包含给定元素的顺序流 */
+    @SafeVarargs
+    @SuppressWarnings("varargs") // 从数组创建流是安全的
+    public static<T> Stream<T> of(T... values){
+        return StreamSupport.stream(Arrays.spliterator(values, 0, values.length), false);
+    }
+
     /** 返回一个Stream构造器 */
     public static<T> Builder<T> build(){return new Streams.StreamBuilderImpl<>();}
 
@@ -288,6 +288,20 @@ enum StreamOpFlag {
         }
     }
 
+    /**
+     * 把组合的流和操作标志转换为流标志
+     * (~combOpFlags) >> 1 把每个位区间高位的反转移到低位，
+     * 再和FLAG_MASK_IS以及原标志相与，只有0b01(设置)的位区间会留下来，0b11(保留)和0b10(清除)都变为0
+     * */
+    static int toStreamFlags(int combOpFlags){
+        return ((~combOpFlags) >> 1) & FLAG_MASK_IS & combOpFlags;
+    }
+
+    /** 把流标志转换为spliterator的特征位 */
+    static int toCharacteristics(int streamFlags){
+        return streamFlags & SPLITERATOR_CHARACTERISTICS_MASK;
+    }
+
     public static void main(String[] args) {
         int mask = StreamOpFlag.creatMask(Type.STREAM);
 //        System.out.println(Test.IntegerTo32BinaryString(mask));
@@ -1,9 +1,16 @@
 package com.test.util.stream;
 
+import com.test.util.Comparator;
 import com.test.util.Spliterator;
 import com.test.util.function.BooleanSupplier;
+import com.test.util.function.Consumer;
+import com.test.util.function.DoubleConsumer;
+import com.test.util.function.IntConsumer;
+import com.test.util.function.LongConsumer;
 import com.test.util.function.Supplier;
 
+import java.util.Objects;
+
 /**
  * 用于包装和委托分裂器的实现，
  * 用于Stream#spliterator()方法的实现
@@ -12,7 +19,7 @@ class StreamSpliterators {
     /**
      * 抽象包装spliterator，在第一次操作时绑定到管道助手的分裂器
      * */
-    private static abstract class AbstractWrappingSpliterator<P_IN,P_OUT,T_BUFFER> implements Spliterator<P_OUT> {
+    private static abstract class AbstractWrappingSpliterator<P_IN,P_OUT,T_BUFFER extends AbstractSpinedBuffer> implements Spliterator<P_OUT> {
         //如果此Spliterator支持拆分，则为true
         final boolean isParallel;
 
@@ -63,5 +70,698 @@ class StreamSpliterators {
                 spliteratorSupplier = null;
             }
         }
+
+        /**
+         * 获取缓冲区中的下一个元素，缓冲区为空的时候从源分裂器中推入元素，
+         * 直到缓冲区中有元素或者源分裂器耗尽
+         * 如果还有元素可以消费，返回true
+         * */
+        final boolean doAdvance(){
+            boolean hasNext;
+            if(buffer == null){
+                if(finished)
+                    return false;
+
+                init();
+                initPartialTraversalState();
+                nextToConsume = 0;
+                bufferSink.begin(spliterator.getExactSizeIfKnown());
+                return fillBuffer();
+            }
+            else{
+                ++nextToConsume;
+                hasNext = nextToConsume < buffer.count();
+                if(!hasNext){
+                    nextToConsume = 0;
+                    buffer.clear();
+                    hasNext = fillBuffer();
+                }
+                return hasNext;
+            }
+        }
+
+        /** 用拆分出来的源分裂器创建一个同类型的包装分裂器 */
+        abstract AbstractWrappingSpliterator<P_IN,P_OUT,?> wrap(Spliterator<P_IN> s);
+
+        /** 初始化缓冲区、缓冲区的Sink以及推进器，只在第一次部分遍历的时候调用 */
+        abstract void initPartialTraversalState();
+
+        /** 只有并行并且还没有开始遍历的时候才能拆分 */
+        @Override
+        public Spliterator<P_OUT> trySplit(){
+            if(isParallel && buffer == null && !finished){
+                init();
+
+                Spliterator<P_IN> split = spliterator.trySplit();
+                return (split == null) ? null : wrap(split);
+            }
+            else
+                return null;
+        }
+
+        /**
+         * 如果缓冲区为空，推入元素直到缓冲区中有元素
+         * 源分裂器耗尽或者请求取消的时候结束Sink
+         * */
+        private boolean fillBuffer(){
+            while(buffer.count() == 0){
+                if(bufferSink.cancellationRequested() || !pusher.getAsBoolean()){
+                    if(finished)
+                        return false;
+                    else{
+                        bufferSink.end();//可能会把更多的元素推入缓冲区
+                        finished = true;
+                    }
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public final long estimateSize(){
+            init();
+            //使用源分裂器的估计值，中间操作可能会过滤掉一部分元素
+            return spliterator.estimateSize();
+        }
+
+        @Override
+        public final long getExactSizeIfKnown(){
+            init();
+            return StreamOpFlag.SIZED.isKnown(ph.getStreamAndOpFlags())
+                    ? spliterator.getExactSizeIfKnown()
+                    : -1;
+        }
+
+        /** 特征位由管道的组合标志决定，SIZED和SUBSIZED取决于源分裂器 */
+        @Override
+        public final int characteristics(){
+            init();
+
+            int c = StreamOpFlag.toCharacteristics(StreamOpFlag.toStreamFlags(ph.getStreamAndOpFlags()));
+
+            if((c & Spliterator.SIZED) != 0){
+                c &= ~(Spliterator.SIZED | Spliterator.SUBSIZED);
+                c |= (spliterator.characteristics() & (Spliterator.SIZED | Spliterator.SUBSIZED));
+            }
+
+            return c;
+        }
+
+        @Override
+        public Comparator<? super P_OUT> getComparator(){
+            if(!hasCharacteristics(SORTED))
+                throw new IllegalStateException();
+            return null;
+        }
+
+        @Override
+        public final String toString(){
+            return String.format("%s[%s]", getClass().getName(), spliterator);
+        }
+    }
+
+    /**
+     * 包装一个引用管道的分裂器，部分遍历时用SpinedBuffer缓冲管道的输出
+     * */
+    static final class WrappingSpliterator<P_IN,P_OUT>
+            extends AbstractWrappingSpliterator<P_IN,P_OUT,SpinedBuffer<P_OUT>> {
+
+        WrappingSpliterator(PipelineHelper<P_OUT> ph,
+                            Supplier<Spliterator<P_IN>> supplier,
+                            boolean parallel) {
+            super(ph, supplier, parallel);
+        }
+
+        WrappingSpliterator(PipelineHelper<P_OUT> ph,
+                            Spliterator<P_IN> spliterator,
+                            boolean parallel) {
+            super(ph, spliterator, parallel);
+        }
+
+        @Override
+        WrappingSpliterator<P_IN,P_OUT> wrap(Spliterator<P_IN> s){
+            return new WrappingSpliterator<>(ph, s, isParallel);
+        }
+
+        @Override
+        void initPartialTraversalState(){
+            SpinedBuffer<P_OUT> b = new SpinedBuffer<>();
+            buffer = b;
+            bufferSink = ph.wrapSink(b::accept);
+            pusher = () -> spliterator.tryAdvance(bufferSink);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super P_OUT> consumer){
+            Objects.requireNonNull(consumer);
+            boolean hasNext = doAdvance();
+            if(hasNext)
+                consumer.accept(buffer.get(nextToConsume));
+            return hasNext;
+        }
+
+        /** 还没有开始部分遍历的时候，直接把整个管道推入consumer，不经过缓冲区 */
+        @Override
+        @SuppressWarnings("unchecked")
+        public void forEachRemaining(Consumer<? super P_OUT> consumer){
+            if(buffer == null && !finished){
+                Objects.requireNonNull(consumer);
+                init();
+
+                ph.wrapAndCopyInto((Sink<P_OUT>) consumer::accept, spliterator);
+                finished = true;
+            }
+            else{
+                do{}while(tryAdvance(consumer));
+            }
+        }
+    }
+
+    /**
+     * 包装一个Int管道的分裂器，部分遍历时用SpinedBuffer.OfInt缓冲管道的输出，元素不会被装箱
+     * */
+    static final class IntWrappingSpliterator<P_IN>
+            extends AbstractWrappingSpliterator<P_IN,Integer,SpinedBuffer.OfInt>
+            implements Spliterator.OfInt {
+
+        IntWrappingSpliterator(PipelineHelper<Integer> ph,
+                            Supplier<Spliterator<P_IN>> supplier,
+                            boolean parallel) {
+            super(ph, supplier, parallel);
+        }
+
+        IntWrappingSpliterator(PipelineHelper<Integer> ph,
+                            Spliterator<P_IN> spliterator,
+                            boolean parallel) {
+            super(ph, spliterator, parallel);
+        }
+
+        @Override
+        AbstractWrappingSpliterator<P_IN,Integer,?> wrap(Spliterator<P_IN> s){
+            return new IntWrappingSpliterator<>(ph, s, isParallel);
+        }
+
+        @Override
+        void initPartialTraversalState(){
+            SpinedBuffer.OfInt b = new SpinedBuffer.OfInt();
+            buffer = b;
+            bufferSink = ph.wrapSink((Sink.OfInt) b::accept);
+            pusher = () -> spliterator.tryAdvance(bufferSink);
+        }
+
+        @Override
+        public Spliterator.OfInt trySplit(){
+            return (Spliterator.OfInt) super.trySplit();
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer consumer){
+            Objects.requireNonNull(consumer);
+            boolean hasNext = doAdvance();
+            if(hasNext)
+                consumer.accept(buffer.get(nextToConsume));
+            return hasNext;
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer consumer){
+            if(buffer == null && !finished){
+                Objects.requireNonNull(consumer);
+                init();
+
+                ph.wrapAndCopyInto((Sink.OfInt) consumer::accept, spliterator);
+                finished = true;
+            }
+            else{
+                do{}while(tryAdvance(consumer));
+            }
+        }
+    }
+
+    /**
+     * 包装一个Long管道的分裂器，部分遍历时用SpinedBuffer.OfLong缓冲管道的输出，元素不会被装箱
+     * */
+    static final class LongWrappingSpliterator<P_IN>
+            extends AbstractWrappingSpliterator<P_IN,Long,SpinedBuffer.OfLong>
+            implements Spliterator.OfLong {
+
+        LongWrappingSpliterator(PipelineHelper<Long> ph,
+                            Supplier<Spliterator<P_IN>> supplier,
+                            boolean parallel) {
+            super(ph, supplier, parallel);
+        }
+
+        LongWrappingSpliterator(PipelineHelper<Long> ph,
+                            Spliterator<P_IN> spliterator,
+                            boolean parallel) {
+            super(ph, spliterator, parallel);
+        }
+
+        @Override
+        AbstractWrappingSpliterator<P_IN,Long,?> wrap(Spliterator<P_IN> s){
+            return new LongWrappingSpliterator<>(ph, s, isParallel);
+        }
+
+        @Override
+        void initPartialTraversalState(){
+            SpinedBuffer.OfLong b = new SpinedBuffer.OfLong();
+            buffer = b;
+            bufferSink = ph.wrapSink((Sink.OfLong) b::accept);
+            pusher = () -> spliterator.tryAdvance(bufferSink);
+        }
+
+        @Override
+        public Spliterator.OfLong trySplit(){
+            return (Spliterator.OfLong) super.trySplit();
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer consumer){
+            Objects.requireNonNull(consumer);
+            boolean hasNext = doAdvance();
+            if(hasNext)
+                consumer.accept(buffer.get(nextToConsume));
+            return hasNext;
+        }
+
+        @Override
+        public void forEachRemaining(LongConsumer consumer){
+            if(buffer == null && !finished){
+                Objects.requireNonNull(consumer);
+                init();
+
+                ph.wrapAndCopyInto((Sink.OfLong) consumer::accept, spliterator);
+                finished = true;
+            }
+            else{
+                do{}while(tryAdvance(consumer));
+            }
+        }
+    }
+
+    /**
+     * 包装一个Double管道的分裂器，部分遍历时用SpinedBuffer.OfDouble缓冲管道的输出，元素不会被装箱
+     * */
+    static final class DoubleWrappingSpliterator<P_IN>
+            extends AbstractWrappingSpliterator<P_IN,Double,SpinedBuffer.OfDouble>
+            implements Spliterator.OfDouble {
+
+        DoubleWrappingSpliterator(PipelineHelper<Double> ph,
+                            Supplier<Spliterator<P_IN>> supplier,
+                            boolean parallel) {
+            super(ph, supplier, parallel);
+        }
+
+        DoubleWrappingSpliterator(PipelineHelper<Double> ph,
+                            Spliterator<P_IN> spliterator,
+                            boolean parallel) {
+            super(ph, spliterator, parallel);
+        }
+
+        @Override
+        AbstractWrappingSpliterator<P_IN,Double,?> wrap(Spliterator<P_IN> s){
+            return new DoubleWrappingSpliterator<>(ph, s, isParallel);
+        }
+
+        @Override
+        void initPartialTraversalState(){
+            SpinedBuffer.OfDouble b = new SpinedBuffer.OfDouble();
+            buffer = b;
+            bufferSink = ph.wrapSink((Sink.OfDouble) b::accept);
+            pusher = () -> spliterator.tryAdvance(bufferSink);
+        }
+
+        @Override
+        public Spliterator.OfDouble trySplit(){
+            return (Spliterator.OfDouble) super.trySplit();
+        }
+
+        @Override
+        public boolean tryAdvance(DoubleConsumer consumer){
+            Objects.requireNonNull(consumer);
+            boolean hasNext = doAdvance();
+            if(hasNext)
+                consumer.accept(buffer.get(nextToConsume));
+            return hasNext;
+        }
+
+        @Override
+        public void forEachRemaining(DoubleConsumer consumer){
+            if(buffer == null && !finished){
+                Objects.requireNonNull(consumer);
+                init();
+
+                ph.wrapAndCopyInto((Sink.OfDouble) consumer::accept, spliterator);
+                finished = true;
+            }
+            else{
+                do{}while(tryAdvance(consumer));
+            }
+        }
+    }
+
+    /**
+     * 延迟获取分裂器的委托分裂器，第一次调用任何方法时才从供应商处获取真正的分裂器
+     * */
+    static class DelegatingSpliterator<T,T_SPLITR extends Spliterator<T>> implements Spliterator<T> {
+        private final Supplier<? extends T_SPLITR> supplier;
+
+        private T_SPLITR s;
+
+        DelegatingSpliterator(Supplier<? extends T_SPLITR> supplier){
+            this.supplier = supplier;
+        }
+
+        T_SPLITR get(){
+            if(s == null){
+                s = supplier.get();
+            }
+            return s;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T_SPLITR trySplit(){
+            return (T_SPLITR) get().trySplit();
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> consumer){
+            return get().tryAdvance(consumer);
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> consumer){
+            get().forEachRemaining(consumer);
+        }
+
+        @Override
+        public long estimateSize(){
+            return get().estimateSize();
+        }
+
+        @Override
+        public int characteristics(){
+            return get().characteristics();
+        }
+
+        @Override
+        public Comparator<? super T> getComparator(){
+            return get().getComparator();
+        }
+
+        @Override
+        public long getExactSizeIfKnown(){
+            return get().getExactSizeIfKnown();
+        }
+
+        @Override
+        public String toString(){
+            return getClass().getName() + "[" + get() + "]";
+        }
+
+        /** 基本类型分裂器的委托分裂器，基本类型的tryAdvance和forEachRemaining也直接委托 */
+        static class OfPrimitive<T,T_CONS,T_SPLITR extends Spliterator.OfPrimitive<T,T_CONS,T_SPLITR>>
+                extends DelegatingSpliterator<T,T_SPLITR>
+                implements Spliterator.OfPrimitive<T,T_CONS,T_SPLITR> {
+            OfPrimitive(Supplier<? extends T_SPLITR> supplier){
+                super(supplier);
+            }
+
+            @Override
+            public boolean tryAdvance(T_CONS consumer){
+                return get().tryAdvance(consumer);
+            }
+
+            @Override
+            public void forEachRemaining(T_CONS consumer){
+                get().forEachRemaining(consumer);
+            }
+        }
+
+        /** Int分裂器的委托分裂器 */
+        static final class OfInt
+                extends OfPrimitive<Integer,IntConsumer,Spliterator.OfInt>
+                implements Spliterator.OfInt {
+            OfInt(Supplier<Spliterator.OfInt> supplier){
+                super(supplier);
+            }
+        }
+
+        /** Long分裂器的委托分裂器 */
+        static final class OfLong
+                extends OfPrimitive<Long,LongConsumer,Spliterator.OfLong>
+                implements Spliterator.OfLong {
+            OfLong(Supplier<Spliterator.OfLong> supplier){
+                super(supplier);
+            }
+        }
+
+        /** Double分裂器的委托分裂器 */
+        static final class OfDouble
+                extends OfPrimitive<Double,DoubleConsumer,Spliterator.OfDouble>
+                implements Spliterator.OfDouble {
+            OfDouble(Supplier<Spliterator.OfDouble> supplier){
+                super(supplier);
+            }
+        }
+    }
+
+    /**
+     * 截取源分裂器中[sliceOrigin, sliceFence)这一段元素的分裂器，用于SUBSIZED的源上的并行skip和limit
+     *
+     * index是下一个元素在源中的位置，fence是当前分裂器覆盖的范围的结束位置，
+     * 拆分的时候完全落在截取范围之外的一半直接丢弃，不会被遍历，
+     * 完全落在截取范围之内的一半直接返回源的分裂器，所以拆分之后的大小仍然是精确的
+     * */
+    static abstract class SliceSpliterator<T,T_SPLITR extends Spliterator<T>> {
+        final long sliceOrigin;
+        final long sliceFence;
+
+        T_SPLITR s;
+        long index;
+        long fence;
+
+        SliceSpliterator(T_SPLITR s, long sliceOrigin, long sliceFence, long origin, long fence){
+            assert s.hasCharacteristics(Spliterator.SUBSIZED);
+            this.s = s;
+            this.sliceOrigin = sliceOrigin;
+            this.sliceFence = sliceFence;
+            this.index = origin;
+            this.fence = fence;
+        }
+
+        protected abstract T_SPLITR makeSpliterator(T_SPLITR s, long sliceOrigin, long sliceFence,
+                                                    long origin, long fence);
+
+        @SuppressWarnings("unchecked")
+        public T_SPLITR trySplit(){
+            if(sliceOrigin >= fence || index >= fence)
+                return null;
+            while(true){
+                T_SPLITR leftSplit = (T_SPLITR) s.trySplit();
+                if(leftSplit == null)
+                    return null;
+                long leftSplitFenceUnbounded = index + leftSplit.estimateSize();
+                long leftSplitFence = Math.min(leftSplitFenceUnbounded, sliceFence);
+                if(sliceOrigin >= leftSplitFence){
+                    //左边一半都在截取范围之前，丢弃
+                    index = leftSplitFence;
+                }
+                else if(leftSplitFence >= sliceFence){
+                    //右边一半都在截取范围之后，丢弃
+                    s = leftSplit;
+                    fence = leftSplitFence;
+                }
+                else if(index >= sliceOrigin && leftSplitFenceUnbounded <= sliceFence){
+                    //左边一半都在截取范围之内
+                    index = leftSplitFence;
+                    return leftSplit;
+                }
+                else{
+                    return makeSpliterator(leftSplit, sliceOrigin, sliceFence, index, index = leftSplitFence);
+                }
+            }
+        }
+
+        public long estimateSize(){
+            return (sliceOrigin < fence) ? fence - Math.max(sliceOrigin, index) : 0;
+        }
+
+        public int characteristics(){
+            return s.characteristics();
+        }
+
+        /** 引用类型的截取分裂器 */
+        static final class OfRef<T>
+                extends SliceSpliterator<T,Spliterator<T>>
+                implements Spliterator<T> {
+            OfRef(Spliterator<T> s, long sliceOrigin, long sliceFence){
+                this(s, sliceOrigin, sliceFence, 0, Math.min(s.estimateSize(), sliceFence));
+            }
+
+            private OfRef(Spliterator<T> s, long sliceOrigin, long sliceFence, long origin, long fence){
+                super(s, sliceOrigin, sliceFence, origin, fence);
+            }
+
+            @Override
+            protected Spliterator<T> makeSpliterator(Spliterator<T> s, long sliceOrigin, long sliceFence,
+                                                     long origin, long fence){
+                return new OfRef<>(s, sliceOrigin, sliceFence, origin, fence);
+            }
+
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action){
+                Objects.requireNonNull(action);
+                if(sliceOrigin >= fence)
+                    return false;
+                while(sliceOrigin > index){
+                    s.tryAdvance(e -> {});
+                    index++;
+                }
+                if(index >= fence)
+                    return false;
+                index++;
+                return s.tryAdvance(action);
+            }
+
+            @Override
+            public void forEachRemaining(Consumer<? super T> action){
+                Objects.requireNonNull(action);
+                if(sliceOrigin >= fence || index >= fence)
+                    return;
+                if(index >= sliceOrigin && (index + s.estimateSize()) <= sliceFence){
+                    //剩下的元素都在截取范围之内
+                    s.forEachRemaining(action);
+                    index = fence;
+                }
+                else{
+                    while(sliceOrigin > index){
+                        s.tryAdvance(e -> {});
+                        index++;
+                    }
+                    for(; index < fence; index++)
+                        s.tryAdvance(action);
+                }
+            }
+        }
+
+        /** 基本类型的截取分裂器，跳过的元素交给emptyConsumer()，不会装箱 */
+        static abstract class OfPrimitive<T,T_CONS,T_SPLITR extends Spliterator.OfPrimitive<T,T_CONS,T_SPLITR>>
+                extends SliceSpliterator<T,T_SPLITR>
+                implements Spliterator.OfPrimitive<T,T_CONS,T_SPLITR> {
+            OfPrimitive(T_SPLITR s, long sliceOrigin, long sliceFence, long origin, long fence){
+                super(s, sliceOrigin, sliceFence, origin, fence);
+            }
+
+            /** 丢弃元素的消费者 */
+            protected abstract T_CONS emptyConsumer();
+
+            @Override
+            public boolean tryAdvance(T_CONS action){
+                Objects.requireNonNull(action);
+                if(sliceOrigin >= fence)
+                    return false;
+                while(sliceOrigin > index){
+                    s.tryAdvance(emptyConsumer());
+                    index++;
+                }
+                if(index >= fence)
+                    return false;
+                index++;
+                return s.tryAdvance(action);
+            }
+
+            @Override
+            public void forEachRemaining(T_CONS action){
+                Objects.requireNonNull(action);
+                if(sliceOrigin >= fence || index >= fence)
+                    return;
+                if(index >= sliceOrigin && (index + s.estimateSize()) <= sliceFence){
+                    s.forEachRemaining(action);
+                    index = fence;
+                }
+                else{
+                    while(sliceOrigin > index){
+                        s.tryAdvance(emptyConsumer());
+                        index++;
+                    }
+                    for(; index < fence; index++)
+                        s.tryAdvance(action);
+                }
+            }
+        }
+
+        /** int的截取分裂器 */
+        static final class OfInt
+                extends OfPrimitive<Integer,IntConsumer,Spliterator.OfInt>
+                implements Spliterator.OfInt {
+            OfInt(Spliterator.OfInt s, long sliceOrigin, long sliceFence){
+                this(s, sliceOrigin, sliceFence, 0, Math.min(s.estimateSize(), sliceFence));
+            }
+
+            private OfInt(Spliterator.OfInt s, long sliceOrigin, long sliceFence, long origin, long fence){
+                super(s, sliceOrigin, sliceFence, origin, fence);
+            }
+
+            @Override
+            protected Spliterator.OfInt makeSpliterator(Spliterator.OfInt s, long sliceOrigin, long sliceFence,
+                                                        long origin, long fence){
+                return new SliceSpliterator.OfInt(s, sliceOrigin, sliceFence, origin, fence);
+            }
+
+            @Override
+            protected IntConsumer emptyConsumer(){
+                return e -> {};
+            }
+        }
+
+        /** long的截取分裂器 */
+        static final class OfLong
+                extends OfPrimitive<Long,LongConsumer,Spliterator.OfLong>
+                implements Spliterator.OfLong {
+            OfLong(Spliterator.OfLong s, long sliceOrigin, long sliceFence){
+                this(s, sliceOrigin, sliceFence, 0, Math.min(s.estimateSize(), sliceFence));
+            }
+
+            private OfLong(Spliterator.OfLong s, long sliceOrigin, long sliceFence, long origin, long fence){
+                super(s, sliceOrigin, sliceFence, origin, fence);
+            }
+
+            @Override
+            protected Spliterator.OfLong makeSpliterator(Spliterator.OfLong s, long sliceOrigin, long sliceFence,
+                                                         long origin, long fence){
+                return new SliceSpliterator.OfLong(s, sliceOrigin, sliceFence, origin, fence);
+            }
+
+            @Override
+            protected LongConsumer emptyConsumer(){
+                return e -> {};
+            }
+        }
+
+        /** double的截取分裂器 */
+        static final class OfDouble
+                extends OfPrimitive<Double,DoubleConsumer,Spliterator.OfDouble>
+                implements Spliterator.OfDouble {
+            OfDouble(Spliterator.OfDouble s, long sliceOrigin, long sliceFence){
+                this(s, sliceOrigin, sliceFence, 0, Math.min(s.estimateSize(), sliceFence));
+            }
+
+            private OfDouble(Spliterator.OfDouble s, long sliceOrigin, long sliceFence, long origin, long fence){
+                super(s, sliceOrigin, sliceFence, origin, fence);
+            }
+
+            @Override
+            protected Spliterator.OfDouble makeSpliterator(Spliterator.OfDouble s, long sliceOrigin, long sliceFence,
+                                                           long origin, long fence){
+                return new SliceSpliterator.OfDouble(s, sliceOrigin, sliceFence, origin, fence);
+            }
+
+            @Override
+            protected DoubleConsumer emptyConsumer(){
+                return e -> {};
+            }
+        }
     }
 }
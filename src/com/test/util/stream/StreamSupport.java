@@ -10,8 +10,35 @@ import java.util.Objects;
 public final class StreamSupport {
     private StreamSupport(){}
 
+    /**
+     * 根据分裂器创建一个流，分裂器的特征会转换为源阶段的流标志
+     * 分裂器只会在终端操作开始的时候才被遍历
+     * */
     public static<T> Stream<T> stream(Spliterator<T> spliterator,boolean parallel){
         Objects.requireNonNull(spliterator);
-        return null;
+        return new ReferencePipeline.Head<>(spliterator,
+                StreamOpFlag.fromCharacteristics(spliterator),
+                parallel);
     }
-}
\ No newline at end of file
+
+    /** 根据Int分裂器创建一个IntStream，元素不会被装箱 */
+    public static IntStream intStream(Spliterator.OfInt spliterator, boolean parallel){
+        return new IntPipeline.Head<>(spliterator,
+                StreamOpFlag.fromCharacteristics(spliterator),
+                parallel);
+    }
+
+    /** 根据Long分裂器创建一个LongStream，元素不会被装箱 */
+    public static LongStream longStream(Spliterator.OfLong spliterator, boolean parallel){
+        return new LongPipeline.Head<>(spliterator,
+                StreamOpFlag.fromCharacteristics(spliterator),
+                parallel);
+    }
+
+    /** 根据Double分裂器创建一个DoubleStream，元素不会被装箱 */
+    public static DoubleStream doubleStream(Spliterator.OfDouble spliterator, boolean parallel){
+        return new DoublePipeline.Head<>(spliterator,
+                StreamOpFlag.fromCharacteristics(spliterator),
+                parallel);
+    }
+}
@@ -1,11 +1,212 @@
 package com.test.util.stream;
 
+import com.test.util.Comparator;
 import com.test.util.Spliterator;
 import com.test.util.function.Consumer;
+import com.test.util.function.IntConsumer;
+import com.test.util.function.LongConsumer;
 
 import java.util.Objects;
 
 final class Streams {
+
+    /** 区间的元素个数大于这个值的时候，拆分点按照右边多分一些来选取 */
+    private static final int BALANCED_SPLIT_THRESHOLD = 1 << 24;
+
+    /** 拆分的时候左边占1/8，右边留下7/8，右边会继续被拆分 */
+    private static final int RIGHT_BALANCED_SPLIT_RATIO = 1 << 3;
+
+    /**
+     * IntStream.range和rangeClosed的分裂器，区间是[from, upTo)，
+     * 闭区间的时候last为1，表示upTo本身还没有被遍历
+     *
+     * 使用last而不是直接把upTo加1，是为了在upTo等于Integer.MAX_VALUE的时候不会溢出
+     * */
+    static final class RangeIntSpliterator implements Spliterator.OfInt {
+        //下一个要遍历的元素，from == upTo并且last == 0的时候表示遍历完成
+        private int from;
+        private final int upTo;
+        //闭区间并且还没有遍历upTo的时候为1，否则为0
+        private int last;
+
+        RangeIntSpliterator(int from, int upTo, boolean closed){
+            this(from, upTo, closed ? 1 : 0);
+        }
+
+        private RangeIntSpliterator(int from, int upTo, int last){
+            this.from = from;
+            this.upTo = upTo;
+            this.last = last;
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer consumer){
+            Objects.requireNonNull(consumer);
+
+            final int i = from;
+            if(i < upTo){
+                from++;
+                consumer.accept(i);
+                return true;
+            }
+            else if(last > 0){
+                last = 0;
+                consumer.accept(i);
+                return true;
+            }
+            return false;
+        }
+
+        /** 直接在局部变量上循环，避免每个元素都写回字段 */
+        @Override
+        public void forEachRemaining(IntConsumer consumer){
+            Objects.requireNonNull(consumer);
+
+            int i = from;
+            final int hUpTo = upTo;
+            int hLast = last;
+            from = upTo;
+            last = 0;
+            while(i < hUpTo){
+                consumer.accept(i++);
+            }
+            if(hLast > 0){
+                consumer.accept(i);
+            }
+        }
+
+        @Override
+        public long estimateSize(){
+            return ((long) upTo) - from + last;
+        }
+
+        @Override
+        public int characteristics(){
+            return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED |
+                    Spliterator.IMMUTABLE | Spliterator.NONULL |
+                    Spliterator.DISTINCT | Spliterator.SORTED;
+        }
+
+        /** 按自然顺序排序 */
+        @Override
+        public Comparator<? super Integer> getComparator(){
+            return null;
+        }
+
+        /** 从中间对半拆分，左边的区间是[from, mid)，右边的区间留在当前分裂器 */
+        @Override
+        public Spliterator.OfInt trySplit(){
+            long size = estimateSize();
+            return size <= 1
+                    ? null
+                    : new RangeIntSpliterator(from, from = from + splitPoint(size), 0);
+        }
+
+        /**
+         * 元素很多的时候，拆分点取为BALANCED_SPLIT_THRESHOLD个叶子的整数倍，
+         * 让叶子的大小尽量相同
+         * */
+        private int splitPoint(long size){
+            int d = (size < BALANCED_SPLIT_THRESHOLD) ? 2 : RIGHT_BALANCED_SPLIT_RATIO;
+            return (int) (size / d);
+        }
+    }
+
+    /**
+     * LongStream.range和rangeClosed的分裂器，区间是[from, upTo)，
+     * 闭区间的时候last为1，表示upTo本身还没有被遍历
+     *
+     * 使用last而不是直接把upTo加1，是为了在upTo等于Long.MAX_VALUE的时候不会溢出
+     * */
+    static final class RangeLongSpliterator implements Spliterator.OfLong {
+        //下一个要遍历的元素，from == upTo并且last == 0的时候表示遍历完成
+        private long from;
+        private final long upTo;
+        //闭区间并且还没有遍历upTo的时候为1，否则为0
+        private int last;
+
+        RangeLongSpliterator(long from, long upTo, boolean closed){
+            this(from, upTo, closed ? 1 : 0);
+        }
+
+        private RangeLongSpliterator(long from, long upTo, int last){
+            this.from = from;
+            this.upTo = upTo;
+            this.last = last;
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer consumer){
+            Objects.requireNonNull(consumer);
+
+            final long i = from;
+            if(i < upTo){
+                from++;
+                consumer.accept(i);
+                return true;
+            }
+            else if(last > 0){
+                last = 0;
+                consumer.accept(i);
+                return true;
+            }
+            return false;
+        }
+
+        /** 直接在局部变量上循环，避免每个元素都写回字段 */
+        @Override
+        public void forEachRemaining(LongConsumer consumer){
+            Objects.requireNonNull(consumer);
+
+            long i = from;
+            final long hUpTo = upTo;
+            int hLast = last;
+            from = upTo;
+            last = 0;
+            while(i < hUpTo){
+                consumer.accept(i++);
+            }
+            if(hLast > 0){
+                consumer.accept(i);
+            }
+        }
+
+        @Override
+        public long estimateSize(){
+            return upTo - from + last;
+        }
+
+        @Override
+        public int characteristics(){
+            return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED |
+                    Spliterator.IMMUTABLE | Spliterator.NONULL |
+                    Spliterator.DISTINCT | Spliterator.SORTED;
+        }
+
+        /** 按自然顺序排序 */
+        @Override
+        public Comparator<? super Long> getComparator(){
+            return null;
+        }
+
+        /** 从中间对半拆分，左边的区间是[from, mid)，右边的区间留在当前分裂器 */
+        @Override
+        public Spliterator.OfLong trySplit(){
+            long size = estimateSize();
+            return size <= 1
+                    ? null
+                    : new RangeLongSpliterator(from, from = from + splitPoint(size), 0);
+        }
+
+        /**
+         * 元素很多的时候，拆分点取为BALANCED_SPLIT_THRESHOLD个叶子的整数倍，
+         * 让叶子的大小尽量相同
+         * */
+        private long splitPoint(long size){
+            int d = (size < BALANCED_SPLIT_THRESHOLD) ? 2 : RIGHT_BALANCED_SPLIT_RATIO;
+            return size / d;
+        }
+    }
     /**
      * 一个 Stream.Builder<T> 的实现类
      * 继承AbstractStreamBuilderImpl的目的是记录流状态
@@ -21,7 +21,7 @@ interface TerminalOp<E_IN,R> {
     default <P_IN> R evaluateParallel(PipelineHelper<E_IN> helper,
                                       Spliterator<P_IN> spliterator) {
         if (Tripwire.ENABLED)
-            Tripwire.trip(getClass(), "{0} triggering TerminalOp.evaluateParallel serial default");
+            Tripwire.trip(TripwireMonitor.Kind.SEQUENTIAL_FALLBACK, getClass(), "{0} triggering TerminalOp.evaluateParallel serial default");
         return evaluateSequential(helper, spliterator);
     }
 
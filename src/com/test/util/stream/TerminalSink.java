@@ -0,0 +1,8 @@
+package com.test.util.stream;
+
+import com.test.util.function.Supplier;
+
+/**
+ * 终端操作使用的Sink，在所有元素都被接收之后，通过get()返回累积的结果
+ * */
+interface TerminalSink<T,R> extends Sink<T>, Supplier<R> {}
@@ -5,15 +5,35 @@ import sun.util.logging.PlatformLogger;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 
+/**
+ * 检测流的实现中会装箱、退化成顺序执行或者复制Node的代码路径
+ *
+ * 设置系统属性 org.openjdk.java.util.stream.tripwire=true 之后，每次触发都会输出一条警告，
+ * 设置 com.test.util.stream.tripwire.monitor=true 之后，每次触发都会在TripwireMonitor中计数，
+ * 两个属性都没有设置的时候ENABLED是false，调用点的判断会被JIT消除
+ * */
 final class Tripwire {
     private static final String TRIPWIRE_PROPERTY = "org.openjdk.java.util.stream.tripwire";
 
-    static final boolean ENABLED = AccessController.doPrivileged(
+    /** 是否输出警告 */
+    private static final boolean LOGGING = AccessController.doPrivileged(
             (PrivilegedAction<Boolean>) () -> Boolean.getBoolean(TRIPWIRE_PROPERTY));
 
+    /** 调用点在调用trip之前需要检查这个标志 */
+    static final boolean ENABLED = LOGGING || TripwireMonitor.ENABLED;
+
     private Tripwire(){}
 
-    static void trip(Class<?> trippingClass, String msg){
-        PlatformLogger.getLogger(trippingClass.getCanonicalName()).warning(msg);
+    /**
+     * 触发一次事件
+     * @param kind 事件的种类
+     * @param trippingClass 触发事件的类
+     * @param msg 描述调用点的消息，其中的{0}会被替换成触发事件的类名
+     * */
+    static void trip(TripwireMonitor.Kind kind, Class<?> trippingClass, String msg){
+        if(TripwireMonitor.ENABLED)
+            TripwireMonitor.record(kind, trippingClass, msg);
+        if(LOGGING)
+            PlatformLogger.getLogger(trippingClass.getName()).warning(msg, trippingClass.getName());
     }
-}
\ No newline at end of file
+}
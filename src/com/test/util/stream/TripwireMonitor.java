@@ -0,0 +1,149 @@
+package com.test.util.stream;
+
+import com.test.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按调用点统计Tripwire事件的次数
+ *
+ * 设置系统属性 com.test.util.stream.tripwire.monitor=true 之后，
+ * com.test.util.Tripwire 和 com.test.util.stream.Tripwire 触发的每个事件都会在这里计数，
+ * 同时注册一个名字是 com.test.util.stream:type=Tripwire 的MXBean，可以通过jconsole等工具查看，
+ * 也可以直接调用snapshot获取当前的计数
+ *
+ * 没有开启的时候，调用点只检查一个static final的标志，JIT会把整个分支消除掉
+ * */
+public final class TripwireMonitor implements TripwireMonitorMXBean {
+    private static final String MONITOR_PROPERTY = "com.test.util.stream.tripwire.monitor";
+
+    /** MXBean注册的名字 */
+    public static final String OBJECT_NAME = "com.test.util.stream:type=Tripwire";
+
+    /** 是否开启计数 */
+    public static final boolean ENABLED = AccessController.doPrivileged(
+            (PrivilegedAction<Boolean>) () -> Boolean.getBoolean(MONITOR_PROPERTY));
+
+    /** 事件的种类 */
+    public enum Kind {
+        /** 原始类型的元素被装箱 */
+        BOXING,
+        /** 并行计算退化成顺序执行 */
+        SEQUENTIAL_FALLBACK,
+        /** 元素被复制到Node当中，或者从Node复制到数组当中 */
+        NODE_COPY
+    }
+
+    /**
+     * 每种事件一张表，消息 -> (触发的类 -> 计数)
+     * 消息都是字面量，哈希值是缓存的，两次查找都不需要分配对象，
+     * 每个元素都可能触发一次事件，所以计数使用LongAdder减少竞争
+     * */
+    @SuppressWarnings({"rawtypes","unchecked"})
+    private static final ConcurrentHashMap<String, ConcurrentHashMap<Class<?>, LongAdder>>[] COUNTERS =
+            new ConcurrentHashMap[Kind.values().length];
+
+    static {
+        for (int i = 0; i < COUNTERS.length; i++)
+            COUNTERS[i] = new ConcurrentHashMap<>();
+        if (ENABLED)
+            register();
+    }
+
+    private TripwireMonitor(){}
+
+    /** 注册MXBean，注册失败不影响计数，仍然可以通过snapshot获取 */
+    private static void register() {
+        AccessController.doPrivileged((PrivilegedAction<Void>) () -> {
+            try {
+                ManagementFactory.getPlatformMBeanServer()
+                        .registerMBean(new TripwireMonitor(), new ObjectName(OBJECT_NAME));
+            } catch (JMException ignore) {
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 记录一次事件，由Tripwire.trip调用
+     * @param kind 事件的种类
+     * @param trippingClass 触发事件的类
+     * @param msg 描述调用点的消息，其中的{0}会被替换成触发事件的类名
+     * */
+    public static void record(Kind kind, Class<?> trippingClass, String msg) {
+        ConcurrentHashMap<String, ConcurrentHashMap<Class<?>, LongAdder>> sites = COUNTERS[kind.ordinal()];
+        ConcurrentHashMap<Class<?>, LongAdder> byClass = sites.get(msg);
+        if (byClass == null)
+            byClass = sites.computeIfAbsent(msg, k -> new ConcurrentHashMap<>());
+        LongAdder counter = byClass.get(trippingClass);
+        if (counter == null)
+            counter = byClass.computeIfAbsent(trippingClass, k -> new LongAdder());
+        counter.increment();
+    }
+
+    /**
+     * 返回一种事件当前的计数，key是把{0}替换成类名之后的消息，按key排序
+     * 计数过程中的并发更新可能只有一部分体现在结果中
+     * */
+    public static Map<String, Long> snapshot(Kind kind) {
+        TreeMap<String, Long> result = new TreeMap<>();
+        COUNTERS[kind.ordinal()].forEach((msg, byClass) ->
+                byClass.forEach((cls, counter) -> {
+                    long count = counter.sum();
+                    if (count > 0)
+                        result.merge(site(cls, msg), count, Long::sum);
+                }));
+        return Collections.unmodifiableMap(result);
+    }
+
+    /** 调用点的名字，消息中没有{0}的时候在前面加上类名 */
+    private static String site(Class<?> cls, String msg) {
+        return msg.contains("{0}")
+                ? msg.replace("{0}", cls.getName())
+                : cls.getName() + ": " + msg;
+    }
+
+    /** 返回一种事件在所有调用点上的总次数 */
+    public static long total(Kind kind) {
+        long[] total = new long[1];
+        COUNTERS[kind.ordinal()].forEach((msg, byClass) ->
+                byClass.forEach((cls, counter) -> total[0] += counter.sum()));
+        return total[0];
+    }
+
+    /** 清空所有计数，已经出现过的调用点会保留，计数归零 */
+    public static void clear() {
+        for (ConcurrentHashMap<String, ConcurrentHashMap<Class<?>, LongAdder>> sites : COUNTERS)
+            sites.forEach((msg, byClass) -> byClass.forEach((cls, counter) -> counter.reset()));
+    }
+
+    // MXBean
+
+    @Override
+    public Map<String, Long> getBoxingCounts() {
+        return snapshot(Kind.BOXING);
+    }
+
+    @Override
+    public Map<String, Long> getSequentialFallbackCounts() {
+        return snapshot(Kind.SEQUENTIAL_FALLBACK);
+    }
+
+    @Override
+    public Map<String, Long> getNodeCopyCounts() {
+        return snapshot(Kind.NODE_COPY);
+    }
+
+    @Override
+    public void reset() {
+        clear();
+    }
+}
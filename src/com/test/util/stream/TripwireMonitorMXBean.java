@@ -0,0 +1,22 @@
+package com.test.util.stream;
+
+import java.util.Map;
+
+/**
+ * TripwireMonitor的JMX管理接口，注册的名字是 com.test.util.stream:type=Tripwire
+ *
+ * 每个Map的key是一个调用点，也就是把{0}替换成类名之后的消息，value是这个调用点被触发的次数
+ * */
+public interface TripwireMonitorMXBean {
+    /** 装箱事件，例如Sink.OfInt.accept(Integer) */
+    Map<String, Long> getBoxingCounts();
+
+    /** 退化成顺序执行的事件，例如分裂器不能拆分、终端操作没有并行实现 */
+    Map<String, Long> getSequentialFallbackCounts();
+
+    /** 把元素复制到Node或者从Node复制出来的事件 */
+    Map<String, Long> getNodeCopyCounts();
+
+    /** 清空所有计数 */
+    void reset();
+}
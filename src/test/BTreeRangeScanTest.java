@@ -0,0 +1,169 @@
+package test;
+
+import com.test.util.LongBTreeMap;
+import com.test.util.TreeMap;
+
+/**
+ * 模拟时间序列索引：key是递增的时间戳，比较 java.util.TreeMap、com.test.util.TreeMap 和 LongBTreeMap
+ * 的堆内存占用、floor查找和范围扫描的吞吐量
+ *
+ * 范围扫描每次从随机的起点扫描scan个key，红黑树通过subMap的key迭代器，
+ * LongBTreeMap分别测试同样的装箱迭代器和不装箱的keyStream(from, to)
+ * 例如: java -Xms4g -Xmx4g test.BTreeRangeScanTest 5000000 1000
+ */
+public class BTreeRangeScanTest {
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int scan = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        long[] timestamps = timestamps(size);
+        System.out.println("size=" + size + " scan=" + scan);
+
+        long before = MapFootprintTest.usedHeap();
+        java.util.TreeMap<Long, Object> jdk = new java.util.TreeMap<>();
+        for (long t : timestamps)
+            jdk.put(t, Boolean.TRUE);
+        MapFootprintTest.report("java.util.TreeMap<Long,V>", MapFootprintTest.usedHeap() - before, size);
+
+        before = MapFootprintTest.usedHeap();
+        TreeMap<Long, Object> rb = new TreeMap<>();
+        for (long t : timestamps)
+            rb.put(t, Boolean.TRUE);
+        MapFootprintTest.report("com.test.util.TreeMap<Long,V>", MapFootprintTest.usedHeap() - before, size);
+
+        before = MapFootprintTest.usedHeap();
+        Object[] values = new Object[size];
+        java.util.Arrays.fill(values, Boolean.TRUE);
+        LongBTreeMap<Object> bt = LongBTreeMap.buildFromSorted(timestamps, values);
+        values = null;
+        MapFootprintTest.report("LongBTreeMap<V> (bulk load)", MapFootprintTest.usedHeap() - before, size);
+
+        // 查找的key落在两个时间戳之间
+        long[] probes = new long[1 << 20];
+        java.util.Random random = new java.util.Random(11);
+        for (int i = 0; i < probes.length; i++)
+            probes[i] = timestamps[random.nextInt(size)] + random.nextInt(500);
+        int[] starts = new int[1 << 12];
+        for (int i = 0; i < starts.length; i++)
+            starts[i] = random.nextInt(Math.max(1, size - scan));
+
+        long jdkFloor = 0, rbFloor = 0, btFloor = 0, jdkScan = 0, rbScan = 0, btScan = 0, btStream = 0;
+        for (int r = 0; r < 5; r++) {
+            long startTime = System.nanoTime();
+            Blackhole.sink = floorJdk(jdk, probes);
+            jdkFloor = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            Blackhole.sink = floorRb(rb, probes);
+            rbFloor = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            Blackhole.sink = floorBTree(bt, probes);
+            btFloor = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            Blackhole.sink = scanJdk(jdk, timestamps, starts, scan);
+            jdkScan = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            Blackhole.sink = scanRb(rb, timestamps, starts, scan);
+            rbScan = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            Blackhole.sink = scanBTree(bt, timestamps, starts, scan);
+            btScan = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            Blackhole.sink = scanBTreeStream(bt, timestamps, starts, scan);
+            btStream = System.nanoTime() - startTime;
+        }
+        long scanned = (long) starts.length * Math.min(scan, size);
+        report("java.util.TreeMap floorKey", jdkFloor, probes.length);
+        report("com.test.util.TreeMap floorKey", rbFloor, probes.length);
+        report("LongBTreeMap floorKey(long, long)", btFloor, probes.length);
+        report("java.util.TreeMap subMap scan", jdkScan, scanned);
+        report("com.test.util.TreeMap subMap scan", rbScan, scanned);
+        report("LongBTreeMap subMap scan", btScan, scanned);
+        report("LongBTreeMap keyStream scan", btStream, scanned);
+        Blackhole.sink = new Object[]{jdk, rb, bt};
+    }
+
+    /** 递增的时间戳，间隔在[1, 1000)之间 */
+    static long[] timestamps(int size) {
+        long[] timestamps = new long[size];
+        java.util.Random random = new java.util.Random(3);
+        long t = 1500000000000L;
+        for (int i = 0; i < size; i++)
+            timestamps[i] = t += 1 + random.nextInt(999);
+        return timestamps;
+    }
+
+    static long floorJdk(java.util.TreeMap<Long, Object> m, long[] probes) {
+        long sum = 0;
+        for (long p : probes) {
+            Long k = m.floorKey(p);
+            if (k != null)
+                sum += k;
+        }
+        return sum;
+    }
+
+    static long floorRb(TreeMap<Long, Object> m, long[] probes) {
+        long sum = 0;
+        for (long p : probes) {
+            Long k = m.floorKey(p);
+            if (k != null)
+                sum += k;
+        }
+        return sum;
+    }
+
+    static long floorBTree(LongBTreeMap<Object> m, long[] probes) {
+        long sum = 0;
+        for (long p : probes)
+            sum += m.floorKey(p, 0);
+        return sum;
+    }
+
+    static long scanJdk(java.util.TreeMap<Long, Object> m, long[] timestamps, int[] starts, int scan) {
+        long sum = 0;
+        for (int s : starts) {
+            long from = timestamps[s], to = timestamps[Math.min(s + scan, timestamps.length) - 1];
+            for (Long k : m.subMap(from, true, to, true).keySet())
+                sum += k;
+        }
+        return sum;
+    }
+
+    static long scanRb(TreeMap<Long, Object> m, long[] timestamps, int[] starts, int scan) {
+        long sum = 0;
+        for (int s : starts) {
+            long from = timestamps[s], to = timestamps[Math.min(s + scan, timestamps.length) - 1];
+            for (Long k : m.subMap(from, true, to, true).keySet())
+                sum += k;
+        }
+        return sum;
+    }
+
+    static long scanBTree(LongBTreeMap<Object> m, long[] timestamps, int[] starts, int scan) {
+        long sum = 0;
+        for (int s : starts) {
+            long from = timestamps[s], to = timestamps[Math.min(s + scan, timestamps.length) - 1];
+            for (Long k : m.subMap(from, true, to, true).keySet())
+                sum += k;
+        }
+        return sum;
+    }
+
+    static long scanBTreeStream(LongBTreeMap<Object> m, long[] timestamps, int[] starts, int scan) {
+        long sum = 0;
+        for (int s : starts) {
+            long from = timestamps[s], to = timestamps[Math.min(s + scan, timestamps.length) - 1];
+            sum += m.keyStream(from, to).sum();
+        }
+        return sum;
+    }
+
+    static void report(String name, long nanos, long ops) {
+        System.out.printf("  %-36s %7.2f Mops/s%n", name, (double) ops / nanos * 1000);
+    }
+}
@@ -0,0 +1,14 @@
+package test;
+
+/**
+ * 基准测试共用的结果接收者
+ *
+ * 测量的循环把计算结果写进volatile的sink，防止JIT把没有使用结果的循环优化掉
+ * */
+public final class Blackhole {
+
+    private Blackhole() {
+    }
+
+    static volatile Object sink;
+}
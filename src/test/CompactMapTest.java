@@ -0,0 +1,149 @@
+package test;
+
+import com.test.util.CompactHashMap;
+import com.test.util.HashMap;
+import com.test.util.LinkedHashMap;
+import com.test.util.Map;
+
+/**
+ * 比较 CompactHashMap、HashMap 和 LinkedHashMap 的堆内存占用、遍历和随机查找的速度
+ *
+ * key和value都是提前创建好的对象，三个表共用，所以内存占用只包含表本身的结构，
+ * 遍历使用entrySet的迭代器对value求和，
+ * 建议固定堆大小运行，例如: java -Xms4g -Xmx4g test.CompactMapTest 5000000
+ */
+public class CompactMapTest {
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        Long[] keys = SwissMapFootprintTest.boxed(MapFootprintTest.keys(size));
+        Long[] hits = SwissMapFootprintTest.shuffle(keys.clone());
+        System.out.println("size=" + size);
+
+        long before = MapFootprintTest.usedHeap();
+        HashMap<Long, Long> hashMap = new HashMap<>();
+        for (Long k : keys)
+            hashMap.put(k, k);
+        long hashBytes = MapFootprintTest.usedHeap() - before;
+        MapFootprintTest.report("com.test.util.HashMap", hashBytes, size);
+        long hashIter = iterate(hashMap);
+        long hashGet = get(hashMap, hits);
+        Blackhole.sink = hashMap;
+        hashMap = null;
+
+        before = MapFootprintTest.usedHeap();
+        LinkedHashMap<Long, Long> linked = new LinkedHashMap<>();
+        for (Long k : keys)
+            linked.put(k, k);
+        long linkedBytes = MapFootprintTest.usedHeap() - before;
+        MapFootprintTest.report("com.test.util.LinkedHashMap", linkedBytes, size);
+        long linkedIter = iterate(linked);
+        long linkedGet = get(linked, hits);
+        Blackhole.sink = linked;
+        linked = null;
+
+        before = MapFootprintTest.usedHeap();
+        CompactHashMap<Long, Long> compact = new CompactHashMap<>();
+        for (Long k : keys)
+            compact.put(k, k);
+        long compactBytes = MapFootprintTest.usedHeap() - before;
+        MapFootprintTest.report("com.test.util.CompactHashMap", compactBytes, size);
+        long compactIter = iterate(compact);
+        long compactGet = get(compact, hits);
+        Blackhole.sink = compact;
+
+        System.out.printf("内存缩减  相对HashMap %.0f%%, 相对LinkedHashMap %.0f%%%n",
+                100.0 * (hashBytes - compactBytes) / hashBytes,
+                100.0 * (linkedBytes - compactBytes) / linkedBytes);
+        System.out.printf("遍历      HashMap %.2f Mops/s, LinkedHashMap %.2f Mops/s, CompactHashMap %.2f Mops/s%n",
+                (double) size / hashIter * 1000, (double) size / linkedIter * 1000, (double) size / compactIter * 1000);
+        System.out.printf("随机get   HashMap %.2f Mops/s, LinkedHashMap %.2f Mops/s, CompactHashMap %.2f Mops/s%n",
+                (double) size / hashGet * 1000, (double) size / linkedGet * 1000, (double) size / compactGet * 1000);
+    }
+
+    // 每种Map使用单独的方法，如果共用一个参数为Map的方法，调用点会变成多态的，
+    // 后测试的Map无法内联，结果会偏向先测试的Map
+
+    static long iterate(HashMap<Long, Long> map) {
+        long nanos = 0;
+        for (int r = 0; r < 10; r++) {
+            long startTime = System.nanoTime();
+            long sum = 0;
+            for (Map.Entry<Long, Long> e : map.entrySet())
+                sum += e.getValue();
+            nanos = System.nanoTime() - startTime;
+            Blackhole.sink = sum;
+        }
+        return nanos;
+    }
+
+    static long iterate(LinkedHashMap<Long, Long> map) {
+        long nanos = 0;
+        for (int r = 0; r < 10; r++) {
+            long startTime = System.nanoTime();
+            long sum = 0;
+            for (Map.Entry<Long, Long> e : map.entrySet())
+                sum += e.getValue();
+            nanos = System.nanoTime() - startTime;
+            Blackhole.sink = sum;
+        }
+        return nanos;
+    }
+
+    static long iterate(CompactHashMap<Long, Long> map) {
+        long nanos = 0;
+        for (int r = 0; r < 10; r++) {
+            long startTime = System.nanoTime();
+            long sum = 0;
+            for (Map.Entry<Long, Long> e : map.entrySet())
+                sum += e.getValue();
+            nanos = System.nanoTime() - startTime;
+            Blackhole.sink = sum;
+        }
+        return nanos;
+    }
+
+    static long get(HashMap<Long, Long> map, Long[] keys) {
+        long nanos = 0;
+        for (int r = 0; r < 5; r++) {
+            long startTime = System.nanoTime();
+            long found = 0;
+            for (Long k : keys) {
+                if (map.get(k) != null)
+                    found++;
+            }
+            nanos = System.nanoTime() - startTime;
+            Blackhole.sink = found;
+        }
+        return nanos;
+    }
+
+    static long get(LinkedHashMap<Long, Long> map, Long[] keys) {
+        long nanos = 0;
+        for (int r = 0; r < 5; r++) {
+            long startTime = System.nanoTime();
+            long found = 0;
+            for (Long k : keys) {
+                if (map.get(k) != null)
+                    found++;
+            }
+            nanos = System.nanoTime() - startTime;
+            Blackhole.sink = found;
+        }
+        return nanos;
+    }
+
+    static long get(CompactHashMap<Long, Long> map, Long[] keys) {
+        long nanos = 0;
+        for (int r = 0; r < 5; r++) {
+            long startTime = System.nanoTime();
+            long found = 0;
+            for (Long k : keys) {
+                if (map.get(k) != null)
+                    found++;
+            }
+            nanos = System.nanoTime() - startTime;
+            Blackhole.sink = found;
+        }
+        return nanos;
+    }
+}
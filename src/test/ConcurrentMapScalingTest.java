@@ -0,0 +1,147 @@
+package test;
+
+import com.test.util.HashMap;
+import com.test.util.Map;
+import com.test.util.concurrent.ConcurrentHashMap;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 比较 ConcurrentHashMap、加锁的 HashMap 和 java.util.concurrent.ConcurrentHashMap
+ * 在不同线程数下的吞吐量
+ *
+ * 每种负载按 1, 2, 4 ... 个线程分别运行，读多写少的负载是90%的get，混合负载是50%的get和50%的merge，
+ * 例如: java -Xms2g -Xmx2g test.ConcurrentMapScalingTest 100000 2000000
+ */
+public class ConcurrentMapScalingTest {
+    /** get操作所占的百分比 */
+    private static final int[] READ_PERCENTS = {90, 50};
+
+    public static void main(String[] args) throws InterruptedException {
+        int keyCount = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int opsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 2000000;
+        int maxThreads = Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+        Integer[] keys = HashMapTimeTest.keys(keyCount);
+
+        for (int readPercent : READ_PERCENTS) {
+            System.out.printf("get=%d%% merge=%d%% keys=%d ops/thread=%d%n",
+                    readPercent, 100 - readPercent, keyCount, opsPerThread);
+            System.out.printf("  %-8s %14s %14s %14s%n", "threads",
+                    "synchronized", "com.test", "java.util");
+            for (int threads = 1; threads <= maxThreads; threads <<= 1) {
+                double locked = measure(new LockedMap(keys), keys, threads, opsPerThread, readPercent);
+                double striped = measure(new TestMap(keys), keys, threads, opsPerThread, readPercent);
+                double jdk = measure(new JdkMap(keys), keys, threads, opsPerThread, readPercent);
+                System.out.printf("  %-8d %10.2f M/s %10.2f M/s %10.2f M/s%n",
+                        threads, locked, striped, jdk);
+            }
+        }
+    }
+
+    /** 预热一轮之后再计时，返回所有线程合计的每秒百万次操作数 */
+    static double measure(Target map, Integer[] keys, int threads, int ops, int readPercent)
+            throws InterruptedException {
+        run(map, keys, threads, ops, readPercent);
+        long nanos = run(map, keys, threads, ops, readPercent);
+        return (double) threads * ops / nanos * 1000;
+    }
+
+    /** 所有线程就绪之后同时开始，返回从开始到最后一个线程结束的耗时 */
+    static long run(final Target map, final Integer[] keys, int threads,
+                    final int ops, final int readPercent) throws InterruptedException {
+        final CountDownLatch ready = new CountDownLatch(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                ready.countDown();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                long sum = 0;
+                for (int i = 0; i < ops; i++) {
+                    Integer k = keys[random.nextInt(keys.length)];
+                    if (random.nextInt(100) < readPercent) {
+                        Integer v = map.get(k);
+                        if (v != null)
+                            sum += v;
+                    }
+                    else
+                        map.increment(k);
+                }
+                Blackhole.sink = sum;
+                done.countDown();
+            }).start();
+        }
+        ready.await();
+        long startTime = System.nanoTime();
+        start.countDown();
+        done.await();
+        return System.nanoTime() - startTime;
+    }
+
+    /** 被测试的map，increment使用各自的原子更新方式 */
+    interface Target {
+        Integer get(Integer key);
+
+        void increment(Integer key);
+    }
+
+    /** 所有操作都锁住整个HashMap */
+    static final class LockedMap implements Target {
+        private final HashMap<Integer, Integer> map = new HashMap<>();
+
+        LockedMap(Integer[] keys) {
+            for (Integer k : keys)
+                map.put(k, 0);
+        }
+
+        public synchronized Integer get(Integer key) {
+            return map.get(key);
+        }
+
+        public synchronized void increment(Integer key) {
+            map.merge(key, 1, Integer::sum);
+        }
+    }
+
+    static final class TestMap implements Target {
+        private final Map<Integer, Integer> map = new ConcurrentHashMap<>();
+
+        TestMap(Integer[] keys) {
+            for (Integer k : keys)
+                map.put(k, 0);
+        }
+
+        public Integer get(Integer key) {
+            return map.get(key);
+        }
+
+        public void increment(Integer key) {
+            map.merge(key, 1, Integer::sum);
+        }
+    }
+
+    static final class JdkMap implements Target {
+        private final java.util.concurrent.ConcurrentHashMap<Integer, Integer> map =
+                new java.util.concurrent.ConcurrentHashMap<>();
+
+        JdkMap(Integer[] keys) {
+            for (Integer k : keys)
+                map.put(k, 0);
+        }
+
+        public Integer get(Integer key) {
+            return map.get(key);
+        }
+
+        public void increment(Integer key) {
+            map.merge(key, 1, Integer::sum);
+        }
+    }
+}
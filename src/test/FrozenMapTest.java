@@ -0,0 +1,52 @@
+package test;
+
+import com.test.util.FrozenMap;
+import com.test.util.HashMap;
+
+/**
+ * 比较 FrozenMap 和 HashMap 的堆内存占用以及随机查找的吞吐量
+ *
+ * FrozenMap由同一个HashMap调用freeze得到，两者共用key和value对象，内存占用只包含表本身的结构，
+ * 建议固定堆大小运行，例如: java -Xms4g -Xmx4g test.FrozenMapTest 10000000
+ */
+public class FrozenMapTest {
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        Long[] keys = SwissMapFootprintTest.boxed(MapFootprintTest.keys(size));
+        Long[] hits = SwissMapFootprintTest.shuffle(keys.clone());
+        Long[] missing = SwissMapFootprintTest.boxed(MapFootprintTest.keys(size));
+        for (int i = 0; i < size; i++) {
+            missing[i] = missing[i] + 1;
+        }
+        System.out.println("size=" + size);
+
+        long before = MapFootprintTest.usedHeap();
+        HashMap<Long, Long> map = new HashMap<>();
+        for (Long k : keys) {
+            map.put(k, k);
+        }
+        long mapBytes = MapFootprintTest.usedHeap() - before;
+        MapFootprintTest.report("com.test.util.HashMap", mapBytes, size);
+
+        before = MapFootprintTest.usedHeap();
+        long startTime = System.nanoTime();
+        FrozenMap<Long, Long> frozen = map.freeze();
+        long freezeNanos = System.nanoTime() - startTime;
+        long frozenBytes = MapFootprintTest.usedHeap() - before;
+        MapFootprintTest.report("com.test.util.FrozenMap", frozenBytes, size);
+        System.out.printf("freeze耗时 %d ms, 内存缩减 %.2fx%n",
+                freezeNanos / 1000000, (double) mapBytes / frozenBytes);
+
+        long mapHit = SwissMapFootprintTest.get(map, hits);
+        long mapMiss = SwissMapFootprintTest.get(map, missing);
+        long frozenHit = SwissMapFootprintTest.get(frozen, hits);
+        long frozenMiss = SwissMapFootprintTest.get(frozen, missing);
+        Blackhole.sink = map;
+        Blackhole.sink = frozen;
+
+        System.out.printf("随机get命中    HashMap %.1f ns, FrozenMap %.1f ns%n",
+                (double) mapHit / size, (double) frozenHit / size);
+        System.out.printf("随机get不命中  HashMap %.1f ns, FrozenMap %.1f ns%n",
+                (double) mapMiss / size, (double) frozenMiss / size);
+    }
+}
@@ -0,0 +1,54 @@
+package test;
+
+import com.test.util.AbstractMap;
+import com.test.util.HashMap;
+import com.test.util.Map;
+import com.test.util.Spliterator;
+import com.test.util.Spliterators;
+
+/**
+ * 比较逐个put和HashMap.build并行构建同样大小的HashMap的耗时
+ *
+ * build的加速比取决于ForkJoin公共线程池的并行度，可以通过
+ * -Djava.util.concurrent.ForkJoinPool.common.parallelism=N 调整，
+ * 例如: java -Xms4g -Xmx4g test.HashMapBuildTest 10000000
+ */
+public class HashMapBuildTest {
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        long[] keys = MapFootprintTest.keys(size);
+        Object[] entries = new Object[size];
+        for (int i = 0; i < size; i++) {
+            entries[i] = new AbstractMap.SimpleImmutableEntry<>(keys[i], (long) i);
+        }
+        System.out.println("size=" + size + ", parallelism=" +
+                java.util.concurrent.ForkJoinPool.getCommonPoolParallelism());
+
+        long putNanos = 0, buildNanos = 0;
+        for (int r = 0; r < 5; r++) {
+            long startTime = System.nanoTime();
+            HashMap<Long, Long> map = new HashMap<>();
+            for (Object e : entries) {
+                @SuppressWarnings("unchecked")
+                Map.Entry<Long, Long> entry = (Map.Entry<Long, Long>) e;
+                map.put(entry.getKey(), entry.getValue());
+            }
+            putNanos = System.nanoTime() - startTime;
+            Blackhole.sink = map;
+            map = null;
+            Blackhole.sink = null;
+
+            startTime = System.nanoTime();
+            Spliterator<Map.Entry<Long, Long>> source =
+                    Spliterators.spliterator(entries, Spliterator.ORDERED);
+            map = HashMap.build(source);
+            buildNanos = System.nanoTime() - startTime;
+            Blackhole.sink = map;
+            map = null;
+            Blackhole.sink = null;
+        }
+        System.out.printf("逐个put       %8d ms%n", putNanos / 1000000);
+        System.out.printf("HashMap.build %8d ms, 加速 %.2fx%n",
+                buildNanos / 1000000, (double) putNanos / buildNanos);
+    }
+}
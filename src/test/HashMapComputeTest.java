@@ -0,0 +1,90 @@
+package test;
+
+import com.test.util.ArrayList;
+import com.test.util.HashMap;
+import com.test.util.List;
+import com.test.util.function.BiFunction;
+import com.test.util.function.Function;
+
+import java.util.Random;
+
+/**
+ * 比较HashMap中只查找一次bin的merge/computeIfAbsent和Map接口中通过get、put实现的默认方法（复制在这个类中）
+ *
+ * 两个场景：单词计数 merge(word, 1, Integer::sum)，分组 computeIfAbsent(key, k -> new ArrayList<>()).add(x)
+ * 例如: java -Xmx2g test.HashMapComputeTest 2000000 50000
+ */
+public class HashMapComputeTest {
+    /** Map接口中默认的merge，先get再put，查找两次bin，也就是重写之前的行为 */
+    static <K,V> V defaultMerge(HashMap<K,V> map, K key, V value,
+                                BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        V oldValue = map.get(key);
+        V newValue = (oldValue == null) ? value : remappingFunction.apply(oldValue, value);
+        if (newValue == null)
+            map.remove(key);
+        else
+            map.put(key, newValue);
+        return newValue;
+    }
+
+    /** Map接口中默认的computeIfAbsent */
+    static <K,V> V defaultComputeIfAbsent(HashMap<K,V> map, K key,
+                                          Function<? super K, ? extends V> mappingFunction) {
+        V v, newValue;
+        if ((v = map.get(key)) == null && (newValue = mappingFunction.apply(key)) != null) {
+            map.put(key, newValue);
+            return newValue;
+        }
+        return v;
+    }
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        int distinct = args.length > 1 ? Integer.parseInt(args[1]) : 50000;
+        Random random = new Random(11);
+        String[] words = new String[distinct];
+        for (int i = 0; i < distinct; i++)
+            words[i] = "w" + Integer.toString(random.nextInt(), 36) + i;
+        String[] text = new String[n];
+        for (int i = 0; i < n; i++)
+            text[i] = words[random.nextInt(distinct)];
+
+        for (int r = 0; r < 5; r++) {
+            long t0 = wordCount(new HashMap<>(), text, false);
+            long t1 = wordCount(new HashMap<>(), text, true);
+            long t2 = groupBy(new HashMap<>(), text, false);
+            long t3 = groupBy(new HashMap<>(), text, true);
+            if (r >= 2)
+                System.out.printf("round %d  wordCount: default %4d ms, HashMap %4d ms   groupBy: default %4d ms, HashMap %4d ms%n",
+                        r, t0 / 1000000, t1 / 1000000, t2 / 1000000, t3 / 1000000);
+        }
+    }
+
+    static long wordCount(HashMap<String, Integer> map, String[] text, boolean direct) {
+        long startTime = System.nanoTime();
+        if (direct) {
+            for (String w : text)
+                map.merge(w, 1, Integer::sum);
+        } else {
+            for (String w : text)
+                defaultMerge(map, w, 1, Integer::sum);
+        }
+        long time = System.nanoTime() - startTime;
+        Blackhole.sink = map.size();
+        return time;
+    }
+
+    static long groupBy(HashMap<Character, List<String>> map, String[] text, boolean direct) {
+        long startTime = System.nanoTime();
+        if (direct) {
+            for (String w : text)
+                map.computeIfAbsent(w.charAt(w.length() - 1), k -> new ArrayList<>()).add(w);
+        } else {
+            for (String w : text)
+                defaultComputeIfAbsent(map, w.charAt(w.length() - 1), k -> new ArrayList<>()).add(w);
+        }
+        long time = System.nanoTime() - startTime;
+        Blackhole.sink = map.size();
+        return time;
+    }
+}
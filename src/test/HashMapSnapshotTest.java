@@ -0,0 +1,84 @@
+package test;
+
+import com.test.util.HashMap;
+import com.test.util.HashMapSnapshot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 比较Java序列化和HashMapSnapshot恢复一个HashMap<String,Long>的启动时间
+ *
+ * 启动时间包括打开文件和之后的一批随机查找，快照的查找会触发页错误，
+ * 例如: java -Xmx4g test.HashMapSnapshotTest 5000000
+ */
+public class HashMapSnapshotTest {
+    public static void main(String[] args) throws Exception {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int lookups = 10000;
+        HashMap<String, Long> map = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            map.put("session-" + i, (long) i);
+        }
+        String[] probes = new String[lookups];
+        java.util.Random random = new java.util.Random(3);
+        for (int i = 0; i < lookups; i++) {
+            probes[i] = "session-" + random.nextInt(size);
+        }
+        System.out.println("size=" + size + ", 启动之后随机查找" + lookups + "次");
+
+        Path serialized = Files.createTempFile("hashmap", ".ser");
+        Path snapshot = Files.createTempFile("hashmap", ".snapshot");
+        try {
+            long startTime = System.nanoTime();
+            try (ObjectOutputStream out = new ObjectOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(serialized)))) {
+                out.writeObject(map);
+            }
+            long serialWrite = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            HashMapSnapshot.write(map, snapshot, HashMapSnapshot.Codec.STRING, HashMapSnapshot.Codec.LONG);
+            long snapshotWrite = System.nanoTime() - startTime;
+            map = null;
+
+            startTime = System.nanoTime();
+            long found = 0;
+            try (ObjectInputStream in = new ObjectInputStream(
+                    new BufferedInputStream(Files.newInputStream(serialized)))) {
+                @SuppressWarnings("unchecked")
+                HashMap<String, Long> restored = (HashMap<String, Long>) in.readObject();
+                for (String k : probes) {
+                    if (restored.get(k) != null)
+                        found++;
+                }
+                Blackhole.sink = restored;
+            }
+            long serialStart = System.nanoTime() - startTime;
+            Blackhole.sink = null;
+
+            startTime = System.nanoTime();
+            try (HashMapSnapshot.SnapshotMap<String, Long> restored = HashMapSnapshot.open(
+                    snapshot, HashMapSnapshot.Codec.STRING, HashMapSnapshot.Codec.LONG)) {
+                for (String k : probes) {
+                    if (restored.get(k) != null)
+                        found++;
+                }
+            }
+            long snapshotStart = System.nanoTime() - startTime;
+            Blackhole.sink = found;
+
+            System.out.printf("Java序列化      文件 %6.1f MB, 写入 %6d ms, 启动 %6d ms%n",
+                    Files.size(serialized) / 1024.0 / 1024, serialWrite / 1000000, serialStart / 1000000);
+            System.out.printf("HashMapSnapshot 文件 %6.1f MB, 写入 %6d ms, 启动 %6d ms%n",
+                    Files.size(snapshot) / 1024.0 / 1024, snapshotWrite / 1000000, snapshotStart / 1000000);
+        } finally {
+            Files.deleteIfExists(serialized);
+            Files.deleteIfExists(snapshot);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package test;
+
+import com.test.util.HashMap;
+import com.test.util.Map;
+import com.test.util.Spliterator;
+import com.test.util.Spliterators;
+import com.test.util.stream.StreamSupport;
+
+/**
+ * 比较HashMap按照table索引范围拆分的分区迭代器和基于迭代器的默认分区迭代器在并行流中的表现
+ *
+ * 默认的分区迭代器每次拆分出一批元素复制到数组中，批次按照BATCH_UNIT递增，
+ * 按照索引范围拆分不需要复制，拆分出来的分区大小也更平均
+ * 例如: java -Xmx3g -Djava.util.concurrent.ForkJoinPool.common.parallelism=8 test.HashMapSpliteratorTest 4000000
+ */
+public class HashMapSpliteratorTest {
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 4000000;
+        HashMap<Long, Long> map = new HashMap<>();
+        for (long i = 0; i < size; i++)
+            map.put(i * 0x9E3779B97F4A7C15L, i);
+        System.out.println("parallelism: " + java.util.concurrent.ForkJoinPool.getCommonPoolParallelism());
+
+        for (int r = 0; r < 5; r++) {
+            long t0 = sum(Spliterators.spliterator(map.entrySet(), Spliterator.DISTINCT), false);
+            long t1 = sum(Spliterators.spliterator(map.entrySet(), Spliterator.DISTINCT), true);
+            long t2 = sum(map.entrySet().getSpliterator(), false);
+            long t3 = sum(map.entrySet().getSpliterator(), true);
+            if (r >= 2)
+                System.out.printf("round %d  迭代器: 串行 %4d ms, 并行 %4d ms   索引范围: 串行 %4d ms, 并行 %4d ms%n",
+                        r, t0 / 1000000, t1 / 1000000, t2 / 1000000, t3 / 1000000);
+        }
+
+        // 拆分的均匀程度：拆分到叶子之后每个叶子中的元素数量
+        System.out.println("迭代器叶子: " + leaves(Spliterators.spliterator(map.entrySet(), Spliterator.DISTINCT), 6));
+        System.out.println("索引范围叶子: " + leaves(map.entrySet().getSpliterator(), 6));
+    }
+
+    static long sum(Spliterator<Map.Entry<Long, Long>> spliterator, boolean parallel) {
+        long startTime = System.nanoTime();
+        long s = StreamSupport.stream(spliterator, parallel).mapToLong(e -> e.getValue()).sum();
+        long time = System.nanoTime() - startTime;
+        Blackhole.sink = s;
+        return time;
+    }
+
+    /** 拆分depth层，返回每个叶子中的元素数量 */
+    static <T> String leaves(Spliterator<T> s, int depth) {
+        StringBuilder sb = new StringBuilder();
+        collect(s, depth, sb);
+        return sb.toString();
+    }
+
+    private static <T> void collect(Spliterator<T> s, int depth, StringBuilder sb) {
+        Spliterator<T> prefix;
+        if (depth > 0 && (prefix = s.trySplit()) != null) {
+            collect(prefix, depth - 1, sb);
+            collect(s, depth - 1, sb);
+            return;
+        }
+        long[] n = new long[1];
+        s.forEachRemaining(t -> n[0]++);
+        sb.append(n[0]).append(' ');
+    }
+}
@@ -0,0 +1,62 @@
+package test;
+
+import com.test.util.HashMap;
+import com.test.util.HashMapStats;
+
+import java.lang.management.ManagementFactory;
+import javax.management.ObjectName;
+
+/**
+ * 演示HashMap.stats()如何找出hashCode分布很差的key
+ *
+ * 扩容、树化和探测长度的计数需要在启动的时候开启，例如:
+ * java -Dcom.test.util.HashMap.stats=true test.HashMapStatsTest
+ */
+public class HashMapStatsTest {
+    /** hashCode只有1024种取值的key */
+    static final class PoorKey {
+        final int id;
+
+        PoorKey(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int hashCode() {
+            return id & 1023;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof PoorKey && ((PoorKey) o).id == id;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("HashMapStats.ENABLED=" + HashMapStats.ENABLED);
+        int size = 100000;
+
+        HashMap<Integer, Integer> good = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            good.put(i * 31, i);
+        }
+        for (int i = 0; i < size; i++) {
+            good.get(i);
+        }
+        System.out.println("Integer key:  " + good.stats());
+
+        HashMap<PoorKey, Integer> poor = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            poor.put(new PoorKey(i), i);
+        }
+        for (int i = 0; i < size; i++) {
+            poor.get(new PoorKey(i));
+        }
+        System.out.println("PoorKey:      " + poor.stats());
+
+        HashMapStats.register("poor", poor);
+        System.out.println("MXBean TreeBins=" + ManagementFactory.getPlatformMBeanServer()
+                .getAttribute(new ObjectName(HashMapStats.objectName("poor")), "TreeBins"));
+        HashMapStats.unregister("poor");
+    }
+}
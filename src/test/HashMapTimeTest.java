@@ -0,0 +1,116 @@
+package test;
+
+/**
+ * 比较 com.test.util.HashMap 和 java.util.HashMap 的 put/get 吞吐量
+ *
+ * 默认测试1K和1M个元素，50M个元素需要较大的堆(-Xmx16g以上)，
+ * 通过参数指定，例如: java test.HashMapTimeTest 1000 1000000 50000000
+ */
+public class HashMapTimeTest {
+    /** 每个规模重复的轮数，第一轮作为预热不计入结果 */
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int[] sizes = args.length == 0 ? new int[]{1000, 1000000} : new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+        for (int size : sizes) {
+            Integer[] keys = keys(size);
+            // 总操作数保持在一个量级，小规模的map多跑几遍
+            int repeat = Math.max(1, 10000000 / size);
+            System.out.println("size=" + size);
+            for (int r = 0; r < ROUNDS; r++) {
+                boolean print = r == ROUNDS - 1;
+                long ours = putOurs(keys, repeat);
+                long jdk = putJdk(keys, repeat);
+                if (print) {
+                    report("put com.test.util.HashMap", ours, size, repeat);
+                    report("put java.util.HashMap", jdk, size, repeat);
+                }
+            }
+            com.test.util.HashMap<Integer, Integer> ourMap = new com.test.util.HashMap<>();
+            java.util.HashMap<Integer, Integer> jdkMap = new java.util.HashMap<>();
+            for (Integer k : keys) {
+                ourMap.put(k, k);
+                jdkMap.put(k, k);
+            }
+            for (int r = 0; r < ROUNDS; r++) {
+                boolean print = r == ROUNDS - 1;
+                long ours = getOurs(ourMap, keys, repeat);
+                long jdk = getJdk(jdkMap, keys, repeat);
+                if (print) {
+                    report("get com.test.util.HashMap", ours, size, repeat);
+                    report("get java.util.HashMap", jdk, size, repeat);
+                }
+            }
+        }
+    }
+
+    /** 生成打乱顺序的key，避免顺序插入带来的过于理想的缓存命中 */
+    static Integer[] keys(int size) {
+        Integer[] keys = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = i * 0x9E3779B1;
+        }
+        java.util.Random random = new java.util.Random(42);
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            Integer t = keys[i];
+            keys[i] = keys[j];
+            keys[j] = t;
+        }
+        return keys;
+    }
+
+    static long putOurs(Integer[] keys, int repeat) {
+        long startTime = System.nanoTime();
+        for (int r = 0; r < repeat; r++) {
+            com.test.util.HashMap<Integer, Integer> map = new com.test.util.HashMap<>();
+            for (Integer k : keys) {
+                map.put(k, k);
+            }
+        }
+        return System.nanoTime() - startTime;
+    }
+
+    static long putJdk(Integer[] keys, int repeat) {
+        long startTime = System.nanoTime();
+        for (int r = 0; r < repeat; r++) {
+            java.util.HashMap<Integer, Integer> map = new java.util.HashMap<>();
+            for (Integer k : keys) {
+                map.put(k, k);
+            }
+        }
+        return System.nanoTime() - startTime;
+    }
+
+    static long getOurs(com.test.util.HashMap<Integer, Integer> map, Integer[] keys, int repeat) {
+        long startTime = System.nanoTime();
+        long sum = 0;
+        for (int r = 0; r < repeat; r++) {
+            for (Integer k : keys) {
+                sum += map.get(k);
+            }
+        }
+        Blackhole.sink = sum;
+        return System.nanoTime() - startTime;
+    }
+
+    static long getJdk(java.util.HashMap<Integer, Integer> map, Integer[] keys, int repeat) {
+        long startTime = System.nanoTime();
+        long sum = 0;
+        for (int r = 0; r < repeat; r++) {
+            for (Integer k : keys) {
+                sum += map.get(k);
+            }
+        }
+        Blackhole.sink = sum;
+        return System.nanoTime() - startTime;
+    }
+
+    static void report(String name, long nanos, int size, int repeat) {
+        double ops = (double) size * repeat;
+        System.out.printf("  %-28s %10.2f Mops/s%n", name, ops / nanos * 1000);
+    }
+}
@@ -0,0 +1,109 @@
+package test;
+
+import com.test.util.HashSet;
+import com.test.util.LongHashSet;
+import com.test.util.stream.LongStream;
+
+/**
+ * 比较 java.util.HashSet<Long>、开放定址的 HashSet<Long> 和 LongHashSet 的堆内存占用，
+ * 以及对含有重复元素的long ID去重的吞吐量
+ *
+ * 去重分别测试直接调用add和LongStream.distinct，后者现在使用LongHashSet，
+ * boxed().distinct()是原来借用引用流的实现，每个元素都会装箱
+ * 建议固定堆大小运行，例如: java -Xms4g -Xmx4g test.HashSetDedupTest 10000000
+ */
+public class HashSetDedupTest {
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        long[] keys = MapFootprintTest.keys(size);
+        System.out.println("size=" + size);
+
+        long before = MapFootprintTest.usedHeap();
+        java.util.HashSet<Long> jdk = new java.util.HashSet<>();
+        for (long k : keys)
+            jdk.add(k);
+        MapFootprintTest.report("java.util.HashSet<Long>", MapFootprintTest.usedHeap() - before, size);
+        Blackhole.sink = jdk;
+        jdk = null;
+
+        before = MapFootprintTest.usedHeap();
+        HashSet<Long> boxed = new HashSet<>();
+        for (long k : keys)
+            boxed.add(k);
+        MapFootprintTest.report("com.test.util.HashSet<Long>", MapFootprintTest.usedHeap() - before, size);
+        Blackhole.sink = boxed;
+        boxed = null;
+
+        before = MapFootprintTest.usedHeap();
+        LongHashSet primitive = new LongHashSet();
+        for (long k : keys)
+            primitive.add(k);
+        MapFootprintTest.report("com.test.util.LongHashSet", MapFootprintTest.usedHeap() - before, size);
+        Blackhole.sink = primitive;
+        primitive = null;
+
+        // 每个ID平均出现4次
+        long[] ids = new long[size];
+        java.util.Random random = new java.util.Random(7);
+        for (int i = 0; i < size; i++)
+            ids[i] = keys[random.nextInt(Math.max(1, size / 4))];
+
+        long jdkNanos = 0, boxedNanos = 0, primitiveNanos = 0, streamNanos = 0, boxedStreamNanos = 0;
+        long count = 0;
+        for (int r = 0; r < 5; r++) {
+            long startTime = System.nanoTime();
+            count = dedupJdk(ids);
+            jdkNanos = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            count = dedupBoxed(ids);
+            boxedNanos = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            count = dedupPrimitive(ids);
+            primitiveNanos = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            count = LongStream.of(ids).distinct().count();
+            streamNanos = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            count = LongStream.of(ids).boxed().distinct().mapToLong(x -> x).count();
+            boxedStreamNanos = System.nanoTime() - startTime;
+        }
+        System.out.println("distinct=" + count + " of " + size);
+        report("java.util.HashSet<Long>.add", jdkNanos, size);
+        report("HashSet<Long>.add", boxedNanos, size);
+        report("LongHashSet.add", primitiveNanos, size);
+        report("LongStream.distinct", streamNanos, size);
+        report("LongStream.boxed().distinct", boxedStreamNanos, size);
+    }
+
+    static long dedupJdk(long[] ids) {
+        java.util.HashSet<Long> seen = new java.util.HashSet<>();
+        for (long id : ids)
+            seen.add(id);
+        Blackhole.sink = seen;
+        return seen.size();
+    }
+
+    static long dedupBoxed(long[] ids) {
+        HashSet<Long> seen = new HashSet<>();
+        for (long id : ids)
+            seen.add(id);
+        Blackhole.sink = seen;
+        return seen.size();
+    }
+
+    static long dedupPrimitive(long[] ids) {
+        LongHashSet seen = new LongHashSet();
+        for (long id : ids)
+            seen.add(id);
+        Blackhole.sink = seen;
+        return seen.size();
+    }
+
+    static void report(String name, long nanos, int size) {
+        System.out.printf("  %-30s %7.2f Mops/s%n", name, (double) size / nanos * 1000);
+    }
+}
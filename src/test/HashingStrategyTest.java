@@ -0,0 +1,94 @@
+package test;
+
+import com.test.util.HashMap;
+import com.test.util.HashingStrategy;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * 比较byte[]作为key的两种方式：每次查找创建一个包装对象，和使用HashingStrategy直接查找
+ *
+ * 分配的字节数通过com.sun.management.ThreadMXBean统计当前线程，
+ * 例如: java -Xmx2g test.HashingStrategyTest 1000000
+ */
+public class HashingStrategyTest {
+    /** 常见的包装方式，构造的时候计算好哈希值 */
+    static final class Bytes {
+        final byte[] data;
+        final int hash;
+
+        Bytes(byte[] data) {
+            this.data = data;
+            this.hash = java.util.Arrays.hashCode(data);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Bytes && java.util.Arrays.equals(data, ((Bytes) o).data);
+        }
+    }
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        java.util.Random random = new java.util.Random(7);
+        byte[][] keys = new byte[size][];
+        byte[][] lookups = new byte[size][];
+        for (int i = 0; i < size; i++) {
+            keys[i] = new byte[16];
+            random.nextBytes(keys[i]);
+            // 查找使用内容相同的另一个数组，和从网络或者文件中读到的key一样
+            lookups[i] = keys[i].clone();
+        }
+
+        HashMap<Bytes, Integer> wrapped = new HashMap<>();
+        HashMap<byte[], Integer> direct = new HashMap<>(HashingStrategy.byteArrays());
+        for (int i = 0; i < size; i++) {
+            wrapped.put(new Bytes(keys[i]), i);
+            direct.put(keys[i], i);
+        }
+
+        long[] result = new long[2];
+        for (int r = 0; r < 5; r++) {
+            long bytes = allocatedBytes();
+            long startTime = System.nanoTime();
+            long found = 0;
+            for (byte[] k : lookups) {
+                if (wrapped.get(new Bytes(k)) != null)
+                    found++;
+            }
+            result[0] = System.nanoTime() - startTime;
+            result[1] = allocatedBytes() - bytes;
+            Blackhole.sink = found;
+        }
+        report("包装对象 HashMap<Bytes,V>", result, size);
+
+        for (int r = 0; r < 5; r++) {
+            long bytes = allocatedBytes();
+            long startTime = System.nanoTime();
+            long found = 0;
+            for (byte[] k : lookups) {
+                if (direct.get(k) != null)
+                    found++;
+            }
+            result[0] = System.nanoTime() - startTime;
+            result[1] = allocatedBytes() - bytes;
+            Blackhole.sink = found;
+        }
+        report("HashMap<byte[],V>(HashingStrategy.byteArrays())", result, size);
+    }
+
+    static void report(String name, long[] result, int size) {
+        System.out.printf("%-50s %8.2f Mops/s, 每次查找分配 %.1f 字节%n",
+                name, (double) size / result[0] * 1000, (double) result[1] / size);
+    }
+
+    static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
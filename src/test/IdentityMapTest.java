@@ -0,0 +1,209 @@
+package test;
+
+import com.test.util.HashMap;
+import com.test.util.IdentityHashMap;
+import com.test.util.IdentityIntMap;
+
+/**
+ * 模拟序列化时的对象图跟踪：遍历一个随机的对象图，给第一次遇到的对象分配递增的句柄，
+ * 再次遇到时查出它的句柄，比较几种以对象为key的表的吞吐量和内存占用
+ *
+ * com.test.util.HashMap 调用的是Object的hashCode和equals，每个键值对都有一个Node和装箱的Integer，
+ * IdentityIntMap 不装箱，IdentityHashMap 的value仍然是装箱的Integer
+ * 例如: java -Xms2g -Xmx2g test.IdentityMapTest 1000000
+ */
+public class IdentityMapTest {
+    /** 对象图中的节点，每个节点引用几个其它节点 */
+    static final class GraphNode {
+        GraphNode[] refs;
+    }
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        GraphNode[] nodes = graph(size, 4, 42);
+        System.out.println("nodes=" + size + " edges=" + size * 4);
+
+        long hashMapNanos = 0, jdkNanos = 0, identityNanos = 0, intNanos = 0;
+        for (int r = 0; r < 5; r++) {
+            long startTime = System.nanoTime();
+            Blackhole.sink = traverseHashMap(nodes);
+            hashMapNanos = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            Blackhole.sink = traverseJdk(nodes);
+            jdkNanos = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            Blackhole.sink = traverseIdentity(nodes);
+            identityNanos = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            Blackhole.sink = traverseIdentityInt(nodes);
+            intNanos = System.nanoTime() - startTime;
+        }
+        // 每条边和每个根都查找一次
+        long lookups = size * 5L;
+        report("com.test.util.HashMap<Object,Integer>", hashMapNanos, lookups);
+        report("java.util.IdentityHashMap", jdkNanos, lookups);
+        report("com.test.util.IdentityHashMap", identityNanos, lookups);
+        report("com.test.util.IdentityIntMap", intNanos, lookups);
+
+        Blackhole.sink = null;
+        long before = MapFootprintTest.usedHeap();
+        Object m = traverseHashMap(nodes);
+        MapFootprintTest.report("com.test.util.HashMap<Object,Integer>", MapFootprintTest.usedHeap() - before, size);
+        Blackhole.sink = m;
+        m = null;
+        Blackhole.sink = null;
+        before = MapFootprintTest.usedHeap();
+        m = traverseJdk(nodes);
+        MapFootprintTest.report("java.util.IdentityHashMap", MapFootprintTest.usedHeap() - before, size);
+        Blackhole.sink = m;
+        m = null;
+        Blackhole.sink = null;
+        before = MapFootprintTest.usedHeap();
+        m = traverseIdentity(nodes);
+        MapFootprintTest.report("com.test.util.IdentityHashMap", MapFootprintTest.usedHeap() - before, size);
+        Blackhole.sink = m;
+        m = null;
+        Blackhole.sink = null;
+        before = MapFootprintTest.usedHeap();
+        m = traverseIdentityInt(nodes);
+        MapFootprintTest.report("com.test.util.IdentityIntMap", MapFootprintTest.usedHeap() - before, size);
+        Blackhole.sink = m;
+    }
+
+    /** 生成size个节点的随机图，每个节点有degree条出边 */
+    static GraphNode[] graph(int size, int degree, long seed) {
+        GraphNode[] nodes = new GraphNode[size];
+        for (int i = 0; i < size; i++)
+            nodes[i] = new GraphNode();
+        java.util.Random random = new java.util.Random(seed);
+        for (GraphNode node : nodes) {
+            node.refs = new GraphNode[degree];
+            for (int j = 0; j < degree; j++)
+                node.refs[j] = nodes[random.nextInt(size)];
+        }
+        return nodes;
+    }
+
+    /**
+     * 每个遍历方法都是同样的深度优先遍历，为了避免共用的方法变成多态调用点而分别写出
+     * 返回句柄表，句柄之和放进Blackhole.sink
+     */
+    static Object traverseHashMap(GraphNode[] nodes) {
+        HashMap<Object, Integer> handles = new HashMap<>();
+        GraphNode[] stack = new GraphNode[nodes.length];
+        long sum = 0;
+        for (GraphNode root : nodes) {
+            Integer h = handles.get(root);
+            if (h != null) {
+                sum += h;
+                continue;
+            }
+            handles.put(root, handles.size());
+            int top = 0;
+            stack[top++] = root;
+            while (top > 0) {
+                for (GraphNode ref : stack[--top].refs) {
+                    if ((h = handles.get(ref)) != null) {
+                        sum += h;
+                    } else {
+                        handles.put(ref, handles.size());
+                        stack[top++] = ref;
+                    }
+                }
+            }
+        }
+        Blackhole.sink = sum;
+        return handles;
+    }
+
+    static Object traverseJdk(GraphNode[] nodes) {
+        java.util.IdentityHashMap<Object, Integer> handles = new java.util.IdentityHashMap<>();
+        GraphNode[] stack = new GraphNode[nodes.length];
+        long sum = 0;
+        for (GraphNode root : nodes) {
+            Integer h = handles.get(root);
+            if (h != null) {
+                sum += h;
+                continue;
+            }
+            handles.put(root, handles.size());
+            int top = 0;
+            stack[top++] = root;
+            while (top > 0) {
+                for (GraphNode ref : stack[--top].refs) {
+                    if ((h = handles.get(ref)) != null) {
+                        sum += h;
+                    } else {
+                        handles.put(ref, handles.size());
+                        stack[top++] = ref;
+                    }
+                }
+            }
+        }
+        Blackhole.sink = sum;
+        return handles;
+    }
+
+    static Object traverseIdentity(GraphNode[] nodes) {
+        IdentityHashMap<Object, Integer> handles = new IdentityHashMap<>();
+        GraphNode[] stack = new GraphNode[nodes.length];
+        long sum = 0;
+        for (GraphNode root : nodes) {
+            Integer h = handles.get(root);
+            if (h != null) {
+                sum += h;
+                continue;
+            }
+            handles.put(root, handles.size());
+            int top = 0;
+            stack[top++] = root;
+            while (top > 0) {
+                for (GraphNode ref : stack[--top].refs) {
+                    if ((h = handles.get(ref)) != null) {
+                        sum += h;
+                    } else {
+                        handles.put(ref, handles.size());
+                        stack[top++] = ref;
+                    }
+                }
+            }
+        }
+        Blackhole.sink = sum;
+        return handles;
+    }
+
+    static Object traverseIdentityInt(GraphNode[] nodes) {
+        IdentityIntMap<Object> handles = new IdentityIntMap<>();
+        GraphNode[] stack = new GraphNode[nodes.length];
+        long sum = 0;
+        for (GraphNode root : nodes) {
+            int h = handles.getOrDefault(root, -1);
+            if (h >= 0) {
+                sum += h;
+                continue;
+            }
+            handles.put(root, handles.size());
+            int top = 0;
+            stack[top++] = root;
+            while (top > 0) {
+                for (GraphNode ref : stack[--top].refs) {
+                    if ((h = handles.getOrDefault(ref, -1)) >= 0) {
+                        sum += h;
+                    } else {
+                        handles.put(ref, handles.size());
+                        stack[top++] = ref;
+                    }
+                }
+            }
+        }
+        Blackhole.sink = sum;
+        return handles;
+    }
+
+    static void report(String name, long nanos, long lookups) {
+        System.out.printf("  %-38s %7.2f Mlookups/s%n", name, (double) lookups / nanos * 1000);
+    }
+}
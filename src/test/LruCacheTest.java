@@ -0,0 +1,123 @@
+package test;
+
+import com.test.util.HashMap;
+import com.test.util.LinkedHashMap;
+import com.test.util.Map;
+
+/**
+ * 用访问顺序的 LinkedHashMap 作为有界LRU缓存，测试Zipf分布下的命中率和吞吐量，
+ * 并比较 LinkedHashMap 和 HashMap 每个元素的内存占用
+ *
+ * 访问序列预先生成，key的个数和访问次数可以通过参数指定，
+ * 例如: java -Xms2g -Xmx2g test.LruCacheTest 1000000 10000000
+ */
+public class LruCacheTest {
+    /** Zipf分布的偏斜程度，越大热点越集中 */
+    private static final double[] SKEWS = {0.8, 0.99, 1.2};
+
+    /** 缓存容量占key总数的比例 */
+    private static final double[] CAPACITY_RATIOS = {0.001, 0.01, 0.1};
+
+    public static void main(String[] args) {
+        int keyCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int accessCount = args.length > 1 ? Integer.parseInt(args[1]) : 10000000;
+
+        for (double skew : SKEWS) {
+            Integer[] trace = zipf(keyCount, accessCount, skew, 42);
+            System.out.printf("zipf s=%.2f keys=%d accesses=%d%n", skew, keyCount, accessCount);
+            for (double ratio : CAPACITY_RATIOS) {
+                int capacity = Math.max(1, (int) (keyCount * ratio));
+                // 第一轮作为预热
+                run(new LruCache<>(capacity), trace);
+                long startTime = System.nanoTime();
+                long hits = run(new LruCache<>(capacity), trace);
+                long nanos = System.nanoTime() - startTime;
+                System.out.printf("  capacity=%-8d hit=%6.2f%%  %8.2f Mops/s%n",
+                        capacity, hits * 100.0 / accessCount, (double) accessCount / nanos * 1000);
+            }
+        }
+
+        int size = keyCount;
+        Integer[] keys = HashMapTimeTest.keys(size);
+        long before = MapFootprintTest.usedHeap();
+        HashMap<Integer, Integer> hashMap = new HashMap<>();
+        for (Integer k : keys) {
+            hashMap.put(k, k);
+        }
+        long hashMapBytes = MapFootprintTest.usedHeap() - before;
+        Blackhole.sink = hashMap;
+        hashMap = null;
+
+        before = MapFootprintTest.usedHeap();
+        LinkedHashMap<Integer, Integer> linkedHashMap = new LinkedHashMap<>(16, 0.75f, true);
+        for (Integer k : keys) {
+            linkedHashMap.put(k, k);
+        }
+        long linkedBytes = MapFootprintTest.usedHeap() - before;
+        Blackhole.sink = linkedHashMap;
+
+        // key在put之前已经存在，所以这里只统计了Node和table的开销
+        System.out.println("memory size=" + size);
+        MapFootprintTest.report("com.test.util.HashMap", hashMapBytes, size);
+        MapFootprintTest.report("com.test.util.LinkedHashMap", linkedBytes, size);
+    }
+
+    /** 按照访问序列执行缓存查找，未命中时放入缓存，返回命中的次数 */
+    static long run(LruCache<Integer, Integer> cache, Integer[] trace) {
+        long hits = 0;
+        for (Integer k : trace) {
+            if (cache.get(k) != null)
+                hits++;
+            else
+                cache.put(k, k);
+        }
+        Blackhole.sink = cache;
+        return hits;
+    }
+
+    /**
+     * 生成服从Zipf分布的访问序列，排名为i的key被访问的概率与1/i^skew成正比
+     *
+     * 通过累积分布函数加二分查找采样，key的值经过打乱，热点不会集中在相邻的整数上
+     */
+    static Integer[] zipf(int keyCount, int accessCount, double skew, long seed) {
+        double[] cdf = new double[keyCount];
+        double sum = 0;
+        for (int i = 0; i < keyCount; i++) {
+            sum += 1.0 / Math.pow(i + 1, skew);
+            cdf[i] = sum;
+        }
+        Integer[] keys = HashMapTimeTest.keys(keyCount);
+        java.util.Random random = new java.util.Random(seed);
+        Integer[] trace = new Integer[accessCount];
+        for (int i = 0; i < accessCount; i++) {
+            double u = random.nextDouble() * sum;
+            int lo = 0, hi = keyCount - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (cdf[mid] < u)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            trace[i] = keys[lo];
+        }
+        return trace;
+    }
+
+    /** 容量有界的LRU缓存 */
+    static final class LruCache<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        LruCache(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > capacity;
+        }
+    }
+}
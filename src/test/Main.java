@@ -53,6 +53,23 @@ public class Main {
             treeMap.put(i,i);
         }
         System.out.println("treeMap:" + (System.currentTimeMillis() - startTime));
+        com.test.util.TreeMap<Integer,Integer> testTreeMap = new com.test.util.TreeMap<>();
+        startTime = System.currentTimeMillis();
+        for (int i = 0; i < 11111111; i++) {
+            testTreeMap.put(i,i);
+        }
+        System.out.println("com.test.util.TreeMap:" + (System.currentTimeMillis() - startTime));
+        startTime = System.currentTimeMillis();
+        long sum = 0;
+        for (int i = 0; i < 11111111; i++) {
+            sum += treeMap.floorKey(i) + treeMap.ceilingKey(i);
+        }
+        System.out.println("treeMap floor/ceiling:" + (System.currentTimeMillis() - startTime));
+        startTime = System.currentTimeMillis();
+        for (int i = 0; i < 11111111; i++) {
+            sum -= testTreeMap.floorKey(i) + testTreeMap.ceilingKey(i);
+        }
+        System.out.println("com.test.util.TreeMap floor/ceiling:" + (System.currentTimeMillis() - startTime) + " " + (sum == 0));
         startTime = System.currentTimeMillis();
         for (int i = 0; i < 11111111; i++) {
             linkedHashMap.put(i,i);
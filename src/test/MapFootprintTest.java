@@ -0,0 +1,109 @@
+package test;
+
+import com.test.util.HashMap;
+import com.test.util.LongLongMap;
+
+/**
+ * 比较 LongLongMap 和 HashMap<Long,Long> 的堆内存占用以及随机查找的吞吐量
+ *
+ * 内存占用通过前后两次强制GC之后的已用堆大小相减得到，结果包含key和value的装箱对象，
+ * 为了测量稳定，建议固定堆大小运行，例如: java -Xms4g -Xmx4g test.MapFootprintTest 10000000
+ */
+public class MapFootprintTest {
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        long[] keys = keys(size);
+        System.out.println("size=" + size);
+
+        long before = usedHeap();
+        HashMap<Long, Long> boxed = new HashMap<>();
+        for (long k : keys) {
+            boxed.put(k, k + 1);
+        }
+        long boxedBytes = usedHeap() - before;
+        report("com.test.util.HashMap<Long,Long>", boxedBytes, size);
+        long boxedNanos = getBoxed(boxed, keys);
+        Blackhole.sink = boxed;
+        boxed = null;
+
+        before = usedHeap();
+        LongLongMap primitive = new LongLongMap();
+        for (long k : keys) {
+            primitive.put(k, k + 1);
+        }
+        long primitiveBytes = usedHeap() - before;
+        report("com.test.util.LongLongMap", primitiveBytes, size);
+        long primitiveNanos = getPrimitive(primitive, keys);
+        Blackhole.sink = primitive;
+
+        System.out.printf("内存缩减 %.2fx%n", (double) boxedBytes / primitiveBytes);
+        System.out.printf("随机get  HashMap %.2f Mops/s, LongLongMap %.2f Mops/s%n",
+                (double) size / boxedNanos * 1000, (double) size / primitiveNanos * 1000);
+    }
+
+    /** 生成打乱顺序的key */
+    static long[] keys(int size) {
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = i * 0x9E3779B97F4A7C15L;
+        }
+        java.util.Random random = new java.util.Random(42);
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            long t = keys[i];
+            keys[i] = keys[j];
+            keys[j] = t;
+        }
+        return keys;
+    }
+
+    /** 多次GC之后的已用堆大小 */
+    static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            used = Math.min(used, rt.totalMemory() - rt.freeMemory());
+        }
+        return used;
+    }
+
+    /** 取最后一轮的耗时，前面几轮作为预热 */
+    static long getBoxed(HashMap<Long, Long> map, long[] keys) {
+        long nanos = 0;
+        for (int r = 0; r < 5; r++) {
+            long startTime = System.nanoTime();
+            long sum = 0;
+            for (long k : keys) {
+                sum += map.get(k);
+            }
+            nanos = System.nanoTime() - startTime;
+            Blackhole.sink = sum;
+        }
+        return nanos;
+    }
+
+    static long getPrimitive(LongLongMap map, long[] keys) {
+        long nanos = 0;
+        for (int r = 0; r < 5; r++) {
+            long startTime = System.nanoTime();
+            long sum = 0;
+            for (long k : keys) {
+                sum += map.getOrDefault(k, 0L);
+            }
+            nanos = System.nanoTime() - startTime;
+            Blackhole.sink = sum;
+        }
+        return nanos;
+    }
+
+    static void report(String name, long bytes, int size) {
+        System.out.printf("  %-34s %8.2f MB  %6.1f bytes/entry%n",
+                name, bytes / 1024.0 / 1024.0, (double) bytes / size);
+    }
+}
@@ -0,0 +1,86 @@
+package test;
+
+import com.test.util.HashMap;
+import com.test.util.OffHeapHashMap;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+/**
+ * 比较 HashMap<Long,byte[]> 和 OffHeapHashMap 在存放大量小记录时的GC停顿
+ *
+ * 每个阶段先装入size条记录，然后一边随机更新记录一边分配短命的对象，统计这期间GC的次数和耗时，
+ * 最后在记录都存活的时候执行一次System.gc()，统计一次完整GC的耗时，
+ * 例如: java -Xms2g -Xmx2g -XX:MaxDirectMemorySize=2g test.OffHeapMapGcTest 5000000
+ */
+public class OffHeapMapGcTest {
+    /** 每条记录value的字节数 */
+    static final int VALUE_SIZE = 32;
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        int updates = size * 2;
+        long[] keys = MapFootprintTest.keys(size);
+        System.out.println("size=" + size + ", value=" + VALUE_SIZE + " bytes");
+
+        java.util.Random random = new java.util.Random(11);
+        HashMap<Long, byte[]> onHeap = new HashMap<>();
+        for (long k : keys) {
+            onHeap.put(k, new byte[VALUE_SIZE]);
+        }
+        long[] gc = gcCounts();
+        long startTime = System.nanoTime();
+        for (int i = 0; i < updates; i++) {
+            // 会话更新：替换value，同时产生一些短命的对象
+            byte[] v = new byte[VALUE_SIZE];
+            v[0] = (byte) i;
+            onHeap.put(keys[random.nextInt(size)], v);
+            Blackhole.sink = new Object[4];
+        }
+        report("HashMap<Long,byte[]>", gc, System.nanoTime() - startTime, updates);
+        Blackhole.sink = onHeap;
+        onHeap = null;
+        Blackhole.sink = null;
+        System.gc();
+
+        random = new java.util.Random(11);
+        ByteBuffer key = ByteBuffer.allocate(8), value = ByteBuffer.allocate(VALUE_SIZE);
+        try (OffHeapHashMap offHeap = new OffHeapHashMap(8, VALUE_SIZE)) {
+            for (long k : keys) {
+                key.putLong(0, k);
+                offHeap.put(key, value);
+            }
+            gc = gcCounts();
+            startTime = System.nanoTime();
+            for (int i = 0; i < updates; i++) {
+                key.putLong(0, keys[random.nextInt(size)]);
+                value.put(0, (byte) i);
+                offHeap.put(key, value);
+                Blackhole.sink = new Object[4];
+            }
+            report("OffHeapHashMap", gc, System.nanoTime() - startTime, updates);
+            Blackhole.sink = offHeap;
+        }
+    }
+
+    /** 所有收集器累计的次数和耗时 */
+    static long[] gcCounts() {
+        long count = 0, millis = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, bean.getCollectionCount());
+            millis += Math.max(0, bean.getCollectionTime());
+        }
+        return new long[]{count, millis};
+    }
+
+    static void report(String name, long[] before, long nanos, int updates) {
+        long[] after = gcCounts();
+        long startTime = System.nanoTime();
+        System.gc();
+        long fullGc = System.nanoTime() - startTime;
+        System.out.printf("%-22s 更新 %.2f Mops/s, GC %d 次共 %d ms, 存活时的完整GC %d ms, 已用堆 %.1f MB%n",
+                name, (double) updates / nanos * 1000, after[0] - before[0], after[1] - before[1],
+                fullGc / 1000000, MapFootprintTest.usedHeap() / 1024.0 / 1024);
+    }
+}
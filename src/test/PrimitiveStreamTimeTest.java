@@ -0,0 +1,71 @@
+package test;
+
+import com.test.util.ArrayList;
+import com.test.util.stream.IntStream;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * 比较原始类型流和装箱的引用流在数值聚合上的耗时和每个元素分配的字节数
+ *
+ * 分配的字节数通过 com.sun.management.ThreadMXBean 统计当前线程分配的内存得到，
+ * 原始类型流整条Sink链传递的都是int，每个元素分配的字节数应该接近0，
+ * 例如: java -Xms2g -Xmx2g test.PrimitiveStreamTimeTest 10000000
+ */
+public class PrimitiveStreamTimeTest {
+    /** 预热的轮数 */
+    private static final int WARMUP = 10;
+
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        ArrayList<Integer> list = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            list.add(i);
+        }
+
+        System.out.println("size=" + size);
+        System.out.printf("  %-36s %12s %14s%n", "", "M/s", "bytes/element");
+        run("com.test IntStream.map.filter.sum", size, () ->
+                Blackhole.sink = IntStream.range(0, size)
+                        .map(v -> v * 3)
+                        .filter(v -> (v & 1) == 0)
+                        .sum());
+        run("java.util IntStream.map.filter.sum", size, () ->
+                Blackhole.sink = java.util.stream.IntStream.range(0, size)
+                        .map(v -> v * 3)
+                        .filter(v -> (v & 1) == 0)
+                        .sum());
+        run("com.test Stream<Integer>.reduce", size, () ->
+                Blackhole.sink = list.stream()
+                        .map(v -> v * 3)
+                        .filter(v -> (v & 1) == 0)
+                        .reduce(0, Integer::sum));
+        run("com.test mapToInt.sum", size, () ->
+                Blackhole.sink = list.stream()
+                        .mapToInt(v -> v * 3)
+                        .filter(v -> (v & 1) == 0)
+                        .sum());
+        run("com.test IntStream.summaryStatistics", size, () ->
+                Blackhole.sink = IntStream.range(0, size)
+                        .map(v -> v % 1000)
+                        .summaryStatistics());
+    }
+
+    /** 预热之后取最后一轮的耗时和分配的字节数 */
+    static void run(String name, int size, Runnable body) {
+        long nanos = 0, bytes = 0;
+        long tid = Thread.currentThread().getId();
+        for (int r = 0; r < WARMUP; r++) {
+            long startBytes = THREAD_BEAN.getThreadAllocatedBytes(tid);
+            long startTime = System.nanoTime();
+            body.run();
+            nanos = System.nanoTime() - startTime;
+            bytes = THREAD_BEAN.getThreadAllocatedBytes(tid) - startBytes;
+        }
+        System.out.printf("  %-36s %12.2f %14.3f%n", name,
+                (double) size / nanos * 1000, (double) bytes / size);
+    }
+}
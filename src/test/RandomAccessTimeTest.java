@@ -1,17 +1,28 @@
 package test;
 
-import java.util.*;
+import com.test.util.Spliterator;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
- * 测试 RandomAccess 接口
+ * 测试 RandomAccess 接口，并比较 com.test.util.ArrayList 和 java.util.ArrayList 的性能
+ *
+ * 每个测试先预热几轮，取最后一轮的耗时，元素个数可以通过参数指定，
+ * 例如: java -Xms2g -Xmx2g test.RandomAccessTimeTest 1000000
  */
 public class RandomAccessTimeTest {
+    /** 预热的轮数 */
+    private static final int WARMUP = 5;
 
     //使用for循环遍历
     public static long traverseByLoop(List list){
         long startTime = System.nanoTime();
         for (int i = 0;i < list.size();i++){
-            list.get(i);
+            Blackhole.sink = list.get(i);
         }
         long endTime = System.nanoTime();
         return endTime-startTime;
@@ -22,33 +33,286 @@ public class RandomAccessTimeTest {
         Iterator iterator = list.iterator();
         long startTime = System.nanoTime();
         while (iterator.hasNext()){
-            iterator.next();
+            Blackhole.sink = iterator.next();
         }
         long endTime = System.nanoTime();
         return endTime-startTime;
     }
 
     public static void main(String[] args) {
-        //加入数据
-        List<String> arrayList = new ArrayList<>();
-        for (int i = 0;i < 30000;i++){
-            arrayList.add("" + i);
-        }
-        long loopTime = RandomAccessTimeTest.traverseByLoop(arrayList);
-        long iteratorTime = RandomAccessTimeTest.traverseByIterator(arrayList);
-        System.out.println("ArrayList:");
-        System.out.println("for循环遍历时间:" + loopTime);
-        System.out.println("迭代器遍历时间: " + iteratorTime);
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        Integer[] values = HashMapTimeTest.keys(size);
 
+        //RandomAccess的列表用for循环遍历更快，LinkedList的get是O(n)的，所以只用少量元素
+        List<String> arrayList = new java.util.ArrayList<>();
         List<String> linkedList = new LinkedList<>();
-        //加入数据
         for (int i = 0;i < 30000;i++){
+            arrayList.add("" + i);
             linkedList.add("" + i);
         }
-        loopTime = RandomAccessTimeTest.traverseByLoop(linkedList);
-        iteratorTime = RandomAccessTimeTest.traverseByIterator(linkedList);
+        System.out.println("java.util.ArrayList:");
+        System.out.println("for循环遍历时间:" + traverseByLoop(arrayList));
+        System.out.println("迭代器遍历时间: " + traverseByIterator(arrayList));
         System.out.println("LinkedList:");
-        System.out.println("for循环遍历时间:" + loopTime);
-        System.out.println("迭代器遍历时间: " + iteratorTime);
+        System.out.println("for循环遍历时间:" + traverseByLoop(linkedList));
+        System.out.println("迭代器遍历时间: " + traverseByIterator(linkedList));
+
+        System.out.println("size=" + size);
+        System.out.printf("  %-22s %14s %14s%n", "", "com.test", "java.util");
+        report("add", addTest(values), addJdk(values), size);
+
+        com.test.util.ArrayList<Integer> list = new com.test.util.ArrayList<>();
+        java.util.ArrayList<Integer> jdk = new java.util.ArrayList<>();
+        for (Integer v : values) {
+            list.add(v);
+            jdk.add(v);
+        }
+        report("get(i)", getTest(list), getJdk(jdk), size);
+        report("iterator", iterateTest(list), iterateJdk(jdk), size);
+        report("forEach", forEachTest(list), forEachJdk(jdk), size);
+        report("addAll", addAllTest(list), addAllJdk(jdk), size);
+        report("removeIf(一半)", removeIfTest(list), removeIfJdk(jdk), size);
+        report("spliterator(1线程)", splitTest(list, 1), splitJdk(jdk, 1), size);
+        int parallelism = ForkJoinPool.commonPool().getParallelism();
+        report("spliterator(" + parallelism + "线程)",
+                splitTest(list, parallelism), splitJdk(jdk, parallelism), size);
+    }
+
+    static void report(String name, long testNanos, long jdkNanos, int size) {
+        System.out.printf("  %-22s %10.2f M/s %10.2f M/s%n", name,
+                (double) size / testNanos * 1000, (double) size / jdkNanos * 1000);
+    }
+
+    /** 从空列表开始逐个添加，包含扩容的开销 */
+    static long addTest(Integer[] values) {
+        long nanos = 0;
+        for (int r = 0; r < WARMUP; r++) {
+            long startTime = System.nanoTime();
+            com.test.util.ArrayList<Integer> list = new com.test.util.ArrayList<>();
+            for (Integer v : values)
+                list.add(v);
+            nanos = System.nanoTime() - startTime;
+            Blackhole.sink = list;
+        }
+        return nanos;
+    }
+
+    static long addJdk(Integer[] values) {
+        long nanos = 0;
+        for (int r = 0; r < WARMUP; r++) {
+            long startTime = System.nanoTime();
+            java.util.ArrayList<Integer> list = new java.util.ArrayList<>();
+            for (Integer v : values)
+                list.add(v);
+            nanos = System.nanoTime() - startTime;
+            Blackhole.sink = list;
+        }
+        return nanos;
+    }
+
+    static long getTest(com.test.util.ArrayList<Integer> list) {
+        long nanos = 0;
+        for (int r = 0; r < WARMUP; r++) {
+            long startTime = System.nanoTime();
+            long sum = 0;
+            for (int i = 0; i < list.size(); i++)
+                sum += list.get(i);
+            nanos = System.nanoTime() - startTime;
+            Blackhole.sink = sum;
+        }
+        return nanos;
+    }
+
+    static long getJdk(java.util.ArrayList<Integer> list) {
+        long nanos = 0;
+        for (int r = 0; r < WARMUP; r++) {
+            long startTime = System.nanoTime();
+            long sum = 0;
+            for (int i = 0; i < list.size(); i++)
+                sum += list.get(i);
+            nanos = System.nanoTime() - startTime;
+            Blackhole.sink = sum;
+        }
+        return nanos;
+    }
+
+    static long iterateTest(com.test.util.ArrayList<Integer> list) {
+        long nanos = 0;
+        for (int r = 0; r < WARMUP; r++) {
+            long startTime = System.nanoTime();
+            long sum = 0;
+            for (Integer v : list)
+                sum += v;
+            nanos = System.nanoTime() - startTime;
+            Blackhole.sink = sum;
+        }
+        return nanos;
+    }
+
+    static long iterateJdk(java.util.ArrayList<Integer> list) {
+        long nanos = 0;
+        for (int r = 0; r < WARMUP; r++) {
+            long startTime = System.nanoTime();
+            long sum = 0;
+            for (Integer v : list)
+                sum += v;
+            nanos = System.nanoTime() - startTime;
+            Blackhole.sink = sum;
+        }
+        return nanos;
+    }
+
+    static long forEachTest(com.test.util.ArrayList<Integer> list) {
+        long nanos = 0;
+        for (int r = 0; r < WARMUP; r++) {
+            long[] sum = new long[1];
+            long startTime = System.nanoTime();
+            list.forEach((com.test.util.function.Consumer<Integer>) v -> sum[0] += v);
+            nanos = System.nanoTime() - startTime;
+            Blackhole.sink = sum;
+        }
+        return nanos;
+    }
+
+    static long forEachJdk(java.util.ArrayList<Integer> list) {
+        long nanos = 0;
+        for (int r = 0; r < WARMUP; r++) {
+            long[] sum = new long[1];
+            long startTime = System.nanoTime();
+            list.forEach(v -> sum[0] += v);
+            nanos = System.nanoTime() - startTime;
+            Blackhole.sink = sum;
+        }
+        return nanos;
+    }
+
+    /** 把整个列表一次性添加到一个空列表中 */
+    static long addAllTest(com.test.util.ArrayList<Integer> list) {
+        long nanos = 0;
+        for (int r = 0; r < WARMUP; r++) {
+            long startTime = System.nanoTime();
+            com.test.util.ArrayList<Integer> copy = new com.test.util.ArrayList<>();
+            copy.addAll(list);
+            nanos = System.nanoTime() - startTime;
+            Blackhole.sink = copy;
+        }
+        return nanos;
+    }
+
+    static long addAllJdk(java.util.ArrayList<Integer> list) {
+        long nanos = 0;
+        for (int r = 0; r < WARMUP; r++) {
+            long startTime = System.nanoTime();
+            java.util.ArrayList<Integer> copy = new java.util.ArrayList<>();
+            copy.addAll(list);
+            nanos = System.nanoTime() - startTime;
+            Blackhole.sink = copy;
+        }
+        return nanos;
+    }
+
+    /** 在副本上删除一半的元素，复制的时间不计入 */
+    static long removeIfTest(com.test.util.ArrayList<Integer> list) {
+        long nanos = 0;
+        for (int r = 0; r < WARMUP; r++) {
+            com.test.util.ArrayList<Integer> copy = new com.test.util.ArrayList<>(list);
+            long startTime = System.nanoTime();
+            copy.removeIf(v -> (v & 1) == 0);
+            nanos = System.nanoTime() - startTime;
+            Blackhole.sink = copy;
+        }
+        return nanos;
+    }
+
+    static long removeIfJdk(java.util.ArrayList<Integer> list) {
+        long nanos = 0;
+        for (int r = 0; r < WARMUP; r++) {
+            java.util.ArrayList<Integer> copy = new java.util.ArrayList<>(list);
+            long startTime = System.nanoTime();
+            copy.removeIf(v -> (v & 1) == 0);
+            nanos = System.nanoTime() - startTime;
+            Blackhole.sink = copy;
+        }
+        return nanos;
+    }
+
+    /**
+     * 通过分区迭代器对半拆分，在ForkJoinPool中并行求和，
+     * 分区数量大约是线程数的4倍，线程数为1时不拆分
+     */
+    static long splitTest(com.test.util.ArrayList<Integer> list, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long threshold = Math.max(1, list.size() / (threads * 4L));
+        long nanos = 0;
+        for (int r = 0; r < WARMUP; r++) {
+            long startTime = System.nanoTime();
+            Blackhole.sink = pool.invoke(new TestSumTask(list.getSpliterator(), threshold));
+            nanos = System.nanoTime() - startTime;
+        }
+        pool.shutdown();
+        return nanos;
+    }
+
+    static long splitJdk(java.util.ArrayList<Integer> list, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long threshold = Math.max(1, list.size() / (threads * 4L));
+        long nanos = 0;
+        for (int r = 0; r < WARMUP; r++) {
+            long startTime = System.nanoTime();
+            Blackhole.sink = pool.invoke(new JdkSumTask(list.spliterator(), threshold));
+            nanos = System.nanoTime() - startTime;
+        }
+        pool.shutdown();
+        return nanos;
+    }
+
+    static final class TestSumTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final Spliterator<Integer> spliterator;
+        private final long threshold;
+
+        TestSumTask(Spliterator<Integer> spliterator, long threshold) {
+            this.spliterator = spliterator;
+            this.threshold = threshold;
+        }
+
+        protected Long compute() {
+            Spliterator<Integer> prefix;
+            if (spliterator.estimateSize() > threshold && (prefix = spliterator.trySplit()) != null) {
+                TestSumTask left = new TestSumTask(prefix, threshold);
+                left.fork();
+                long right = new TestSumTask(spliterator, threshold).compute();
+                return left.join() + right;
+            }
+            long[] sum = new long[1];
+            spliterator.forEachRemaining(v -> sum[0] += v);
+            return sum[0];
+        }
+    }
+
+    static final class JdkSumTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final java.util.Spliterator<Integer> spliterator;
+        private final long threshold;
+
+        JdkSumTask(java.util.Spliterator<Integer> spliterator, long threshold) {
+            this.spliterator = spliterator;
+            this.threshold = threshold;
+        }
+
+        protected Long compute() {
+            java.util.Spliterator<Integer> prefix;
+            if (spliterator.estimateSize() > threshold && (prefix = spliterator.trySplit()) != null) {
+                JdkSumTask left = new JdkSumTask(prefix, threshold);
+                left.fork();
+                long right = new JdkSumTask(spliterator, threshold).compute();
+                return left.join() + right;
+            }
+            long[] sum = new long[1];
+            spliterator.forEachRemaining(v -> sum[0] += v);
+            return sum[0];
+        }
     }
 }
@@ -0,0 +1,57 @@
+package test;
+
+import com.test.util.HashMap;
+
+import java.util.Arrays;
+
+/**
+ * 测试 HashMap 渐进式扩容对 put 延迟分布的影响
+ *
+ * 逐个记录每次put的耗时，然后输出延迟的分位数，
+ * 一次性扩容会在p99.9和max上表现为明显的尖刺，
+ * 默认插入1000万个元素，可以通过参数指定，例如: java -Xmx8g test.ResizeLatencyTest 30000000
+ */
+public class ResizeLatencyTest {
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        Integer[] keys = HashMapTimeTest.keys(count);
+        // 预热
+        run(new HashMap<>(16, 0.75f, false), keys);
+        run(new HashMap<>(16, 0.75f, true), keys);
+
+        report("一次性扩容", run(new HashMap<>(16, 0.75f, false), keys));
+        report("渐进式扩容", run(new HashMap<>(16, 0.75f, true), keys));
+    }
+
+    /** 记录每一次put的耗时，单位纳秒 */
+    static long[] run(HashMap<Integer, Integer> map, Integer[] keys) {
+        long[] latencies = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            long start = System.nanoTime();
+            map.put(keys[i], i);
+            latencies[i] = System.nanoTime() - start;
+        }
+        return latencies;
+    }
+
+    static void report(String name, long[] latencies) {
+        long total = 0;
+        for (long l : latencies) {
+            total += l;
+        }
+        Arrays.sort(latencies);
+        System.out.println(name + ":");
+        System.out.printf("  总耗时 %d ms%n", total / 1000000);
+        System.out.printf("  p50=%dns p99=%dns p99.9=%dns p99.99=%dns max=%dus%n",
+                percentile(latencies, 0.50),
+                percentile(latencies, 0.99),
+                percentile(latencies, 0.999),
+                percentile(latencies, 0.9999),
+                latencies[latencies.length - 1] / 1000);
+    }
+
+    static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))];
+    }
+}
@@ -0,0 +1,191 @@
+package test;
+
+import com.test.util.ArrayList;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 比较 com.test.util.stream 和 java.util.stream 的吞吐量
+ *
+ * 每个测试先预热几轮，取最后一轮的耗时，元素个数可以通过参数指定，
+ * 最后比较CPU密集的map在顺序流和并行流下的耗时，并行流使用公共ForkJoinPool，
+ * 例如: java -Xms2g -Xmx2g test.StreamTimeTest 1000000
+ */
+public class StreamTimeTest {
+    /** 预热的轮数 */
+    private static final int WARMUP = 10;
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        Integer[] values = HashMapTimeTest.keys(size);
+        ArrayList<Integer> list = new ArrayList<>();
+        java.util.ArrayList<Integer> jdk = new java.util.ArrayList<>();
+        for (Integer v : values) {
+            list.add(v);
+            jdk.add(v);
+        }
+
+        System.out.println("size=" + size);
+        System.out.printf("  %-26s %14s %14s%n", "", "com.test", "java.util");
+        report("filter.map.reduce", filterMapSumTest(list), filterMapSumJdk(jdk), size);
+        report("map.filter.count", mapFilterCountTest(list), mapFilterCountJdk(jdk), size);
+        report("filter.map.peek.forEach", chainForEachTest(list), chainForEachJdk(jdk), size);
+        report("sorted.limit(100)", sortedLimitTest(list), sortedLimitJdk(jdk), size);
+
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        long testSeq = cpuBoundTest(list, false);
+        long testPar = cpuBoundTest(list, true);
+        long jdkSeq = cpuBoundJdk(jdk, false);
+        long jdkPar = cpuBoundJdk(jdk, true);
+        System.out.println("CPU密集的map.reduce, 并行度=" + parallelism);
+        report("sequential", testSeq, jdkSeq, size);
+        report("parallel", testPar, jdkPar, size);
+        System.out.printf("  %-26s %12.2fx %12.2fx%n", "加速比",
+                (double) testSeq / testPar, (double) jdkSeq / jdkPar);
+    }
+
+    /** 每个元素做若干轮混合运算，让计算时间远大于遍历的开销 */
+    static long mix(int v) {
+        long h = v;
+        for (int i = 0; i < 64; i++) {
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+        }
+        return h;
+    }
+
+    static void report(String name, long testNanos, long jdkNanos, int size) {
+        System.out.printf("  %-26s %10.2f M/s %10.2f M/s%n", name,
+                (double) size / testNanos * 1000, (double) size / jdkNanos * 1000);
+    }
+
+    /** 无状态操作融合成一条Sink链，只遍历一次源 */
+    static long filterMapSumTest(ArrayList<Integer> list) {
+        long nanos = 0;
+        for (int r = 0; r < WARMUP; r++) {
+            long startTime = System.nanoTime();
+            Blackhole.sink = list.stream()
+                    .filter(v -> (v & 1) == 0)
+                    .map(v -> v * 3L)
+                    .reduce(0L, Long::sum);
+            nanos = System.nanoTime() - startTime;
+        }
+        return nanos;
+    }
+
+    static long filterMapSumJdk(java.util.ArrayList<Integer> list) {
+        long nanos = 0;
+        for (int r = 0; r < WARMUP; r++) {
+            long startTime = System.nanoTime();
+            Blackhole.sink = list.stream()
+                    .filter(v -> (v & 1) == 0)
+                    .map(v -> v * 3L)
+                    .reduce(0L, Long::sum);
+            nanos = System.nanoTime() - startTime;
+        }
+        return nanos;
+    }
+
+    static long mapFilterCountTest(ArrayList<Integer> list) {
+        long nanos = 0;
+        for (int r = 0; r < WARMUP; r++) {
+            long startTime = System.nanoTime();
+            Blackhole.sink = list.stream()
+                    .map(v -> v ^ 0x5bd1e995)
+                    .filter(v -> v > 0)
+                    .count();
+            nanos = System.nanoTime() - startTime;
+        }
+        return nanos;
+    }
+
+    static long mapFilterCountJdk(java.util.ArrayList<Integer> list) {
+        long nanos = 0;
+        for (int r = 0; r < WARMUP; r++) {
+            long startTime = System.nanoTime();
+            Blackhole.sink = list.stream()
+                    .map(v -> v ^ 0x5bd1e995)
+                    .filter(v -> v > 0)
+                    .count();
+            nanos = System.nanoTime() - startTime;
+        }
+        return nanos;
+    }
+
+    static long chainForEachTest(ArrayList<Integer> list) {
+        long nanos = 0;
+        for (int r = 0; r < WARMUP; r++) {
+            long[] sum = new long[2];
+            long startTime = System.nanoTime();
+            list.stream()
+                    .filter(v -> v % 3 != 0)
+                    .map(v -> v + 1)
+                    .peek(v -> sum[1]++)
+                    .forEach(v -> sum[0] += v);
+            nanos = System.nanoTime() - startTime;
+            Blackhole.sink = sum;
+        }
+        return nanos;
+    }
+
+    static long chainForEachJdk(java.util.ArrayList<Integer> list) {
+        long nanos = 0;
+        for (int r = 0; r < WARMUP; r++) {
+            long[] sum = new long[2];
+            long startTime = System.nanoTime();
+            list.stream()
+                    .filter(v -> v % 3 != 0)
+                    .map(v -> v + 1)
+                    .peek(v -> sum[1]++)
+                    .forEach(v -> sum[0] += v);
+            nanos = System.nanoTime() - startTime;
+            Blackhole.sink = sum;
+        }
+        return nanos;
+    }
+
+    static long cpuBoundTest(ArrayList<Integer> list, boolean parallel) {
+        long nanos = 0;
+        for (int r = 0; r < WARMUP; r++) {
+            long startTime = System.nanoTime();
+            Blackhole.sink = (parallel ? list.parallelStream() : list.stream())
+                    .map(StreamTimeTest::mix)
+                    .reduce(0L, Long::sum);
+            nanos = System.nanoTime() - startTime;
+        }
+        return nanos;
+    }
+
+    static long cpuBoundJdk(java.util.ArrayList<Integer> list, boolean parallel) {
+        long nanos = 0;
+        for (int r = 0; r < WARMUP; r++) {
+            long startTime = System.nanoTime();
+            Blackhole.sink = (parallel ? list.parallelStream() : list.stream())
+                    .map(StreamTimeTest::mix)
+                    .reduce(0L, Long::sum);
+            nanos = System.nanoTime() - startTime;
+        }
+        return nanos;
+    }
+
+    /** 排序是有状态的操作，需要先收集所有元素 */
+    static long sortedLimitTest(ArrayList<Integer> list) {
+        long nanos = 0;
+        for (int r = 0; r < WARMUP; r++) {
+            long startTime = System.nanoTime();
+            Blackhole.sink = list.stream().sorted().limit(100).toArray();
+            nanos = System.nanoTime() - startTime;
+        }
+        return nanos;
+    }
+
+    static long sortedLimitJdk(java.util.ArrayList<Integer> list) {
+        long nanos = 0;
+        for (int r = 0; r < WARMUP; r++) {
+            long startTime = System.nanoTime();
+            Blackhole.sink = list.stream().sorted().limit(100).toArray();
+            nanos = System.nanoTime() - startTime;
+        }
+        return nanos;
+    }
+}
@@ -0,0 +1,90 @@
+package test;
+
+import com.test.util.HashMap;
+import com.test.util.Map;
+import com.test.util.SwissHashMap;
+
+/**
+ * 比较 SwissHashMap 和 HashMap 的堆内存占用以及随机查找的吞吐量
+ *
+ * key和value都是提前创建好的对象，两个表共用，所以内存占用只包含表本身的结构，
+ * 查找分为命中和不命中两种情况，不命中时链表或者探测序列都要走到底，
+ * 建议固定堆大小运行，例如: java -Xms4g -Xmx4g test.SwissMapFootprintTest 10000000
+ */
+public class SwissMapFootprintTest {
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        Long[] keys = boxed(MapFootprintTest.keys(size));
+        // HashMap的Node按插入的顺序分配，按插入顺序查找会顺序访问内存，所以查找使用另一个顺序
+        Long[] hits = shuffle(keys.clone());
+        Long[] missing = boxed(MapFootprintTest.keys(size));
+        for (int i = 0; i < size; i++) {
+            missing[i] = missing[i] + 1;
+        }
+        System.out.println("size=" + size);
+
+        long before = MapFootprintTest.usedHeap();
+        HashMap<Long, Long> chained = new HashMap<>();
+        for (Long k : keys) {
+            chained.put(k, k);
+        }
+        long chainedBytes = MapFootprintTest.usedHeap() - before;
+        MapFootprintTest.report("com.test.util.HashMap", chainedBytes, size);
+        long chainedHit = get(chained, hits);
+        long chainedMiss = get(chained, missing);
+        Blackhole.sink = chained;
+        chained = null;
+
+        before = MapFootprintTest.usedHeap();
+        SwissHashMap<Long, Long> swiss = new SwissHashMap<>();
+        for (Long k : keys) {
+            swiss.put(k, k);
+        }
+        long swissBytes = MapFootprintTest.usedHeap() - before;
+        MapFootprintTest.report("com.test.util.SwissHashMap", swissBytes, size);
+        long swissHit = get(swiss, hits);
+        long swissMiss = get(swiss, missing);
+        Blackhole.sink = swiss;
+
+        System.out.printf("内存缩减 %.2fx%n", (double) chainedBytes / swissBytes);
+        System.out.printf("随机get命中    HashMap %.2f Mops/s, SwissHashMap %.2f Mops/s%n",
+                (double) size / chainedHit * 1000, (double) size / swissHit * 1000);
+        System.out.printf("随机get不命中  HashMap %.2f Mops/s, SwissHashMap %.2f Mops/s%n",
+                (double) size / chainedMiss * 1000, (double) size / swissMiss * 1000);
+    }
+
+    static Long[] boxed(long[] keys) {
+        Long[] result = new Long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            result[i] = keys[i];
+        }
+        return result;
+    }
+
+    static Long[] shuffle(Long[] keys) {
+        java.util.Random random = new java.util.Random(7);
+        for (int i = keys.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            Long t = keys[i];
+            keys[i] = keys[j];
+            keys[j] = t;
+        }
+        return keys;
+    }
+
+    /** 取最后一轮的耗时，前面几轮作为预热 */
+    static long get(Map<Long, Long> map, Long[] keys) {
+        long nanos = 0;
+        for (int r = 0; r < 5; r++) {
+            long startTime = System.nanoTime();
+            long found = 0;
+            for (Long k : keys) {
+                if (map.get(k) != null)
+                    found++;
+            }
+            nanos = System.nanoTime() - startTime;
+            Blackhole.sink = found;
+        }
+        return nanos;
+    }
+}
@@ -0,0 +1,158 @@
+package test;
+
+import com.test.util.TinyLfuCache;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * 用访问记录文件比较 TinyLfuCache 和访问顺序的 LinkedHashMap 实现的LRU的命中率和吞吐量
+ *
+ * 访问记录是文本文件，每行的第一个字段是key(long)，空行和#开头的行被忽略，
+ * 没有指定文件的时候生成一个Zipf分布的热点访问中间夹杂着一次性扫描的记录，写到临时文件中再读取，
+ * 例如: java -Xmx2g test.TinyLfuCacheTest trace.txt 1000 10000 100000
+ *
+ * 最后用多个线程同时访问同一个缓存比较吞吐量，LRU使用synchronized保护，TinyLfuCache按段加锁
+ */
+public class TinyLfuCacheTest {
+    public static void main(String[] args) throws Exception {
+        Path path;
+        if (args.length > 0) {
+            path = Paths.get(args[0]);
+        } else {
+            path = Files.createTempFile("cache-trace", ".txt");
+            path.toFile().deleteOnExit();
+            writeScanTrace(path, 100000, 4000000, 42);
+        }
+        long startTime = System.nanoTime();
+        Long[] trace = loadTrace(path);
+        System.out.printf("trace=%s accesses=%d load=%d ms%n",
+                path, trace.length, (System.nanoTime() - startTime) / 1000000);
+
+        int[] capacities;
+        if (args.length > 1) {
+            capacities = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++)
+                capacities[i - 1] = Integer.parseInt(args[i]);
+        } else {
+            capacities = new int[]{1000, 5000, 20000};
+        }
+
+        for (int capacity : capacities) {
+            // 第一轮作为预热
+            runLru(new LruCacheTest.LruCache<>(capacity), trace);
+            runTinyLfu(new TinyLfuCache<>(capacity, 1), trace);
+            startTime = System.nanoTime();
+            long lruHits = runLru(new LruCacheTest.LruCache<>(capacity), trace);
+            long lruNanos = System.nanoTime() - startTime;
+            startTime = System.nanoTime();
+            long lfuHits = runTinyLfu(new TinyLfuCache<>(capacity, 1), trace);
+            long lfuNanos = System.nanoTime() - startTime;
+            System.out.printf("  capacity=%-8d LRU hit=%6.2f%% %7.2f Mops/s   W-TinyLFU hit=%6.2f%% %7.2f Mops/s%n",
+                    capacity,
+                    lruHits * 100.0 / trace.length, (double) trace.length / lruNanos * 1000,
+                    lfuHits * 100.0 / trace.length, (double) trace.length / lfuNanos * 1000);
+        }
+
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        int capacity = capacities[capacities.length - 1];
+        LruCacheTest.LruCache<Long, Long> lru = new LruCacheTest.LruCache<>(capacity);
+        TinyLfuCache<Long, Long> lfu = new TinyLfuCache<>(capacity);
+        for (int r = 0; r < 3; r++) {
+            long lruNanos = concurrent(threads, trace, k -> {
+                synchronized (lru) {
+                    lru.computeIfAbsent(k, x -> x);
+                }
+            });
+            long lfuNanos = concurrent(threads, trace, k -> lfu.computeIfAbsent(k, x -> x));
+            if (r == 2)
+                System.out.printf("threads=%d capacity=%d  synchronized LRU %.2f Mops/s, TinyLfuCache %.2f Mops/s%n",
+                        threads, capacity, (double) trace.length / lruNanos * 1000, (double) trace.length / lfuNanos * 1000);
+        }
+    }
+
+    /**
+     * 按照访问序列执行缓存查找，未命中时放入缓存，返回命中的次数
+     * 两种缓存都使用computeIfAbsent，一次访问只查找一次，调用了mappingFunction就是未命中
+     */
+    static long runLru(LruCacheTest.LruCache<Long, Long> cache, Long[] trace) {
+        long[] misses = new long[1];
+        for (Long k : trace)
+            cache.computeIfAbsent(k, x -> { misses[0]++; return x; });
+        Blackhole.sink = cache;
+        return trace.length - misses[0];
+    }
+
+    static long runTinyLfu(TinyLfuCache<Long, Long> cache, Long[] trace) {
+        long[] misses = new long[1];
+        for (Long k : trace)
+            cache.computeIfAbsent(k, x -> { misses[0]++; return x; });
+        Blackhole.sink = cache;
+        return trace.length - misses[0];
+    }
+
+    /** 每个线程访问trace中连续的一段，返回所有线程完成的耗时 */
+    static long concurrent(int threads, Long[] trace, java.util.function.Consumer<Long> access)
+            throws InterruptedException {
+        Thread[] ts = new Thread[threads];
+        int chunk = (trace.length + threads - 1) / threads;
+        for (int t = 0; t < threads; t++) {
+            int from = t * chunk, to = Math.min(trace.length, from + chunk);
+            ts[t] = new Thread(() -> {
+                for (int i = from; i < to; i++)
+                    access.accept(trace[i]);
+            });
+        }
+        long startTime = System.nanoTime();
+        for (Thread t : ts)
+            t.start();
+        for (Thread t : ts)
+            t.join();
+        return System.nanoTime() - startTime;
+    }
+
+    /** 读取访问记录文件，每行的第一个字段是key */
+    static Long[] loadTrace(Path path) throws IOException {
+        java.util.ArrayList<Long> keys = new java.util.ArrayList<>();
+        try (BufferedReader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.charAt(0) == '#')
+                    continue;
+                int end = 0;
+                while (end < line.length() && !Character.isWhitespace(line.charAt(end)))
+                    end++;
+                keys.add(Long.parseLong(line.substring(0, end)));
+            }
+        }
+        return keys.toArray(new Long[0]);
+    }
+
+    /**
+     * 生成访问记录：keyCount个key的Zipf(0.9)热点访问，
+     * 每10万次访问之后插入一次2万个只访问一次的key的扫描，模拟批处理任务
+     */
+    static void writeScanTrace(Path path, int keyCount, int accessCount, long seed) throws IOException {
+        Integer[] hot = LruCacheTest.zipf(keyCount, accessCount, 0.9, seed);
+        long scanKey = 1L << 40;
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            out.write("# zipf 0.9 keys=" + keyCount + " with scans\n");
+            for (int i = 0; i < hot.length; i++) {
+                out.write(Long.toString(hot[i]));
+                out.write('\n');
+                if (i % 100000 == 99999) {
+                    for (int j = 0; j < 20000; j++) {
+                        out.write(Long.toString(scanKey++));
+                        out.write('\n');
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package test;
+
+import com.test.util.ArrayList;
+import com.test.util.Spliterator;
+import com.test.util.function.Consumer;
+import com.test.util.stream.IntStream;
+import com.test.util.stream.StreamSupport;
+import com.test.util.stream.TripwireMonitor;
+
+import java.lang.management.ManagementFactory;
+import javax.management.ObjectName;
+
+/**
+ * 演示TripwireMonitor统计的装箱、顺序退化和Node复制事件
+ *
+ * 需要在启动的时候开启计数，例如:
+ * java -Dcom.test.util.stream.tripwire.monitor=true test.TripwireMonitorTest
+ */
+public class TripwireMonitorTest {
+    public static void main(String[] args) throws Exception {
+        if (!TripwireMonitor.ENABLED) {
+            System.out.println("请使用 -Dcom.test.util.stream.tripwire.monitor=true 启动");
+            return;
+        }
+        ArrayList<Integer> list = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            list.add(i);
+        }
+
+        //没有装箱的管道
+        IntStream.range(0, 100000).map(v -> v * 3).filter(v -> (v & 1) == 0).sum();
+        print("IntStream.range.map.filter.sum");
+
+        //原始类型的迭代器被当作Iterator<Integer>使用，每个元素装箱一次
+        long sum = 0;
+        for (java.util.Iterator<Integer> it = IntStream.range(0, 1000).iterator(); it.hasNext(); )
+            sum += it.next();
+        print("IntStream.iterator().next()");
+
+        //并行的sorted需要先把上游的元素收集到Node当中
+        list.parallelStream().sorted().filter(v -> v > 10).findFirst();
+        print("parallelStream().sorted().filter().findFirst()");
+
+        //不能拆分的源，并行流只能在一个线程中执行
+        StreamSupport.stream(new SingleSpliterator(list), true).map(v -> v + 1).reduce(0, Integer::sum);
+        print("parallel stream over an unsplittable source");
+
+        System.out.println("MXBean " + TripwireMonitor.OBJECT_NAME + " 已注册: " +
+                ManagementFactory.getPlatformMBeanServer()
+                        .isRegistered(new ObjectName(TripwireMonitor.OBJECT_NAME)));
+        System.out.println(sum);
+    }
+
+    /** trySplit总是返回null的分裂器 */
+    static class SingleSpliterator implements Spliterator<Integer> {
+        private final ArrayList<Integer> list;
+        private int index;
+
+        SingleSpliterator(ArrayList<Integer> list) {
+            this.list = list;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Integer> action) {
+            if (index < list.size()) {
+                action.accept(list.get(index++));
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public Spliterator<Integer> trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return list.size() - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED;
+        }
+    }
+
+    static void print(String name) {
+        System.out.println(name);
+        for (TripwireMonitor.Kind kind : TripwireMonitor.Kind.values()) {
+            System.out.printf("  %-20s total=%d%n", kind, TripwireMonitor.total(kind));
+            TripwireMonitor.snapshot(kind).forEach((site, count) ->
+                    System.out.printf("    %8d  %s%n", count, site));
+        }
+        TripwireMonitor.clear();
+    }
+}